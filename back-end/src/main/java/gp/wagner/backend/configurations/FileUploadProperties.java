@@ -39,6 +39,11 @@ public class FileUploadProperties {
         return Paths.get(uploadsPath,"thumbnails");
     }
 
+    // Путь для файлов выгрузок отчётов
+    public Path exportsPath(){
+        return Paths.get(uploadsPath,"exports");
+    }
+
     // Путь к водному знаку
     public Path watermarkPath(){
         return Paths.get(uploadsPath,"water-mark.png");
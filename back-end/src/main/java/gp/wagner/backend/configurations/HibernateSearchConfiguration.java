@@ -1,19 +1,26 @@
 package gp.wagner.backend.configurations;
 
 
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 
 @Configuration
 public class HibernateSearchConfiguration  {
 
-    /*@Bean
+    // Анализатор для полей товаров. Задаётся в hibernate.search.backend.analysis.configurer
+    @Bean
     public LuceneAnalysisConfigurer luceneAnalysisConfigurer() {
         return context -> {
+            // Приведение к нижнему регистру, удаление диакритики в латинице и стемминг по правилам русского языка,
+            // чтобы запрос "диваны" находил "диван", "дивана" и т.д.
             context.analyzer("product_analyzer").custom()
                     .tokenizer("standard")
                     .tokenFilter("lowercase")
-                    .tokenFilter("asciifolding");
+                    .tokenFilter("asciifolding")
+                    .tokenFilter("snowballPorter")
+                        .param("language", "Russian");
         };
-    }*/
+    }
 }
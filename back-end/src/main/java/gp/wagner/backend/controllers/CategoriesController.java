@@ -61,23 +61,8 @@ public class CategoriesController {
     @GetMapping(value = "/get_tree", produces = MediaType.APPLICATION_JSON_VALUE)
     public Collection<CategoryDtoWithChildren> getCategoriesWithChildren() {
 
-        List<Category> parentCategories = Services.categoriesService.getAllParentCategories();
-
-        List<CategoryDtoWithChildren> categoriesWithChildren = new ArrayList<>();
-
-        for (Category category : parentCategories) {
-
-            // Dto без подсчёта кол-ва товаров каждой категории
-            CategoryDtoWithChildren categoryWithChildren = CategoryDtoWithChildren.factory(category);
-
-            // Рекурсивно выбрать дочерние категории
-            categoryWithChildren.setChildCategories(ControllerUtils.findChildCategories(category.getId()));
-            categoriesWithChildren.add(categoryWithChildren);
-
-        }
-
-        //Создаём из вариантов товаров список объектов DTO для вариантов товаров
-        return categoriesWithChildren;
+        // Дерево строится в памяти, кол-во товаров всех категорий подсчитывается одним запросом
+        return Services.categoriesTreeService.getTree(true);
     }
 
     //Добавление категории
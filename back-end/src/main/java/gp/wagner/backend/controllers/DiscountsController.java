@@ -4,11 +4,11 @@ import gp.wagner.backend.domain.dto.request.crud.DiscountRequestDto;
 import gp.wagner.backend.domain.dto.response.PageDto;
 import gp.wagner.backend.domain.dto.response.categories.CategoryDtoWithChildren;
 import gp.wagner.backend.domain.dto.response.discounts.DiscountDetailedRespDto;
+import gp.wagner.backend.domain.dto.response.discounts.DiscountJobRespDto;
 import gp.wagner.backend.domain.dto.response.discounts.DiscountRespDto;
 import gp.wagner.backend.domain.dto.response.products.ProductPreviewRespDto;
 import gp.wagner.backend.domain.entities.categories.Category;
 import gp.wagner.backend.domain.entities.products.Discount;
-import gp.wagner.backend.domain.entities.products.Product;
 import gp.wagner.backend.domain.entities.products.ProductVariant;
 import gp.wagner.backend.infrastructure.ControllerUtils;
 import gp.wagner.backend.infrastructure.SimpleTuple;
@@ -128,19 +128,13 @@ public class DiscountsController {
             @RequestParam(value = "sort_by", defaultValue = "id")  String sortBy,
             @RequestParam(value = "sort_type", defaultValue = "asc") String sortType){
 
-        Page<Product> productsPage = Services.productsService.getByCategoryAndPrice(categoryId, priceRange,pageNum, limit,
+        Page<Long> productsPage = Services.productsService.getByCategoryAndPrice(categoryId, priceRange,pageNum, limit,
                 ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType), ProductsOrVariantsEnum.VARIANTS);
 
         // Получить кортеж диапазона цен для формирования DTO
         SimpleTuple<Integer, Integer> prices = Utils.parseTwoNumericValues(priceRange);
 
-        return new PageDto<>(productsPage, () -> {
-            // Если диапазон цен был задан, значит происходила выборка по ценам вариантов товаров
-            if (prices == null)
-                return productsPage.getContent().stream().map(ProductPreviewRespDto::new).toList();
-            else
-                return productsPage.getContent().stream().map(p -> new ProductPreviewRespDto(p, prices)).toList();
-        });
+        return new PageDto<>(productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), prices));
     }
 
     //Выборка всех категорий в которых задана скидка
@@ -228,20 +222,17 @@ public class DiscountsController {
 
     }// removeDiscountToVariants
 
-    // Задать скидку на несколько товаров
-    @PutMapping(value = "/add/to_products")
-    public ResponseEntity<String> addDiscountToProducts(@Valid @RequestBody Map<String, Long[]> productsIds,
+    // Задать скидку на несколько товаров. Варианты изменяются фоновой задачей
+    @PutMapping(value = "/add/to_products", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DiscountJobRespDto> addDiscountToProducts(@Valid @RequestBody Map<String, Long[]> productsIds,
                                                        @Valid @RequestParam(value = "discount_id") @Min(0) long discountId) {
 
         // Получение списка id товаров
-        //List<Long> idList = Arrays.stream(productVariantIds.values().stream().toList().get(0)).toList();
         List<Long> idList = Arrays.stream(productsIds.get("ids_list")).toList();
-        Services.discountsService.addDiscountToProductsList(discountId, idList);
 
         return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(String.format("Скидка с id: %d добавлена к товарам по списку id", discountId));
-
+                .status(HttpStatus.ACCEPTED)
+                .body(Services.discountsService.addDiscountToProductsList(discountId, idList));
 
     }// addDiscountToProducts
 
@@ -263,46 +254,38 @@ public class DiscountsController {
     }// removeDiscountFromProducts
 
 
-    // Задать скидку на всю категорию
-    @PutMapping(value = "/add/to_category")
-    public ResponseEntity<String> addDiscountToCategory(@Valid @RequestParam(value = "category_id") @Min(0) long categoryId,
+    // Задать скидку на всю категорию вместе с дочерними. Варианты изменяются фоновой задачей
+    @PutMapping(value = "/add/to_category", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DiscountJobRespDto> addDiscountToCategory(@Valid @RequestParam(value = "category_id") @Min(0) long categoryId,
                                                         @Valid @RequestParam(value = "discount_id") @Min(0) long discountId) {
 
-        Services.discountsService.addDiscountToCategory(discountId, categoryId);
-        Discount discount = Services.discountsService.getById(discountId);
-
-        String message = "";
-
-        if (categoryId > 0) {
-            Category category = Services.categoriesService.getById(categoryId);
-            message = String.format(" '%s' и все её дочерние категории!", category.getName());
-        }
-
         return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(String.format("Скидка с id: %d добавлена на категорию%s", discount.getId(), message));
+                .status(HttpStatus.ACCEPTED)
+                .body(Services.discountsService.addDiscountToCategory(discountId, categoryId));
 
     }// addDiscountToCategory
 
-    // Убрать скидку с категории
-    @PutMapping(value = "/remove/from_category")
-    public ResponseEntity<String> removeDiscountFromCategory(@Valid @RequestParam(value = "category_id") @Min(0) long categoryId,
+    // Убрать скидку с категории вместе с дочерними. Варианты изменяются фоновой задачей
+    @PutMapping(value = "/remove/from_category", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DiscountJobRespDto> removeDiscountFromCategory(@Valid @RequestParam(value = "category_id") @Min(0) long categoryId,
                                                              @Valid @RequestParam(value = "discount_id") @Min(0) long discountId) {
 
-        Services.discountsService.removeDiscountFromCategories(discountId, List.of(categoryId));
-        Discount discount = Services.discountsService.getById(discountId);
-
-        String message = "";
-
-        if (categoryId > 0) {
-            Category category = Services.categoriesService.getById(categoryId);
-            message = String.format(" '%s' со всех её дочерние категорий!", category.getName());
-        }
-
         return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(String.format("Скидка с id: %d убрана на категории%s", discount.getId(), message));
+                .status(HttpStatus.ACCEPTED)
+                .body(Services.discountsService.removeDiscountFromCategories(discountId, List.of(categoryId)));
 
     }// removeDiscountFromCategory
 
+    // Состояние фоновой задачи изменения скидки: кол-во изменённых вариантов из общего
+    @GetMapping(value = "/jobs/state", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DiscountJobRespDto getDiscountJobState(@Valid @RequestParam(value = "job_id") @Min(1) long jobId) {
+        return Services.discountJobsService.getJob(jobId);
+    }
+
+    // Фоновые задачи изменения скидки, начиная с последней
+    @GetMapping(value = "/jobs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<DiscountJobRespDto> getDiscountJobs(@Valid @RequestParam(value = "discount_id") @Min(0) long discountId) {
+        return Services.discountJobsService.getJobsByDiscount(discountId);
+    }
+
 }
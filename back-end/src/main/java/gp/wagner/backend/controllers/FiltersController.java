@@ -2,6 +2,7 @@ package gp.wagner.backend.controllers;
 
 import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
 import gp.wagner.backend.domain.dto.response.filters.CustomersFilterValuesDto;
+import gp.wagner.backend.domain.dto.response.filters.FilterFacetsRespDto;
 import gp.wagner.backend.domain.dto.response.filters.FilterValuesDto;
 import gp.wagner.backend.domain.dto.response.filters.UserFilterValuesDto;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
@@ -44,11 +45,26 @@ public class FiltersController {
     ){
 
         long result = Services.productsService.countData(filtersContainer, categoryId < 1 ? null : categoryId,
-                priceRange.isEmpty() ? null : priceRange, ProductsOrVariantsEnum.PRODUCTS);
+                priceRange.isEmpty() ? null : priceRange, ProductsOrVariantsEnum.VARIANTS);
 
         return result;
     }
 
+    // Подсчёт общего кол-ва товаров и кол-ва товаров для каждого значения фильтра в текущем его состоянии
+    @GetMapping(value = "/facets_by_filter", produces = MediaType.APPLICATION_JSON_VALUE)
+    public FilterFacetsRespDto getFacetsByFilter(
+            @Valid @RequestPart(value = "filter", required = false) ProductFilterDtoContainer filtersContainer,
+            @RequestParam(value = "category_id") long categoryId,
+            @RequestParam(value = "price_range", defaultValue = "") String priceRange,
+            @RequestParam(value = "price_buckets", defaultValue = "5") int priceBuckets
+    ){
+        if (categoryId < 1)
+            throw new ApiException("Id категории задан некорректно!");
+
+        return Services.attributeValuesService.getFacetsByFilter(filtersContainer, categoryId,
+                priceRange.isEmpty() ? null : priceRange, priceBuckets);
+    }
+
     // Выборка значений для блока фильтров при поиске по id категорий найденных товаров
     // Принимаем map, поскольку иначе неудавалось передать именованную коллекцию
     @GetMapping(value = "/filter_by_categories", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -4,6 +4,7 @@ import gp.wagner.backend.domain.dto.request.crud.product.ProductDto;
 import gp.wagner.backend.domain.dto.request.crud.product.ProductImageDto;
 import gp.wagner.backend.domain.dto.request.crud.product.ProductImageDtoContainer;
 import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
+import gp.wagner.backend.domain.dto.response.CursorPageDto;
 import gp.wagner.backend.domain.dto.response.PageDto;
 import gp.wagner.backend.domain.dto.response.products.ProductDetailsRespDto;
 import gp.wagner.backend.domain.dto.response.products.ProductPreviewRespDto;
@@ -13,8 +14,10 @@ import gp.wagner.backend.domain.entities.products.ProductImage;
 import gp.wagner.backend.domain.entities.products.ProductVariant;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.infrastructure.ControllerUtils;
+import gp.wagner.backend.infrastructure.CursorPage;
 import gp.wagner.backend.infrastructure.SimpleTuple;
 import gp.wagner.backend.infrastructure.Utils;
+import gp.wagner.backend.infrastructure.enums.ProductsOrVariantsEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.ProductsSortEnum;
 import gp.wagner.backend.middleware.Services;
@@ -42,12 +45,8 @@ public class ProductsController {
     //Выборка всех товаров без пагинации
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     public List<ProductPreviewRespDto> getAllProducts(){
-        List<Product> products = Services.productsService.getAll();
-
-        //Именно здесь и находится проблема с многократным обращением к справочны таблицам при выборке каждого продукта
-        List<ProductPreviewRespDto> productsDto = ControllerUtils.getProductsPreviewsList(products);
-
-        return productsDto;
+        // Карточки берутся из хранилища карточек товаров без обращения к справочным таблицам для каждого товара
+        return Services.productCardsService.getAllPreviews();
     }
 
     //Выборка всех товаров с пагинацией
@@ -57,7 +56,7 @@ public class ProductsController {
                                              @Valid @RequestParam(value = "limit", defaultValue = "20") @Max(50) int limit,
                                              @RequestParam(value = "sort", defaultValue = "price_desc") String sortType){
 
-        Page<Product> productsPage = Services.productsService.getAll(pageNum - 1, limit);
+        Page<Long> productsPage = Services.productsService.getAll(pageNum - 1, limit);
 
         List<ProductPreviewRespDto> productsDto = ControllerUtils.getProductsPreviewsList(productsPage.getContent());
 
@@ -76,15 +75,38 @@ public class ProductsController {
         // Засчитать просмотр категории если его ещё не было
         ControllerUtils.countCategoryView(request, categoryId);
 
-        Page<Product> productsPage = Services.productsService.getByCategory(categoryId,pageNum, limit,
+        Page<Long> productsPage = Services.productsService.getByCategory(categoryId,pageNum, limit,
                 ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType));
 
 
         return new PageDto<>(
-                productsPage, () -> productsPage.getContent().stream().map(ProductPreviewRespDto::new).toList()
+                productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), null)
         );
     }
 
+    // Выборка товаров по категории постранично по курсору - для бесконечной прокрутки.
+    // Курсор следующей страницы возвращается в ответе, для первой страницы курсор не задаётся
+    @GetMapping(value = "/by_category/cursor",produces = MediaType.APPLICATION_JSON_VALUE)
+    public CursorPageDto<ProductPreviewRespDto> getProductsByCategoryByCursor(HttpServletRequest request,
+                                                                     @RequestParam(value = "category_id", defaultValue = "1") long categoryId,
+                                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                                     @Valid @RequestParam(value = "limit", defaultValue = "20") @Max(50) int limit,
+                                                                     @RequestParam(value = "price_range", defaultValue = "") String priceRange,
+                                                                     @RequestParam(value = "sort_by", defaultValue = "id")  String sortBy,
+                                                                     @RequestParam(value = "sort_type", defaultValue = "asc") String sortType){
+
+        // Засчитать просмотр категории только при выборке первой страницы
+        if (cursor == null || cursor.isBlank())
+            ControllerUtils.countCategoryView(request, categoryId);
+
+        SimpleTuple<Integer, Integer> prices = Utils.parseTwoNumericValues(priceRange);
+
+        CursorPage<Long> productsPage = Services.productsService.getByCategoryAndPriceByCursor(categoryId, prices != null ? priceRange : null,
+                cursor, limit, ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType), ProductsOrVariantsEnum.VARIANTS);
+
+        return new CursorPageDto<>(productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), prices));
+    }
+
     //Выборка всех товаров по производителю
     @GetMapping(value = "/by_producer",produces = MediaType.APPLICATION_JSON_VALUE)
     public PageDto<ProductPreviewRespDto> getProductsByProducer(
@@ -95,11 +117,11 @@ public class ProductsController {
                                              @RequestParam(value = "sort_type", defaultValue = "asc") String sortType){
 
 
-        Page<Product> productsPage = Services.productsService.getByProducerPaged(producerId,pageNum, limit,
+        Page<Long> productsPage = Services.productsService.getByProducerPaged(producerId,pageNum, limit,
                 ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType));
 
         return new PageDto<>(
-                productsPage, () -> productsPage.getContent().stream().map(ProductPreviewRespDto::new).toList()
+                productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), null)
         );
     }
 
@@ -117,11 +139,11 @@ public class ProductsController {
             @RequestParam(value = "price_range", defaultValue = "") String priceRange){
 
         // Container - список DTO с условиями фильтрации и логическими операциями (or/and)
-        Page<Product> productsPage = Services.productsService.getAll(container, categoryId < 1 ? null : categoryId,
+        Page<Long> productsPage = Services.productsService.getAll(container, categoryId < 1 ? null : categoryId,
                 priceRange.isEmpty() ? null : priceRange,
                 pageNum, limit);
 
-        return new PageDto<>(productsPage, () -> productsPage.getContent().stream().map(ProductPreviewRespDto::new).toList())/*new AbstractMap.SimpleEntry<>(productsTuple.getValue2().longValue(), productsDto)*/;
+        return new PageDto<>(productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), null))/*new AbstractMap.SimpleEntry<>(productsTuple.getValue2().longValue(), productsDto)*/;
     }
 
     // Фильтрация товаров, где учитываются не только цены самих товаров, но и их вариантов
@@ -143,22 +165,42 @@ public class ProductsController {
         categoryId =  categoryId == 0 ? null : categoryId;
 
         // Container - список DTO с условиями фильтрации и логическими операциями (or/and)
-        Page<Product> productsPage = Services.productsService.getAllWithCorrectPrices(container, categoryId,
+        Page<Long> productsPage = Services.productsService.getAllWithCorrectPrices(container, categoryId,
                 prices != null ? priceRange : null, pageNum, limit, ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType));
 
         // Засчитать просмотр категории, если его ещё не было в эти сутки
         ControllerUtils.countCategoryView(request, categoryId);
 
-        return new PageDto<>(productsPage, () -> {
-            // Если диапазон цен был задан, значит происходила выборка по ценам вариантов товаров
-            if (prices == null)
-                return productsPage.getContent().stream().map(ProductPreviewRespDto::new).toList();
-            else
-                return productsPage.getContent().stream().map(p -> new ProductPreviewRespDto(p, prices)).toList();
-        });
+        return new PageDto<>(productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), prices));
     }
 
 
+    // Фильтрация товаров с выборкой страниц по курсору вместо смещения
+    @GetMapping(value = "/filter_new/cursor",produces = MediaType.APPLICATION_JSON_VALUE)
+    public CursorPageDto<ProductPreviewRespDto> getProductsFilteredByCursor(
+            HttpServletRequest request,
+            @Valid @RequestPart(value = "filter") ProductFilterDtoContainer container,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @Valid @RequestParam(value = "limit") @Max(80) int limit,
+            @RequestParam(value = "category_id", defaultValue = "0")  Long categoryId,
+            @RequestParam(value = "price_range", defaultValue = "") String priceRange,
+            @RequestParam(value = "sort_by", defaultValue = "id")  String sortBy,
+            @RequestParam(value = "sort_type", defaultValue = "asc") String sortType){
+
+        SimpleTuple<Integer, Integer> prices = Utils.parseTwoNumericValues(priceRange);
+
+        categoryId =  categoryId == 0 ? null : categoryId;
+
+        CursorPage<Long> productsPage = Services.productsService.getAllWithCorrectPricesByCursor(container, categoryId,
+                prices != null ? priceRange : null, cursor, limit, ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType));
+
+        // Засчитать просмотр категории только при выборке первой страницы
+        if (cursor == null || cursor.isBlank())
+            ControllerUtils.countCategoryView(request, categoryId);
+
+        return new CursorPageDto<>(productsPage, () -> Services.productCardsService.getPreviews(productsPage.getContent(), prices));
+    }
+
     // Выборка атрибутов товаров по id
     // В параметрах передаём id товара для выборки значений его характеристик.
     // Возвращает пару ключ-значение с названием продукта + его характеристиками
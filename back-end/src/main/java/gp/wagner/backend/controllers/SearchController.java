@@ -1,11 +1,13 @@
 package gp.wagner.backend.controllers;
 
 import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
+import gp.wagner.backend.domain.dto.response.CursorPageDto;
 import gp.wagner.backend.domain.dto.response.PageDto;
 import gp.wagner.backend.domain.dto.response.products.ProductPreviewRespDto;
-import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.domain.dto.response.search.SearchSuggestionRespDto;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.infrastructure.ControllerUtils;
+import gp.wagner.backend.infrastructure.CursorPage;
 import gp.wagner.backend.infrastructure.SimpleTuple;
 import gp.wagner.backend.infrastructure.Utils;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
@@ -34,7 +36,7 @@ public class SearchController {
             @RequestParam(value = "sort_type", defaultValue = "asc") String sortType
     ){
 
-        Page<Product> resultPage = Services.searchService.getProductsByKeyword(key.toLowerCase(),
+        Page<Long> resultPage = Services.searchService.getProductsByKeyword(key.toLowerCase(),
                 filterContainer,
                 priceRange.isEmpty() ? null : priceRange,
                 page, limit,
@@ -46,19 +48,48 @@ public class SearchController {
 
         SimpleTuple<Integer, Integer> prices = Utils.parseTwoNumericValues(priceRange);
 
-        return new PageDto<>(resultPage, () -> {
-            if (prices == null)
-                return resultPage.getContent().stream().map(ProductPreviewRespDto::new).toList();
-            else
-                return resultPage.getContent().stream().map(p -> new ProductPreviewRespDto(p, prices)).toList();
-        });
+        return new PageDto<>(resultPage, () -> Services.productCardsService.getPreviews(resultPage.getContent(), prices));
+    }
+
+    // Поиск товаров с выборкой страниц по курсору
+    @GetMapping(value = "/find_by_keyword/cursor", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CursorPageDto<ProductPreviewRespDto> findProductsByKeywordByCursor(
+            @RequestParam(value = "key") String key,
+            @Valid @RequestPart(value = "filter", required = false) ProductFilterDtoContainer filterContainer,
+            @RequestParam(value = "price_range", defaultValue = "") String priceRange,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit") int limit,
+            @RequestParam(value = "sort_by", defaultValue = "id")  String sortBy,
+            @RequestParam(value = "sort_type", defaultValue = "asc") String sortType
+    ){
+
+        CursorPage<Long> resultPage = Services.searchService.getProductsByKeywordByCursor(key.toLowerCase(),
+                filterContainer,
+                priceRange.isEmpty() ? null : priceRange,
+                cursor, limit,
+                ProductsSortEnum.getSortType(sortBy), GeneralSortEnum.getSortType(sortType));
+
+        if (resultPage.getContent().isEmpty() && (cursor == null || cursor.isBlank()))
+            throw new ApiException(String.format("Товары с заданным ключевым словом '%s' не найдены. Not found!", key.length() > 10 ? key.substring(0,10).trim() : key));
+
+        SimpleTuple<Integer, Integer> prices = Utils.parseTwoNumericValues(priceRange);
+
+        return new CursorPageDto<>(resultPage, () -> Services.productCardsService.getPreviews(resultPage.getContent(), prices));
+    }
+
+    // Подсказки по вводимому ключевому слову
+    @GetMapping(value = "/suggestions", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<SearchSuggestionRespDto> getSuggestions(@RequestParam(value = "key") String key,
+                                                        @RequestParam(value = "limit", defaultValue = "10") int limit){
+
+        return Services.searchSuggestionsService.getSuggestions(key, Math.max(1, Math.min(limit, 50)));
     }
 
     //Получение предосмотра товаров по вводимому ключевому слову
     @GetMapping(value = "/get_product_preview", produces = MediaType.APPLICATION_JSON_VALUE)
     public List<ProductPreviewRespDto> getCollectionPreview(@RequestParam(value = "key") String key){
 
-        List<Product> productsPreviewList = Services.searchService.getProductsPreviewByKeyword(key);
+        List<Long> productsPreviewList = Services.searchService.getProductsPreviewByKeyword(key);
 
         if (productsPreviewList.size() == 0)
             throw new ApiException(String.format("Товары с заданным ключевым словом '%s' не найдены. Not found!", key.length() > 10 ? key.substring(0,10).trim() : key));
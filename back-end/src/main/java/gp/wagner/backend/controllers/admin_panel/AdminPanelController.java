@@ -66,6 +66,33 @@ public class AdminPanelController {
         return ResponseEntity.ok().body(true);
     }
 
+    // Запустить полную переиндексацию товаров для полнотекстового поиска
+    @GetMapping(value = "/reindex_products")
+    public ResponseEntity<Boolean> reindexProducts() {
+
+        Services.indexer.initIndexing();
+
+        return ResponseEntity.ok().body(true);
+    }
+
+    // Сбросить кэш статистики по дням (например, после переноса товаров в другие категории)
+    @GetMapping(value = "/clear_statistics_cache")
+    public ResponseEntity<Boolean> clearStatisticsCache() {
+
+        Services.statisticsDaysCacheService.invalidateAll();
+
+        return ResponseEntity.ok().body(true);
+    }
+
+    // Пересчитать сводку заказов по дням в фоне (например, после переноса товаров в другие категории)
+    @GetMapping(value = "/backfill_orders_rollup")
+    public ResponseEntity<Boolean> backfillOrdersRollup() {
+
+        Services.ordersRollupService.startBackfill();
+
+        return ResponseEntity.ok().body(true);
+    }
+
     // Изменить роль пользователя (данный endpoint доступен только админу)
     @PutMapping(value = "/change_user_role")
     public ResponseEntity<Boolean> changeUserRole(@RequestParam(value = "user_id") long userId,
@@ -12,7 +12,9 @@ import gp.wagner.backend.domain.dto.response.product_views.ProductViewRespDto;
 import gp.wagner.backend.domain.entities.visits.ProductViews;
 import gp.wagner.backend.domain.entities.visits.Visitor;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.exporters.implementations.ProductsVariantsOrdersCount.ProductsVariantsOrdersCountCsvExporter;
 import gp.wagner.backend.exporters.implementations.ProductsVariantsOrdersCount.ProductsVariantsOrdersCountXlsExporter;
+import gp.wagner.backend.exporters.implementations.TopProductsVariantsInBaskets.TopProductsVariantsInBasketsCsvExporter;
 import gp.wagner.backend.exporters.implementations.TopProductsVariantsInBaskets.TopProductsVariantsInBasketsXlsExporter;
 import gp.wagner.backend.infrastructure.SimpleTuple;
 import gp.wagner.backend.infrastructure.Utils;
@@ -30,11 +32,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping(value = "/api/admin_panel/stat")
@@ -258,42 +265,138 @@ public class AdminPanelStatisticsController {
 
     // Возврат CSV файла с количеством заказов каждого товара в категории + фильтр
     @GetMapping(value = "/products_variants_orders_count_xls")
-    public ResponseEntity<Resource> getProductsVariantsOrdersCountXlsx(
+    public ResponseEntity<StreamingResponseBody> getProductsVariantsOrdersCountXlsx(
             @Valid @RequestBody OrdersAndBasketsCountFiltersRequestDto filtersRequestDto) {
 
-        List<Tuple> tupleList = Services.adminPanelStatisticsService.getOrdersCountForEachProduct(filtersRequestDto, ProductsOrVariantsEnum.VARIANTS);
-        List<ProductsVariantsOrdersCountRespDto> dtoList = tupleList.stream().map(ProductsVariantsOrdersCountRespDto::new).toList();
+        ProductsVariantsOrdersCountXlsExporter exporter = new ProductsVariantsOrdersCountXlsExporter("Orders of products variants");
 
-        ProductsVariantsOrdersCountXlsExporter exporter = new ProductsVariantsOrdersCountXlsExporter(dtoList,"Orders of products variants");
-
-        exporter.createHeaderLine()
-                .writeTableRows();
+        // Файл пишется в ответ по мере чтения строк из БД
+        StreamingResponseBody body = outputStream -> Services.adminPanelStatisticsService.streamOrdersCountForEachProduct(filtersRequestDto,
+                ProductsOrVariantsEnum.VARIANTS,
+                tuples -> exporter.export(tuples.map(ProductsVariantsOrdersCountRespDto::new), outputStream));
 
         String fileName = String.format("Products_variants_orders_count_%s.xlsx", Utils.sdf_date_only.format(new Date()));
-        Resource file = exporter.export();
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename="+fileName)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(file);
+                .body(body);
     }
 
     // Возврат XLS файла с топом вариантов товаров по добавлениям в корзины
     @GetMapping(value = "/top_products_variants_baskets_count_xls")
-    public ResponseEntity<Resource> getTopProductsInBasketsXlsx(
+    public ResponseEntity<StreamingResponseBody> getTopProductsInBasketsXlsx(
             @Valid @RequestBody OrdersAndBasketsCountFiltersRequestDto filtersRequestDto,
             @RequestParam(value = "percentage", defaultValue = "0.2") float percentage) {
 
-        List<Tuple> tupleList = Services.adminPanelStatisticsService.getTopProductsInBasket(filtersRequestDto, percentage);
-        List<TopProductsVariantsInBasketsRespDto> dtoList = tupleList.stream().map(TopProductsVariantsInBasketsRespDto::new).toList();
+        TopProductsVariantsInBasketsXlsExporter exporter = new TopProductsVariantsInBasketsXlsExporter("Baskets with products variants");
 
-        TopProductsVariantsInBasketsXlsExporter exporter = new TopProductsVariantsInBasketsXlsExporter(dtoList,"Baskets with products variants");
-
-        exporter.createHeaderLine()
-                .writeTableRows();
+        StreamingResponseBody body = outputStream -> Services.adminPanelStatisticsService.streamTopProductsInBasket(filtersRequestDto, percentage,
+                tuples -> exporter.export(tuples.map(TopProductsVariantsInBasketsRespDto::new), outputStream));
 
         String fileName = String.format("Products_variants_baskets_top_count_%s.xlsx", Utils.sdf_date_only.format(new Date()));
-        Resource file = exporter.export();
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename="+fileName)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    // Возврат CSV файла с количеством заказов каждого варианта товара + фильтр
+    @GetMapping(value = "/products_variants_orders_count_csv")
+    public ResponseEntity<StreamingResponseBody> getProductsVariantsOrdersCountCsv(
+            @Valid @RequestBody OrdersAndBasketsCountFiltersRequestDto filtersRequestDto) {
+
+        ProductsVariantsOrdersCountCsvExporter exporter = new ProductsVariantsOrdersCountCsvExporter();
+
+        // Строки пишутся в ответ по мере чтения из курсора БД
+        StreamingResponseBody body = outputStream -> Services.adminPanelStatisticsService.streamOrdersCountForEachProduct(filtersRequestDto,
+                ProductsOrVariantsEnum.VARIANTS,
+                tuples -> exporter.export(tuples.map(ProductsVariantsOrdersCountRespDto::new), outputStream));
+
+        String fileName = String.format("Products_variants_orders_count_%s.csv", Utils.sdf_date_only.format(new Date()));
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename="+fileName)
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    // Возврат CSV файла с топом вариантов товаров по добавлениям в корзины
+    @GetMapping(value = "/top_products_variants_baskets_count_csv")
+    public ResponseEntity<StreamingResponseBody> getTopProductsInBasketsCsv(
+            @Valid @RequestBody OrdersAndBasketsCountFiltersRequestDto filtersRequestDto,
+            @RequestParam(value = "percentage", defaultValue = "0.2") float percentage) {
+
+        TopProductsVariantsInBasketsCsvExporter exporter = new TopProductsVariantsInBasketsCsvExporter();
+
+        StreamingResponseBody body = outputStream -> Services.adminPanelStatisticsService.streamTopProductsInBasket(filtersRequestDto, percentage,
+                tuples -> exporter.export(tuples.map(TopProductsVariantsInBasketsRespDto::new), outputStream));
+
+        String fileName = String.format("Products_variants_baskets_top_count_%s.csv", Utils.sdf_date_only.format(new Date()));
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename="+fileName)
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    // Поставить в очередь выгрузку кол-ва заказов каждого варианта товара в файл xlsx или csv
+    @PostMapping(value = "/export_jobs/products_variants_orders_count", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ExportJobRespDto submitProductsVariantsOrdersCountExport(
+            @Valid @RequestBody OrdersAndBasketsCountFiltersRequestDto filtersRequestDto,
+            @RequestParam(value = "format", defaultValue = "xlsx") String format) {
+
+        boolean isCsv = isCsvFormat(format);
+
+        BiConsumer<Stream<ProductsVariantsOrdersCountRespDto>, OutputStream> exporter = isCsv ?
+                new ProductsVariantsOrdersCountCsvExporter()::export :
+                new ProductsVariantsOrdersCountXlsExporter("Orders of products variants")::export;
+
+        String fileName = String.format("Products_variants_orders_count_%s.%s", Utils.sdf_date_only.format(new Date()), isCsv ? "csv" : "xlsx");
+
+        return Services.exportJobsService.submit(fileName,
+                () -> Services.adminPanelStatisticsService.getOrdersCountForEachProduct(filtersRequestDto, 1, 1,
+                        ProductsOrVariantsEnum.VARIANTS, null, null).getTotalElements(),
+                (outputStream, rowsCounter) -> Services.adminPanelStatisticsService.streamOrdersCountForEachProduct(filtersRequestDto,
+                        ProductsOrVariantsEnum.VARIANTS,
+                        tuples -> exporter.accept(rowsCounter.count(tuples.map(ProductsVariantsOrdersCountRespDto::new)), outputStream)));
+    }
+
+    // Поставить в очередь выгрузку топа вариантов товаров по добавлениям в корзины в файл xlsx или csv
+    @PostMapping(value = "/export_jobs/top_products_variants_baskets_count", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ExportJobRespDto submitTopProductsInBasketsExport(
+            @Valid @RequestBody OrdersAndBasketsCountFiltersRequestDto filtersRequestDto,
+            @RequestParam(value = "percentage", defaultValue = "0.2") float percentage,
+            @RequestParam(value = "format", defaultValue = "xlsx") String format) {
+
+        boolean isCsv = isCsvFormat(format);
+
+        BiConsumer<Stream<TopProductsVariantsInBasketsRespDto>, OutputStream> exporter = isCsv ?
+                new TopProductsVariantsInBasketsCsvExporter()::export :
+                new TopProductsVariantsInBasketsXlsExporter("Baskets with products variants")::export;
+
+        String fileName = String.format("Products_variants_baskets_top_count_%s.%s", Utils.sdf_date_only.format(new Date()), isCsv ? "csv" : "xlsx");
+
+        return Services.exportJobsService.submit(fileName,
+                () -> Services.adminPanelStatisticsService.getTopProductsInBasket(filtersRequestDto, 1, 1, percentage,
+                        null, null).getTotalElements(),
+                (outputStream, rowsCounter) -> Services.adminPanelStatisticsService.streamTopProductsInBasket(filtersRequestDto, percentage,
+                        tuples -> exporter.accept(rowsCounter.count(tuples.map(TopProductsVariantsInBasketsRespDto::new)), outputStream)));
+    }
+
+    // Состояние выгрузки: кол-во записанных строк и оценка оставшегося времени
+    @GetMapping(value = "/export_jobs/state", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ExportJobRespDto getExportJobState(@RequestParam(value = "job_id") String jobId) {
+        return Services.exportJobsService.getJob(jobId);
+    }
+
+    // Скачать готовый файл выгрузки
+    @GetMapping(value = "/export_jobs/download")
+    public ResponseEntity<Resource> downloadExportJobFile(@RequestParam(value = "job_id") String jobId) {
+
+        Resource file = Services.exportJobsService.getFile(jobId);
+        String fileName = Services.exportJobsService.getJob(jobId).getFileName();
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename="+fileName)
@@ -301,7 +404,12 @@ public class AdminPanelStatisticsController {
                 .body(file);
     }
 
-    // Так же стоит добавить сохранение в CSV, как это делать показано здесь: https://springhow.com/spring-boot-export-to-csv/#google_vignette
+    private static boolean isCsvFormat(String format){
+        if (!format.equalsIgnoreCase("csv") && !format.equalsIgnoreCase("xlsx"))
+            throw new ApiException(String.format("Формат выгрузки %s не поддерживается! Допустимые форматы: xlsx, csv", format));
+
+        return format.equalsIgnoreCase("csv");
+    }
 
     // Выборка определённых просмотренных товаров покупателем
     @GetMapping(value = "/viewed_products_by_customer", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -340,4 +448,14 @@ public class AdminPanelStatisticsController {
         );
     }
 
+    // Метрики буферов отложенной записи и очереди исходящих писем
+    @GetMapping(value = "/write_buffers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<WriteBufferStatisticsRespDto> getWriteBuffersStatistics() {
+        return List.of(Services.productViewsBufferService.getStatistics(),
+                Services.categoryViewsBufferService.getStatistics(),
+                Services.dailyVisitsCounterService.getStatistics(),
+                Services.visitorsCacheService.getStatistics(),
+                Services.emailOutboxService.getStatistics());
+    }
+
 }
@@ -0,0 +1,39 @@
+package gp.wagner.backend.domain.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import gp.wagner.backend.infrastructure.CursorPage;
+import lombok.*;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+@Data
+@NoArgsConstructor
+@Getter
+@Setter
+public class CursorPageDto<T> {
+
+    // Кол-во элементов на текущей странице
+    @JsonProperty("current_elements_amount")
+    int currentElementsAmount;
+
+    // Общее кол-во элементов - задаётся только для первой страницы
+    @JsonProperty("general_elements_amount")
+    Long generalElementsAmount;
+
+    // Курсор для запроса следующей страницы. null - страница последняя
+    @JsonProperty("next_cursor")
+    String nextCursor;
+
+    // Основная коллекция
+    @JsonProperty("collection")
+    List<T> collection;
+
+    // Конструктор для страницы, которая содержит коллекцию в типе отличном от требуемого из Generic
+    public CursorPageDto(CursorPage<?> page, Supplier<List<T>> collectionMapper) {
+        this.collection = collectionMapper.get();
+        this.currentElementsAmount = page.getContent().size();
+        this.generalElementsAmount = page.getTotalElements();
+        this.nextCursor = page.getNextCursor();
+    }
+}
@@ -0,0 +1,53 @@
+package gp.wagner.backend.domain.dto.response.admin_panel;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.util.Date;
+
+// DTO для передачи состояния задачи выгрузки отчёта
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJobRespDto {
+
+    // id задачи
+    @JsonProperty("job_id")
+    private String jobId;
+
+    // Имя файла выгрузки
+    @JsonProperty("file_name")
+    private String fileName;
+
+    // queued, running, done, failed
+    @JsonProperty("state")
+    private String state;
+
+    // Кол-во записанных строк
+    @JsonProperty("rows_written")
+    private long rowsWritten;
+
+    // Ожидаемое общее кол-во строк. null - неизвестно
+    @JsonProperty("rows_total")
+    private Long rowsTotal;
+
+    // Оценка оставшегося времени в секундах. null - оценка невозможна
+    @JsonProperty("eta_seconds")
+    private Long etaSeconds;
+
+    @JsonProperty("created_at")
+    private Date createdAt;
+
+    @JsonProperty("finished_at")
+    private Date finishedAt;
+
+    // Дата удаления файла выгрузки
+    @JsonProperty("expires_at")
+    private Date expiresAt;
+
+    // Сообщение об ошибке для завершившейся ошибкой задачи
+    @JsonProperty("error")
+    private String error;
+}
@@ -0,0 +1,39 @@
+package gp.wagner.backend.domain.dto.response.admin_panel;
+
+import lombok.*;
+
+// DTO для передачи метрик буфера отложенной записи (просмотры, посещения и т.д.)
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class WriteBufferStatisticsRespDto {
+
+    // Наименование буфера
+    private String name;
+
+    // Кол-во записей, ожидающих сохранения
+    private long queueDepth;
+
+    // Кол-во принятых событий
+    private long acceptedAmount;
+
+    // Кол-во событий, отброшенных из-за переполнения буфера
+    private long droppedAmount;
+
+    // Кол-во событий, не учтённых по правилам буфера (например повторный просмотр в течение 24ч)
+    private long skippedAmount;
+
+    // Кол-во выполненных и завершившихся ошибкой сохранений
+    private long flushesAmount;
+    private long failedFlushesAmount;
+
+    // Кол-во сохранённых записей
+    private long flushedRowsAmount;
+
+    // Длительность последнего и самого долгого сохранения в мс
+    private long lastFlushMillis;
+    private long maxFlushMillis;
+
+}
@@ -0,0 +1,64 @@
+package gp.wagner.backend.domain.dto.response.discounts;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import gp.wagner.backend.domain.entities.products.DiscountJob;
+import gp.wagner.backend.infrastructure.serializers.DateTimeJsonSerializer;
+import lombok.*;
+
+import java.util.Date;
+
+// DTO для передачи состояния фоновой задачи массового изменения скидки
+@Data
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiscountJobRespDto {
+
+    @JsonProperty("job_id")
+    private long jobId;
+
+    @JsonProperty("discount_id")
+    private long discountId;
+
+    // add_to_categories, add_to_products, remove_from_categories
+    @JsonProperty("operation")
+    private String operation;
+
+    // queued, running, done, failed
+    @JsonProperty("state")
+    private String state;
+
+    // Кол-во вариантов для изменения на момент создания задачи
+    @JsonProperty("total")
+    private int total;
+
+    // Кол-во изменённых вариантов
+    @JsonProperty("processed")
+    private int processed;
+
+    @JsonProperty("created_at")
+    @JsonSerialize(using = DateTimeJsonSerializer.class)
+    private Date createdAt;
+
+    @JsonProperty("finished_at")
+    @JsonSerialize(using = DateTimeJsonSerializer.class)
+    private Date finishedAt;
+
+    // Сообщение об ошибке для завершившейся ошибкой задачи
+    @JsonProperty("error")
+    private String error;
+
+    public DiscountJobRespDto(DiscountJob job) {
+        this.jobId = job.getId();
+        this.discountId = job.getDiscountId();
+        this.operation = job.getOperation();
+        this.state = job.getState();
+        this.total = job.getTotalAmount();
+        this.processed = job.getProcessedAmount();
+        this.createdAt = job.getCreatedAt();
+        this.finishedAt = job.getFinishedAt();
+        this.error = job.getError();
+    }
+}
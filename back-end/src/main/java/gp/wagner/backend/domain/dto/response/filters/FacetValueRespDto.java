@@ -0,0 +1,37 @@
+package gp.wagner.backend.domain.dto.response.filters;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.annotation.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// DTO значения фильтра с количеством товаров, которые будут выбраны при его выборе
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetValueRespDto {
+
+    // Id характеристики (для производителей и цен не задаётся)
+    @Nullable
+    @JsonProperty("attribute_id")
+    private Integer attributeId;
+
+    // Значение фильтра (для диапазонов не задаётся)
+    @Nullable
+    private String value;
+
+    // Границы диапазона значений
+    @Nullable
+    private Integer min;
+
+    @Nullable
+    private Integer max;
+
+    // Кол-во товаров с данным значением при текущем состоянии фильтра
+    @JsonProperty("products_count")
+    private long productsCount;
+
+}
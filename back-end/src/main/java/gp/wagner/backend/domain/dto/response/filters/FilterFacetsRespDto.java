@@ -0,0 +1,27 @@
+package gp.wagner.backend.domain.dto.response.filters;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+// DTO с общим кол-вом товаров по фильтру и кол-вом товаров для каждого значения фильтра
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilterFacetsRespDto {
+
+    // Общее кол-во товаров при текущем состоянии фильтра
+    @JsonProperty("total_count")
+    private long totalCount;
+
+    // Значения фильтра сгруппированные по названию характеристики - в том же порядке, что и в /filter_by_category
+    @JsonProperty("facets")
+    private Map<String, List<FacetValueRespDto>> facets;
+
+}
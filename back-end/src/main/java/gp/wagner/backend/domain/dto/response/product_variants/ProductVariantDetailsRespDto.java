@@ -66,7 +66,7 @@ public class ProductVariantDetailsRespDto {
         this.price = variant.getPrice();
 
         // Если задана скидка и при этом срок действия скидки не истёк
-        if (variant.getDiscount() != null && !variant.getDiscount().isExpired()){
+        if (variant.getDiscount() != null && variant.getDiscount().isStarted() && !variant.getDiscount().isExpired()){
             this.discountPrice = variant.getPriceWithDiscount();
             this.discountRespDto = new DiscountRespDto(variant.getDiscount());
         }
@@ -58,7 +58,7 @@ public class ProductVariantPreviewRespDto {
         this.isDeleted = variant.getIsDeleted() != null && variant.getIsDeleted();
 
         // Если задана скидка и при этом срок её действия не истёк
-        if (variant.getDiscount() != null && !variant.getDiscount().isExpired()){
+        if (variant.getDiscount() != null && variant.getDiscount().isStarted() && !variant.getDiscount().isExpired()){
             this.discountPrice = variant.getPriceWithDiscount();
             this.discountPercent = variant.getDiscount().getPercentage();
         }
@@ -73,7 +73,7 @@ public class SimpleProductVariantRespDto {
         this.title = variant.getTitle();
         this.price = variant.getPrice();
 
-        if (variant.getDiscount() != null && !variant.getDiscount().isExpired()) {
+        if (variant.getDiscount() != null && variant.getDiscount().isStarted() && !variant.getDiscount().isExpired()) {
             this.priceWithDiscount = variant.getPriceWithDiscount();
             this.discountPercent = variant.getDiscount().getPercentage();
         }
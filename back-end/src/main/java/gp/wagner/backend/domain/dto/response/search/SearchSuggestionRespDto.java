@@ -0,0 +1,21 @@
+package gp.wagner.backend.domain.dto.response.search;
+
+import lombok.*;
+
+// Подсказка поиска по вводимому ключевому слову
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchSuggestionRespDto {
+
+    // Выводимый текст подсказки
+    private String text;
+
+    // Тип: product, producer или category
+    private String type;
+
+    // Id товара, производителя или категории - в зависимости от типа
+    private long id;
+
+}
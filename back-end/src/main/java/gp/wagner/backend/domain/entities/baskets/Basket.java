@@ -45,6 +45,10 @@ public class Basket {
     @Column(name = "sum")
     private int sum;
 
+    // Версия цен, по которой рассчитана сумма
+    @Column(name = "pricing_version")
+    private long pricingVersion;
+
     public Basket(Long id, User user, int sum) {
         this.id = id;
         this.user = user;
@@ -0,0 +1,72 @@
+package gp.wagner.backend.domain.entities.notifications;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+// Исходящее письмо, ожидающее отправки
+@Entity
+@Table(name = "email_outbox")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailOutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Адрес получателя
+    @Column(name = "recipient")
+    private String recipient;
+
+    @Column(name = "subject")
+    private String subject;
+
+    // Сформированный текст письма
+    @Column(name = "body")
+    private String body;
+
+    // Текст письма в HTML либо простой текст
+    @Column(name = "is_html")
+    private boolean isHtml;
+
+    // Состояние из EmailOutboxStateEnum
+    @Column(name = "state")
+    private String state;
+
+    // Кол-во неудачных попыток отправки
+    @Column(name = "attempts")
+    private int attempts;
+
+    // Время, раньше которого письмо не отправляется
+    @Column(name = "next_attempt_at")
+    private Date nextAttemptAt;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "created_at", updatable = false)
+    private Date createdAt;
+
+    @Column(name = "sent_at")
+    private Date sentAt;
+
+    // Маркер аренды письма на время отправки. Результат отправки сохраняется только при совпадении маркера
+    @Column(name = "lease_token")
+    private String leaseToken;
+
+    public EmailOutboxMessage(String recipient, String subject, String body, boolean isHtml, String state) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.isHtml = isHtml;
+        this.state = state;
+        this.createdAt = new Date();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
@@ -74,4 +74,8 @@ public class Order {
     @Column(name = "general_products_amount")
     private int generalProductsAmount;
 
+    // Версия цен, по которой рассчитана сумма
+    @Column(name = "pricing_version")
+    private long pricingVersion;
+
 }
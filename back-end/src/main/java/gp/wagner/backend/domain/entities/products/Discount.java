@@ -65,6 +65,14 @@ public class Discount {
         return endsAt.getTime() <= now.getTime();
     }
 
+    // Срок действия скидки начался. Бессрочная скидка и скидка без даты начала действуют сразу
+    public boolean isStarted(){
+        if (this.isInfinite || startsAt == null)
+            return true;
+
+        return startsAt.getTime() <= System.currentTimeMillis();
+    }
+
     public Discount(Long id, Float percentage, Date startsAt, Date endsAt, boolean isActive, boolean isInfinite) {
         this.id = id;
         this.percentage = percentage;
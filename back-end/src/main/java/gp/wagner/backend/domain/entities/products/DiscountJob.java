@@ -0,0 +1,76 @@
+package gp.wagner.backend.domain.entities.products;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+// Фоновая задача массового добавления/удаления скидки
+@Entity
+@Table(name = "discount_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiscountJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Добавляемая/удаляемая скидка
+    @Column(name = "discount_id")
+    private long discountId;
+
+    // Операция из DiscountJobOperationEnum
+    @Column(name = "operation")
+    private String operation;
+
+    // Id категорий (вместе с дочерними) или товаров через запятую
+    @Column(name = "scope_ids")
+    private String scopeIds;
+
+    // Состояние из ExportJobStateEnum
+    @Column(name = "state")
+    private String state;
+
+    // Кол-во вариантов для изменения на момент создания задачи
+    @Column(name = "total_amount")
+    private int totalAmount;
+
+    // Кол-во изменённых вариантов
+    @Column(name = "processed_amount")
+    private int processedAmount;
+
+    // Id последнего обработанного варианта - задача продолжается со следующего
+    @Column(name = "last_variant_id")
+    private long lastVariantId;
+
+    @Column(name = "error")
+    private String error;
+
+    @Column(name = "created_at", updatable = false)
+    private Date createdAt;
+
+    // Время обработки последней части
+    @Column(name = "heartbeat_at")
+    private Date heartbeatAt;
+
+    @Column(name = "finished_at")
+    private Date finishedAt;
+
+    // Маркер аренды экземпляра приложения, выполняющего задачу
+    @Column(name = "lease_token", insertable = false, updatable = false)
+    private String leaseToken;
+
+    public DiscountJob(long discountId, String operation, String scopeIds, String state, int totalAmount) {
+        this.discountId = discountId;
+        this.operation = operation;
+        this.scopeIds = scopeIds;
+        this.state = state;
+        this.totalAmount = totalAmount;
+        this.createdAt = new Date();
+    }
+}
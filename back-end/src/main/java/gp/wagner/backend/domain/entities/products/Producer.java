@@ -7,6 +7,7 @@ import lombok.Setter;
 
 import jakarta.persistence.*;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
 
 import java.util.Date;
 import java.util.List;
@@ -25,6 +26,7 @@ public class Producer {
 
     //Наименование
     @Column(name = "producer_name")
+    @FullTextField(analyzer = "product_analyzer")
     private String producerName;
 
     //Товары, которые принадлежат данному производителю
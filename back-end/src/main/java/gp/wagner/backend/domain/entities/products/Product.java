@@ -9,6 +9,10 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.IndexedEmbedded;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,7 +24,7 @@ import java.util.List;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-//@Indexed(index = "idx_product")
+@Indexed(index = "idx_product")
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -28,12 +32,12 @@ public class Product {
 
     //Наименование товара
     @Column(name = "product_name")
-    //@FullTextField(analyzer = "product_analyzer")
+    @FullTextField(analyzer = "product_analyzer")
     private String name;
 
     //Описание товара
     @Column(name = "description")
-    //@FullTextField(analyzer = "product_analyzer")
+    @FullTextField(analyzer = "product_analyzer")
     private String description;
 
     //Связующие свойство категории товара (Многие товары к 1 категории)
@@ -46,6 +50,7 @@ public class Product {
     @JoinColumn(name = "producer_id")
     @ManyToOne(fetch = FetchType.LAZY)
     @BatchSize(size = 256)
+    @IndexedEmbedded(includePaths = "producerName")
     private Producer producer;
 
     //Наличие товара
@@ -54,13 +59,26 @@ public class Product {
 
     // Флаг удалён ли товар
     @Column(name = "is_deleted")
+    @GenericField
     private Boolean isDeleted;
 
     //Флаг вывода товара
     //false == 0
     @Column(name = "show_product")
+    @GenericField
     private Boolean showProduct;
 
+    // Цена базового варианта с учётом скидки и диапазон цен всех вариантов товара (null - у товара нет вариантов).
+    // Пересчитываются запросами при изменении цен и скидок вариантов
+    @Column(name = "base_price", insertable = false, updatable = false)
+    private Integer basePrice;
+
+    @Column(name = "min_price", insertable = false, updatable = false)
+    private Integer minPrice;
+
+    @Column(name = "max_price", insertable = false, updatable = false)
+    private Integer maxPrice;
+
     // Характеристики товара (Многие характеристики к 1 товару)
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "product")
     @BatchSize(size = 256)
@@ -70,6 +88,7 @@ public class Product {
 
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "product")
     @BatchSize(size = 256)
+    @IndexedEmbedded(includePaths = "title")
     private List<ProductVariant> productVariants = new ArrayList<>();
 
     // Статистика по оценкам
@@ -6,6 +6,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
 
 import java.util.List;
 
@@ -27,6 +28,7 @@ public class ProductVariant {
 
     // Наименование варианта
     @Column(name = "title")
+    @FullTextField(analyzer = "product_analyzer")
     private String title;
 
     // Связующие свойство товара (Многие варианты для 1 товара)
@@ -38,6 +40,14 @@ public class ProductVariant {
     @Column(name = "price")
     private int price;
 
+    // Стоимость с учётом скидки - пересчитывается запросами при изменении цены или скидки варианта
+    @Column(name = "effective_price", insertable = false, updatable = false)
+    private Integer effectivePrice;
+
+    // Версия цен, в которой изменилась цена со скидкой. Изменяется только запросом пересчёта цен
+    @Column(name = "pricing_version", insertable = false, updatable = false)
+    private long pricingVersion;
+
     @ManyToOne()
     @JoinColumn(name = "discount_id")
     private Discount discount;
@@ -73,8 +83,9 @@ public class ProductVariant {
     // Получить цену со скидкой
     public int getPriceWithDiscount(){
 
-        // Если скидка не задана или задана некорректно, или больше неактивна, тогда вернуть старую цену
-        if (discount == null || discount.getPercentage() == null || !discount.getIsActive() || discount.isExpired() || discount.getPercentage() > 0.999)
+        // Если скидка не задана или задана некорректно, ещё не началась или больше неактивна, тогда вернуть старую цену
+        if (discount == null || discount.getPercentage() == null || !discount.getIsActive() || !discount.isStarted() ||
+                discount.isExpired() || discount.getPercentage() > 0.999)
             return this.price;
 
         int discountPart = Math.round(this.price * discount.getPercentage());
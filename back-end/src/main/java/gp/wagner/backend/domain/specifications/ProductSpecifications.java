@@ -5,8 +5,10 @@ import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDto;
 import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
 import gp.wagner.backend.domain.entities.eav.ProductAttribute;
 import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.infrastructure.SimpleTuple;
 import gp.wagner.backend.infrastructure.enums.FilterOperationsEnum;
 import gp.wagner.backend.infrastructure.Utils;
+import gp.wagner.backend.middleware.Services;
 import jakarta.persistence.criteria.*;
 import org.springframework.data.jpa.domain.Specification;
 import gp.wagner.backend.domain.entities.eav.AttributeValue;
@@ -24,18 +26,7 @@ public class ProductSpecifications {
         List<Specification<Product>> specifications = new ArrayList<>();
 
         // Выборка неудалённых и не скрытых элементов
-        specifications.add(
-                (root, query, cb) -> cb.and(
-                                cb.or(
-                                        cb.isNull(root.get("isDeleted")),
-                                        cb.equal(root.get("isDeleted"), false)
-                                    ) ,//or
-                                cb.or(
-                                        cb.isNull(root.get("showProduct")),
-                                        cb.equal(root.get("showProduct"), true)
-                                )
-                        )// and
-        );
+        specifications.add(notDeletedAndShown());
 
         if (filtersDto.getProductFilterBlockList() == null)
             return specifications;
@@ -146,4 +137,57 @@ public class ProductSpecifications {
         return specifications;
     }
 
-}
\ No newline at end of file
+    // Создать спецификации фильтрации через индекс значений характеристик в памяти.
+    // Вместо подзапроса на каждое значение фильтра в запрос подставляются уже вычисленные диапазоны id товаров:
+    // подряд идущие id - условием between, одиночные - общим списком in
+    public static List<Specification<Product>> createIndexedProductSpecifications(ProductFilterDtoContainer filtersDto) {
+
+        List<Specification<Product>> specifications = new ArrayList<>();
+
+        specifications.add(notDeletedAndShown());
+
+        List<SimpleTuple<Long, Long>> idsRanges = Services.productsFilterIndexService.findProductsIdsRanges(filtersDto);
+
+        // Фильтры по характеристикам не заданы
+        if (idsRanges == null)
+            return specifications;
+
+        specifications.add((root, query, cb) -> {
+
+            if (idsRanges.isEmpty())
+                return cb.disjunction();
+
+            List<Predicate> predicates = new ArrayList<>();
+            List<Long> singleIds = new ArrayList<>();
+
+            for (SimpleTuple<Long, Long> range : idsRanges) {
+                if (range.getValue1().equals(range.getValue2()))
+                    singleIds.add(range.getValue1());
+                else
+                    predicates.add(cb.between(root.<Long>get("id"), range.getValue1(), range.getValue2()));
+            }
+
+            if (!singleIds.isEmpty())
+                predicates.add(root.get("id").in(singleIds));
+
+            return cb.or(predicates.toArray(new Predicate[0]));
+        });
+
+        return specifications;
+    }
+
+    // Выборка неудалённых и не скрытых элементов
+    private static Specification<Product> notDeletedAndShown(){
+        return (root, query, cb) -> cb.and(
+                cb.or(
+                        cb.isNull(root.get("isDeleted")),
+                        cb.equal(root.get("isDeleted"), false)
+                ) ,//or
+                cb.or(
+                        cb.isNull(root.get("showProduct")),
+                        cb.equal(root.get("showProduct"), true)
+                )
+        );// and
+    }
+
+}
@@ -2,20 +2,19 @@ package gp.wagner.backend.exporters.implementations.ProductsVariantsOrdersCount;
 
 import gp.wagner.backend.domain.dto.response.admin_panel.ProductsVariantsOrdersCountRespDto;
 import gp.wagner.backend.exporters.interfaces.CsvExporter;
-import lombok.AllArgsConstructor;
-import lombok.NoArgsConstructor;
 
-import java.io.Writer;
 import java.util.List;
 
-@AllArgsConstructor
-public class ProductsVariantsOrdersCountCsvExporter implements CsvExporter {
-
-    List<ProductsVariantsOrdersCountRespDto> dataList;
-
+public class ProductsVariantsOrdersCountCsvExporter extends CsvExporter<ProductsVariantsOrdersCountRespDto> {
 
     @Override
-    public void writeData(Writer responseWriter) {
+    protected List<String> getHeaders() {
+        return List.of("Product_id", "Product_variant_id", "Product_name", "Product_variant_title", "Orders_count");
+    }
 
+    @Override
+    protected Object[] getRowValues(ProductsVariantsOrdersCountRespDto elem) {
+        return new Object[]{ elem.getProductId(), elem.getProductVariantId(), elem.getProductName(), elem.getProductVariantTitle(),
+                elem.getOrdersCount() };
     }
 }
@@ -1,20 +1,20 @@
 package gp.wagner.backend.exporters.implementations.TopProductsVariantsInBaskets;
 
-import gp.wagner.backend.domain.dto.response.admin_panel.ProductsVariantsOrdersCountRespDto;
+import gp.wagner.backend.domain.dto.response.admin_panel.TopProductsVariantsInBasketsRespDto;
 import gp.wagner.backend.exporters.interfaces.CsvExporter;
-import lombok.AllArgsConstructor;
 
-import java.io.Writer;
 import java.util.List;
 
-@AllArgsConstructor
-public class TopProductsVariantsInBasketsCsvExporter implements CsvExporter {
-
-    List<ProductsVariantsOrdersCountRespDto> dataList;
-
+public class TopProductsVariantsInBasketsCsvExporter extends CsvExporter<TopProductsVariantsInBasketsRespDto> {
 
     @Override
-    public void writeData(Writer responseWriter) {
+    protected List<String> getHeaders() {
+        return List.of("Product_name", "Product_variant_title", "Product_id", "Product_variant_id", "Baskets_count");
+    }
 
+    @Override
+    protected Object[] getRowValues(TopProductsVariantsInBasketsRespDto elem) {
+        return new Object[]{ elem.getProductName(), elem.getProductVariantTitle(), elem.getProductId(), elem.getProductVariantId(),
+                elem.getBasketsCount() };
     }
 }
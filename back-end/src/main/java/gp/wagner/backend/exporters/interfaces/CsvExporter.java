@@ -1,9 +1,64 @@
 package gp.wagner.backend.exporters.interfaces;
 
-import java.io.Writer;
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
 
-public interface CsvExporter {
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
-    void writeData(Writer responseWriter);
+/**
+ * Потоковая выгрузка в CSV. Каждая строка записывается в поток сразу после чтения, данные сбрасываются клиенту
+ * каждые FLUSH_ROWS строк - память не зависит от объёма выгрузки, а первые байты отправляются сразу
+ * */
+public abstract class CsvExporter<T> {
 
+    // Кол-во строк между сбросами данных в поток ответа
+    private static final int FLUSH_ROWS = 500;
+
+    // BOM для корректного открытия кириллицы в Excel
+    private static final char UTF8_BOM = '\uFEFF';
+
+    // Заголовки столбцов
+    protected abstract List<String> getHeaders();
+
+    // Значения ячеек строки таблицы в порядке заголовков
+    protected abstract Object[] getRowValues(T elem);
+
+    /**
+     * Записать таблицу в поток по мере чтения данных
+     * @param data строки таблицы. Читаются один раз, поэтому могут поступать напрямую из курсора БД
+     * @param outputStream поток ответа или файла. Не закрывается
+     * */
+    public void export(Stream<T> data, OutputStream outputStream) {
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        try {
+            writer.write(UTF8_BOM);
+
+            CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder()
+                    .setHeader(getHeaders().toArray(new String[0]))
+                    .build());
+
+            Iterator<T> iterator = data.iterator();
+            int rowsCount = 0;
+
+            while (iterator.hasNext()) {
+                printer.printRecord(getRowValues(iterator.next()));
+
+                if (++rowsCount % FLUSH_ROWS == 0)
+                    printer.flush();
+            }
+
+            // Поток ответа закрывается сервером, поэтому printer не закрывается
+            printer.flush();
+
+        } catch (IOException e) {
+            throw new ApiException(e.getMessage());
+        }
+    }
 }
@@ -3,83 +3,145 @@ package gp.wagner.backend.exporters.interfaces;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
-
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
+/**
+ * Потоковая выгрузка в XLSX. В памяти хранится только окно последних строк, остальные сбрасываются во временный файл,
+ * поэтому размер выгрузки не ограничен памятью. Ширина столбцов вычисляется один раз по первым строкам
+ * */
 public abstract class ExcelExporter<T> {
 
-    protected XSSFWorkbook workbook;
-    protected XSSFSheet sheet;
+    // Кол-во строк, хранимых в памяти
+    private static final int ROWS_WINDOW = 100;
 
-    protected List<T> dataList;
+    // Кол-во первых строк, по которым вычисляется ширина столбцов
+    private static final int WIDTH_SAMPLE_ROWS = 200;
 
-    public ExcelExporter(List<T> dataList, String sheetName) {
-        this.workbook = new XSSFWorkbook();
-        this.sheet = workbook.createSheet(sheetName);
-        this.dataList = dataList;
+    // Максимальная ширина столбца в символах
+    private static final int MAX_COLUMN_CHARS = 80;
+
+    protected final String sheetName;
+
+    public ExcelExporter(String sheetName) {
+        this.sheetName = sheetName;
     }
 
-    // Сформировать заголовок страницы
-    public abstract ExcelExporter<T> createHeaderLine();
+    // Заголовки столбцов
+    protected abstract List<String> getHeaders();
 
-    // Сформировать ячейку
-    protected void createCell(Row row, int columnNumber, Object data, CellStyle style){
-        sheet.autoSizeColumn(columnNumber);
-        Cell cell = row.createCell(columnNumber);
+    // Значения ячеек строки таблицы в порядке заголовков
+    protected abstract Object[] getRowValues(T elem);
 
-        Class<?> dataClass = data.getClass();
-        // Определение типа
-        if (dataClass.equals(Integer.class))
-            cell.setCellValue((Integer) data);
-        else if (dataClass.equals(Long.class))
-            cell.setCellValue((Long) data);
-        else if (dataClass.equals(Double.class))
-            cell.setCellValue((Double) data);
-        else if (dataClass.equals(Float.class))
-            cell.setCellValue((Float) data);
-        else if (dataClass.equals(Boolean.class))
-            cell.setCellValue((Boolean) data);
-        else if (dataClass.equals(String.class))
-            cell.setCellValue((String) data);
-        else
-            cell.setCellValue(data.toString());
+    /**
+     * Записать таблицу в поток по мере чтения данных
+     * @param data строки таблицы. Читаются один раз, поэтому могут поступать напрямую из курсора БД
+     * @param outputStream поток ответа или файла. Не закрывается
+     * */
+    public void export(Stream<T> data, OutputStream outputStream) {
 
-        cell.setCellStyle(style);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROWS_WINDOW);
+        workbook.setCompressTempFiles(true);
 
-    }
+        try {
+            SXSSFSheet sheet = workbook.createSheet(sheetName);
 
-    // Сформировать строки таблицы
-    public abstract ExcelExporter<T> writeTableRows();
+            CellStyle headerStyle = createStyle(workbook, true, 11);
+            CellStyle rowStyle = createStyle(workbook, false, 10);
 
-    // Сформировать массив для экспорта
-    public Resource export(){
+            List<String> headers = getHeaders();
+            Iterator<T> iterator = data.iterator();
 
-        if (workbook == null)
-            return null;
+            // Первые строки запоминаются для вычисления ширины столбцов
+            List<Object[]> sample = new ArrayList<>();
 
-        byte[] bytes;
+            while (sample.size() < WIDTH_SAMPLE_ROWS && iterator.hasNext())
+                sample.add(getRowValues(iterator.next()));
 
-        try(ByteArrayOutputStream bos = new ByteArrayOutputStream()){
+            setColumnsWidths(sheet, headers, sample);
 
-            workbook.write(bos);
+            int rowNumber = 0;
+            createRow(sheet, rowNumber++, headers.toArray(), headerStyle);
 
-            bytes = bos.toByteArray();
+            for (Object[] values : sample)
+                createRow(sheet, rowNumber++, values, rowStyle);
 
-        } catch (Exception e) {
+            while (iterator.hasNext())
+                createRow(sheet, rowNumber++, getRowValues(iterator.next()), rowStyle);
+
+            workbook.write(outputStream);
+            outputStream.flush();
+
+        } catch (IOException e) {
             throw new ApiException(e.getMessage());
+        } finally {
+            // Удалить временные файлы строк
+            workbook.dispose();
         }
+    }
+
+    private static CellStyle createStyle(SXSSFWorkbook workbook, boolean isHeader, int fontHeight){
+        CellStyle style = workbook.createCellStyle();
+        Font font = workbook.createFont();
 
-        return new ByteArrayResource(bytes);
+        font.setBold(isHeader);
+        font.setFontHeightInPoints((short) fontHeight);
+
+        if (isHeader)
+            style.setFillBackgroundColor((short) 41);
+
+        style.setFont(font);
+
+        return style;
     }
 
+    // Ширина столбца - по самому длинному значению среди заголовка и первых строк
+    private static void setColumnsWidths(SXSSFSheet sheet, List<String> headers, List<Object[]> sample){
+
+        for (int i = 0; i < headers.size(); i++) {
+            int maxChars = headers.get(i).length();
 
+            for (Object[] values : sample)
+                if (i < values.length && values[i] != null)
+                    maxChars = Math.max(maxChars, values[i].toString().length());
+
+            sheet.setColumnWidth(i, (Math.min(maxChars, MAX_COLUMN_CHARS) + 2) * 256);
+        }
+    }
+
+    private static void createRow(SXSSFSheet sheet, int rowNumber, Object[] values, CellStyle style){
+        Row row = sheet.createRow(rowNumber);
+
+        for (int i = 0; i < values.length; i++)
+            createCell(row, i, values[i], style);
+    }
+
+    // Сформировать ячейку
+    protected static void createCell(Row row, int columnNumber, Object data, CellStyle style){
+        Cell cell = row.createCell(columnNumber);
+
+        // Определение типа
+        if (data == null)
+            cell.setBlank();
+        else if (data instanceof Integer || data instanceof Long)
+            cell.setCellValue(((Number) data).longValue());
+        else if (data instanceof Double || data instanceof Float || data instanceof BigDecimal)
+            cell.setCellValue(((Number) data).doubleValue());
+        else if (data instanceof Boolean bool)
+            cell.setCellValue(bool);
+        else
+            cell.setCellValue(data.toString());
+
+        cell.setCellStyle(style);
+    }
 }
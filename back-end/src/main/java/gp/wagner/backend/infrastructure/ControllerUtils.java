@@ -8,7 +8,6 @@ import gp.wagner.backend.domain.dto.response.categories.CategoryDtoWithChildren;
 import gp.wagner.backend.domain.dto.response.category_views.CategoriesViewsWithChildrenDto;
 import gp.wagner.backend.domain.dto.response.products.ProductPreviewRespDto;
 import gp.wagner.backend.domain.entities.categories.Category;
-import gp.wagner.backend.domain.entities.products.Product;
 import gp.wagner.backend.domain.entities.products.ProductImage;
 import gp.wagner.backend.domain.entities.products.ProductVariant;
 import gp.wagner.backend.domain.entities.visits.CategoryViews;
@@ -21,14 +20,13 @@ import java.util.*;
 
 public class ControllerUtils {
 
-    //Сформировать список объектов ProductPreviewRespDto для отправки на клиента
-    //TODO: такой тип выборки ужасно прожорлив и нужно срочно разбираться с ManyToOne <--> OneToMany,
-    //поскольку здесь каждый раз происходит запрос к БД на каждой итерации
-    public static List<ProductPreviewRespDto> getProductsPreviewsList(List<Product> products){
+    //Сформировать список объектов ProductPreviewRespDto для отправки на клиента по id товаров.
+    //Карточки берутся из хранилища карточек товаров, поэтому сущности товаров и их связи не загружаются
+    public static List<ProductPreviewRespDto> getProductsPreviewsList(List<Long> productsIds){
 
-        if (products == null)
+        if (productsIds == null)
             return null;
-        return products.stream().map(ProductPreviewRespDto::new).toList();
+        return Services.productCardsService.getPreviews(productsIds, null);
     }//getProductsPreviewsList
 
     //Добавление характеристик товара
@@ -38,6 +36,8 @@ public class ControllerUtils {
             for (AttributeValueDto dto: attributeValueDtoList)
                 Services.attributeValuesService.save(productId, dto);
 
+        // Габариты в карточке товара берутся из его характеристик
+        Services.productCardsService.refreshProduct(productId);
     }
 
     //Изменение характеристик товара
@@ -57,6 +57,7 @@ public class ControllerUtils {
         if (productDto.getDeletedAttributesValues().length > 0)
             Services.attributeValuesService.deleteByIdList(Arrays.stream(productDto.getDeletedAttributesValues()).toList());
 
+        Services.productCardsService.refreshProduct(productDto.getId());
     }
 
     //Загрузка нового изображения с созданием preview
@@ -148,45 +149,14 @@ public class ControllerUtils {
                         .get().getImgOrder() : -1;
     }
 
-    // Найти дочерние категории
+    // Найти дочерние категории - поддерево строится по дереву категорий в памяти
     public static List<CategoryDtoWithChildren> findChildCategories(long parentId){
-
-        List<CategoryDtoWithChildren> categories = Services.categoriesService.getChildCategories(parentId)
-                .stream()
-                .map(CategoryDtoWithChildren::factory)
-                //.map(c -> new CategoryDtoWithChildren(c, null))
-                .toList();
-
-        if (categories.isEmpty())
-            return null;
-
-        // Для дочерних категорий так же найти их вложенные категории
-        for (CategoryDtoWithChildren categoryDto : categories) {
-            categoryDto.setChildCategories(findChildCategories(categoryDto.getId()));
-        }
-
-        return categories;
+        return Services.categoriesTreeService.getSubtree(parentId, true);
     }
 
     // Найти дочерние категории, которые есть в заданной ассоциативной коллекции
     public static List<CategoryDtoWithChildren> findChildCategories(long parentId, Set<Long> categoriesIdsSet){
-
-        List<CategoryDtoWithChildren> categories = Services.categoriesService.getChildCategories(parentId)
-                .stream()
-                .filter(c -> categoriesIdsSet.contains(c.getId()))
-                //.map(CategoryDtoWithChildren::factory)
-                .map(c -> new CategoryDtoWithChildren(c, null))
-                .toList();
-
-        if (categories.isEmpty())
-            return null;
-
-        // Для дочерних категорий так же найти их вложенные категории
-        for (CategoryDtoWithChildren categoryDto : categories) {
-            categoryDto.setChildCategories(findChildCategories(categoryDto.getId(), categoriesIdsSet));
-        }
-
-        return categories;
+        return Services.categoriesTreeService.getSubtree(parentId, categoriesIdsSet);
     }
 
     //Рекурсивный обход дерева категорий
@@ -295,39 +265,7 @@ public class ControllerUtils {
         if (category == null)
             return null;
 
-        Set<Long> ids = new HashSet<>();
-        ids.add(category.getId());
-
-        Category parentCategory = category;
-
-        // Подняться к родительской категории
-        while (parentCategory.getParentCategory() != null){
-            parentCategory = parentCategory.getParentCategory();
-            ids.add(parentCategory.getId());
-        }
-
-        return breadcrumbsFromParentCategory(parentCategory, ids);
-    }
-
-    private static CategoryBreadcrumbsDto breadcrumbsFromParentCategory(Category parent, Set<Long> childrenIds){
-
-        CategoryBreadcrumbsDto categoryBreadcrumbsDto = new CategoryBreadcrumbsDto(parent);
-
-        // Получить дочерние категории текущей на одном уровне рекурсии
-        Category childCategory = Services.categoriesService.getChildCategories(parent.getId())
-                .stream()
-                .filter(c -> childrenIds.contains(c.getId()))
-                .findFirst()
-                .orElse(null);
-
-        // Если дочерней категории нет, тогда мы дошли до нужной
-        if (childCategory == null)
-            return categoryBreadcrumbsDto;
-
-        // Спустится ещё на 1 уровень рекурсии
-        categoryBreadcrumbsDto.setChildBreadCrumb(breadcrumbsFromParentCategory(childCategory, childrenIds));
-
-        return categoryBreadcrumbsDto;
+        return Services.categoriesTreeService.getBreadcrumbs(category.getId());
     }
 
     // Засчитать просмотр категории
@@ -0,0 +1,24 @@
+package gp.wagner.backend.infrastructure;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// Страница выборки по курсору
+@Getter
+public class CursorPage<T> {
+
+    private final List<T> content;
+
+    // Курсор для выборки следующей страницы. null - страница последняя
+    private final String nextCursor;
+
+    // Общее кол-во элементов - подсчитывается только при выборке первой страницы
+    private final Long totalElements;
+
+    public CursorPage(List<T> content, String nextCursor, Long totalElements) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.totalElements = totalElements;
+    }
+}
@@ -17,13 +17,17 @@ import gp.wagner.backend.domain.entities.visits.DailyVisits;
 import gp.wagner.backend.domain.entities.visits.ProductViews;
 import gp.wagner.backend.domain.entities.visits.Visitor;
 import gp.wagner.backend.infrastructure.enums.ProductsOrVariantsEnum;
+import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
+import gp.wagner.backend.infrastructure.enums.sorting.ProductsSortEnum;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 // Класс для расчётов общего кол-ва элементов при пагинации выборки
 public class PaginationUtils {
@@ -323,23 +327,65 @@ public class PaginationUtils {
         return entityManager.createQuery(query).getResultList().size();
     }
 
+    /**
+     * Выборка страницы id товаров по курсору (keyset-пагинация): вместо смещения задаётся условие "после последнего товара предыдущей страницы",
+     * поэтому время выборки не зависит от номера страницы.
+     * @param predicate условие выборки товаров без учёта курсора
+     * @param elementsCounter подсчёт общего кол-ва товаров - вызывается только для первой страницы
+     * */
+    public static CursorPage<Long> findProductsIdsByCursor(EntityManager entityManager, CriteriaQuery<Tuple> query, Root<Product> root, Predicate predicate,
+                                                           String cursor, int limit, ProductsSortEnum sortEnum, GeneralSortEnum sortType,
+                                                           Supplier<Long> elementsCounter){
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        ProductsCursor decodedCursor = ProductsCursor.decode(cursor, sortEnum, sortType);
+        boolean isSeekable = ProductsCursor.isSeekable(sortEnum);
+
+        if (decodedCursor != null && isSeekable)
+            predicate = cb.and(predicate, SortingUtils.createSeekPredicateForProducts(cb, root, decodedCursor));
+
+        query.where(predicate);
+
+        SortingUtils.createSortedIdsSelectionForProducts(cb, query, root, sortEnum, sortType);
+
+        // Выбрать на один элемент больше, чтобы определить наличие следующей страницы
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        typedQuery.setMaxResults(limit + 1);
+
+        // Ключи сортировок по скидке, оценкам и наличию не выбираются по индексу - страница выбирается смещением
+        int offset = decodedCursor != null && !isSeekable ? decodedCursor.getOffset() : 0;
+        typedQuery.setFirstResult(offset);
+
+        List<Tuple> rows = typedQuery.getResultList();
+        String nextCursor = null;
+
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+
+            // Ключ сортировки последнего товара выбран вместе с его id
+            Tuple lastRow = rows.get(limit - 1);
+
+            nextCursor = (isSeekable ?
+                    new ProductsCursor(sortEnum, sortType, (Number) lastRow.get(1), lastRow.get(0, Long.class)) :
+                    ProductsCursor.ofOffset(sortEnum, sortType, offset + limit))
+                    .encode();
+        }
+
+        List<Long> productsIds = rows.stream().map(row -> row.get(0, Long.class)).toList();
+
+        return new CursorPage<>(productsIds, nextCursor, decodedCursor == null ? elementsCounter.get() : null);
+    }
+
     // Подсчёт количества товаров по заданному ключевому слову
-    public static long countProductsByKeyword(String key, EntityManager entityManager, List<Specification<Product>> specifications, ProductFilterDtoContainer container, String priceRange){
+    public static long countProductsByKeyword(List<Long> foundIds, EntityManager entityManager, List<Specification<Product>> specifications, ProductFilterDtoContainer container, String priceRange){
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         CriteriaQuery<Long> query = cb.createQuery(Long.class);
 
         Root<Product> root = query.from(Product.class);
 
-        Join<Product, ProductVariant> productVariantJoin = root.join("productVariants");
-
-        //Список предикатов для поиска
-        List<Predicate> searchPredicates = new ArrayList<>();
-
-        searchPredicates.add(cb.like(root.get("name"),key));
-        searchPredicates.add(cb.like(root.get("description"),key));
-        searchPredicates.add(cb.like(productVariantJoin.get("title"),key));
-        searchPredicates.add(cb.like(root.get("producer").get("producerName"), key));
+        // Товары, найденные по ключевому слову в поисковом индексе
+        Predicate searchPredicate = root.get("id").in(foundIds);
 
         // Сформировать предикаты фильтрации по цене и производителям
         List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, container, null, priceRange,
@@ -352,12 +398,11 @@ public class PaginationUtils {
         if (predicates != null && !predicates.isEmpty())
             //Доп.фильтра по категории и ценам + фильтра по характеристикам
             query.where(cb.and(
-                            cb.and(cb.or(searchPredicates.toArray(new Predicate[0]))
-                                    ,featuresPredicate)),
+                            cb.and(searchPredicate, featuresPredicate)),
                     cb.and(predicates.toArray(new Predicate[0]))
             ).distinct(true);
         else
-            query.where(cb.and( cb.or(searchPredicates.toArray(new Predicate[0])), featuresPredicate)).distinct(true);
+            query.where(cb.and(searchPredicate, featuresPredicate)).distinct(true);
 
         query.select(cb.countDistinct(root.get("id")));
 
@@ -0,0 +1,106 @@
+package gp.wagner.backend.infrastructure;
+
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
+import gp.wagner.backend.infrastructure.enums.sorting.ProductsSortEnum;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Курсор для постраничной выборки товаров без смещения (keyset-пагинация).
+ * Хранит значение ключа сортировки и id последнего выбранного товара - следующая страница выбирается условием "после этой пары".
+ * Условие выбирается по индексу только для сортировок по id и цене. Ключи остальных сортировок вычисляются подзапросами,
+ * поэтому для них курсор хранит смещение следующей страницы, и страница выбирается обычным смещением.
+ * Клиенту передаётся в виде непрозрачной строки
+ * */
+@Getter
+public class ProductsCursor {
+
+    // Версия формата на случай изменения состава курсора
+    private static final String VERSION = "v1";
+
+    private static final String SEPARATOR = ";";
+
+    private final ProductsSortEnum sortEnum;
+
+    private final GeneralSortEnum sortType;
+
+    // Значение ключа сортировки у последнего товара на странице, либо смещение следующей страницы для сортировок без условия по ключу.
+    // null - у последнего товара нет цены
+    private final Number lastKey;
+
+    // Id последнего товара на странице - для однозначного порядка при одинаковых ключах
+    private final long lastId;
+
+    public ProductsCursor(ProductsSortEnum sortEnum, GeneralSortEnum sortType, Number lastKey, long lastId) {
+        this.sortEnum = sortEnum;
+        this.sortType = sortType;
+        this.lastKey = lastKey;
+        this.lastId = lastId;
+    }
+
+    // Выбирается ли следующая страница условием по ключу сортировки и id (иначе - смещением)
+    public static boolean isSeekable(ProductsSortEnum sortEnum){
+        return sortEnum == ProductsSortEnum.ID || sortEnum == ProductsSortEnum.PRICE;
+    }
+
+    // Курсор следующей страницы для сортировки без условия по ключу
+    public static ProductsCursor ofOffset(ProductsSortEnum sortEnum, GeneralSortEnum sortType, int offset){
+        return new ProductsCursor(sortEnum, sortType, offset, 0);
+    }
+
+    // Смещение следующей страницы - для сортировок без условия по ключу
+    public int getOffset(){
+        return lastKey.intValue();
+    }
+
+    // Сформировать строку курсора
+    public String encode(){
+        String cursor = String.join(SEPARATOR, VERSION, sortEnum.getSortType(), sortType.getSortType(),
+                String.valueOf(lastKey), Long.toString(lastId));
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разобрать строку курсора
+     * @return курсор, либо null, если строка не задана - выборка первой страницы
+     * */
+    public static ProductsCursor decode(String cursor, ProductsSortEnum sortEnum, GeneralSortEnum sortType){
+
+        if (cursor == null || cursor.isBlank())
+            return null;
+
+        String[] parts;
+
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException("Курсор пагинации задан некорректно!");
+        }
+
+        if (parts.length != 5 || !parts[0].equals(VERSION))
+            throw new ApiException("Курсор пагинации задан некорректно!");
+
+        // Курсор действителен только для той сортировки, с которой он был сформирован
+        if (!parts[1].equals(sortEnum.getSortType()) || !parts[2].equals(sortType.getSortType()))
+            throw new ApiException("Курсор пагинации не соответствует заданной сортировке!");
+
+        try {
+            Number lastKey = switch (sortEnum) {
+                case ID -> Long.parseLong(parts[3]);
+                case PRICE -> parts[3].equals("null") ? null : Integer.parseInt(parts[3]);
+                default -> Integer.parseInt(parts[3]);
+            };
+
+            if (!isSeekable(sortEnum) && lastKey.intValue() < 0)
+                throw new ApiException("Курсор пагинации задан некорректно!");
+
+            return new ProductsCursor(sortEnum, sortType, lastKey, Long.parseLong(parts[4]));
+        } catch (NumberFormatException e) {
+            throw new ApiException("Курсор пагинации задан некорректно!");
+        }
+    }
+}
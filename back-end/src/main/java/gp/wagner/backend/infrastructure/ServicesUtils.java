@@ -10,7 +10,6 @@ import gp.wagner.backend.domain.entities.categories.Category;
 import gp.wagner.backend.domain.entities.orders.Customer;
 import gp.wagner.backend.domain.entities.orders.Order;
 import gp.wagner.backend.domain.entities.orders.OrderAndProductVariant;
-import gp.wagner.backend.domain.entities.products.Discount;
 import gp.wagner.backend.domain.entities.products.Producer;
 import gp.wagner.backend.domain.entities.products.Product;
 import gp.wagner.backend.domain.entities.products.ProductVariant;
@@ -27,6 +26,8 @@ import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -36,94 +37,41 @@ public class ServicesUtils {
 
     //Создание предиката для фильтрации товаров по цене
     public static Predicate getProductPricePredicate(SimpleTuple<Integer, Integer> priceRange, From<?, ?> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
-        //Присоединить таблицу вариантов товаров
-        Join<Product, ProductVariant> productProductVariantJoin = root.join("productVariants");
-        Join<ProductVariant, Discount> discountJoin = productProductVariantJoin.join("discount", JoinType.LEFT);
 
-        //Создание подзапроса для получения мин.id варианта товара - базового варианта товара
-        Subquery<Long> subqueryId = query.subquery(Long.class);
-        Root<ProductVariant> subQueryRoot = subqueryId.from(ProductVariant.class);
-        subqueryId.select(cb.min(subQueryRoot.get("id"))).where(cb.equal(subQueryRoot.get("product"), root));
-
-
-        //Если получить значения из строки удалось, тогда пытаемся их спарсить
-        if (priceRange != null) {
-
-            int priceLo = priceRange.getValue1();
-            int priceHi = priceRange.getValue2();
-
-            // Проверка наличия скидки и цены варианта с ней
-            Predicate discountPriceInRange = cb.and(
-                    cb.isNotNull(discountJoin.get("id")),
-                    cb.between(cb.diff(
-                            productProductVariantJoin.get("price"),
-                            cb.prod(productProductVariantJoin.get("price"), discountJoin.get("percentage"))
-                    ), priceLo, priceHi)
-            );
-
-            // Если скидка не задана, тогда сравнение с обычной ценой
-            Predicate regularPriceInRange = cb.between(productProductVariantJoin.get("price"), priceLo, priceHi);
+        if (priceRange == null)
+            return null;
 
-            return cb.and(
-                    cb.equal(productProductVariantJoin.get("id"), subqueryId),
-                    cb.or(discountPriceInRange, regularPriceInRange)
-            );//cb.and
-        }
-        return null;
+        // Цена базового варианта с учётом скидки хранится в самом товаре - выборка по индексу base_price
+        return cb.between(root.<Integer>get("basePrice"), priceRange.getValue1(), priceRange.getValue2());
     }
     public static Predicate getProductVariantPricePredicate(SimpleTuple<Integer, Integer> priceRange, From<?, ?> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
-        //Присоединить таблицу вариантов товаров
-        Join<Product, ProductVariant> productAndPvJoin = root.join("productVariants");
 
-        //Создание подзапроса для получения вариантов для текущего товара, которые входят в диапазон
-        Subquery<Long> subQueryId = query.subquery(Long.class);
-        Root<ProductVariant> subQueryRoot = subQueryId.from(ProductVariant.class);
-        Join<ProductVariant, Discount> discountJoin = subQueryRoot.join("discount", JoinType.LEFT);
+        // Если получить значения из строки удалось, тогда формируем предикаты
+        if (priceRange == null)
+            return null;
 
-        // Подзапрос для проверки базового варианта (его цена >= нижней границе) для корректного вывода
-        Subquery<Long> baseVpSubQuery = query.subquery(Long.class);
-        Root<ProductVariant> baseVpRoot = baseVpSubQuery.from(ProductVariant.class);
+        int priceLo = priceRange.getValue1();
+        int priceHi = priceRange.getValue2();
 
-        // Если получить значения из строки удалось, тогда формируем предикаты
-        if (priceRange != null) {
-
-            int priceLo = priceRange.getValue1();
-            int priceHi = priceRange.getValue2();
-
-            // Проверка наличия скидки и цены варианта с ней
-            Predicate discountPriceInRange = cb.and(
-                    cb.isNotNull(discountJoin.get("id")),
-                    cb.between(cb.diff(
-                            subQueryRoot.get("price"),
-                            cb.prod(subQueryRoot.get("price"), discountJoin.get("percentage"))
-                    ), priceLo, priceHi)
-            );
+        //Создание подзапроса для получения вариантов, цена которых с учётом скидки входит в диапазон
+        Subquery<Long> subQueryId = query.subquery(Long.class);
+        Root<ProductVariant> subQueryRoot = subQueryId.from(ProductVariant.class);
 
-            // Если скидка не задана, тогда сравнение с обычной ценой
-            Predicate regularPriceInRange = cb.between(subQueryRoot.get("price"), priceLo, priceHi);
-
-            // Принимать в расчёт только выводимые и неудалённые варианты для определённого товара
-            subQueryId.select(subQueryRoot.get("product").get("id"))
-                    .where(cb.and(
-                            cb.equal(subQueryRoot.get("product").get("id"), root.get("id")),
-                            //cb.between(subQueryRoot.get("price"), priceLo, priceHi),
-                            cb.or(discountPriceInRange, regularPriceInRange),
-                            cb.equal(subQueryRoot.get("showVariant"), true),
-                            cb.equal(subQueryRoot.get("isDeleted"), false)
-                           )
-                    );
-
-            // Найти id базового варианта
-            //baseVpSubQuery.select(cb.min(subQueryRoot.get("id"))).where(cb.equal(baseVpRoot.get("product"), root));
-
-            // return cb.in(root.get("id")).value(subQueryId);
-            return cb.and(
-                    //cb.ge(productAndPvJoin.get("price"), priceLo),
-                    cb.in(root.get("id")).value(subQueryId)
-            );
+        // Принимать в расчёт только выводимые и неудалённые варианты
+        subQueryId.select(subQueryRoot.get("product").get("id"))
+                .where(cb.and(
+                        cb.between(subQueryRoot.<Integer>get("effectivePrice"), priceLo, priceHi),
+                        cb.equal(subQueryRoot.get("showVariant"), true),
+                        cb.equal(subQueryRoot.get("isDeleted"), false)
+                       )
+                );
 
-        }
-        return null;
+        // Диапазон цен вариантов в товаре должен пересекаться с заданным - отсекает товары без подзапроса
+        return cb.and(
+                cb.le(root.get("minPrice"), priceHi),
+                cb.ge(root.get("maxPrice"), priceLo),
+                cb.in(root.get("id")).value(subQueryId)
+        );
     }
 
     /**
@@ -182,21 +130,10 @@ public class ServicesUtils {
         return predicates;
     }
 
+    // Id заданной категории и всех её дочерних категорий. Значения < 0 по договоренности являются id повторяющихся категорий,
+    // тогда выбираются категории, которые её используют, вместе с их дочерними категориями. Ответ даёт дерево категорий в памяти
     public static List<Long> getChildCategoriesList(Long categoryId){
-
-        // Если задана id обычной категории (по договоренности значения < 0 могут быть id повторяющихся категорий)
-        if (categoryId > 0)
-            return Services.categoriesService.getAllChildCategories(categoryId);
-
-        categoryId = Math.abs(categoryId);
-
-        // Получить id категорий, использующих данную повторяющуюся категорию
-        List<Long> categoriesIds = Services.categoriesService.getRepeatingCategoryChildren(categoryId);
-
-        // Результирующая рекурсивная выборка id дочерних категорий
-        List<Long> resultCategoriesList = new ArrayList<>(Services.categoriesService.getAllChildCategories(categoriesIds));
-
-        return resultCategoriesList;
+        return Services.categoriesTreeService.getDescendantsIds(categoryId);
     }
 
     public static List<Long> getChildCategoriesList(List<Long> categoryIds){
@@ -204,29 +141,7 @@ public class ServicesUtils {
         if (categoryIds == null || categoryIds.isEmpty())
             return null;
 
-        // Оставить только id категорий из основной таблицы
-        List<Long> simpleCategoriesIds = categoryIds.stream().filter(e -> e > 0).toList();
-
-        // Оставить только id повторяющихся категорий (по договоренности их id < 0)
-        List<Long> repeatingCategoriesIds = categoryIds.stream()
-                .filter(e -> e < 0)
-                .collect(Collectors.toCollection(ArrayList::new));
-
-        List<Long> resultCategoriesList = new ArrayList<>();
-
-        // Если не пуст список обычных категорий
-        if (!simpleCategoriesIds.isEmpty())
-            resultCategoriesList.addAll(Services.categoriesService.getAllChildCategories(simpleCategoriesIds));
-
-        // Если в основном списке остались категории <= 0 - id записей из таблицы повторяющихся категорий
-        if (!repeatingCategoriesIds.isEmpty()) {
-            repeatingCategoriesIds.replaceAll(Math::abs);
-
-            // Получить категории, использующие найденные повторяющиеся категории + дочерние категории данных категорий
-            resultCategoriesList.addAll(Services.categoriesService.getRepeatingCategoriesChildrenWithHeirs(repeatingCategoriesIds));
-        }
-
-        return resultCategoriesList;
+        return Services.categoriesTreeService.getDescendantsIds(categoryIds);
     }
 
 
@@ -296,46 +211,12 @@ public class ServicesUtils {
         if (basketPath != null && dto.getMaxDate() != null)
             predicates.add(cb.lessThanOrEqualTo(basketPath.get("addedDate"), dto.getMaxDate()));
 
-        // Фильтрация по цене с учётом наличия скидки на вариант товара
-        if (pvFrom != null && (dto.getPriceMin() != null || dto.getPriceMax() != null)) {
-            Join<ProductVariant, Discount> discountJoin = pvFrom.join("discount", JoinType.LEFT);
-            Expression<Integer> discountPrice = cb.diff(
-                    pvFrom.get("price"),
-                    cb.prod(pvFrom.get("price"), discountJoin.get("percentage"))
-            );
-            Predicate discountPricePredicate = cb.isNotNull(discountJoin.get("id"));
-
-            // Если задана минимальная цена
-            if (dto.getPriceMin() != null) {
-                // Скидка должна быть задана либо произойдёт проверка по штатной цене варианта
-                discountPricePredicate = cb.and(
-                        discountPricePredicate,
-                        cb.greaterThanOrEqualTo(discountPrice, dto.getPriceMin())
-                );
-                predicates.add(
-                        cb.or(
-                                discountPricePredicate,
-                                cb.greaterThanOrEqualTo(pvFrom.get("price"), dto.getPriceMin())
-                        )
-                );
-            }
+        // Фильтрация по цене варианта с учётом скидки
+        if (pvFrom != null && dto.getPriceMin() != null)
+            predicates.add(cb.greaterThanOrEqualTo(pvFrom.get("effectivePrice"), dto.getPriceMin()));
 
-            // Если задана максимальная цена варианта
-            if (dto.getPriceMax() != null)
-            {
-                // Скидка должна быть задана либо произойдёт проверка по штатной цене варианта
-                discountPricePredicate = cb.and(
-                        discountPricePredicate,
-                        cb.lessThanOrEqualTo(discountPrice, dto.getPriceMax())
-                );
-                predicates.add(
-                        cb.or(
-                                discountPricePredicate,
-                                cb.lessThanOrEqualTo(pvFrom.get("price"), dto.getPriceMax())
-                        )
-                );
-            }
-        }
+        if (pvFrom != null && dto.getPriceMax() != null)
+            predicates.add(cb.lessThanOrEqualTo(pvFrom.get("effectivePrice"), dto.getPriceMax()));
         //endregion
 
         return predicates;
@@ -462,31 +343,6 @@ public class ServicesUtils {
         return null;
     }
 
-    // Пересчёт суммы в корзине
-    public static void countSumInBaskets(List<Basket> baskets, List<BasketAndProductVariant> bpvListAll){
-        List<BasketAndProductVariant> bpvList;
-
-        // Для каждой корзины пересчитать сумму
-        for (Basket basket: baskets) {
-            // Выбрать записи для текущей корзины и записи, где вариант товара не скрыт и не удалён
-            bpvList = bpvListAll.stream()
-                    .filter(e -> e.getBasket().getId().equals(basket.getId())
-                            && e.getProductVariant().getShowVariant()
-                            && !e.getProductVariant().getIsDeleted())
-                    .toList();
-
-            if (bpvList.isEmpty())
-                continue;
-
-            // Пересчитать сумму с изменённым вариантом товара
-            int newSum = bpvList.stream()
-                    .map(bpv -> bpv.getProductVariant().getPriceWithDiscount() * bpv.getProductsAmount())
-                    .reduce(0, Integer::sum);
-
-            basket.setSum(newSum);
-
-        }
-    }
     public static void countSumInBasket(Basket basket){
 
         if (basket == null || basket.getBasketAndPVList().isEmpty())
@@ -498,43 +354,16 @@ public class ServicesUtils {
                 .reduce(0, Integer::sum);
 
         basket.setSum(newSum);
+        basket.setPricingVersion(getPricingVersion(basket.getBasketAndPVList().stream()
+                .map(BasketAndProductVariant::getProductVariant).toList()));
     }
 
-    // Пересчёт суммы в заказах
-    public static void countSumInOrders(List<Order> orders, List<OrderAndProductVariant> opvListAll){
-        List<OrderAndProductVariant> opvList;
-
-        for(Order order: orders){
-            // Специально не производим никаких других проверок, поскольку для заказов с разными статусами могут быть нужны
-            // разные расчёты, которые будут определяться за пределом данного метода
-            opvList = opvListAll.stream()
-                    .filter(e -> e.getOrder().getId().equals(order.getId()))
-                    .toList();
-
-            if (opvList.isEmpty())
-                continue;
-
-            // Собственно пересчёт суммы
-            /*int newSum = opvList.stream()
-                    .map(e -> e.getProductVariant().getPrice() * e.getProductsAmount())
-                    .reduce(0, Integer::sum);*/
-            int newSum = 0;
-            int newProductsAmount = 0;
-
-            for (OrderAndProductVariant opv : opvList) {
-                // Зафиксировать стоимость за единицу товара на момент пересчёта суммы
-                opv.setUnitPrice(opv.getProductVariant().getPriceWithDiscount());
-
-                // Получаем стоимость со скидкой, в любом случае значение будет корректным
-                //newSum += opv.getProductVariant().getPriceWithDiscount() * opv.getProductsAmount();
-                newSum += opv.getUnitPrice() * opv.getProductsAmount();
-                newProductsAmount += opv.getProductsAmount();
-            }
-
-            order.setSum(newSum);
-            order.setGeneralProductsAmount(newProductsAmount);
-
-        }// for
+    // Версия цен суммы, рассчитанной по ценам заданных вариантов, - наибольшая версия цен этих вариантов
+    public static long getPricingVersion(Collection<ProductVariant> productVariants){
+        return productVariants.stream()
+                .mapToLong(ProductVariant::getPricingVersion)
+                .max()
+                .orElse(0);
     }
 
     // Пересчёт суммы в одном заказе
@@ -722,5 +551,21 @@ public class ServicesUtils {
         return predicates;
     }
 
+    /**
+     * Выполнить действие после фиксации текущей транзакции. Используется для изменения состояния в памяти (индексы, кэши),
+     * чтобы откат транзакции не оставлял в памяти несуществующие в БД данные. Вне транзакции действие выполняется сразу
+     * */
+    public static void runAfterCommit(Runnable action){
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
 
-}
\ No newline at end of file
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
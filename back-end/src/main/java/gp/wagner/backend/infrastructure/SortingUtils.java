@@ -9,84 +9,134 @@ import gp.wagner.backend.infrastructure.enums.sorting.*;
 import gp.wagner.backend.infrastructure.enums.sorting.orders.OrdersSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.orders.OrdersStatisticsSortEnum;
 import jakarta.annotation.Nullable;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.criteria.*;
 import org.springframework.data.domain.Sort;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SortingUtils {
 
     // Сформировать условие сортировки для товаров
     public static void createSortQueryForProducts(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Product> root, ProductsSortEnum sortEnum, GeneralSortEnum sortType){
 
+        Path<Long> idPath = root.get("id");
 
-        // Сформировать запрос с агрегатной функцией подсчёта суммы
-        Expression<?> expression = switch (sortEnum) {
-            case ID -> root.get("id");
-            case AVAILABLE -> root.get("isAvailable");
-            case DISCOUNT -> null;
-            case RATINGS_AMOUNT -> null;
-            case PRICE -> null;
-        };
+        if (sortEnum == ProductsSortEnum.ID) {
+            query.orderBy(sortType == GeneralSortEnum.ASC ? cb.asc(idPath) : cb.desc(idPath));
+            return;
+        }
 
-        if (sortEnum == ProductsSortEnum.PRICE){
+        query.orderBy(createOrdersForProducts(cb, root, createSortExpressionForProducts(cb, query, root, sortEnum), sortEnum, sortType));
 
-            // Ещё один вложенный подзапрос для выборки минимального id варианта для данного товара
-            Subquery<Long> minVariantIdSubquery = query.subquery(Long.class);
-            Root<ProductVariant> minIdSubQueryRoot = minVariantIdSubquery.from(ProductVariant.class);
-            minVariantIdSubquery.select(cb.min(minIdSubQueryRoot.get("id")))
-                    .where(cb.equal(minIdSubQueryRoot.get("product"), root));
+    }
 
-            Subquery<Long> subquery = query.subquery(Long.class);
-            Root<ProductVariant> subQueryRoot = subquery.from(ProductVariant.class);
+    // Порядок товаров по ключу сортировки. Id товара добавляется в сортировку для однозначного порядка при одинаковых значениях ключа
+    private static List<Order> createOrdersForProducts(CriteriaBuilder cb, Root<Product> root, Expression<?> expression,
+                                                       ProductsSortEnum sortEnum, GeneralSortEnum sortType){
+        Path<Long> idPath = root.get("id");
 
-            // Для получения id базового товара используется ещё один подзапрос, определённый выше
-            subquery.select(subQueryRoot.get("price"))
-                    .where(cb.equal(subQueryRoot.get("id"), minVariantIdSubquery));
+        List<Order> orders = new ArrayList<>();
 
-            expression = subquery.getSelection();
-        }
+        // Товары без вариантов (без цены) выводятся в конце при любом направлении сортировки по цене
+        if (sortEnum == ProductsSortEnum.PRICE)
+            orders.add(cb.asc(cb.isNull(expression)));
 
-        // Сортировка по скидке
-        if (sortEnum == ProductsSortEnum.DISCOUNT){
-            Subquery<Float> discountSubQuery = query.subquery(Float.class);
-            Root<Discount> discountRoot = discountSubQuery.from(Discount.class);
+        orders.add(sortType == GeneralSortEnum.ASC ? cb.asc(expression) : cb.desc(expression));
+        orders.add(sortType == GeneralSortEnum.ASC ? cb.asc(idPath) : cb.desc(idPath));
 
-            Path<ProductVariant> pvPath = discountRoot.get("productVariants");
+        return orders;
+    }
 
-            // Найти максимальное значение скидки в вариантах товара
-            discountSubQuery.select(cb.max(discountRoot.get("percentage")))
-                    .where(
-                            cb.equal(
-                                    pvPath.get("product").get("id"),
-                                    root.get("id")
-                            )
-                    );
+    // Сформировать выражение ключа сортировки товаров
+    public static Expression<?> createSortExpressionForProducts(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Product> root, ProductsSortEnum sortEnum){
 
-            expression = discountSubQuery.getSelection();
+        return switch (sortEnum) {
+            case ID -> root.get("id");
 
-        }
+            case AVAILABLE -> root.get("isAvailable");
+
+            // Цена базового варианта с учётом скидки хранится в самом товаре - сортировка по индексу base_price
+            case PRICE -> root.<Integer>get("basePrice");
+
+            // Сортировка по скидке
+            case DISCOUNT -> {
+                Subquery<Float> discountSubQuery = query.subquery(Float.class);
+                Root<Discount> discountRoot = discountSubQuery.from(Discount.class);
+
+                Path<ProductVariant> pvPath = discountRoot.get("productVariants");
+
+                // Найти максимальное значение скидки в вариантах товара
+                discountSubQuery.select(cb.max(discountRoot.get("percentage")))
+                        .where(
+                                cb.equal(
+                                        pvPath.get("product").get("id"),
+                                        root.get("id")
+                                )
+                        );
+
+                yield discountSubQuery.getSelection();
+            }
+
+            // Сортировка по количеству оценок
+            case RATINGS_AMOUNT -> {
+                Subquery<Integer> ratingsSubquery = query.subquery(Integer.class);
+                Root<RatingStatistics> rsRoot = ratingsSubquery.from(RatingStatistics.class);
+
+                Path<Product> productPath = rsRoot.get("product");
+
+                ratingsSubquery.select(cb.max(rsRoot.get("amount")))
+                        .where(
+                                cb.equal(
+                                        productPath.get("id"),
+                                        root.get("id")
+                                )
+                        );
+
+                yield ratingsSubquery.getSelection();
+            }
+        };
+    }
 
-        // Сортировка по количеству оценок
-        if (sortEnum == ProductsSortEnum.RATINGS_AMOUNT){
-            Subquery<Long> ratingsSubquery = query.subquery(Long.class);
-            Root<RatingStatistics> rsRoot = ratingsSubquery.from(RatingStatistics.class);
+    // Сформировать условие выборки товаров, следующих в порядке сортировки после товара из курсора.
+    // Только для сортировок с ключом по индексу - см. ProductsCursor.isSeekable
+    public static Predicate createSeekPredicateForProducts(CriteriaBuilder cb, Root<Product> root, ProductsCursor cursor){
 
-            Path<Product> productPath = rsRoot.get("product");
+        boolean isAsc = cursor.getSortType() == GeneralSortEnum.ASC;
 
-            ratingsSubquery.select(cb.max(rsRoot.get("amount")))
-                    .where(
-                            cb.equal(
-                                    productPath.get("id"),
-                                    root.get("id")
-                            )
-                    );
+        Path<Long> idPath = root.get("id");
+        Predicate idPredicate = isAsc ? cb.gt(idPath, cursor.getLastId()) : cb.lt(idPath, cursor.getLastId());
 
-            expression = ratingsSubquery.getSelection();
+        if (cursor.getSortEnum() == ProductsSortEnum.ID)
+            return idPredicate;
 
-        }
+        Path<Integer> pricePath = root.get("basePrice");
 
+        // Последний товар без цены - дальше идут только товары без цены
+        if (cursor.getLastKey() == null)
+            return cb.and(cb.isNull(pricePath), idPredicate);
 
-        query.orderBy(sortType == GeneralSortEnum.ASC ? cb.asc(expression) : cb.desc(expression));
+        int lastPrice = cursor.getLastKey().intValue();
+
+        // (ключ > последний) or (ключ = последний and id > последний id) or (товар без цены - выводится в конце)
+        return cb.or(
+                isAsc ? cb.gt(pricePath, lastPrice) : cb.lt(pricePath, lastPrice),
+                cb.and(cb.equal(pricePath, lastPrice), idPredicate),
+                cb.isNull(pricePath)
+        );
+    }
+
+    // Сформировать выборку id товаров вместе с ключом сортировки и саму сортировку.
+    // Ключ выбирается вместе с id, поскольку при distinct-выборке выражения сортировки должны присутствовать в select
+    public static void createSortedIdsSelectionForProducts(CriteriaBuilder cb, CriteriaQuery<Tuple> query, Root<Product> root, ProductsSortEnum sortEnum, GeneralSortEnum sortType){
+
+        Path<Long> idPath = root.get("id");
+        Expression<?> expression = createSortExpressionForProducts(cb, query, root, sortEnum);
+
+        query.multiselect(idPath, expression);
 
+        query.orderBy(createOrdersForProducts(cb, root, expression, sortEnum, sortType));
     }
 
     public static Sort createSortForProducts(ProductsSortEnum sortEnum, GeneralSortEnum sortType){
@@ -179,16 +179,6 @@ public class Utils {
     public record CategoryAndProductIds(long categoryId, long productId) {
     }
 
-    // Генерация кода заказа
-    public static long generateOrderCode(long customerId){
-
-        String formedNumber = String.format("%d%d",customerId , getRandom(10000L, 99_999L));
-
-        Long resultNumber = TryParseLong(formedNumber);
-
-        return resultNumber != null ? resultNumber : getRandom(10_000_000L, 99_999_999L);
-    }
-
     // Получить 2 числа из диапазона
     public static SimpleTuple<Integer, Integer> parseTwoNumericValues(String range){
         if (range == null || range.isBlank())
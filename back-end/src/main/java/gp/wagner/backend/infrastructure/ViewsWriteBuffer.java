@@ -0,0 +1,225 @@
+package gp.wagner.backend.infrastructure;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Буфер отложенной записи просмотров. Просмотры агрегируются в памяти по ключу (посетитель + просматриваемая запись),
+ * повторные просмотры в течение 24ч отбрасываются сразу, а накопленные записи сохраняются пакетами -
+ * JSON массивом объектов {<поля ключа>, count, viewedAt} в запрос insert ... on duplicate key update
+ * @param <K> ключ просмотра - record с id посетителя и id записи
+ * */
+public class ViewsWriteBuffer<K> {
+
+    // Повторный просмотр тем же посетителем учитывается не раньше, чем через 24ч (как в ProductViews/CategoryViews.goneMoreThan)
+    private static final long REPEAT_VIEW_MILLIS = Duration.ofHours(24).toMillis();
+
+    // Максимальное кол-во ожидающих сохранения ключей. Просмотры сверх него отбрасываются
+    private static final int CAPACITY = 50_000;
+
+    // Интервал сохранения по таймеру
+    private static final long FLUSH_INTERVAL_MILLIS = 5_000;
+
+    // Максимальное кол-во запоминаемых учтённых просмотров для отсева повторов. Сверх него повторы отсеиваются только запросом в БД
+    private static final int RECENT_VIEWS_CAPACITY = 500_000;
+
+    // Кол-во неудачных попыток сохранения, после которого просмотры отбрасываются, а не возвращаются в буфер
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Накопленные просмотры ключа. Изменяются только внутри ConcurrentHashMap.compute
+    private static final class PendingView {
+        int count;
+        long viewedAt;
+        int attempts;
+    }
+
+    // Название буфера в метриках и сообщениях
+    private final String name;
+
+    // Кол-во ожидающих ключей, при котором буфер сохраняется не дожидаясь таймера
+    private final int flushThreshold;
+
+    // Кол-во записей в одном запросе
+    private final int batchSize;
+
+    // Поля ключа в JSON объекте просмотра, например "visitorId":1,"productId":2
+    private final Function<K, String> keyToJson;
+
+    // Запрос сохранения пакета просмотров
+    private final Consumer<String> upsert;
+
+    // Ожидающие сохранения просмотры
+    private final ConcurrentHashMap<K, PendingView> pending = new ConcurrentHashMap<>();
+
+    // Время последнего учтённого просмотра каждого ключа
+    private final ConcurrentHashMap<K, Long> recentViews = new ConcurrentHashMap<>();
+
+    //region Метрики
+    private final AtomicLong acceptedAmount = new AtomicLong();
+    private final AtomicLong droppedAmount = new AtomicLong();
+    private final AtomicLong skippedAmount = new AtomicLong();
+    private final AtomicLong flushesAmount = new AtomicLong();
+    private final AtomicLong failedFlushesAmount = new AtomicLong();
+    private final AtomicLong flushedRowsAmount = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    //endregion
+
+    private volatile long lastFlushAt = System.currentTimeMillis();
+    private long lastCleanupAt = System.currentTimeMillis();
+
+    public ViewsWriteBuffer(String name, int flushThreshold, int batchSize, Function<K, String> keyToJson, Consumer<String> upsert) {
+        this.name = name;
+        this.flushThreshold = flushThreshold;
+        this.batchSize = batchSize;
+        this.keyToJson = keyToJson;
+        this.upsert = upsert;
+    }
+
+    /**
+     * Добавить просмотр в буфер
+     * @return false - если просмотр не принят (повтор в течение 24ч или буфер переполнен)
+     * */
+    public boolean enqueue(K key, long now) {
+
+        Long countedAt = recentViews.get(key);
+
+        if (countedAt != null && now - countedAt < REPEAT_VIEW_MILLIS) {
+            skippedAmount.incrementAndGet();
+            return false;
+        }
+
+        if (pending.size() >= CAPACITY && !pending.containsKey(key)) {
+            droppedAmount.incrementAndGet();
+            return false;
+        }
+
+        // Отметить учтённый просмотр. Если параллельный запрос того же ключа успел раньше - этот просмотр повторный
+        boolean[] counted = {false};
+
+        recentViews.compute(key, (k, previous) -> {
+            if (previous != null && now - previous < REPEAT_VIEW_MILLIS)
+                return previous;
+
+            counted[0] = true;
+            return previous == null && recentViews.size() >= RECENT_VIEWS_CAPACITY ? null : now;
+        });
+
+        if (!counted[0]) {
+            skippedAmount.incrementAndGet();
+            return false;
+        }
+
+        addPending(key, 1, now, 0);
+        acceptedAmount.incrementAndGet();
+
+        return true;
+    }
+
+    private void addPending(K key, int count, long viewedAt, int attempts){
+        pending.compute(key, (k, view) -> {
+            if (view == null)
+                view = new PendingView();
+
+            view.count += count;
+            view.viewedAt = Math.max(view.viewedAt, viewedAt);
+            view.attempts = Math.max(view.attempts, attempts);
+
+            return view;
+        });
+    }
+
+    // Проверка порога размера и интервала сохранения
+    public void flushIfNeeded() {
+        if (pending.size() >= flushThreshold || System.currentTimeMillis() - lastFlushAt >= FLUSH_INTERVAL_MILLIS)
+            flush();
+    }
+
+    // Сохранить все накопленные просмотры
+    public synchronized void flush() {
+
+        lastFlushAt = System.currentTimeMillis();
+        removeExpiredRecentViews();
+
+        if (pending.isEmpty())
+            return;
+
+        // Забрать накопленные просмотры. Просмотры, добавленные во время сохранения, попадут в следующее
+        List<Map.Entry<K, PendingView>> drained = new ArrayList<>();
+
+        for (K key : pending.keySet()) {
+            PendingView view = pending.remove(key);
+
+            if (view != null)
+                drained.add(Map.entry(key, view));
+        }
+
+        long start = System.nanoTime();
+        int saved = 0;
+
+        try {
+            for (; saved < drained.size(); saved += batchSize)
+                upsert.accept(toJson(drained.subList(saved, Math.min(saved + batchSize, drained.size()))));
+
+            flushesAmount.incrementAndGet();
+        } catch (Exception e) {
+            failedFlushesAmount.incrementAndGet();
+
+            // Несохранённые просмотры возвращаются в буфер для повторной попытки, исчерпавшие попытки - отбрасываются
+            for (Map.Entry<K, PendingView> entry : drained.subList(Math.min(saved, drained.size()), drained.size())) {
+                PendingView view = entry.getValue();
+
+                if (view.attempts + 1 >= MAX_FLUSH_ATTEMPTS)
+                    droppedAmount.incrementAndGet();
+                else
+                    addPending(entry.getKey(), view.count, view.viewedAt, view.attempts + 1);
+            }
+
+            System.out.printf("\n\tНе удалось сохранить просмотры %s: %s\n\n", name, e.getMessage());
+        } finally {
+            flushedRowsAmount.addAndGet(Math.min(saved, drained.size()));
+
+            lastFlushMillis = (System.nanoTime() - start) / 1_000_000;
+            maxFlushMillis = Math.max(maxFlushMillis, lastFlushMillis);
+        }
+    }
+
+    // Удалять отметки о просмотрах старше 24ч не чаще раза в минуту
+    private void removeExpiredRecentViews(){
+        long now = System.currentTimeMillis();
+
+        if (now - lastCleanupAt < 60_000)
+            return;
+
+        lastCleanupAt = now;
+        recentViews.values().removeIf(countedAt -> now - countedAt >= REPEAT_VIEW_MILLIS);
+    }
+
+    private String toJson(List<Map.Entry<K, PendingView>> views){
+        return views.stream()
+                .map(entry -> String.format(Locale.ROOT, "{%s,\"count\":%d,\"viewedAt\":\"%s\"}",
+                        keyToJson.apply(entry.getKey()), entry.getValue().count,
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getValue().viewedAt), ZoneId.systemDefault())
+                                .format(DATE_TIME_FORMATTER)))
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    public WriteBufferStatisticsRespDto getStatistics() {
+        return new WriteBufferStatisticsRespDto(name, pending.size(), acceptedAmount.get(), droppedAmount.get(),
+                skippedAmount.get(), flushesAmount.get(), failedFlushesAmount.get(), flushedRowsAmount.get(),
+                lastFlushMillis, maxFlushMillis);
+    }
+}
@@ -0,0 +1,26 @@
+package gp.wagner.backend.infrastructure.enums;
+
+// Операция фоновой задачи массового изменения скидок
+public enum DiscountJobOperationEnum {
+
+    ADD_TO_CATEGORIES("add_to_categories"),
+    ADD_TO_PRODUCTS("add_to_products"),
+    REMOVE_FROM_CATEGORIES("remove_from_categories");
+
+    DiscountJobOperationEnum(String operation) {
+        this.operation = operation;
+    }
+
+    private final String operation;
+
+    public String getOperation() {return operation;}
+    public static DiscountJobOperationEnum getOperation(String operation) {
+
+        return switch (operation.toLowerCase()) {
+            case "add_to_products" -> ADD_TO_PRODUCTS;
+            case "remove_from_categories" -> REMOVE_FROM_CATEGORIES;
+            default -> ADD_TO_CATEGORIES;
+        };
+
+    }
+}
@@ -0,0 +1,23 @@
+package gp.wagner.backend.infrastructure.enums;
+
+// Состояние исходящего письма
+public enum EmailOutboxStateEnum {
+
+    // Ожидает отправки (в т.ч. повторной)
+    PENDING("pending"),
+
+    // Взято в отправку до окончания аренды (next_attempt_at). Письма с истёкшей арендой отправляются повторно
+    SENDING("sending"),
+    SENT("sent"),
+
+    // Попытки отправки исчерпаны
+    DEAD("dead");
+
+    EmailOutboxStateEnum(String state) {
+        this.state = state;
+    }
+
+    private final String state;
+
+    public String getState() {return state;}
+}
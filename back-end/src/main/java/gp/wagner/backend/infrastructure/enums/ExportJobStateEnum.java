@@ -0,0 +1,18 @@
+package gp.wagner.backend.infrastructure.enums;
+
+// Состояние фоновой задачи: выгрузки отчёта или массового изменения скидок
+public enum ExportJobStateEnum {
+
+    QUEUED("queued"),
+    RUNNING("running"),
+    DONE("done"),
+    FAILED("failed");
+
+    ExportJobStateEnum(String state) {
+        this.state = state;
+    }
+
+    private final String state;
+
+    public String getState() {return state;}
+}
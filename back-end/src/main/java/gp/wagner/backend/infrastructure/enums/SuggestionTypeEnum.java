@@ -0,0 +1,18 @@
+package gp.wagner.backend.infrastructure.enums;
+
+// Тип подсказки поиска
+public enum SuggestionTypeEnum {
+
+    // Порядок значений задаёт порядок вывода подсказок с одинаковым совпадением
+    CATEGORY("category"),
+    PRODUCER("producer"),
+    PRODUCT("product");
+
+    SuggestionTypeEnum(String suggestionType) {
+        this.suggestionType = suggestionType;
+    }
+
+    private final String suggestionType;
+
+    public String getSuggestionType() {return suggestionType;}
+}
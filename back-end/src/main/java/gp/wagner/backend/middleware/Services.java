@@ -4,10 +4,18 @@ import gp.wagner.backend.security.services.JwtService;
 import gp.wagner.backend.services.Indexer;
 import gp.wagner.backend.services.interfaces.*;
 import gp.wagner.backend.services.interfaces.admin_panels.AdminPanelStatisticsService;
+import gp.wagner.backend.services.interfaces.admin_panels.AggregatePagesService;
+import gp.wagner.backend.services.interfaces.admin_panels.ExportJobsService;
+import gp.wagner.backend.services.interfaces.admin_panels.StatisticsDaysCacheService;
 import gp.wagner.backend.services.interfaces.categories.CategoriesService;
+import gp.wagner.backend.services.interfaces.categories.CategoriesTreeService;
+import gp.wagner.backend.services.interfaces.categories.CategoryViewsBufferService;
 import gp.wagner.backend.services.interfaces.categories.CategoryViewsService;
+import gp.wagner.backend.services.interfaces.products.ProductCardsService;
 import gp.wagner.backend.services.interfaces.products.ProductImagesService;
 import gp.wagner.backend.services.interfaces.products.ProductVariantsService;
+import gp.wagner.backend.services.interfaces.products.ProductsFilterIndexService;
+import gp.wagner.backend.services.interfaces.products.ProductViewsBufferService;
 import gp.wagner.backend.services.interfaces.products.ProductViewsService;
 import gp.wagner.backend.services.interfaces.products.ProductsService;
 import gp.wagner.backend.services.interfaces.ratings.RatingsService;
@@ -39,6 +47,14 @@ public class Services {
         Services.categoriesService = categService;
     }
 
+    //Сервис дерева категорий в памяти
+    public static CategoriesTreeService categoriesTreeService;
+
+    @Autowired
+    public void setCategoriesTreeService(CategoriesTreeService treeService){
+        Services.categoriesTreeService = treeService;
+    }
+
     //Сервис для производителей
     public static ProducersService producersService;
 
@@ -63,6 +79,22 @@ public class Services {
         Services.productVariantsService = prodVariantsService;
     }
 
+    //Сервис индекса значений характеристик для фильтрации товаров
+    public static ProductsFilterIndexService productsFilterIndexService;
+
+    @Autowired
+    public void setProductsFilterIndexService(ProductsFilterIndexService filterIndexService){
+        Services.productsFilterIndexService = filterIndexService;
+    }
+
+    //Сервис хранилища карточек товаров для вывода списков товаров
+    public static ProductCardsService productCardsService;
+
+    @Autowired
+    public void setProductCardsService(ProductCardsService cardsService){
+        Services.productCardsService = cardsService;
+    }
+
     //Сервис для изображений вариантов исполнения товара
     public static ProductImagesService productImagesService;
 
@@ -127,6 +159,46 @@ public class Services {
         Services.searchService = searchService;
     }
 
+    // Сервис подсказок поиска
+    public static SearchSuggestionsService searchSuggestionsService;
+
+    @Autowired
+    public void setSearchSuggestionsService(SearchSuggestionsService searchSuggestionsService){
+        Services.searchSuggestionsService = searchSuggestionsService;
+    }
+
+    // Счётчик посещений по дням
+    public static DailyVisitsCounterService dailyVisitsCounterService;
+
+    @Autowired
+    public void setDailyVisitsCounterService(DailyVisitsCounterService dailyVisitsCounterService){
+        Services.dailyVisitsCounterService = dailyVisitsCounterService;
+    }
+
+    // Кэш id посетителей и буфер дат последнего посещения
+    public static VisitorsCacheService visitorsCacheService;
+
+    @Autowired
+    public void setVisitorsCacheService(VisitorsCacheService visitorsCacheService){
+        Services.visitorsCacheService = visitorsCacheService;
+    }
+
+    // Буфер отложенной записи просмотров товаров
+    public static ProductViewsBufferService productViewsBufferService;
+
+    @Autowired
+    public void setProductViewsBufferService(ProductViewsBufferService productViewsBufferService){
+        Services.productViewsBufferService = productViewsBufferService;
+    }
+
+    // Буфер отложенной записи просмотров категорий
+    public static CategoryViewsBufferService categoryViewsBufferService;
+
+    @Autowired
+    public void setCategoryViewsBufferService(CategoryViewsBufferService categoryViewsBufferService){
+        Services.categoryViewsBufferService = categoryViewsBufferService;
+    }
+
     // Сервис статистики в админ-панели
     public static AdminPanelStatisticsService adminPanelStatisticsService ;
 
@@ -135,6 +207,38 @@ public class Services {
         Services.adminPanelStatisticsService = adminPanelService;
     }
 
+    // Кэш статистики админ-панели по закрытым дням
+    public static StatisticsDaysCacheService statisticsDaysCacheService;
+
+    @Autowired
+    public void setStatisticsDaysCacheService(StatisticsDaysCacheService statisticsDaysCacheService){
+        Services.statisticsDaysCacheService = statisticsDaysCacheService;
+    }
+
+    // Постраничная выборка группирующих запросов статистики
+    public static AggregatePagesService aggregatePagesService;
+
+    @Autowired
+    public void setAggregatePagesService(AggregatePagesService aggregatePagesService){
+        Services.aggregatePagesService = aggregatePagesService;
+    }
+
+    // Фоновые выгрузки отчётов
+    public static ExportJobsService exportJobsService;
+
+    @Autowired
+    public void setExportJobsService(ExportJobsService exportJobsService){
+        Services.exportJobsService = exportJobsService;
+    }
+
+    // Сводка заказов по дням
+    public static OrdersRollupService ordersRollupService;
+
+    @Autowired
+    public void setOrdersRollupService(OrdersRollupService ordersRollupService){
+        Services.ordersRollupService = ordersRollupService;
+    }
+
     // Сервис для работы с пользователями
     public static UsersService usersService ;
 
@@ -175,6 +279,38 @@ public class Services {
         Services.discountsService = service;
     }
 
+    // Планировщик сроков действия скидок
+    public static DiscountsSchedulerService discountsSchedulerService;
+
+    @Autowired
+    public void setDiscountsSchedulerService(DiscountsSchedulerService service){
+        Services.discountsSchedulerService = service;
+    }
+
+    // Генератор кодов заказов
+    public static OrderCodesService orderCodesService;
+
+    @Autowired
+    public void setOrderCodesService(OrderCodesService service){
+        Services.orderCodesService = service;
+    }
+
+    // Очередь исходящих писем
+    public static EmailOutboxService emailOutboxService;
+
+    @Autowired
+    public void setEmailOutboxService(EmailOutboxService service){
+        Services.emailOutboxService = service;
+    }
+
+    // Фоновые задачи массового изменения скидок
+    public static DiscountJobsService discountJobsService;
+
+    @Autowired
+    public void setDiscountJobsService(DiscountJobsService service){
+        Services.discountJobsService = service;
+    }
+
     // Сервис для оценок товаров
     public static RatingsService ratingsService ;
 
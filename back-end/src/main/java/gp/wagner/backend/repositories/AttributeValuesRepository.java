@@ -28,6 +28,24 @@ public interface AttributeValuesRepository extends JpaRepository<AttributeValue,
     //Получить все атрибуты определённого товара
     List<AttributeValue> findAttributeValuesByProductId(Long product_id);
 
+    // Выборка значений для построения индекса фильтров: [id, product_id, attribute_id, int_value, txt_values]
+    @Query(value = """
+    select
+        av.id, av.product.id, av.attribute.id, av.intValue, av.strValue
+    from AttributeValue av
+    where av.intValue is not null or av.strValue is not null
+    """)
+    List<Object[]> getValuesForFilterIndex();
+
+    // Те же значения для индекса фильтров, но для одного товара
+    @Query(value = """
+    select
+        av.id, av.product.id, av.attribute.id, av.intValue, av.strValue
+    from AttributeValue av
+    where av.product.id = :productId and (av.intValue is not null or av.strValue is not null)
+    """)
+    List<Object[]> getValuesForFilterIndexByProductId(@Param("productId") long productId);
+
     //Добавление значения из Dto
     @Transactional
     @Modifying
@@ -129,21 +147,8 @@ public interface AttributeValuesRepository extends JpaRepository<AttributeValue,
     """)
     List<Object[]> getAttributeValuesByCategories(@Param("category_id_list") List<Long> categoryId);
 
-    //Получить значения атрибутов и их диапазоны для фильтрации
+    //Получить значения атрибутов и их диапазоны для фильтрации товаров, найденных по ключевому слову
     @Query(nativeQuery = true,value = """
-        with products_in_category as(
-            select
-                p.id
-            from
-                products p join variants_product pv on p.id = pv.product_id
-                           join producers producer on p.producer_id = producer.id
-            where
-                (p.product_name like concat('%',:keyword,'%') or
-                p.description like concat('%',:keyword,'%') or
-                pv.title like concat('%',:keyword,'%') or
-                producer.producer_name like concat('%',:keyword,'%')) and
-                p.is_deleted = false and p.show_product = true)
-        
         select
             av.attribute_id as attributeId,
             prod_attr.attr_name as attributeName,
@@ -157,13 +162,13 @@ public interface AttributeValuesRepository extends JpaRepository<AttributeValue,
         from
             attributes_values av join products_attributes prod_attr on av.attribute_id = prod_attr.id
         where
-             av.product_id in (select pic.id from products_in_category pic) and
+             av.product_id in :products_ids and
              (av.int_value is not null or (av.txt_values is not null and av.txt_values != '')) and
              prod_attr.is_shown is true
         group by
             prod_attr.attr_name, av.attribute_id, av.txt_values;
     """)
-    List<Object[]> getAttributeValuesByKeyword(@Param("keyword") String key);
+    List<Object[]> getAttributeValuesInProducts(@Param("products_ids") List<Long> productsIds);
 
     // Получить значения атрибутов по id самого атрибута
     @Query(nativeQuery = true,value = """ 
@@ -180,5 +185,23 @@ public interface AttributeValuesRepository extends JpaRepository<AttributeValue,
     """)
     List<Object[]> getAttributeValuesByAttrId(@Param("prod_attr_id") long attrId);
 
-}
+    // Целочисленные значения характеристик для габаритов в карточках товаров: [product_id, int_value]
+    @Query(value = """
+    select
+        av.product.id, av.intValue
+    from AttributeValue av
+    order by av.product.id, av.id
+    """)
+    List<Object[]> getValuesForCards();
 
+    // Те же значения для карточек, но только для заданных товаров
+    @Query(value = """
+    select
+        av.product.id, av.intValue
+    from AttributeValue av
+    where av.product.id in :products_ids
+    order by av.product.id, av.id
+    """)
+    List<Object[]> getValuesForCardsByProductsIds(@Param("products_ids") List<Long> productsIds);
+
+}
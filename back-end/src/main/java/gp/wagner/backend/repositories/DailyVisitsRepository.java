@@ -28,6 +28,20 @@ public interface DailyVisitsRepository extends JpaRepository<DailyVisits,Long> {
     """)
     int insertDailyVisits(@Param("date") Date date);
 
+    // Атомарно прибавить накопленное кол-во посещений за день (запись за день создаётся при первом сохранении)
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+        insert into daily_visits
+        (date, count)
+        values
+        (:date, :delta)
+        on duplicate key update
+            count = count + :delta
+    """)
+    int addVisits(@Param("date") LocalDate date, @Param("delta") long delta);
+
     // Изменение посетителя
     @Transactional
     @Modifying
@@ -0,0 +1,68 @@
+package gp.wagner.backend.repositories;
+
+import gp.wagner.backend.domain.entities.notifications.EmailOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage,Long> {
+
+    /**
+     * Письма, время отправки которых наступило, и письма с истёкшей арендой в порядке добавления.
+     * Выбранные строки блокируются до конца транзакции, а уже заблокированные пропускаются,
+     * поэтому несколько экземпляров приложения не возьмут в отправку одно письмо дважды
+     * */
+    @Query(nativeQuery = true,
+            value = """
+        select * from email_outbox m
+        where m.state in ('pending', 'sending') and m.next_attempt_at <= now()
+        order by m.id
+        limit :limit
+        for update skip locked
+    """)
+    List<EmailOutboxMessage> lockDueMessages(@Param("limit") int limit);
+
+    /**
+     * Сохранить результат отправки письма, если оно всё ещё арендовано с заданным маркером
+     * @return 0 - аренда истекла и письмо было взято в отправку повторно
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update email_outbox set
+            state = :state,
+            attempts = :attempts,
+            next_attempt_at = :next_attempt_at,
+            last_error = :last_error,
+            sent_at = :sent_at,
+            lease_token = null
+        where id = :id and state = 'sending' and lease_token = :lease_token
+    """)
+    int completeMessage(@Param("id") long id, @Param("lease_token") String leaseToken, @Param("state") String state,
+                        @Param("attempts") int attempts, @Param("next_attempt_at") Date nextAttemptAt,
+                        @Param("last_error") String lastError, @Param("sent_at") Date sentAt);
+
+    // Кол-во писем в заданном состоянии
+    @Query(nativeQuery = true,
+            value = """
+        select count(m.id) from email_outbox m where m.state = :state
+    """)
+    long countByState(@Param("state") String state);
+
+    // Удалить отправленные письма, добавленные раньше заданной даты
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        delete from email_outbox where state = 'sent' and created_at < :date
+    """)
+    int deleteSentBefore(@Param("date") Date date);
+}
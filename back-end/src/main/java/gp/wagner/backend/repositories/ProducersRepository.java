@@ -86,20 +86,16 @@ public interface ProducersRepository extends JpaRepository<Producer,Long> {
 """)
     List<Producer> getProducersInCategories(@Param("category_id_list") List<Long> categoriesIds);
 
-    //Получить производителей по ключевому слову в товарах
+    //Получить производителей заданных товаров (найденных по ключевому слову)
     @Query(value = """
-    select
+    select distinct
         p.producer
     from
-        Product p join ProductVariant pv on pv.product = p
+        Product p
     where
-        p.name like concat('%',:keyword,'%') or
-        p.description like concat('%',:keyword,'%') or
-        pv.title like concat('%',:keyword,'%') or
-        p.producer.producerName like concat('%',:keyword,'%')
-    
+        p.id in :products_ids
 """)
-    List<Producer> getProducersByProductKeyword(@Param("keyword") String key);
+    List<Producer> getProducersOfProducts(@Param("products_ids") List<Long> productsIds);
 
     @Query(value = """
     select
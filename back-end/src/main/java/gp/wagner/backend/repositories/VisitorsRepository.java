@@ -10,6 +10,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -49,6 +50,54 @@ public interface VisitorsRepository extends JpaRepository<Visitor,Long> {
     """)
     void updateLastVisitDate(@Param("visitorId") long id, @Param("last_visit") Date lastVisitDate);
 
+    /**
+     * Изменить даты последнего посещения сразу у нескольких посетителей.
+     * visits - JSON массив объектов {visitorId, visitedAt}, у каждого посетителя своя дата
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update visitors
+        join json_table(:visits, '$[*]' columns (
+            visitor_id bigint path '$.visitorId',
+            visited_at datetime path '$.visitedAt'
+        )) as v on visitors.id = v.visitor_id
+    set
+        visitors.last_visit_at = greatest(coalesce(visitors.last_visit_at, v.visited_at), v.visited_at)
+    """)
+    void updateLastVisitDates(@Param("visits") String visitsJson);
+
+    // Добавить посетителя, если посетителя с таким отпечатком и ip ещё нет (уникальный индекс fingerprint_ip_unique)
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+        insert into visitors
+        (fingerprint, ip_address, created_at, last_visit_at)
+        values
+        (:fp, :ip, :visit_date, :visit_date)
+        on duplicate key update
+            last_visit_at = greatest(coalesce(last_visit_at, :visit_date), :visit_date)
+    """)
+    int upsertVisitor(@Param("fp") String fingerPrint, @Param("ip") String ip, @Param("visit_date") Date visitDate);
+
+    /**
+     * Id посетителя по отпечатку и ip. Блокирующее чтение видит последнюю зафиксированную запись,
+     * а не снимок текущей транзакции - посетитель мог быть добавлен параллельным запросом
+     * */
+    @Query(nativeQuery = true,
+    value = """
+    select
+        v.id
+    from visitors v
+    where v.fingerprint = :fp and v.ip_address <=> :ip
+    order by v.id
+    limit 1
+    for share
+    """)
+    Optional<Long> getVisitorIdForShare(@Param("fp") String fingerPrint, @Param("ip") String ip);
+
     //Получить посетителя по finger print
     Optional<Visitor> getVisitorByFingerprint(String fingerPrint);
 
@@ -4,9 +4,11 @@ import gp.wagner.backend.domain.entities.visits.Visitor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
 import java.util.List;
@@ -68,17 +70,18 @@ public interface AdminPanelStatisticsRepository extends JpaRepository<Visitor,Lo
             """)
     long getSumDailyVisitsBetweenDatesInBV(@Param("date_lo") Date dateLo,@Param("date_hi") Date dateHi);
 
-    // Подсчёт кол-ва заказов по дням за определённый период
+    // Подсчёт кол-ва заказов по дням за определённый период - из сводки заказов по дням
     @Query(nativeQuery = true, value = """
             with orders_count as (select
-                DATE(o.order_date) as order_date_alias,
-                COUNT(o.id) as orders_count,
-                SUM(o.sum) as orders_sum
+                r.date as order_date_alias,
+                cast(sum(r.orders_count) as signed) as orders_count,
+                sum(r.orders_sum) as orders_sum
             from
-                orders o
+                daily_orders_rollup r
             where
-                o.order_date between :date_lo and :date_hi and
-                ((:state_id is not null and :state_id > 0 and o.order_state_id = :state_id)
+                r.category_id = 0 and
+                r.date between DATE(:date_lo) and DATE(:date_hi) and
+                ((:state_id is not null and :state_id > 0 and r.order_state_id = :state_id)
                       or :state_id is null or :state_id <= 0)
             group by order_date_alias)
         
@@ -88,33 +91,40 @@ public interface AdminPanelStatisticsRepository extends JpaRepository<Visitor,Lo
             """)
     Page<Object[]> getOrdersByDaysBetweenDates(@Param("date_lo") Date dateLo, @Param("date_hi") Date dateHi, @Param("state_id") Integer orderStateId, Pageable pageable);
 
-    // Конверсия из просмотра в заказ в определённой категории и диапазоне дат – стоит переделать в Criteria API, потому что если сюда добавить
-    // ещё и выборку по статусу
+    /**
+     * Конверсия из просмотра в заказ в определённой категории вместе с дочерними и диапазоне дат - из сводки заказов по дням.
+     * Если категория не задана, то по всем заказам
+     * */
     @Query(nativeQuery = true, value = """
     with date_and_orders_count as (select
-        DATE(o.order_date) as order_date_alias,
-        coalesce((select sum(dv.count) from daily_visits dv where dv.date = order_date_alias), 0) as visits,
-        COUNT(DISTINCT(o.id)) as orders_amount,
-        SUM(o.sum) as orders_sum
-    from orders o left join (orders_products_variants opv join
-                                (variants_product vp join products p on vp.product_id = p.id)
-                                on opv.product_variant_id = vp.id)
-            on o.id = opv.order_id
-    where o.order_date between :date_lo and :date_hi and
-        ((:category_id is not null and :category_id > 0 and p.category_id = :category_id)
-            or :category_id is null or :category_id <= 0 ) and
-        ((:state_id > 0 and o.order_state_id = :state_id) or :state_id <= 0)
-    group by order_date_alias, visits),
+        r.date as order_date_alias,
+        cast(sum(r.orders_count) as signed) as orders_amount,
+        sum(r.orders_sum) as orders_sum
+    from daily_orders_rollup r
+    where r.date between DATE(:date_lo) and DATE(:date_hi) and
+        (((:category_id is null or :category_id <= 0) and r.category_id = 0) or
+            (:category_id > 0 and r.category_id = :category_id)) and
+        ((:state_id > 0 and r.order_state_id = :state_id) or :state_id <= 0)
+    group by order_date_alias),
+    
+    visits_by_dates as (select
+        dv.date,
+        sum(dv.count) as visits
+    from daily_visits dv
+    where dv.date between DATE(:date_lo) and DATE(:date_hi)
+    group by dv.date),
     
     doc_with_cvr as (
      select
-         *,
          doc.order_date_alias as order_date,
-         coalesce(doc.orders_amount/visits, 0) as cvr
+         doc.orders_amount,
+         coalesce(vbd.visits, 0) as visits,
+         coalesce(doc.orders_amount/vbd.visits, 0) as cvr,
+         doc.orders_sum
      from
-         date_and_orders_count doc
+         date_and_orders_count doc left join visits_by_dates vbd on vbd.date = doc.order_date_alias
      where
-         doc.visits >= doc.orders_amount)
+         coalesce(vbd.visits, 0) >= doc.orders_amount)
   
      select
          dwc.order_date,
@@ -128,30 +138,44 @@ public interface AdminPanelStatisticsRepository extends JpaRepository<Visitor,Lo
 """)
     Page<Object[]> getCvrToOrdersBetweenDatesInCategory(@Param("date_lo") Date dateLo, @Param("date_hi") Date dateHi, @Param("category_id") Long categoryId,
                                                         @Param("state_id") int orderStateId, Pageable pageable);
+
+    /**
+     * Конверсия из просмотра в заказ в списке категорий, не образующем одно поддерево (категории повторяющейся категории).
+     * Считается по заказам, а не по сводке: заказ с товарами нескольких категорий списка учитывается один раз
+     * */
     @Query(nativeQuery = true, value = """
     with date_and_orders_count as (select
         DATE(o.order_date) as order_date_alias,
-        coalesce((select sum(dv.count) from daily_visits dv where dv.date = order_date_alias), 0) as visits,
-        COUNT(DISTINCT(o.id)) as orders_amount,
+        COUNT(o.id) as orders_amount,
         SUM(o.sum) as orders_sum
-    from orders o left join (orders_products_variants opv join
-                                (variants_product vp join products p on vp.product_id = p.id)
-                                on opv.product_variant_id = vp.id)
-            on o.id = opv.order_id
+    from orders o
     where o.order_date between :date_lo and :date_hi and
-        p.category_id in :category_ids and
+        exists (select 1
+                from orders_products_variants opv join
+                    (variants_product vp join products p on vp.product_id = p.id)
+                    on opv.product_variant_id = vp.id
+                where opv.order_id = o.id and p.category_id in :category_ids) and
         ((:state_id > 0 and o.order_state_id = :state_id) or :state_id <= 0)
-    group by order_date_alias, visits),
+    group by order_date_alias),
+    
+    visits_by_dates as (select
+        dv.date,
+        sum(dv.count) as visits
+    from daily_visits dv
+    where dv.date between DATE(:date_lo) and DATE(:date_hi)
+    group by dv.date),
     
        doc_with_cvr as (
         select
-            *,
             doc.order_date_alias as order_date,
-            coalesce(doc.orders_amount/visits, 0) as cvr
+            doc.orders_amount,
+            coalesce(vbd.visits, 0) as visits,
+            coalesce(doc.orders_amount/vbd.visits, 0) as cvr,
+            doc.orders_sum
         from
-            date_and_orders_count doc
+            date_and_orders_count doc left join visits_by_dates vbd on vbd.date = doc.order_date_alias
         where
-            doc.visits >= doc.orders_amount)
+            coalesce(vbd.visits, 0) >= doc.orders_amount)
   
         select
             dwc.order_date,
@@ -361,6 +385,154 @@ public interface AdminPanelStatisticsRepository extends JpaRepository<Visitor,Lo
     Page<Object[]> getCategoriesViewsFrequency(Pageable pageable);
 
 
+    //region Сводка заказов по дням
+    /**
+     * Прибавить к сводке вклад заказов (sign = 1) или вычесть его (sign = -1): в строку всех заказов дня
+     * и в строку каждой категории, в поддереве которой есть товары заказа. Заказ учитывается в строке категории
+     * один раз с полной суммой, кол-во единиц - только по товарам поддерева
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+    insert into daily_orders_rollup
+        (date, category_id, order_state_id, orders_count, orders_sum, units_count)
+    with recursive category_ancestors (category_id, ancestor_id) as (
+        select distinct p.category_id, p.category_id
+        from orders_products_variants opv join variants_product vp on opv.product_variant_id = vp.id
+                                          join products p on vp.product_id = p.id
+        where opv.order_id in :orders_ids and p.category_id is not null
+        union
+        select ca.category_id, c.parent_id
+        from category_ancestors ca join categories c on c.id = ca.ancestor_id
+        where c.parent_id is not null)
+    select
+        d.order_day, d.category_id, d.order_state_id, d.orders_count, d.orders_sum, d.units_count
+    from (select
+              DATE(o.order_date) as order_day,
+              0 as category_id,
+              o.order_state_id,
+              :sign * count(o.id) as orders_count,
+              :sign * coalesce(sum(o.sum), 0) as orders_sum,
+              :sign * coalesce(sum(o.general_products_amount), 0) as units_count
+          from orders o
+          where o.id in :orders_ids
+          group by DATE(o.order_date), o.order_state_id
+          union all
+          select
+              oc.order_day,
+              oc.ancestor_id,
+              oc.order_state_id,
+              :sign * count(oc.order_id),
+              :sign * sum(oc.order_sum),
+              :sign * sum(oc.units)
+          from (select
+                    DATE(o.order_date) as order_day,
+                    ca.ancestor_id,
+                    o.order_state_id,
+                    o.id as order_id,
+                    coalesce(o.sum, 0) as order_sum,
+                    coalesce(sum(opv.products_count), 0) as units
+                from orders o join orders_products_variants opv on o.id = opv.order_id
+                              join variants_product vp on opv.product_variant_id = vp.id
+                              join products p on vp.product_id = p.id
+                              join category_ancestors ca on ca.category_id = p.category_id
+                where o.id in :orders_ids
+                group by order_day, ca.ancestor_id, o.order_state_id, o.id, o.sum) as oc
+          group by oc.order_day, oc.ancestor_id, oc.order_state_id) as d
+    on duplicate key update
+        orders_count = daily_orders_rollup.orders_count + d.orders_count,
+        orders_sum = daily_orders_rollup.orders_sum + d.orders_sum,
+        units_count = daily_orders_rollup.units_count + d.units_count
+    """)
+    void addOrdersToRollup(@Param("orders_ids") List<Long> ordersIds, @Param("sign") int sign);
+
+    /**
+     * Удалить сводку за дни. Удаление блокирует строки и промежутки ключа за эти дни,
+     * поэтому параллельное изменение сводки заказом за те же дни ожидает завершения пересчёта
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+    delete from daily_orders_rollup
+    where date between DATE(:date_lo) and DATE(:date_hi)
+    """)
+    void deleteRollupBetweenDates(@Param("date_lo") Date dateLo, @Param("date_hi") Date dateHi);
+
+    /**
+     * Вычислить сводку за дни по таблице заказов: дата, категория (0 - все заказы), статус, кол-во заказов, сумма, кол-во единиц.
+     * Обычное (неблокирующее) чтение - не ожидает заказов, которые оформляются в этот момент
+     * */
+    @Query(nativeQuery = true, value = """
+    with recursive category_ancestors (category_id, ancestor_id) as (
+        select c.id, c.id
+        from categories c
+        union
+        select ca.category_id, c.parent_id
+        from category_ancestors ca join categories c on c.id = ca.ancestor_id
+        where c.parent_id is not null)
+    select
+        DATE(o.order_date),
+        0,
+        o.order_state_id,
+        count(o.id),
+        coalesce(sum(o.sum), 0),
+        coalesce(sum(o.general_products_amount), 0)
+    from orders o
+    where o.order_date >= DATE(:date_lo) and o.order_date < DATE(:date_hi) + interval 1 day
+    group by DATE(o.order_date), o.order_state_id
+    union all
+    select
+        oc.order_day,
+        oc.ancestor_id,
+        oc.order_state_id,
+        count(oc.order_id),
+        sum(oc.order_sum),
+        sum(oc.units)
+    from (select
+              DATE(o.order_date) as order_day,
+              ca.ancestor_id,
+              o.order_state_id,
+              o.id as order_id,
+              coalesce(o.sum, 0) as order_sum,
+              coalesce(sum(opv.products_count), 0) as units
+          from orders o join orders_products_variants opv on o.id = opv.order_id
+                        join variants_product vp on opv.product_variant_id = vp.id
+                        join products p on vp.product_id = p.id
+                        join category_ancestors ca on ca.category_id = p.category_id
+          where o.order_date >= DATE(:date_lo) and o.order_date < DATE(:date_hi) + interval 1 day
+          group by order_day, ca.ancestor_id, o.order_state_id, o.id, o.sum) as oc
+    group by oc.order_day, oc.ancestor_id, oc.order_state_id
+    """)
+    List<Object[]> getRollupRowsBetweenDates(@Param("date_lo") Date dateLo, @Param("date_hi") Date dateHi);
+
+    // Добавить строки сводки. rows - JSON массив объектов {date, categoryId, stateId, ordersCount, ordersSum, unitsCount}
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+    insert into daily_orders_rollup
+        (date, category_id, order_state_id, orders_count, orders_sum, units_count)
+    select
+        r.date, r.category_id, r.order_state_id, r.orders_count, r.orders_sum, r.units_count
+    from json_table(:rows, '$[*]' columns (
+        date date path '$.date',
+        category_id bigint path '$.categoryId',
+        order_state_id int path '$.stateId',
+        orders_count int path '$.ordersCount',
+        orders_sum bigint path '$.ordersSum',
+        units_count int path '$.unitsCount'
+    )) as r
+    """)
+    void insertRollupRows(@Param("rows") String rowsJson);
+
+    // Кол-во строк сводки
+    @Query(nativeQuery = true, value = "select count(*) from daily_orders_rollup")
+    long countRollupRows();
+
+    // Даты первого и последнего заказов
+    @Query(nativeQuery = true, value = "select min(o.order_date), max(o.order_date) from orders o")
+    List<Object[]> getOrdersDatesBorders();
+    //endregion
+
     //Получить maxId
     @Query(value = """
     select
@@ -67,4 +67,14 @@ public interface BasketsAndProductVariantsRepository extends JpaRepository<Baske
     @Transactional
     void deleteBasketAndProductVariantsByBasketId(long basketId);
 
+    // Удалить заданные варианты товаров из всех корзин
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    delete from baskets_products_variants
+    where product_variant_id in :pv_ids_list
+    """)
+    void deleteByPvIds(@Param("pv_ids_list") List<Long> pvIds);
+
 }
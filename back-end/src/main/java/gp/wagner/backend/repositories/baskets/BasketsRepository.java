@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
+import java.util.List;
 
 @Repository
 public interface BasketsRepository extends JpaRepository<Basket,Long> {
@@ -48,5 +49,55 @@ public interface BasketsRepository extends JpaRepository<Basket,Long> {
     """)
     long getMaxId();
 
+    /**
+     * Пересчитать суммы всех корзин с заданными вариантами товаров. Учитываются только не скрытые и не удалённые варианты,
+     * сумма корзины без таких вариантов не изменяется. Корзина помечается наибольшей версией цен своих вариантов
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update baskets b join (
+        select
+            bpv.basket_id,
+            sum(if(vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false),
+                   coalesce(vp.effective_price, vp.price) * bpv.products_count, 0)) as new_sum,
+            sum(vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false)) as shown_amount,
+            max(vp.pricing_version) as pricing_version
+        from baskets_products_variants bpv join variants_product vp on bpv.product_variant_id = vp.id
+        where bpv.basket_id in (select changed.basket_id from baskets_products_variants changed
+                                where changed.product_variant_id in :pv_ids_list)
+        group by bpv.basket_id
+    ) recounted on b.id = recounted.basket_id
+    set b.sum = if(recounted.shown_amount > 0, recounted.new_sum, b.sum),
+        b.pricing_version = greatest(b.pricing_version, recounted.pricing_version)
+    """)
+    void recountSumsByPvIds(@Param("pv_ids_list") List<Long> pvIds);
+
+    /**
+     * Пересчитать сумму корзины, если версия цен одного из её вариантов больше версии суммы. Условие проверяется
+     * в самом запросе: если параллельный запрос уже пересчитал корзину, она не изменяется
+     * @return кол-во изменённых корзин
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update baskets b join (
+        select
+            bpv.basket_id,
+            sum(if(vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false),
+                   coalesce(vp.effective_price, vp.price) * bpv.products_count, 0)) as new_sum,
+            sum(vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false)) as shown_amount,
+            max(vp.pricing_version) as pricing_version
+        from baskets_products_variants bpv join variants_product vp on bpv.product_variant_id = vp.id
+        where bpv.basket_id = :basket_id
+        group by bpv.basket_id
+    ) recounted on b.id = recounted.basket_id
+    set b.sum = if(recounted.shown_amount > 0, recounted.new_sum, b.sum),
+        b.pricing_version = recounted.pricing_version
+    where b.pricing_version < recounted.pricing_version
+    """)
+    int refreshStaleSum(@Param("basket_id") long basketId);
 
 }
@@ -185,4 +185,14 @@ public interface CategoriesRepository extends JpaRepository<Category,Long> {
     """)
     Optional<List<Long>> getCategoriesIdsByRepeatingCategoriesIds(@Param("ids_list") List<Long> repeatingCategoryIdsList);
 
+    // Выборка всех категорий для построения дерева категорий в памяти: [id, parent_id, название, id повторяющейся категории]
+    @Query(value = """
+        select
+            c.id, parent.id, coalesce(c.name, rc.name), rc.id
+        from
+            Category c left join c.parentCategory parent
+            left join c.repeatingCategory rc
+    """)
+    List<Object[]> getCategoriesForTree();
+
 }
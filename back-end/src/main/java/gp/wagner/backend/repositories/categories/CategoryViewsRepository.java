@@ -26,6 +26,36 @@ public interface CategoryViewsRepository extends JpaRepository<CategoryViews,Lon
     """)
     int insertCategoryView(@Param("visitor") long visitorId, @Param("category") long categoryId, @Param("count") int count);
 
+    /**
+     * Пакетное добавление или увеличение счётчиков просмотров категорий одним запросом.
+     * Просмотры передаются JSON массивом объектов {visitorId, categoryId, count, viewedAt}.
+     * Как и в CategoryViews.goneMoreThan, счётчик существующей записи увеличивается, только если с последнего изменения прошло >= 24ч.
+     * Просмотры удалённых посетителей и категорий пропускаются, чтобы они не срывали сохранение всего пакета
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+        insert into categories_views
+        (visitor_id, category_id, count, updated_at)
+        select
+            v.visitor_id, v.category_id, v.count, v.viewed_at
+        from json_table(:views, '$[*]' columns (
+            visitor_id bigint path '$.visitorId',
+            category_id bigint path '$.categoryId',
+            count int path '$.count',
+            viewed_at datetime path '$.viewedAt'
+        )) as v
+            join visitors on visitors.id = v.visitor_id
+            join categories on categories.id = v.category_id
+        on duplicate key update
+            count = if(categories_views.updated_at is null or categories_views.updated_at <= v.viewed_at - interval 24 hour,
+                       categories_views.count + v.count, categories_views.count),
+            updated_at = if(categories_views.updated_at is null or categories_views.updated_at <= v.viewed_at - interval 24 hour,
+                            v.viewed_at, categories_views.updated_at)
+    """)
+    int upsertCategoryViews(@Param("views") String viewsJson);
+
     //Изменение кол-ва просмотров категории
     @Transactional
     @Modifying
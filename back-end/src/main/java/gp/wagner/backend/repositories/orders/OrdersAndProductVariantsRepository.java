@@ -27,6 +27,26 @@ public interface OrdersAndProductVariantsRepository extends JpaRepository<OrderA
     """)
     void insertOrderAndProductVariant(@Param("product_variant") int productVariantId, @Param("order") long orderId, @Param("count") int productsCount);
 
+    /**
+     * Добавление всех позиций заказа одним запросом.
+     * Позиции передаются JSON массивом объектов {productVariantId, count, unitPrice}
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+        insert into orders_products_variants
+        (product_variant_id, order_id, products_count, unit_price)
+        select
+            v.product_variant_id, :order_id, v.products_count, v.unit_price
+        from json_table(:order_lines, '$[*]' columns (
+            product_variant_id bigint path '$.productVariantId',
+            products_count int path '$.count',
+            unit_price int path '$.unitPrice'
+        )) as v
+    """)
+    int insertOrderLines(@Param("order_id") long orderId, @Param("order_lines") String orderLinesJson);
+
     //Изменение справочника заказа
     @Transactional
     @Query(nativeQuery = true,
@@ -68,6 +88,57 @@ public interface OrdersAndProductVariantsRepository extends JpaRepository<OrderA
     """)
     List<OrderAndProductVariant> findOrdersAndPvByIdListOrCodesList(@Param("ids_list") List<Long> ids);
 
+    /**
+     * Зафиксировать текущую цену со скидкой в записях заказов с заданным статусом, содержащих заданные варианты товаров
+     * @param onlyVisible изменять только записи с не скрытыми и не удалёнными вариантами
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update orders_products_variants opv
+        join (select distinct changed.order_id
+              from orders_products_variants changed join orders o on changed.order_id = o.id
+              where o.order_state_id = :state and changed.product_variant_id in :pv_ids_list) changed_orders
+            on opv.order_id = changed_orders.order_id
+        join variants_product vp on opv.product_variant_id = vp.id
+    set opv.unit_price = coalesce(vp.effective_price, vp.price)
+    where :only_visible = false or (vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false))
+    """)
+    void updateUnitPricesByPvIds(@Param("pv_ids_list") List<Long> pvIds, @Param("state") int orderStateId,
+                                 @Param("only_visible") boolean onlyVisible);
+
+    /**
+     * Зафиксировать текущую цену со скидкой в записях заказов с заданным статусом, сумма которых рассчитана
+     * по устаревшей версии цен. Выполняется перед OrdersRepository.refreshStaleSums с тем же условием
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update orders_products_variants opv
+        join (select o.id as order_id
+              from orders o join orders_products_variants stale on stale.order_id = o.id
+                            join variants_product stale_vp on stale.product_variant_id = stale_vp.id
+              where o.id in :orders_ids and o.order_state_id = :state
+              group by o.id, o.pricing_version
+              having o.pricing_version < max(stale_vp.pricing_version)) stale_orders
+            on opv.order_id = stale_orders.order_id
+        join variants_product vp on opv.product_variant_id = vp.id
+    set opv.unit_price = coalesce(vp.effective_price, vp.price)
+    """)
+    void refreshStaleUnitPrices(@Param("orders_ids") List<Long> ordersIds, @Param("state") int orderStateId);
+
+    // Удалить заданные варианты товаров из заказов с заданным статусом
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    delete opv from orders_products_variants opv join orders o on opv.order_id = o.id
+    where o.order_state_id = :state and opv.product_variant_id in :pv_ids_list
+    """)
+    void deleteByPvIdsAndState(@Param("pv_ids_list") List<Long> pvIds, @Param("state") int orderStateId);
+
     //Получить maxId
     @Query(value = """
     select
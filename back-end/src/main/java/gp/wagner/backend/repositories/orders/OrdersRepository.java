@@ -94,29 +94,37 @@ public interface OrdersRepository extends JpaRepository<Order,Long> {
     """)
     List<Order> getOrdersByEmail(@Param("email") String email);
 
-    // Статистика по заказам по дням
+    // Статистика по заказам по дням - из сводки заказов по дням
     @Query(nativeQuery = true, value = """
     with date_and_orders_count as (
         select
-            DATE(o.order_date) as order_date_alias,
-            coalesce((select sum(dv.count)
-                      from daily_visits dv where dv.date = order_date_alias group by dv.date), 0) as visits,
-            COUNT(DISTINCT(o.id)) as orders_amount,
-            SUM(o.sum) as orders_sum
-        from orders o
-        where o.order_date between :date_lo and :date_hi and
-                ((:state is not null and :state > 0 and o.order_state_id = :state)
+            r.date as order_date_alias,
+            cast(sum(r.orders_count) as signed) as orders_amount,
+            sum(r.orders_sum) as orders_sum
+        from daily_orders_rollup r
+        where r.category_id = 0 and
+              r.date between DATE(:date_lo) and DATE(:date_hi) and
+                ((:state is not null and :state > 0 and r.order_state_id = :state)
                       or :state is null or :state <= 0)
-        group by order_date_alias, visits),
+        group by order_date_alias),
+       visits_by_dates as (
+        select
+            dv.date,
+            sum(dv.count) as visits
+        from daily_visits dv
+        where dv.date between DATE(:date_lo) and DATE(:date_hi)
+        group by dv.date),
        doc_with_cvr as (
         select
-            *,
             doc.order_date_alias as order_date,
-            coalesce(doc.orders_amount/visits, 0) as cvr
+            doc.orders_amount,
+            coalesce(vbd.visits, 0) as visits,
+            coalesce(doc.orders_amount/vbd.visits, 0) as cvr,
+            doc.orders_sum
         from
-            date_and_orders_count doc
+            date_and_orders_count doc left join visits_by_dates vbd on vbd.date = doc.order_date_alias
         where
-            doc.visits >= doc.orders_amount)
+            coalesce(vbd.visits, 0) >= doc.orders_amount)
   
         select
             dwc.order_date,
@@ -138,6 +146,109 @@ public interface OrdersRepository extends JpaRepository<Order,Long> {
     """)
     long getMaxId();
 
+    // Наибольший код заказа, выданный экземпляром с заданным номером (см. OrderCodesServiceImpl)
+    @Query(nativeQuery = true,
+    value = """
+    select
+        max(o.code)
+    from
+        orders o
+    where o.code div :sequence_size mod :nodes = :node_id
+    """)
+    Optional<Long> getMaxCodeByNode(@Param("node_id") int nodeId, @Param("nodes") int nodes, @Param("sequence_size") int sequenceSize);
+
+    // Даты заказов с заданным статусом, содержащих заданные варианты товаров
+    @Query(value = """
+    select distinct
+        o.orderDate
+    from
+        Order o
+    where o.orderState.id = :state and
+          o.id in (select opv.order.id from OrderAndProductVariant opv where opv.productVariant.id in :pv_ids_list)
+    """)
+    List<Date> getOrdersDatesByPvIds(@Param("pv_ids_list") List<Long> pvIds, @Param("state") int orderStateId);
+
+    // Id заказов с заданным статусом, содержащих заданные варианты товаров
+    @Query(value = """
+    select o.id from Order o
+    where o.orderState.id = :state and
+          o.id in (select opv.order.id from OrderAndProductVariant opv where opv.productVariant.id in :pv_ids_list)
+    """)
+    List<Long> getOrdersIdsByPvIds(@Param("pv_ids_list") List<Long> pvIds, @Param("state") int orderStateId);
+
+    // Id всех заказов, содержащих варианты заданного товара
+    @Query(value = """
+    select o.id from Order o
+    where o.id in (select opv.order.id from OrderAndProductVariant opv where opv.productVariant.product.id = :product_id)
+    """)
+    List<Long> getOrdersIdsByProductId(@Param("product_id") long productId);
+
+    /**
+     * Пересчитать суммы и кол-во единиц товаров в заказах с заданным статусом, содержащих заданные варианты товаров.
+     * Сумма заказа без подходящих записей не изменяется. Заказ помечается наибольшей версией цен своих вариантов
+     * @param onlyVisible учитывать только не скрытые и не удалённые варианты
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update orders o join (
+        select
+            opv.order_id,
+            sum(if(:only_visible = false or (vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false)),
+                   coalesce(vp.effective_price, vp.price) * opv.products_count, 0)) as new_sum,
+            sum(if(:only_visible = false or (vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false)),
+                   opv.products_count, 0)) as new_products_amount,
+            sum(:only_visible = false or (vp.show_variant = true and (vp.is_deleted is null or vp.is_deleted = false))) as counted_amount,
+            max(vp.pricing_version) as pricing_version
+        from orders_products_variants opv join variants_product vp on opv.product_variant_id = vp.id
+        where opv.order_id in (select changed.order_id from orders_products_variants changed
+                               where changed.product_variant_id in :pv_ids_list)
+        group by opv.order_id
+    ) recounted on o.id = recounted.order_id
+    set o.sum = if(recounted.counted_amount > 0, recounted.new_sum, o.sum),
+        o.general_products_amount = if(recounted.counted_amount > 0, recounted.new_products_amount, o.general_products_amount),
+        o.pricing_version = greatest(o.pricing_version, recounted.pricing_version)
+    where o.order_state_id = :state
+    """)
+    void recountSumsByPvIds(@Param("pv_ids_list") List<Long> pvIds, @Param("state") int orderStateId,
+                            @Param("only_visible") boolean onlyVisible);
+
+    // Заблокировать заказы с заданным статусом перед пересчётом устаревших сумм. Возвращает id заблокированных заказов
+    @Query(nativeQuery = true,
+    value = """
+    select o.id from orders o
+    where o.id in :orders_ids and o.order_state_id = :state
+    order by o.id
+    for update
+    """)
+    List<Long> lockOrdersByIds(@Param("orders_ids") List<Long> ordersIds, @Param("state") int orderStateId);
+
+    /**
+     * Пересчитать суммы заказов с заданным статусом, если версия цен одного из вариантов заказа больше версии суммы.
+     * Условие проверяется в самом запросе: заказ, уже пересчитанный параллельным запросом, не изменяется
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+    update orders o join (
+        select
+            opv.order_id,
+            sum(coalesce(vp.effective_price, vp.price) * opv.products_count) as new_sum,
+            sum(opv.products_count) as new_products_amount,
+            max(vp.pricing_version) as pricing_version
+        from orders_products_variants opv join variants_product vp on opv.product_variant_id = vp.id
+        where opv.order_id in :orders_ids
+        group by opv.order_id
+    ) recounted on o.id = recounted.order_id
+    set o.sum = recounted.new_sum,
+        o.general_products_amount = recounted.new_products_amount,
+        o.pricing_version = recounted.pricing_version
+    where o.order_state_id = :state and o.pricing_version < recounted.pricing_version
+    """)
+    void refreshStaleSums(@Param("orders_ids") List<Long> ordersIds, @Param("state") int orderStateId);
+
     @Query(value = """
     select
         order.orderState
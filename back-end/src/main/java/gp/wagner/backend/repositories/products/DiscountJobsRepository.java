@@ -0,0 +1,96 @@
+package gp.wagner.backend.repositories.products;
+
+import gp.wagner.backend.domain.entities.products.DiscountJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface DiscountJobsRepository extends JpaRepository<DiscountJob,Long> {
+
+    // Захватить задачу для выполнения: ожидающую, либо выполняемую, которая не обновлялась дольше заданного времени.
+    // Возвращает 0, если задачу уже выполняет другой экземпляр приложения
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update discount_jobs set
+            state = 'running',
+            heartbeat_at = now(),
+            lease_token = :lease_token
+        where id = :id and
+              (state = 'queued' or (state = 'running' and (heartbeat_at is null or heartbeat_at < now() - interval :lease_seconds second)))
+    """)
+    int claimJob(@Param("id") long jobId, @Param("lease_seconds") int leaseSeconds, @Param("lease_token") String leaseToken);
+
+    /**
+     * Продлить аренду задачи перед обработкой части. Строка задачи остаётся заблокированной до конца транзакции части,
+     * поэтому другой экземпляр не захватит задачу, пока часть не будет зафиксирована
+     * @return 0 - задача завершена либо захвачена другим экземпляром
+     * */
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update discount_jobs set
+            heartbeat_at = now()
+        where id = :id and state = 'running' and lease_token = :lease_token
+    """)
+    int renewLease(@Param("id") long jobId, @Param("lease_token") String leaseToken);
+
+    // Сохранить ход выполнения после обработки части, если задача всё ещё арендована с заданным маркером
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update discount_jobs set
+            state = :state,
+            last_variant_id = :last_variant_id,
+            processed_amount = processed_amount + :processed,
+            heartbeat_at = now(),
+            finished_at = :finished_at
+        where id = :id and state = 'running' and lease_token = :lease_token
+    """)
+    int saveChunkProgress(@Param("id") long jobId, @Param("lease_token") String leaseToken, @Param("state") String state,
+                          @Param("last_variant_id") long lastVariantId, @Param("processed") int processed,
+                          @Param("finished_at") Date finishedAt);
+
+    // Завершить задачу с ошибкой, если она всё ещё арендована с заданным маркером
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update discount_jobs set
+            state = 'failed',
+            error = :error,
+            finished_at = now()
+        where id = :id and state = 'running' and lease_token = :lease_token
+    """)
+    int failJob(@Param("id") long jobId, @Param("lease_token") String leaseToken, @Param("error") String error);
+
+    // Id незавершённых задач в порядке создания
+    @Query(nativeQuery = true,
+            value = """
+        select j.id from discount_jobs j
+        where j.state in ('queued', 'running')
+        order by j.id
+    """)
+    List<Long> getUnfinishedJobsIds();
+
+    // Id задач, которые можно захватить: ожидающих и выполняемых с истёкшей арендой
+    @Query(nativeQuery = true,
+            value = """
+        select j.id from discount_jobs j
+        where j.state = 'queued' or
+              (j.state = 'running' and (j.heartbeat_at is null or j.heartbeat_at < now() - interval :lease_seconds second))
+        order by j.id
+    """)
+    List<Long> getClaimableJobsIds(@Param("lease_seconds") int leaseSeconds);
+
+    // Задачи скидки, начиная с последней
+    List<DiscountJob> findDiscountJobsByDiscountIdOrderByIdDesc(long discountId);
+}
@@ -90,4 +90,47 @@ public interface DiscountsRepository extends JpaRepository<Discount,Long> {
     """)
     Optional<List<ProductVariant>> getVariantsForProductsWithDiscount(@Param("discount_id") long discountId, @Param("products_ids_list") List<Long> productsIds);
 
+    // Текущая версия цен вариантов товаров
+    @Query(nativeQuery = true,
+            value = """
+        select v.version from pricing_version v where v.id = 1
+    """)
+    Long getPricingVersion();
+
+    // Увеличить версию цен. Новой версией помечаются варианты, цены которых пересчитываются в той же транзакции
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update pricing_version set version = version + 1 where id = 1
+    """)
+    void incrementPricingVersion();
+
+    // Сроки действия активных скидок с ограниченным сроком: [id, начало, окончание]
+    @Query(nativeQuery = true,
+            value = """
+        select d.id, d.starts_at, d.ends_at
+        from discounts d
+        where d.is_active = true and d.is_infinite = false and d.ends_at is not null
+    """)
+    List<Object[]> getActiveDiscountsTerms();
+
+    // Id действующих скидок, срок которых начался, но начало которого ещё не отмечено применённым к ценам вариантов
+    @Query(nativeQuery = true,
+            value = """
+        select d.id
+        from discounts d
+        where d.is_active = true and d.is_infinite = false and d.starts_at <= now() and d.ends_at > now() and
+              (d.start_applied_at is null or d.start_applied_at < d.starts_at)
+    """)
+    List<Long> getStartedNotAppliedDiscountsIds();
+
+    // Отметить начало срока действия скидки применённым к ценам вариантов
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update discounts set start_applied_at = now() where id = :id
+    """)
+    void markStartApplied(@Param("id") long discountId);
+
 }
@@ -49,15 +49,24 @@ public interface ProductVariantsRepository extends JpaRepository<ProductVariant,
 """)
     List<ProductVariant> findProductVariantsByIdList(@Param("pv_id_list") List<Long> pvIdsList);
 
+    // Получение вариантов товаров по их id вместе с товарами и скидками одним запросом - для оформления заказа
+    @Query(value = """
+     select
+     pv
+     from ProductVariant pv join fetch pv.product left join fetch pv.discount
+     where pv.id in :pv_id_list
+""")
+    List<ProductVariant> findProductVariantsWithProductsByIdList(@Param("pv_id_list") List<Long> pvIdsList);
+
     //Добавление вариантов товара
     @Transactional
     @Modifying
     @Query(nativeQuery = true,
             value = """
         insert into variants_product
-        (product_id, preview_img, title, price)
+        (product_id, preview_img, title, price, effective_price)
         values
-        (:productId, :previewImg, :title, :price)
+        (:productId, :previewImg, :title, :price, :price)
     """)
     int insertProductVariant(@Param("productId") long productId, @Param("previewImg") String previewImg,
                               @Param("title") String title, @Param("price") int price );
@@ -155,6 +164,33 @@ public interface ProductVariantsRepository extends JpaRepository<ProductVariant,
     """)
     long getMaxId();
 
+    /**
+     * Пересчитать цены вариантов с учётом скидки (так же, как в ProductVariant.getPriceWithDiscount) по списку id вариантов.
+     * Варианты, цена которых изменилась, помечаются текущей версией цен из pricing_version
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+            value = """
+        update variants_product vp join (
+            select distinct
+                pv.id,
+                pv.effective_price as old_price,
+                case
+                    when d.id is not null and d.is_active = true and d.percentage <= 0.999 and
+                         (d.is_infinite = true or ((d.starts_at is null or d.starts_at <= now()) and d.ends_at > now()))
+                        then pv.price - floor(pv.price * d.percentage + 0.5)
+                    else pv.price
+                end as new_price
+            from variants_product pv left join discounts d on pv.discount_id = d.id
+            where pv.id in :pv_ids_list
+        ) recounted on vp.id = recounted.id
+        set vp.pricing_version = if(recounted.old_price <=> recounted.new_price, vp.pricing_version,
+                                    (select v.version from pricing_version v where v.id = 1)),
+            vp.effective_price = recounted.new_price
+    """)
+    void recountEffectivePrices(@Param("pv_ids_list") List<Long> pvIds);
+
     // Получить список id вариантов в списке категорий
     @Query(nativeQuery = true,
             value = """
@@ -176,6 +212,63 @@ public interface ProductVariantsRepository extends JpaRepository<ProductVariant,
     """)
     List<Long> getProductsVariantsIdsByCategoriesIdsListAndDiscount(@Param("discount_id") long discountId, @Param("categories_ids_list") List<Long> categoriesIds);
 
+    /**
+     * Очередная часть id вариантов для фоновой задачи изменения скидки: варианты товаров из списка категорий по возрастанию id
+     * @param remove true - варианты, использующие скидку, false - варианты, у которых скидка ещё не задана
+     * @param afterId id последнего обработанного варианта
+     * */
+    @Query(nativeQuery = true,
+            value = """
+        select
+        pv.id
+        from variants_product pv join products p on pv.product_id = p.id
+        where p.category_id in :categories_ids_list and pv.id > :after_id and
+              ((:remove = true and pv.discount_id = :discount_id) or
+               (:remove = false and (pv.discount_id is null or pv.discount_id != :discount_id)))
+        order by pv.id
+        limit :limit
+    """)
+    List<Long> getVariantsIdsChunkByCategories(@Param("discount_id") long discountId, @Param("categories_ids_list") List<Long> categoriesIds,
+                                               @Param("remove") boolean remove, @Param("after_id") long afterId, @Param("limit") int limit);
+
+    // Кол-во вариантов для фоновой задачи изменения скидки по списку категорий
+    @Query(nativeQuery = true,
+            value = """
+        select
+        count(pv.id)
+        from variants_product pv join products p on pv.product_id = p.id
+        where p.category_id in :categories_ids_list and
+              ((:remove = true and pv.discount_id = :discount_id) or
+               (:remove = false and (pv.discount_id is null or pv.discount_id != :discount_id)))
+    """)
+    int countVariantsForDiscountByCategories(@Param("discount_id") long discountId, @Param("categories_ids_list") List<Long> categoriesIds,
+                                             @Param("remove") boolean remove);
+
+    // Очередная часть id вариантов заданных товаров, у которых скидка ещё не задана, по возрастанию id
+    @Query(nativeQuery = true,
+            value = """
+        select
+        pv.id
+        from variants_product pv
+        where pv.product_id in :products_ids_list and pv.id > :after_id and
+              (pv.discount_id is null or pv.discount_id != :discount_id)
+        order by pv.id
+        limit :limit
+    """)
+    List<Long> getVariantsIdsChunkByProducts(@Param("discount_id") long discountId, @Param("products_ids_list") List<Long> productsIds,
+                                             @Param("after_id") long afterId, @Param("limit") int limit);
+
+    // Кол-во вариантов заданных товаров, у которых скидка ещё не задана
+    @Query(nativeQuery = true,
+            value = """
+        select
+        count(pv.id)
+        from variants_product pv
+        where pv.product_id in :products_ids_list and
+              (pv.discount_id is null or pv.discount_id != :discount_id)
+    """)
+    int countVariantsForDiscountByProducts(@Param("discount_id") long discountId, @Param("products_ids_list") List<Long> productsIds);
+
     // Получить список id вариантов использующих заданную скидку
     @Query(nativeQuery = true,
             value = """
@@ -205,4 +298,51 @@ public interface ProductVariantsRepository extends JpaRepository<ProductVariant,
     """)
     List<ProductVariant> getProductsVariantsWithDiscountInIdsList(@Param("discount_id") long discountId, @Param("pv_ids_list") List<Long> pvIds);
 
+    // Варианты для карточек товаров: [product_id, id, price, preview_img, % скидки, скидка активна, скидка бессрочная, начало скидки, окончание скидки].
+    // Базовый вариант товара - вариант с минимальным id, поэтому варианты упорядочены
+    @Query(value = """
+        select
+            pv.product.id, pv.id, pv.price, pv.previewImg, d.percentage, d.isActive, d.isInfinite, d.startsAt, d.endsAt
+        from ProductVariant pv left join pv.discount d
+        order by pv.product.id, pv.id
+    """)
+    List<Object[]> getVariantsForCards();
+
+    // Те же данные вариантов, но только для заданных товаров
+    @Query(value = """
+        select
+            pv.product.id, pv.id, pv.price, pv.previewImg, d.percentage, d.isActive, d.isInfinite, d.startsAt, d.endsAt
+        from ProductVariant pv left join pv.discount d
+        where pv.product.id in :products_ids
+        order by pv.product.id, pv.id
+    """)
+    List<Object[]> getVariantsForCardsByProductsIds(@Param("products_ids") List<Long> productsIds);
+
+    // Наименования выводимых вариантов для подсказок поиска: [id товара, наименование варианта]
+    @Query(value = """
+        select
+            pv.product.id, pv.title
+        from ProductVariant pv
+        where pv.isDeleted = false and pv.showVariant = true
+    """)
+    List<Object[]> getVariantsTitlesForSuggestions();
+
+    // Наименования выводимых вариантов заданных товаров
+    @Query(value = """
+        select
+            pv.product.id, pv.title
+        from ProductVariant pv
+        where pv.product.id in :products_ids and pv.isDeleted = false and pv.showVariant = true
+    """)
+    List<Object[]> getVariantsTitlesForSuggestionsByProductsIds(@Param("products_ids") List<Long> productsIds);
+
+    // Получить id товаров по списку id их вариантов
+    @Query(value = """
+        select distinct
+            pv.product.id
+        from ProductVariant pv
+        where pv.id in :pv_ids_list
+    """)
+    List<Long> getProductsIdsByVariantsIds(@Param("pv_ids_list") List<Long> pvIds);
+
 }
@@ -28,6 +28,36 @@ public interface ProductViewsRepository extends JpaRepository<ProductViews,Long>
     """)
     int insertProductView(@Param("visitor") long visitorId, @Param("product") long productId, @Param("count") int count);
 
+    /**
+     * Пакетное добавление или увеличение счётчиков просмотров одним запросом.
+     * Просмотры передаются JSON массивом объектов {visitorId, productId, count, viewedAt}.
+     * Как и в ProductViews.goneMoreThan, счётчик существующей записи увеличивается, только если с последнего изменения прошло >= 24ч.
+     * Записи с несуществующими посетителями или товарами не добавляются - остальные записи пакета сохраняются
+     * */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true,
+    value = """
+        insert into products_views
+        (visitor_id, product_id, count, updated_at)
+        select
+            v.visitor_id, v.product_id, v.count, v.viewed_at
+        from json_table(:views, '$[*]' columns (
+            visitor_id bigint path '$.visitorId',
+            product_id bigint path '$.productId',
+            count int path '$.count',
+            viewed_at datetime path '$.viewedAt'
+        )) as v
+            join visitors on visitors.id = v.visitor_id
+            join products on products.id = v.product_id
+        on duplicate key update
+            count = if(products_views.updated_at is null or products_views.updated_at <= v.viewed_at - interval 24 hour,
+                       products_views.count + v.count, products_views.count),
+            updated_at = if(products_views.updated_at is null or products_views.updated_at <= v.viewed_at - interval 24 hour,
+                            v.viewed_at, products_views.updated_at)
+    """)
+    int upsertProductViews(@Param("views") String viewsJson);
+
     //Изменение посетителя
     @Transactional
     @Modifying
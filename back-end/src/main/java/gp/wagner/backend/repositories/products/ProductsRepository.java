@@ -12,6 +12,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductsRepository extends JpaRepository<Product,Long>, JpaSpecificationExecutor<Product> {
@@ -47,15 +48,15 @@ public interface ProductsRepository extends JpaRepository<Product,Long>, JpaSpec
                        @Param("categoryId") long categoryId, @Param("producerId") long producerId,
                        @Param("isAvailable") int isAvailable, @Param("showProduct") int showProduct);
 
-    //Получить все неудалённые товары
+    //Получить id всех неудалённых товаров
     @Query(value = """
     select
-        p
+        p.id
     from
         Product p
     where p.isDeleted is null or p.isDeleted = false
 """)
-    Page<Product> findAllNotDeleted(Pageable pageable);
+    Page<Long> findAllNotDeletedIds(Pageable pageable);
 
     @Query(value = """
 
@@ -80,33 +81,37 @@ public interface ProductsRepository extends JpaRepository<Product,Long>, JpaSpec
     """)
     long getMaxId();
 
-    //Найти все товары в определённой категории
+    //Id категории товара
+    @Query(value = "select p.category.id from Product p where p.id = :product_id")
+    Optional<Long> getCategoryIdById(@Param("product_id") long productId);
+
+    //Найти id всех товаров в определённой категории
     @Query(value = """
     select
-    p
+    p.id
     from Product p
     where p.category.id in :category_id_list and
         p.isDeleted = false and p.showProduct = true
 """)
-    Page<Product> findProductsByCategoryId(@Param("category_id_list") List<Long> categoryId, Pageable pageable);
+    Page<Long> findProductsIdsByCategoryId(@Param("category_id_list") List<Long> categoryId, Pageable pageable);
 
-    //Найти все товары определённого производителя
+    //Найти id всех товаров определённого производителя
     @Query(value = """
     select
-    p
+    p.id
     from Product p
     where p.producer.id = :producer_id and
         p.isDeleted = false and p.showProduct = true
 """)
-    Page<Product> findProductsByProducerId(@Param("producer_id") Long producerId, Pageable pageable);
+    Page<Long> findProductsIdsByProducerId(@Param("producer_id") Long producerId, Pageable pageable);
 
     //Найти диапазон цен для товаров в определённой категории
     @Query(nativeQuery = true, value = """
     select
-        MIN(vp.price) as min_set,
-        MAX(vp.price) as max_set
+        MIN(p.min_price) as min_set,
+        MAX(p.max_price) as max_set
     from
-        products p join variants_product vp on  p.id = vp.product_id
+        products p
     where
         (:category_id > 0 and p.category_id = :category_id and p.is_deleted = false and p.show_product = true)
             or :category_id <= 0
@@ -116,46 +121,112 @@ public interface ProductsRepository extends JpaRepository<Product,Long>, JpaSpec
     //Найти диапазон цен для товаров в нескольких категориях
     @Query(nativeQuery = true, value = """
     select
-        MIN(vp.price) as min_set,
-        MAX(vp.price) as max_set
+        MIN(p.min_price) as min_set,
+        MAX(p.max_price) as max_set
     from
-        products p join variants_product vp on  p.id = vp.product_id
+        products p
     where
         p.category_id in :category_ids_list and p.is_deleted = false and p.show_product = true
     """)
     Object getMinMaxPriceInCategories(@Param("category_ids_list") List<Long> categoriesIds);
 
-    //Найти диапазон цен для товаров в товарах с заданным ключевым словом
+    //Найти диапазон цен для товаров, найденных по ключевому слову в поисковом индексе
     @Query(nativeQuery = true, value = """
     select
-        MIN(pv.price) as min_set,
-        MAX(pv.price) as max_set
+        MIN(p.min_price) as min_set,
+        MAX(p.max_price) as max_set
     from
-        products p join variants_product pv on p.id = pv.product_id
-                   join producers producer on p.producer_id = producer.id
+        products p
     where
-        p.product_name like concat('%',:keyword,'%') or
-        p.description like concat('%',:keyword,'%') or
-        pv.title like concat('%',:keyword,'%') or
-        producer.producer_name like concat('%',:keyword,'%')
-        and p.is_deleted = false and p.show_product = true
+        p.id in :products_ids and p.is_deleted = false and p.show_product = true
     """)
-    Object getMinMaxPriceByKeyword(@Param("keyword") String keyword);
+    Object getMinMaxPriceInProducts(@Param("products_ids") List<Long> productsIds);
 
-    // Базовый полнотекстовый поиск товаров - примитивный через like без транслитераций и неправильной раскладки
-    @Query(value = """
-    select distinct
-    p
+    // Пересчитать цену базового варианта и диапазон цен вариантов для товаров, к которым относятся заданные варианты
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+    update products p set
+        p.base_price = (select vp.effective_price from variants_product vp
+                        where vp.id = (select min(vp_min.id) from variants_product vp_min where vp_min.product_id = p.id)),
+        p.min_price = (select min(vp.effective_price) from variants_product vp where vp.product_id = p.id),
+        p.max_price = (select max(vp.effective_price) from variants_product vp where vp.product_id = p.id)
+    where
+        p.id in (select vp_changed.product_id from variants_product vp_changed where vp_changed.id in :pv_ids_list)
+    """)
+    void recountPricesByVariantsIds(@Param("pv_ids_list") List<Long> pvIds);
+
+    // Выборка id, производителя и цен выводимых вариантов (с учётом скидки) для выводимых товаров в категориях - для подсчёта значений фильтра.
+    // Строка на каждый вариант, у товара без выводимых вариантов - одна строка с пустой ценой
+    @Query(nativeQuery = true, value = """
+    select
+        p.id,
+        producer.producer_name,
+        vp.effective_price
     from
-        Product p join ProductVariant pv on pv.product = p
+        products p join producers producer on p.producer_id = producer.id
+        left join variants_product vp on vp.product_id = p.id and vp.show_variant = true and vp.is_deleted = false
     where
-        p.name like concat('%',:keyword,'%') or
-        p.description like concat('%',:keyword,'%') or
-        pv.title like concat('%',:keyword,'%') or
-        p.producer.producerName like concat('%',:keyword,'%')
-        and p.isDeleted = false and p.showProduct = true
-""")
-    Page<Product> findProductsByKeyword(@Param("keyword") String key, Pageable pageable);
+        p.category_id in :category_ids_list and
+        p.min_price is not null and
+        (p.is_deleted is null or p.is_deleted = false) and
+        (p.show_product is null or p.show_product = true)
+    """)
+    List<Object[]> getProducersAndVariantsPricesInCategories(@Param("category_ids_list") List<Long> categoriesIds);
 
+    // Данные для карточек товаров: [id, name, category_id, category_name, producer_id, producer_name, is_available, show_product,
+    // id статистики оценок, средняя оценка, кол-во оценок]
+    @Query(value = """
+    select
+        p.id, p.name, c.id, coalesce(c.name, rc.name), producer.id, producer.producerName, p.isAvailable, p.showProduct,
+        rs.id, rs.avg, rs.amount
+    from
+        Product p join p.category c left join c.repeatingCategory rc
+        join p.producer producer
+        left join p.ratingStatistics rs
+    """)
+    List<Object[]> getProductsForCards();
+
+    // Те же данные для карточек, но для товаров из заданного списка
+    @Query(value = """
+    select
+        p.id, p.name, c.id, coalesce(c.name, rc.name), producer.id, producer.producerName, p.isAvailable, p.showProduct,
+        rs.id, rs.avg, rs.amount
+    from
+        Product p join p.category c left join c.repeatingCategory rc
+        join p.producer producer
+        left join p.ratingStatistics rs
+    where p.id in :products_ids
+    """)
+    List<Object[]> getProductsForCardsByIds(@Param("products_ids") List<Long> productsIds);
+
+    // Данные выводимых товаров для подсказок поиска: [id товара, наименование, id производителя, производитель, id категории]
+    @Query(value = """
+    select
+        p.id, p.name, producer.id, producer.producerName, p.category.id
+    from
+        Product p join p.producer producer
+    where p.isDeleted = false and p.showProduct = true
+    """)
+    List<Object[]> getProductsForSuggestions();
+
+    // Те же данные для подсказок, но для товаров из заданного списка
+    @Query(value = """
+    select
+        p.id, p.name, producer.id, producer.producerName, p.category.id
+    from
+        Product p join p.producer producer
+    where p.id in :products_ids and p.isDeleted = false and p.showProduct = true
+    """)
+    List<Object[]> getProductsForSuggestionsByIds(@Param("products_ids") List<Long> productsIds);
+
+    // Кол-во товаров в каждой категории (без учёта дочерних): [category_id, кол-во]
+    @Query(value = """
+    select
+        p.category.id, count(p.id)
+    from Product p
+    group by p.category.id
+    """)
+    List<Object[]> countProductsGroupedByCategories();
 
 }
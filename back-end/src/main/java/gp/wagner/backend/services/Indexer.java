@@ -1,27 +1,123 @@
 package gp.wagner.backend.services;
 
 
-
+import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.infrastructure.ServicesUtils;
+import gp.wagner.backend.middleware.Services;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnit;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.work.SearchIndexingPlan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-@Transactional
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// Индексация товаров для полнотекстового поиска (hibernate search + lucene)
 @Component
 public class Indexer {
 
-   /* @PersistenceContext
-    private EntityManager entityManager;*/
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${spring.search.reindex-on-startup:true}")
+    private boolean reindexOnStartup;
+
+    // Выполняющаяся полная индексация. null - индексация не запускалась
+    private CompletableFuture<?> massIndexing;
+
+    // Полная индексация при запуске - товары могли измениться в БД, пока приложение было остановлено
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (reindexOnStartup)
+            initIndexing();
+    }
+
+    /**
+     * Полная индексация товаров в фоне. Индекс предварительно не очищается, поэтому поиск продолжает работать
+     * по прежним документам, пока они не будут перезаписаны
+     * @return завершение индексации. Если индексация уже выполняется, то повторно она не запускается
+     * */
+    public synchronized CompletableFuture<?> initIndexing() {
+
+        if (massIndexing != null && !massIndexing.isDone())
+            return massIndexing;
+
+        massIndexing = Search.mapping(entityManagerFactory)
+                .scope(Product.class)
+                .massIndexer()
+                .purgeAllOnStart(false)
+                .start()
+                .toCompletableFuture()
+                .whenComplete((result, exception) -> {
+                    if (exception != null)
+                        System.out.println("\n\tИндексация товаров завершилась с ошибкой: " + exception.getMessage() + "\n");
+                });
 
+        return massIndexing;
+    }
+
+    // Выполняется ли сейчас полная индексация
+    public synchronized boolean isIndexing() {
+        return massIndexing != null && !massIndexing.isDone();
+    }
 
-    //Инициализация hibernate search
-    @Transactional
-    public void initIndexing() throws InterruptedException {
+    /**
+     * Переиндексировать заданные товары после фиксации текущей транзакции (либо сразу, если транзакции нет).
+     * До фиксации отдельная транзакция не видит изменений текущей: вновь добавленные товары были бы удалены из индекса,
+     * а изменённые - проиндексированы по прежним данным
+     * */
+    public void reindexProductsAfterCommit(List<Long> productsIds) {
 
-       /* SearchSession searchSession = Search.session((EntityManager) entityManager);
-        searchSession.massIndexer(Product.class).startAndWait();*/
+        if (productsIds == null || productsIds.isEmpty())
+            return;
 
+        List<Long> ids = List.copyOf(productsIds);
 
+        ServicesUtils.runAfterCommit(() -> Services.indexer.reindexProducts(ids));
     }
 
+    /**
+     * Переиндексировать заданные товары. Нужно после изменений через нативные запросы, которые hibernate search не отслеживает.
+     * Выполняется в отдельной транзакции, чтобы товары были прочитаны из БД заново, а не взяты из текущего контекста.
+     * Вызывается после фиксации изменений - см. reindexProductsAfterCommit
+     * */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void reindexProducts(List<Long> productsIds) {
+
+        if (productsIds == null || productsIds.isEmpty())
+            return;
+
+        List<Product> products = entityManager
+                .createQuery("select p from Product p where p.id in :ids", Product.class)
+                .setParameter("ids", productsIds)
+                .getResultList();
+
+        SearchIndexingPlan indexingPlan = Search.session(entityManager).indexingPlan();
+
+        Set<Long> foundIds = new HashSet<>();
+
+        for (Product product : products) {
+            indexingPlan.addOrUpdate(product);
+            foundIds.add(product.getId());
+        }
+
+        // Товары, которых больше нет в БД, удаляются из индекса
+        for (Long productId : productsIds)
+            if (!foundIds.contains(productId))
+                indexingPlan.purge(Product.class, productId, null);
+    }
 
 }
@@ -1,9 +1,14 @@
 package gp.wagner.backend.services.implementations;
 
 import gp.wagner.backend.domain.dto.request.crud.AttributeValueDto;
+import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
+import gp.wagner.backend.domain.dto.response.filters.FacetValueRespDto;
+import gp.wagner.backend.domain.dto.response.filters.FilterFacetsRespDto;
 import gp.wagner.backend.domain.dto.response.filters.FilterValuesDto;
 import gp.wagner.backend.domain.entities.eav.AttributeValue;
 import gp.wagner.backend.infrastructure.ServicesUtils;
+import gp.wagner.backend.infrastructure.SimpleTuple;
+import gp.wagner.backend.infrastructure.Utils;
 import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.repositories.AttributeValuesRepository;
 import gp.wagner.backend.services.interfaces.AttributeValuesService;
@@ -11,6 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 //Сервис для работы  с таблицей значений характеристик и её сущностью
 @Service
@@ -27,8 +33,13 @@ public class AttributeValuesServiceImpl implements AttributeValuesService {
     @Override
     //Добавление записи
     public void save(AttributeValue attributeValue){
-        if(attributeValue != null)
-            attributeValuesRepository.saveAndFlush(attributeValue);
+        if(attributeValue == null)
+            return;
+
+        attributeValuesRepository.saveAndFlush(attributeValue);
+
+        // Синхронизировать индекс фильтров после фиксации транзакции
+        ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.indexValue(attributeValue));
     }
 
     //Сохранение характеристик для конкретного товара из DTO характеристик
@@ -41,13 +52,20 @@ public class AttributeValuesServiceImpl implements AttributeValuesService {
                 dto.getIntValue(), dto.getFloatValue(), dto.getDoubleValue(),
                 //bool значение нужно передавать  виде int, но и при этом проверять на null
                 dto.getBoolValue() == null ? null : dto.getBoolValue() ? 1 : 0, dto.getDateValue());
+
+        // Id добавленной записи не возвращается, поэтому значения товара перечитываются в индекс целиком
+        ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.reindexProduct(productId));
     }
 
     @Override
     //Изменение записи
     public void update(AttributeValue attributeValue){
-        if(attributeValue != null)
-            attributeValuesRepository.saveAndFlush(attributeValue);
+        if(attributeValue == null)
+            return;
+
+        attributeValuesRepository.saveAndFlush(attributeValue);
+
+        ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.indexValue(attributeValue));
     }
 
     ///Изменение конкретной характеристики, получаем DTO
@@ -59,16 +77,26 @@ public class AttributeValuesServiceImpl implements AttributeValuesService {
         attributeValuesRepository.updateValue(dto.getId(), dto.getStrValue(),
                 dto.getIntValue(), dto.getFloatValue(), dto.getDoubleValue(),
                 dto.getBoolValue() == null ? null : dto.getBoolValue() ? 1 : 0, dto.getDateValue());
+
+        ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.updateValue(dto.getId(), dto.getIntValue(), dto.getStrValue()));
     }
 
     public void delete(AttributeValue attributeValue) {
-        if (attributeValue != null)
-            attributeValuesRepository.delete(attributeValue);
+        if (attributeValue == null)
+            return;
+
+        attributeValuesRepository.delete(attributeValue);
+
+        if (attributeValue.getId() != null)
+            ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.removeValues(List.of(attributeValue.getId())));
     }
 
     public void deleteById(Long id) {
-        if (id != null)
-            attributeValuesRepository.deleteById(id);
+        if (id == null)
+            return;
+
+        attributeValuesRepository.deleteById(id);
+        ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.removeValues(List.of(id)));
     }
 
     @Override
@@ -81,6 +109,8 @@ public class AttributeValuesServiceImpl implements AttributeValuesService {
         if (idList == null)
             return;
         attributeValuesRepository.deleteByIdIn(idList);
+
+        ServicesUtils.runAfterCommit(() -> Services.productsFilterIndexService.removeValues(idList));
     }
 
 
@@ -174,21 +204,177 @@ public class AttributeValuesServiceImpl implements AttributeValuesService {
         return ServicesUtils.createAndSortFiltersMap(dtoList);
     }
 
+    // Подсчитать общее кол-во товаров и кол-во товаров для каждого значения фильтра за одно вычисление.
+    // Для каждой характеристики подсчёт ведётся без учёта фильтров по ней самой, чтобы другие значения той же характеристики не выглядели пустыми
+    @Override
+    public FilterFacetsRespDto getFacetsByFilter(ProductFilterDtoContainer container, long categoryId, String priceRange, int priceBucketsCount) {
+
+        // Получить все дочерние категории
+        List<Long> childCategoriesIds = ServicesUtils.getChildCategoriesList(categoryId);
+
+        // Производитель и цены выводимых вариантов для каждого выводимого товара в категориях.
+        // Товар подходит под диапазон цен, если в него входит цена хотя бы одного варианта - как при выборке товаров и подсчёте countData
+        Map<Long, SimpleTuple<String, List<Integer>>> productsInfo = Services.productsService.getProducersAndVariantsPricesInCategories(childCategoriesIds);
+
+        BitSet categoryBits = new BitSet();
+        productsInfo.keySet().forEach(id -> categoryBits.set(Math.toIntExact(id)));
+
+        // Товары заданных производителей
+        List<String> producersNames = container != null ? container.getProducersNames() : null;
+        Set<String> producersNamesSet = producersNames == null ? Set.of() : producersNames.stream()
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+
+        BitSet producersBits = producersNamesSet.isEmpty() ? null : filterProducts(productsInfo,
+                info -> info.getValue1() != null && producersNamesSet.contains(info.getValue1().toLowerCase()));
+
+        // Товары с ценой хотя бы одного варианта в заданном диапазоне
+        SimpleTuple<Integer, Integer> priceTuple = Utils.parseTwoNumericValues(priceRange);
+
+        BitSet priceBits = priceTuple == null ? null : filterProducts(productsInfo,
+                info -> info.getValue2().stream().anyMatch(price -> price >= priceTuple.getValue1() && price <= priceTuple.getValue2()));
+
+        // Товары, подходящие под фильтры по характеристикам
+        BitSet attributesBits = Services.productsFilterIndexService.findProductsBitmap(container);
+
+        BitSet totalBits = intersect(categoryBits, producersBits, priceBits, attributesBits);
+
+        Map<String, List<FacetValueRespDto>> facets = new LinkedHashMap<>();
+
+        //region Значения характеристик - в том же порядке, что и при выборке значений фильтра по категории
+        Map<String, List<FilterValuesDto<Integer>>> attributesValues = ServicesUtils.createAndSortFiltersMap(
+                createDtoList(attributeValuesRepository.getAttributeValuesByCategories(childCategoriesIds)));
+
+        // Множества товаров без учёта фильтров по определённой характеристике
+        Map<Integer, BitSet> attributesBaseBits = new HashMap<>();
+
+        for (Map.Entry<String, List<FilterValuesDto<Integer>>> entry : attributesValues.entrySet()) {
+
+            List<FacetValueRespDto> facetValues = new ArrayList<>();
+
+            for (FilterValuesDto<Integer> valueDto : entry.getValue()) {
+
+                Integer attributeId = valueDto.getAttributeId();
+
+                if (attributeId == null || (valueDto.getValue() == null && (valueDto.getMin() == null || valueDto.getMax() == null)))
+                    continue;
+
+                BitSet baseBits = attributesBaseBits.computeIfAbsent(attributeId,
+                        id -> intersect(categoryBits, producersBits, priceBits,
+                                Services.productsFilterIndexService.findProductsBitmap(container, id.longValue())));
+
+                BitSet valueBits = valueDto.getValue() != null ?
+                        Services.productsFilterIndexService.getAttributeValueBitmap(attributeId, valueDto.getValue()) :
+                        Services.productsFilterIndexService.getAttributeRangeBitmap(attributeId, valueDto.getMin(), valueDto.getMax());
+
+                valueBits.and(baseBits);
+
+                facetValues.add(new FacetValueRespDto(attributeId, valueDto.getValue(), valueDto.getMin(), valueDto.getMax(),
+                        valueBits.cardinality()));
+            }
+
+            facets.put(entry.getKey(), facetValues);
+        }
+        //endregion
+
+        //region Производители - без учёта фильтра по производителям
+        BitSet producersBaseBits = intersect(categoryBits, priceBits, attributesBits);
+
+        Map<String, Long> countsByProducer = producersBaseBits.stream()
+                .mapToObj(id -> productsInfo.get((long) id).getValue1())
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(String::toLowerCase, Collectors.counting()));
+
+        facets.put("Производители", Services.producersService.getProducersInCategories(childCategoriesIds)
+                .stream()
+                .map(producer -> new FacetValueRespDto(null, producer.getProducerName(), null, null,
+                        countsByProducer.getOrDefault(producer.getProducerName().toLowerCase(), 0L)))
+                .toList());
+        //endregion
+
+        //region Диапазоны цен - без учёта фильтра по цене
+        FilterValuesDto<Integer> pricesRange = Services.productsService.getPricesRangeInCategory(categoryId);
+
+        if (pricesRange != null && pricesRange.getMin() != null && priceBucketsCount > 0) {
+
+            int min = pricesRange.getMin();
+            int max = pricesRange.getMax();
+
+            // Ширина одного диапазона цен
+            int bucketWidth = Math.max(1, (int) Math.ceil((max - min + 1) / (double) priceBucketsCount));
+            int bucketsCount = Math.min(priceBucketsCount, (max - min) / bucketWidth + 1);
+
+            long[] bucketsCounts = new long[bucketsCount];
+
+            // Товар учитывается в каждом диапазоне, в который входит цена хотя бы одного его варианта -
+            // кол-во совпадает с выборкой товаров по этому диапазону цен
+            intersect(categoryBits, producersBits, attributesBits).stream().forEach(id -> productsInfo.get((long) id).getValue2()
+                    .stream()
+                    .mapToInt(price -> Math.max(0, Math.min(bucketsCount - 1, (price - min) / bucketWidth)))
+                    .distinct()
+                    .forEach(bucket -> bucketsCounts[bucket]++));
+
+            List<FacetValueRespDto> priceFacets = new ArrayList<>();
+
+            for (int i = 0; i < bucketsCount; i++) {
+                int bucketMin = min + i * bucketWidth;
+                int bucketMax = i == bucketsCount - 1 ? max : bucketMin + bucketWidth - 1;
+
+                priceFacets.add(new FacetValueRespDto(null, null, bucketMin, bucketMax, bucketsCounts[i]));
+            }
+
+            facets.put(pricesRange.getAttributeName(), priceFacets);
+        }
+        //endregion
+
+        return new FilterFacetsRespDto(totalBits.cardinality(), facets);
+    }
+
+    // Выбрать товары, сведения о которых удовлетворяют условию
+    private static BitSet filterProducts(Map<Long, SimpleTuple<String, List<Integer>>> productsInfo,
+                                         java.util.function.Predicate<SimpleTuple<String, List<Integer>>> predicate){
+        BitSet result = new BitSet();
+
+        productsInfo.forEach((id, info) -> {
+            if (predicate.test(info))
+                result.set(Math.toIntExact(id));
+        });
+
+        return result;
+    }
+
+    // Пересечение базового множества товаров с заданными ограничениями. null - ограничение не задано
+    private static BitSet intersect(BitSet base, BitSet... restrictions){
+        BitSet result = (BitSet) base.clone();
+
+        for (BitSet restriction : restrictions)
+            if (restriction != null)
+                result.and(restriction);
+
+        return result;
+    }
+
     //Можно так же ещё сделать выборку значений фильтраци по ключевому слову.
     // То есть искать во всех репозитория так же и по ключевому слову в товаре
     @Override
     public java.util.Map<String, List<FilterValuesDto<Integer>>> getFiltersValuesByKeyword(String keyword) {
 
-        List<FilterValuesDto<Integer>> dtoList = createDtoList(attributeValuesRepository.getAttributeValuesByKeyword(keyword));
+        // Товары, найденные по ключевому слову в поисковом индексе
+        List<Long> productsIds = Services.searchService.findProductsIdsByKeyword(keyword);
 
-        // Добавить диапазон цен по конкретным категориям
-        FilterValuesDto<Integer> pricesRange = Services.productsService.getPricesRangeByKeyword(keyword);
+        if (productsIds.isEmpty())
+            return ServicesUtils.createAndSortFiltersMap(new ArrayList<>());
+
+        List<FilterValuesDto<Integer>> dtoList = createDtoList(attributeValuesRepository.getAttributeValuesInProducts(productsIds));
+
+        // Добавить диапазон цен найденных товаров
+        FilterValuesDto<Integer> pricesRange = Services.productsService.getPricesRangeInProducts(productsIds);
 
         if (pricesRange != null && pricesRange.getMin() != null)
             dtoList.add(pricesRange);
 
         // Список производителей
-        dtoList.addAll(Services.producersService.getProducersByProductKeyword(keyword)
+        dtoList.addAll(Services.producersService.getProducersOfProducts(productsIds)
                 .stream()
                 .map(element -> new FilterValuesDto<Integer>(0,"Producers",element.getProducerName(), null, null))
                 .toList());
@@ -8,6 +8,7 @@ import gp.wagner.backend.domain.entities.users.User;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.infrastructure.Constants;
 import gp.wagner.backend.infrastructure.ServicesUtils;
+import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.repositories.baskets.BasketsAndProductVariantsRepository;
 import gp.wagner.backend.repositories.baskets.BasketsRepository;
 import gp.wagner.backend.repositories.UsersRepository;
@@ -98,6 +99,7 @@ public class BasketsServiceImpl implements BasketsService {
     }
 
     @Override
+    @Transactional
     public Basket create(BasketRequestDto dto) {
 
         if (dto == null || /*dto.getUserId() == null ||*/ dto.getProductVariantIdAndCount() == null)
@@ -135,6 +137,7 @@ public class BasketsServiceImpl implements BasketsService {
     }
 
     @Override
+    @Transactional
     public Basket insertProductVariants(BasketRequestDto basketDto) {
         if (basketDto.getProductVariantIdAndCount() == null)
             throw new ApiException("Варианты товаров для добавления в корзину не заданы!");
@@ -156,7 +159,7 @@ public class BasketsServiceImpl implements BasketsService {
             if (user == null)
                 throw new ApiException("Не удалось создать корзину, пользователь не задан");
 
-            foundBasket = basketsRepository.saveAndFlush(new Basket(null, null, user, null, 0));
+            foundBasket = basketsRepository.saveAndFlush(new Basket(null, null, user, null, 0, 0));
 
         }
 
@@ -201,6 +204,7 @@ public class BasketsServiceImpl implements BasketsService {
         }
 
         basket.setSum(totalSum);
+        basket.setPricingVersion(ServicesUtils.getPricingVersion(pvMap.values()));
 
         update(basket);
 
@@ -209,6 +213,7 @@ public class BasketsServiceImpl implements BasketsService {
 
     // Изменение кол-ва вариантов товаров для корзины
     @Override
+    @Transactional
     public Basket updateProductVariantCounter(Long pvId, int pvCount){
 
         Basket basket = getForAuthenticatedUser();
@@ -317,6 +322,10 @@ public class BasketsServiceImpl implements BasketsService {
         basket.setSum(totalSum);
         //basket.setBasketAndPVList(newBpvList);
 
+        // В пустой корзине сумма рассчитана целиком по текущим ценам вариантов
+        if (oldBpvMap.isEmpty())
+            basket.setPricingVersion(ServicesUtils.getPricingVersion(pvMap.values()));
+
         update(basket);
 
         return newBpvList;
@@ -472,22 +481,8 @@ public class BasketsServiceImpl implements BasketsService {
     @Override
     public void updateBasketsOnPvPriceChanged(ProductVariant changedPv) {
 
-        // Найти корзины с текущим вариантом для изменения суммы
-        List<Basket> basketsToChange = ServicesUtils.findBasketByProdVariantIdAndUserIdGeneric(changedPv.getId(), null, null, entityManager ,List.class);
-
-        if (basketsToChange == null)
-            return;
-
-        // Найти записи BasketAndProductVariant для получения кол-ва единиц определённого варианта
-        List<BasketAndProductVariant> bpvListAll = bpvRepository.findBasketAndProductVariantsByBasketIdsList(basketsToChange.stream().map(Basket::getId).toList());
-
-        // Для каждой корзин изменить общую сумму
-
-        ServicesUtils.countSumInBaskets(basketsToChange, bpvListAll);
-
-        // Сохранить изменения в корзинах
-        basketsRepository.saveAllAndFlush(basketsToChange);
-
+        // Для каждой корзины с изменённым вариантом пересчитать общую сумму
+        basketsRepository.recountSumsByPvIds(List.of(changedPv.getId()));
     }
 
     // Обработка скрытия одного или нескольких товаров
@@ -497,71 +492,24 @@ public class BasketsServiceImpl implements BasketsService {
         if (pv == null && changedPvList == null)
             return;
 
-        List<Long> changedPvIdsList = changedPvList != null ? changedPvList.stream().map(ProductVariant::getId).toList() : null;
-        Long singlePvId = pv != null ? pv.getId() : null;
-
-        // Найти корзины с текущим вариантом для пересчёта суммы
-        List<Basket> basketsToChange = ServicesUtils.findBasketByProdVariantIdAndUserIdGeneric(singlePvId, changedPvIdsList,
-                null, entityManager ,List.class);
-
-        if (basketsToChange == null)
-            return;
-
-        // Найти записи BasketAndProductVariant для всех изменяемых корзин
-        List<BasketAndProductVariant> bpvListAll = bpvRepository.findBasketAndProductVariantsByBasketIdsList(basketsToChange.stream().map(Basket::getId).toList());
-
-        bpvListAll = bpvListAll.stream()
-                .filter(e -> e.getProductVariant().getShowVariant())
-                .toList();
-
-        // Для каждой корзины обновить сумму
-        ServicesUtils.countSumInBaskets(basketsToChange, bpvListAll);
-
-        // Сохранить изменения в корзинах
-        basketsRepository.saveAllAndFlush(basketsToChange);
-
+        // Скрытые и удалённые варианты в сумме не учитываются
+        basketsRepository.recountSumsByPvIds(toPvIds(pv, changedPvList));
     }
 
     @Override
+    @Transactional
     public void updateBasketsOnPvDelete(ProductVariant pv, List<ProductVariant> deletedPvList) {
         if (pv == null && deletedPvList == null)
             return;
 
-        List<Long> deletededPvIdsList = deletedPvList != null ? deletedPvList.stream().map(ProductVariant::getId).toList() : null;
-        Long singlePvId = pv != null ? pv.getId() : null;
-
-        // Найти корзины с текущим вариантом для пересчёта суммы
-        List<Basket> basketsToChange = ServicesUtils.findBasketByProdVariantIdAndUserIdGeneric(singlePvId, deletededPvIdsList,
-                null, entityManager ,List.class);
+        List<Long> deletedPvIds = toPvIds(pv, deletedPvList);
 
-        if (basketsToChange == null)
+        if (deletedPvIds.isEmpty())
             return;
 
-        // Найти записи BasketAndProductVariant для всех изменяемых корзин
-        List<BasketAndProductVariant> bpvListAll = bpvRepository.findBasketAndProductVariantsByBasketIdsList(basketsToChange.stream().map(Basket::getId).toList());
-
-        // Получить элементы необходимые для удаления
-        List<BasketAndProductVariant> bpvListToDelete = bpvListAll.stream()
-                .filter(
-                        e -> pv != null ?
-                        e.getProductVariant().getId().equals(pv.getId()) :
-                        deletedPvList.stream()
-                                .anyMatch(pv_elem -> pv_elem.getId().equals(e.getProductVariant().getId()))
-                )
-                .toList();
-
-        // Найти записи с не удаляемыми вариантами
-        bpvListAll = bpvListAll.stream()
-                .filter(e -> e.getProductVariant().getIsDeleted() == null || !e.getProductVariant().getIsDeleted())
-                .toList();
-        ServicesUtils.countSumInBaskets(basketsToChange, bpvListAll);
-
-        // Сохранить корзины
-        basketsRepository.saveAllAndFlush(basketsToChange);
-
-        // Удалить записи из таблицы многие ко многим
-        bpvRepository.deleteAll(bpvListToDelete);
-
+        // Пересчитать суммы корзин без удалённых вариантов, затем удалить записи из таблицы многие ко многим
+        basketsRepository.recountSumsByPvIds(deletedPvIds);
+        bpvRepository.deleteByPvIds(deletedPvIds);
     }
 
     // Изменение корзин при восстановлении товаров из скрытия
@@ -573,24 +521,22 @@ public class BasketsServiceImpl implements BasketsService {
 
     @Override
     public void recountSumsForVariants(Long pvId, List<Long> pvIdList) {
-        // Найти корзины с текущим вариантом для изменения суммы
-        List<Basket> basketsToChange = ServicesUtils.findBasketByProdVariantIdAndUserIdGeneric(pvId, pvIdList, null, entityManager , List.class);
 
-        if (basketsToChange == null)
-            return;
-
-        // Найти записи BasketAndProductVariant для получения кол-ва единиц определённого варианта
-        List<BasketAndProductVariant> bpvListAll = bpvRepository.findBasketAndProductVariantsByBasketIdsList(basketsToChange.stream().map(Basket::getId).toList());
+        List<Long> pvIds = pvId != null ? List.of(pvId) : pvIdList;
 
-        // Для каждой корзин изменить общую сумму
+        if (pvIds == null || pvIds.isEmpty())
+            return;
 
-        ServicesUtils.countSumInBaskets(basketsToChange, bpvListAll);
+        // Для каждой корзины с заданными вариантами изменить общую сумму
+        basketsRepository.recountSumsByPvIds(pvIds);
+    }
 
-        // Сохранить изменения в корзинах
-        basketsRepository.saveAllAndFlush(basketsToChange);
+    private static List<Long> toPvIds(ProductVariant pv, List<ProductVariant> pvList){
+        return pv != null ? List.of(pv.getId()) : pvList.stream().map(ProductVariant::getId).toList();
     }
 
     @Override
+    @Transactional
     public Basket getForAuthenticatedUser() {
 
         User user = ServicesUtils.getUserFromSecurityContext(SecurityContextHolder.getContext());
@@ -607,9 +553,10 @@ public class BasketsServiceImpl implements BasketsService {
     }
 
     @Override
+    @Transactional
     public Basket getById(Long id) {
 
-        Basket basket = basketsRepository.findById(id).orElse(null);
+        Basket basket = refreshStaleSum(basketsRepository.findById(id).orElse(null));
 
         // Текущий авторизированный пользователь
         User user = ServicesUtils.getUserFromSecurityContext(SecurityContextHolder.getContext());
@@ -625,6 +572,7 @@ public class BasketsServiceImpl implements BasketsService {
 
     //Выборка корзин для конкретного пользователя
     @Override
+    @Transactional
     public Basket getByUserId(long userId) {
 
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
@@ -641,7 +589,24 @@ public class BasketsServiceImpl implements BasketsService {
 
         List<Basket> baskets = entityManager.createQuery(query).getResultList();
 
-        return baskets.size() > 0 ? baskets.get(0) : null;
+        return baskets.size() > 0 ? refreshStaleSum(baskets.get(0)) : null;
+    }
+
+    /**
+     * Пересчитать сумму корзины, если цены её вариантов изменились после расчёта суммы.
+     * Пересчитывается условным запросом - корзина, уже пересчитанная параллельным запросом, не изменяется.
+     * Вызывается в транзакции
+     * */
+    private Basket refreshStaleSum(Basket basket){
+
+        if (basket == null || basket.getBasketAndPVList() == null || basket.getBasketAndPVList().stream()
+                .noneMatch(bpv -> bpv.getProductVariant().getPricingVersion() > basket.getPricingVersion()))
+            return basket;
+
+        basketsRepository.refreshStaleSum(basket.getId());
+        entityManager.refresh(basket);
+
+        return basket;
     }
 
     @Override
@@ -677,6 +642,7 @@ public class BasketsServiceImpl implements BasketsService {
 
     // Удалить определённые товары из корзины
     @Override
+    @Transactional
     public long deleteBasketByUserAndProdVariant(long userId, long productId) {
 
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
@@ -731,6 +697,7 @@ public class BasketsServiceImpl implements BasketsService {
 
     // Удалить определённые товары из корзины
     @Override
+    @Transactional
     public Basket deleteBasketByAuthUserAndProdVariant(long pvId) {
 
         User user = ServicesUtils.getUserFromSecurityContext(SecurityContextHolder.getContext());
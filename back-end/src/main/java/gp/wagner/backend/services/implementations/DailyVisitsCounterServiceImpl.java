@@ -0,0 +1,153 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+import gp.wagner.backend.repositories.DailyVisitsRepository;
+import gp.wagner.backend.services.interfaces.DailyVisitsCounterService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Счётчик посещений по дням с отложенной записью
+@Service
+public class DailyVisitsCounterServiceImpl implements DailyVisitsCounterService {
+
+    private DailyVisitsRepository dvRepository;
+
+    @Autowired
+    public void setDvRepository(DailyVisitsRepository dvRepository) {
+        this.dvRepository = dvRepository;
+    }
+
+    /**
+     * Счётчик дня. Учтённые посещения не сбрасываются - сохраняется разница с уже сохранённым значением,
+     * поэтому посещения, учтённые во время сохранения, попадут в следующее и не потеряются
+     * */
+    private static final class DayCounter {
+        final LongAdder counted = new LongAdder();
+        volatile long flushed;
+
+        long pending() {
+            return counted.sum() - flushed;
+        }
+    }
+
+    private final ConcurrentHashMap<LocalDate, DayCounter> counters = new ConcurrentHashMap<>();
+
+    // Прибавление посещений к записи дня и отметка о сохранении выполняются под блокировкой записи,
+    // чтение записей дней вместе с несохранёнными посещениями - под блокировкой чтения
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    //region Метрики
+    private final LongAdder acceptedAmount = new LongAdder();
+    private final AtomicLong flushesAmount = new AtomicLong();
+    private final AtomicLong failedFlushesAmount = new AtomicLong();
+    private final AtomicLong flushedAmount = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    //endregion
+
+    @Override
+    public void increment() {
+        counters.computeIfAbsent(LocalDate.now(), date -> new DayCounter()).counted.increment();
+        acceptedAmount.increment();
+    }
+
+    // Сохраняется и при остановке приложения
+    @Override
+    @Scheduled(fixedDelay = 5_000)
+    @PreDestroy
+    public synchronized void flush() {
+
+        long start = System.nanoTime();
+        boolean failed = false;
+
+        LocalDate today = LocalDate.now();
+
+        for (Map.Entry<LocalDate, DayCounter> entry : counters.entrySet()) {
+            DayCounter counter = entry.getValue();
+
+            long counted = counter.counted.sum();
+            long delta = counted - counter.flushed;
+
+            // Счётчики прошедших дней удаляются после полного сохранения
+            if (delta <= 0) {
+                if (entry.getKey().isBefore(today.minusDays(1)))
+                    counters.remove(entry.getKey(), counter);
+
+                continue;
+            }
+
+            try {
+                // Сохранённая разница вычитается из несохранённых посещений атомарно для читающих запись дня
+                flushLock.writeLock().lock();
+                try {
+                    dvRepository.addVisits(entry.getKey(), delta);
+                    counter.flushed = counted;
+                } finally {
+                    flushLock.writeLock().unlock();
+                }
+
+                flushedAmount.addAndGet(delta);
+            } catch (Exception e) {
+                failed = true;
+                System.out.println("\n\tНе удалось сохранить посещения за " + entry.getKey() + ": " + e.getMessage() + "\n");
+            }
+        }
+
+        if (failed)
+            failedFlushesAmount.incrementAndGet();
+        else
+            flushesAmount.incrementAndGet();
+
+        lastFlushMillis = (System.nanoTime() - start) / 1_000_000;
+        maxFlushMillis = Math.max(maxFlushMillis, lastFlushMillis);
+    }
+
+    @Override
+    public Map<LocalDate, Long> getPendingVisits() {
+        Map<LocalDate, Long> result = new HashMap<>();
+
+        counters.forEach((date, counter) -> {
+            long pending = counter.pending();
+
+            if (pending > 0)
+                result.put(date, pending);
+        });
+
+        return result;
+    }
+
+    @Override
+    public long getPendingVisits(LocalDate date) {
+        DayCounter counter = date != null ? counters.get(date) : null;
+
+        return counter != null ? Math.max(counter.pending(), 0) : 0;
+    }
+
+    @Override
+    public <T> T readWithPendingVisits(Supplier<T> reader) {
+        flushLock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public WriteBufferStatisticsRespDto getStatistics() {
+        return new WriteBufferStatisticsRespDto("daily_visits", getPendingVisits().values().stream().mapToLong(Long::longValue).sum(),
+                acceptedAmount.sum(), 0, 0, flushesAmount.get(), failedFlushesAmount.get(), flushedAmount.get(),
+                lastFlushMillis, maxFlushMillis);
+    }
+}
@@ -5,6 +5,7 @@ import gp.wagner.backend.domain.entities.visits.DailyVisits;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.infrastructure.PaginationUtils;
 import gp.wagner.backend.infrastructure.Utils;
+import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.repositories.DailyVisitsRepository;
 import gp.wagner.backend.services.interfaces.DailyVisitsService;
 import jakarta.persistence.EntityManager;
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class DailyVisitsServiceImpl implements DailyVisitsService {
@@ -41,17 +43,21 @@ public class DailyVisitsServiceImpl implements DailyVisitsService {
     @Override
     public void increaseCurrentDateCounter() {
 
-        LocalDate now = LocalDate.now();
+        // Посещение учитывается в памяти и прибавляется к записи дня при периодическом сохранении
+        Services.dailyVisitsCounterService.increment();
+    }
 
-        DailyVisits dailyVisits = dvRepository.getDailyVisitsByDate(now).orElse(null);
+    // Добавить к записи за день ещё не сохранённые посещения. Возвращается копия, чтобы не изменять управляемую сущность
+    private static DailyVisits withPendingVisits(DailyVisits dv){
+        if (dv == null)
+            return null;
 
-        if (dailyVisits == null)
-            dailyVisits = new DailyVisits(now, 1);
-        else
-            dailyVisits.setCountVisits(dailyVisits.getCountVisits()+1);
+        long pending = Services.dailyVisitsCounterService.getPendingVisits(dv.getDate());
 
-        dvRepository.saveAndFlush(dailyVisits);
+        if (pending <= 0)
+            return dv;
 
+        return new DailyVisits(dv.getId(), dv.getDate(), (int) (dv.getCountVisits() + pending));
     }
 
     @Override
@@ -60,6 +66,9 @@ public class DailyVisitsServiceImpl implements DailyVisitsService {
             throw new ApiException("Запись DailyVisits для редактирования задана некорректно!");
 
         dvRepository.saveAndFlush(dv);
+
+        // Посещения дня изменены вручную
+        Services.statisticsDaysCacheService.invalidate(dv.getDate());
     }
 
     @Override
@@ -88,7 +97,8 @@ public class DailyVisitsServiceImpl implements DailyVisitsService {
 
         long elementsCount = PaginationUtils.countDailyVisitsInPeriod(entityManager, datesRangeDto);
 
-        List<DailyVisits> dvList = typedQuery.getResultList();
+        List<DailyVisits> dvList = Services.dailyVisitsCounterService.readWithPendingVisits(() ->
+                typedQuery.getResultList().stream().map(DailyVisitsServiceImpl::withPendingVisits).toList());
 
         return new PageImpl<>(dvList,PageRequest.of(pageNum, dataOnPage), elementsCount);
     }
@@ -150,7 +160,8 @@ public class DailyVisitsServiceImpl implements DailyVisitsService {
 
         long elementsCount = PaginationUtils.countTopDailyVisitsInPeriod(entityManager, datesRangeDto, maxVisits);
 
-        List<DailyVisits> dvList = typedQuery.getResultList();
+        List<DailyVisits> dvList = Services.dailyVisitsCounterService.readWithPendingVisits(() ->
+                typedQuery.getResultList().stream().map(DailyVisitsServiceImpl::withPendingVisits).toList());
 
         return new PageImpl<>(dvList,PageRequest.of(pageNum, dataOnPage), elementsCount);
     }
@@ -161,7 +172,10 @@ public class DailyVisitsServiceImpl implements DailyVisitsService {
         if (pageNum > 0)
             pageNum -= 1;
 
-        return dvRepository.findAll(PageRequest.of(pageNum, dataOnPage));
+        PageRequest pageRequest = PageRequest.of(pageNum, dataOnPage);
+
+        return Services.dailyVisitsCounterService.readWithPendingVisits(() ->
+                dvRepository.findAll(pageRequest).map(DailyVisitsServiceImpl::withPendingVisits));
     }
 
     @Override
@@ -170,8 +184,22 @@ public class DailyVisitsServiceImpl implements DailyVisitsService {
         if (date == null || date.getTime() > new Date().getTime())
             throw new ApiException("Заданная дата равна null или дата > текущей!");
 
-        return dvRepository.getDailyVisitsByDateIs(date)
-                .orElseThrow(() -> new ApiException(String.format("Запись о количестве посетителей за %s не найдена", Utils.sdf.format(date))));
+        LocalDate localDate = new java.sql.Date(date.getTime()).toLocalDate();
+
+        return Services.dailyVisitsCounterService.readWithPendingVisits(() -> {
+            Optional<DailyVisits> dv = dvRepository.getDailyVisitsByDateIs(date);
+
+            if (dv.isPresent())
+                return withPendingVisits(dv.get());
+
+            // Запись дня создаётся при первом сохранении счётчика - до него день представлен только несохранёнными посещениями
+            long pending = Services.dailyVisitsCounterService.getPendingVisits(localDate);
+
+            if (pending > 0)
+                return new DailyVisits(localDate, (int) pending);
+
+            throw new ApiException(String.format("Запись о количестве посетителей за %s не найдена", Utils.sdf.format(date)));
+        });
     }
 
     @Override
@@ -0,0 +1,221 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.domain.dto.response.discounts.DiscountJobRespDto;
+import gp.wagner.backend.domain.entities.products.DiscountJob;
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.infrastructure.ServicesUtils;
+import gp.wagner.backend.infrastructure.enums.DiscountJobOperationEnum;
+import gp.wagner.backend.infrastructure.enums.ExportJobStateEnum;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.products.DiscountJobsRepository;
+import gp.wagner.backend.repositories.products.DiscountsRepository;
+import gp.wagner.backend.repositories.products.ProductVariantsRepository;
+import gp.wagner.backend.services.interfaces.DiscountJobsService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+// Сервис фоновых задач массового изменения скидок
+@Service
+public class DiscountJobsServiceImpl implements DiscountJobsService {
+
+    //region Репозитории
+    private DiscountJobsRepository jobsRepository;
+
+    @Autowired
+    public void setJobsRepository(DiscountJobsRepository jobsRepository) {
+        this.jobsRepository = jobsRepository;
+    }
+
+    private DiscountsRepository discountsRepository;
+
+    @Autowired
+    public void setDiscountsRepository(DiscountsRepository discountsRepository) {
+        this.discountsRepository = discountsRepository;
+    }
+
+    private ProductVariantsRepository productVariantsRepository;
+
+    @Autowired
+    public void setProductVariantsRepository(ProductVariantsRepository productVariantsRepository) {
+        this.productVariantsRepository = productVariantsRepository;
+    }
+    //endregion
+
+    // Кол-во вариантов, изменяемых в одной транзакции
+    private static final int CHUNK_SIZE = 500;
+
+    // Выполняемая задача, которая не обновлялась дольше этого времени, считается прерванной и может быть захвачена заново
+    private static final int LEASE_SECONDS = 300;
+
+    // Интервал проверки задач, прерванных остановкой или сбоем экземпляра приложения
+    private static final long RESUME_INTERVAL_MILLIS = 60_000;
+
+    // Задачи выполняются по очереди в одном потоке, чтобы не изменять одни и те же варианты параллельно
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "discount-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Задачи, поставленные в очередь этого экземпляра и ещё не завершённые - чтобы не ставить одну задачу дважды
+    private final Set<Long> enqueuedJobs = ConcurrentHashMap.newKeySet();
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public DiscountJobRespDto submit(long discountId, DiscountJobOperationEnum operation, List<Long> scopeIds) {
+        if (operation == null || scopeIds == null || scopeIds.isEmpty())
+            throw new ApiException("Не удалось создать задачу изменения скидки. Параметры заданы некорректно!");
+
+        int total = switch (operation) {
+            case ADD_TO_CATEGORIES -> productVariantsRepository.countVariantsForDiscountByCategories(discountId, scopeIds, false);
+            case REMOVE_FROM_CATEGORIES -> productVariantsRepository.countVariantsForDiscountByCategories(discountId, scopeIds, true);
+            case ADD_TO_PRODUCTS -> productVariantsRepository.countVariantsForDiscountByProducts(discountId, scopeIds);
+        };
+
+        String scope = scopeIds.stream().distinct().map(String::valueOf).collect(Collectors.joining(","));
+
+        DiscountJob job = jobsRepository.saveAndFlush(new DiscountJob(discountId, operation.getOperation(), scope,
+                ExportJobStateEnum.QUEUED.getState(), total));
+
+        // Задача ставится в очередь только после фиксации её записи, иначе поток выполнения может её не увидеть
+        long jobId = job.getId();
+        ServicesUtils.runAfterCommit(() -> enqueue(jobId));
+
+        return new DiscountJobRespDto(job);
+    }
+
+    private void enqueue(long jobId){
+        if (!enqueuedJobs.add(jobId))
+            return;
+
+        executor.execute(() -> {
+            try {
+                run(jobId);
+            } finally {
+                enqueuedJobs.remove(jobId);
+            }
+        });
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        List<Long> jobsIds = jobsRepository.getUnfinishedJobsIds();
+
+        if (!jobsIds.isEmpty())
+            System.out.println("\n\tНезавершённых задач изменения скидок: " + jobsIds.size() + "\n");
+
+        for (Long jobId : jobsIds)
+            enqueue(jobId);
+    }
+
+    /**
+     * Задача, выполнявшаяся при остановке или сбое экземпляра, остаётся в состоянии running с недавней отметкой времени
+     * и не захватывается при запуске. Она захватывается этой проверкой после истечения аренды
+     * */
+    @Scheduled(fixedDelay = RESUME_INTERVAL_MILLIS, initialDelay = RESUME_INTERVAL_MILLIS)
+    public void resumeExpired() {
+        for (Long jobId : jobsRepository.getClaimableJobsIds(LEASE_SECONDS))
+            enqueue(jobId);
+    }
+
+    private void run(long jobId){
+
+        String leaseToken = UUID.randomUUID().toString();
+
+        // Задачу уже выполняет другой экземпляр приложения либо она завершена
+        if (jobsRepository.claimJob(jobId, LEASE_SECONDS, leaseToken) == 0)
+            return;
+
+        try {
+            // Каждая часть обрабатывается через прокси сервиса - в отдельной транзакции
+            while (!Thread.currentThread().isInterrupted() && Services.discountJobsService.processChunk(jobId, leaseToken));
+        } catch (Exception e) {
+            jobsRepository.failJob(jobId, leaseToken,
+                    e.getMessage() != null && e.getMessage().length() > 512 ? e.getMessage().substring(0, 512) : e.getMessage());
+
+            System.out.println("\n\tЗадача изменения скидки " + jobId + " завершилась с ошибкой: " + e.getMessage() + "\n");
+        }
+    }
+
+    @Override
+    @Transactional
+    public boolean processChunk(long jobId, String leaseToken) {
+
+        // Задача завершена либо аренда истекла и задачу захватил другой экземпляр
+        if (jobsRepository.renewLease(jobId, leaseToken) == 0)
+            return false;
+
+        DiscountJob job = jobsRepository.findById(jobId).orElse(null);
+
+        if (job == null)
+            return false;
+
+        DiscountJobOperationEnum operation = DiscountJobOperationEnum.getOperation(job.getOperation());
+        List<Long> scopeIds = Arrays.stream(job.getScopeIds().split(",")).map(Long::parseLong).toList();
+
+        // Изменённые варианты перестают подходить под условие выборки, но выборка всё равно продолжается с последнего id
+        List<Long> pvIdList = switch (operation) {
+            case ADD_TO_CATEGORIES -> productVariantsRepository.getVariantsIdsChunkByCategories(job.getDiscountId(), scopeIds,
+                    false, job.getLastVariantId(), CHUNK_SIZE);
+            case REMOVE_FROM_CATEGORIES -> productVariantsRepository.getVariantsIdsChunkByCategories(job.getDiscountId(), scopeIds,
+                    true, job.getLastVariantId(), CHUNK_SIZE);
+            case ADD_TO_PRODUCTS -> productVariantsRepository.getVariantsIdsChunkByProducts(job.getDiscountId(), scopeIds,
+                    job.getLastVariantId(), CHUNK_SIZE);
+        };
+
+        if (!pvIdList.isEmpty()) {
+            if (operation == DiscountJobOperationEnum.REMOVE_FROM_CATEGORIES)
+                discountsRepository.removeDiscountFromPvByIdsList(job.getDiscountId(), pvIdList);
+            else
+                discountsRepository.updatePvDiscountByIdsList(job.getDiscountId(), pvIdList);
+
+            Services.productVariantsService.recountEffectivePrices(pvIdList);
+        }
+
+        boolean hasMore = pvIdList.size() == CHUNK_SIZE;
+
+        long lastVariantId = pvIdList.isEmpty() ? job.getLastVariantId() : pvIdList.get(pvIdList.size() - 1);
+
+        // Часть фиксируется вместе с ходом выполнения только при неизменном маркере аренды
+        if (jobsRepository.saveChunkProgress(jobId, leaseToken,
+                hasMore ? ExportJobStateEnum.RUNNING.getState() : ExportJobStateEnum.DONE.getState(),
+                lastVariantId, pvIdList.size(), hasMore ? null : new Date()) == 0)
+            throw new ApiException(String.format("Аренда задачи изменения скидки %d утрачена до сохранения части", jobId));
+
+        return hasMore;
+    }
+
+    @Override
+    public DiscountJobRespDto getJob(long jobId) {
+        return new DiscountJobRespDto(jobsRepository.findById(jobId)
+                .orElseThrow(() -> new ApiException(String.format("Задача изменения скидки с id %d не найдена!", jobId))));
+    }
+
+    @Override
+    public List<DiscountJobRespDto> getJobsByDiscount(long discountId) {
+        return jobsRepository.findDiscountJobsByDiscountIdOrderByIdDesc(discountId)
+                .stream()
+                .map(DiscountJobRespDto::new)
+                .toList();
+    }
+}
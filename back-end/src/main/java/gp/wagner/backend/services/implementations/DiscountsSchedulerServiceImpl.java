@@ -0,0 +1,237 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.domain.entities.products.Discount;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.products.DiscountsRepository;
+import gp.wagner.backend.services.interfaces.DiscountsSchedulerService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Планировщик сроков действия скидок
+@Service
+public class DiscountsSchedulerServiceImpl implements DiscountsSchedulerService {
+
+    private DiscountsRepository discountsRepository;
+
+    @Autowired
+    public void setDiscountsRepository(DiscountsRepository discountsRepository) {
+        this.discountsRepository = discountsRepository;
+    }
+
+    // Максимальное время ожидания таймера. Таймер отсчитывает время независимо от системных часов,
+    // поэтому при их переводе ближайшая граница проверяется заново не позже, чем через этот интервал
+    private static final long MAX_TIMER_DELAY_MILLIS = 3_600_000;
+
+    // Задержка повторного применения срока после ошибки. Удваивается с каждой неудачей до максимальной
+    private static final long RETRY_DELAY_MILLIS = 30_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 600_000;
+
+    // Граница срока действия скидки: начало или окончание
+    private record Boundary(long discountId, long at) {}
+
+    // Границы по возрастанию времени наступления
+    private final PriorityQueue<Boundary> queue = new PriorityQueue<>(Comparator.comparingLong(Boundary::at));
+
+    // Актуальные границы каждой скидки. Границы из очереди, которых здесь нет, устарели после изменения скидки и пропускаются
+    private final Map<Long, List<Boundary>> boundariesByDiscount = new HashMap<>();
+
+    // Текущая задержка повтора скидок, срок которых не удалось применить
+    private final Map<Long, Long> retryDelays = new HashMap<>();
+
+    private final ScheduledExecutorService timerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "discounts-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ScheduledFuture<?> timer;
+
+    // Время границы, до которой взведён таймер
+    private long timerAt;
+
+    @PreDestroy
+    public void shutdown() {
+        timerExecutor.shutdownNow();
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+
+        List<Object[]> terms = discountsRepository.getActiveDiscountsTerms();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            queue.clear();
+            boundariesByDiscount.clear();
+            retryDelays.clear();
+
+            // Окончания, наступившие пока приложение было остановлено, сразу оказываются в начале очереди
+            for (Object[] row : terms)
+                addBoundaries(((Number) row[0]).longValue(), toMillis(row[1]), toMillis(row[2]), now);
+
+            rearm();
+        }
+
+        // Начала сроков, пропущенные пока приложение было остановлено - скидки, ещё не применённые к ценам вариантов
+        for (Long discountId : discountsRepository.getStartedNotAppliedDiscountsIds())
+            apply(discountId);
+
+        System.out.printf("\n\tПланировщик скидок: загружены сроки %d активных скидок\n\n", terms.size());
+    }
+
+    @Override
+    public synchronized void schedule(Discount discount) {
+
+        if (discount == null || discount.getId() == null)
+            return;
+
+        boundariesByDiscount.remove(discount.getId());
+        retryDelays.remove(discount.getId());
+        queue.removeIf(boundary -> boundary.discountId() == discount.getId());
+
+        if (Boolean.TRUE.equals(discount.getIsActive()) && !Boolean.TRUE.equals(discount.getIsInfinite()) && discount.getEndsAt() != null)
+            addBoundaries(discount.getId(), discount.getStartsAt() != null ? discount.getStartsAt().getTime() : null,
+                    discount.getEndsAt().getTime(), System.currentTimeMillis());
+
+        rearm();
+    }
+
+    // Начало срока планируется, только если оно ещё не наступило. Окончание планируется всегда
+    private void addBoundaries(long discountId, Long startsAt, Long endsAt, long now){
+
+        if (endsAt == null)
+            return;
+
+        List<Boundary> boundaries = new ArrayList<>(2);
+
+        if (startsAt != null && startsAt > now && startsAt < endsAt)
+            boundaries.add(new Boundary(discountId, startsAt));
+
+        boundaries.add(new Boundary(discountId, endsAt));
+
+        boundariesByDiscount.put(discountId, boundaries);
+        queue.addAll(boundaries);
+    }
+
+    // Взвести таймер на ближайшую актуальную границу
+    private void rearm(){
+
+        while (!queue.isEmpty() && !isActual(queue.peek()))
+            queue.poll();
+
+        Boundary head = queue.peek();
+
+        if (head == null) {
+            cancelTimer();
+            return;
+        }
+
+        if (timer != null && !timer.isDone() && timerAt == head.at())
+            return;
+
+        cancelTimer();
+
+        long delay = Math.min(Math.max(head.at() - System.currentTimeMillis(), 0), MAX_TIMER_DELAY_MILLIS);
+
+        timerAt = head.at();
+        timer = timerExecutor.schedule(this::fireDue, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimer(){
+        if (timer != null)
+            timer.cancel(false);
+
+        timer = null;
+    }
+
+    private boolean isActual(Boundary boundary){
+        List<Boundary> boundaries = boundariesByDiscount.get(boundary.discountId());
+
+        return boundaries != null && boundaries.contains(boundary);
+    }
+
+    // Забрать наступившие границы и применить их вне блокировки - применение изменяет скидки и снова планирует их границы
+    private void fireDue(){
+
+        List<Long> dueDiscountsIds = new ArrayList<>();
+
+        synchronized (this) {
+            timer = null;
+            long now = System.currentTimeMillis();
+
+            while (!queue.isEmpty() && queue.peek().at() <= now) {
+                Boundary boundary = queue.poll();
+
+                if (!isActual(boundary))
+                    continue;
+
+                List<Boundary> boundaries = boundariesByDiscount.get(boundary.discountId());
+                boundaries.remove(boundary);
+
+                if (boundaries.isEmpty())
+                    boundariesByDiscount.remove(boundary.discountId());
+
+                dueDiscountsIds.add(boundary.discountId());
+            }
+        }
+
+        dueDiscountsIds.forEach(this::apply);
+
+        synchronized (this) {
+            rearm();
+        }
+    }
+
+    private void apply(long discountId){
+        try {
+            Services.discountsService.applyDiscountTerm(discountId);
+
+            synchronized (this) {
+                retryDelays.remove(discountId);
+            }
+        } catch (Exception e) {
+            long delay = scheduleRetry(discountId);
+
+            System.out.println("\n\tНе удалось применить срок действия скидки " + discountId + ": " + e.getMessage() +
+                    ". Повтор через " + delay / 1000 + " с\n");
+        }
+    }
+
+    // Запланировать повторное применение срока скидки отдельной границей, чтобы ошибка не оставила скидку в прежнем состоянии
+    private synchronized long scheduleRetry(long discountId){
+
+        long delay = retryDelays.merge(discountId, RETRY_DELAY_MILLIS,
+                (previous, initial) -> Math.min(previous * 2, MAX_RETRY_DELAY_MILLIS));
+
+        Boundary retry = new Boundary(discountId, System.currentTimeMillis() + delay);
+
+        boundariesByDiscount.computeIfAbsent(discountId, id -> new ArrayList<>(2)).add(retry);
+        queue.add(retry);
+
+        rearm();
+
+        return delay;
+    }
+
+    private static Long toMillis(Object value){
+        if (value instanceof Date date)
+            return date.getTime();
+
+        if (value instanceof LocalDateTime dateTime)
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        return null;
+    }
+}
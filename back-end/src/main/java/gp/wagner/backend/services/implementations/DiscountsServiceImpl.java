@@ -1,6 +1,7 @@
 package gp.wagner.backend.services.implementations;
 
 import gp.wagner.backend.domain.dto.request.crud.DiscountRequestDto;
+import gp.wagner.backend.domain.dto.response.discounts.DiscountJobRespDto;
 import gp.wagner.backend.domain.entities.categories.Category;
 import gp.wagner.backend.domain.entities.products.Discount;
 import gp.wagner.backend.domain.entities.products.Product;
@@ -9,6 +10,7 @@ import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.domain.exceptions.suppliers.DiscountNotFound;
 import gp.wagner.backend.infrastructure.ServicesUtils;
 import gp.wagner.backend.infrastructure.SortingUtils;
+import gp.wagner.backend.infrastructure.enums.DiscountJobOperationEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.DiscountsSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
 import gp.wagner.backend.middleware.Services;
@@ -22,8 +24,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -62,6 +64,7 @@ public class DiscountsServiceImpl implements DiscountsService {
             throw new ApiException("Не удалось создать скидку. В параметрах задано некорректное значение!");
 
         discountsRepository.saveAndFlush(discount);
+        Services.discountsSchedulerService.schedule(discount);
     }
 
     @Override
@@ -73,6 +76,7 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         // Создать и сохранить скидку для дальнейшего добавления в варианты и товары
         discount = discountsRepository.saveAndFlush(discount);
+        Services.discountsSchedulerService.schedule(discount);
 
         if (dto.getProductsVariantsIds() != null && !dto.getProductsVariantsIds().isEmpty())
             addDiscountToPvList(discount.getId(), dto.getProductsVariantsIds());
@@ -95,6 +99,7 @@ public class DiscountsServiceImpl implements DiscountsService {
             throw new ApiException("Не удалось изменить запись Discount. Задан некорректный параметр!");
 
         discountsRepository.saveAndFlush(discount);
+        Services.discountsSchedulerService.schedule(discount);
     }
 
     @Override
@@ -138,6 +143,10 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         // Сохранить изменения скидки
         discount = discountsRepository.saveAndFlush(discount);
+        Services.discountsSchedulerService.schedule(discount);
+
+        // Процент или срок действия могли измениться - пересчитать цены вариантов, у которых скидка уже задана
+        Services.productVariantsService.recountEffectivePrices(productVariantsRepository.getProductsVariantsIdsWithDiscount(discount.getId()));
 
         // Если заданы новые варианты товаров для добавления скидки
         if (dto.getProductsVariantsIds() != null && !dto.getProductsVariantsIds().isEmpty())
@@ -186,32 +195,33 @@ public class DiscountsServiceImpl implements DiscountsService {
         // Задать скидку для вариантов по списку их id
         discountsRepository.deleteDiscountFromPV(discount.getId());
 
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        Services.productVariantsService.recountEffectivePrices(pvIdList);
 
         discount.setIsActive(false);
         discountsRepository.saveAndFlush(discount);
+        Services.discountsSchedulerService.schedule(discount);
     }
 
 
-    // Проверять наличие скидок (раз в n-мин) с истёкшим сроком действия и деактивировать их
-    //@Scheduled(fixedDelay = 1_800_000)
-    // Временная переменная - на проде убрать
-    private boolean fistLaunch = true;
-    @Scheduled(fixedDelay = 600_000)
-    public void deactivateExpiredScheduled() {
-        if (fistLaunch){
-            fistLaunch = false;
-            return;
-        }
+    @Override
+    @Transactional
+    public void applyDiscountTerm(long discountId) {
+        Discount discount = discountsRepository.findById(discountId).orElse(null);
 
-        List<Discount> discounts = discountsRepository.findAll();
+        if (discount == null || !discount.getIsActive())
+            return;
 
-        for (Discount discount : discounts)
-            if (discount.isExpired())
-                deactivateById(null, discount);
+        if (discount.isExpired()) {
+            deactivateById(null, discount);
+            return;
+        }
 
-        System.out.printf("\n\tОтработал метод деактивации скидок по расписанию.\n\tПроверено %d скидок\n\n", discounts.size());
+        // Срок действия начался - цены вариантов со скидкой пересчитываются так же, как при её изменении.
+        // Отметка фиксируется вместе с ценами, поэтому пропущенное начало срока применяется при запуске приложения
+        if (discount.isStarted()) {
+            Services.productVariantsService.recountEffectivePrices(productVariantsRepository.getProductsVariantsIdsWithDiscount(discount.getId()));
+            discountsRepository.markStartApplied(discount.getId());
+        }
     }
 
     @Override
@@ -223,6 +233,9 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         discount.setIsActive(true);
         discountsRepository.saveAndFlush(discount);
+        Services.discountsSchedulerService.schedule(discount);
+
+        Services.productVariantsService.recountEffectivePrices(productVariantsRepository.getProductsVariantsIdsWithDiscount(discount.getId()));
     }
 
     // Добавить скидку к варианту товара
@@ -240,8 +253,7 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         productVariantsRepository.saveAndFlush(pv);
 
-        Services.ordersService.recountSumsForVariants(pvId, null);
-        Services.basketsService.recountSumsForVariants(pvId, null);
+        Services.productVariantsService.recountEffectivePrices(List.of(pvId));
         return pv;
     }
 
@@ -271,8 +283,7 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         productVariantsRepository.saveAllAndFlush(pvList);
 
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        Services.productVariantsService.recountEffectivePrices(pvIdList);
     }
 
     // Добавить скидку к товару по id
@@ -305,66 +316,35 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         productVariantsRepository.saveAllAndFlush(pvList);
 
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        Services.productVariantsService.recountEffectivePrices(pvIdList);
 
         return product;
     }
 
-    // Добавить скидку к вариантам товаров по id самих товаров
+    // Добавить скидку к вариантам товаров по id самих товаров. Варианты изменяются фоновой задачей
     @Override
-    public void addDiscountToProductsList(long discountId, List<Long> productsIdsList) {
+    public DiscountJobRespDto addDiscountToProductsList(long discountId, List<Long> productsIdsList) {
         if (productsIdsList == null || productsIdsList.isEmpty())
             throw new ApiException("Добавить скидку по списку товаров не удалось!");
 
         Discount discount = discountsRepository.findById(discountId).orElseThrow(new DiscountNotFound(discountId));
 
-        // Получить все варианты всех заданных товаров
-        List<ProductVariant> pvList = Services.productVariantsService.getByProductsIds(productsIdsList);
-
-        boolean variantsChanged = false;
-        for (ProductVariant pv:pvList) {
-
-            // Если у варианта уже задана скидка с таким же % и датами начала и завершения
-            if (pv.getDiscount() != null && pv.getDiscount().isEqual(discount))
-                continue;
-            pv.setDiscount(discount);
-            variantsChanged = true;
-        }
-
-        // Если ни один вариант не был изменён
-        if (!variantsChanged)
-            return;
-
-        List<Long> pvIdList = pvList.stream().map(ProductVariant::getId).toList();
-
-        productVariantsRepository.saveAllAndFlush(pvList);
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
-
+        return Services.discountJobsService.submit(discount.getId(), DiscountJobOperationEnum.ADD_TO_PRODUCTS, productsIdsList);
     }
 
-    // Добавить скидку к вариантам товаров по id категории
+    // Добавить скидку к вариантам товаров по id категории. Варианты изменяются фоновой задачей
     @Override
-    public void addDiscountToCategory(long discountId, long categoryId) {
+    public DiscountJobRespDto addDiscountToCategory(long discountId, long categoryId) {
         if (categoryId <= 0)
             throw new ApiException("Добавить скидку для категории не удалось!");
 
         Discount discount = discountsRepository.findById(discountId).orElseThrow(new DiscountNotFound(discountId));
         List<Long> categoriesIds = ServicesUtils.getChildCategoriesList(categoryId);
 
-        // Получить список id вариантов товаров для пересчёта суммы заказов и корзин
-        List<Long> pvIdList = productVariantsRepository.getProductsVariantsIdsByCategoriesIdsList(categoriesIds);
-
-        if (pvIdList == null || pvIdList.isEmpty())
-            return;
-
-        // Задать скидку для вариантов по списку их id
-        discountsRepository.updatePvDiscountByIdsList(discount.getId(), pvIdList);
-
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        if (categoriesIds == null || categoriesIds.isEmpty())
+            throw new ApiException(String.format("Добавить скидку для категории не удалось! Категория с id %d не найдена!", categoryId));
 
+        return Services.discountJobsService.submit(discount.getId(), DiscountJobOperationEnum.ADD_TO_CATEGORIES, categoriesIds);
     }
 
     // Убрать скидку у вариантов товаров заданного списка
@@ -394,8 +374,7 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         productVariantsRepository.saveAllAndFlush(pvList);
 
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        Services.productVariantsService.recountEffectivePrices(pvIdList);
     }
 
     // Убрать скидку у товаров из заданного списка
@@ -429,30 +408,22 @@ public class DiscountsServiceImpl implements DiscountsService {
         List<Long> pvIdList = pvList.stream().map(ProductVariant::getId).toList();
 
         productVariantsRepository.saveAllAndFlush(pvList);
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        Services.productVariantsService.recountEffectivePrices(pvIdList);
     }
 
-    // Добавить скидку у категорий из заданного списка
+    // Убрать скидку у категорий из заданного списка. Варианты изменяются фоновой задачей
     @Override
-    public void removeDiscountFromCategories(long discountId, List<Long> categoriesIds) {
+    public DiscountJobRespDto removeDiscountFromCategories(long discountId, List<Long> categoriesIds) {
         if (categoriesIds == null || categoriesIds.isEmpty())
             throw new ApiException("Удалить скидку для списка категории не удалось!");
 
         Discount discount = discountsRepository.findById(discountId).orElseThrow(new DiscountNotFound(discountId));
         List<Long> childCategoriesList = ServicesUtils.getChildCategoriesList(categoriesIds);
 
-        // Получить список id вариантов товаров для пересчёта суммы заказов и корзин
-        List<Long> pvIdList = productVariantsRepository.getProductsVariantsIdsByCategoriesIdsListAndDiscount(discount.getId(), childCategoriesList);
-
-        if (pvIdList == null || pvIdList.isEmpty())
-            return;
+        if (childCategoriesList == null || childCategoriesList.isEmpty())
+            throw new ApiException("Удалить скидку для списка категории не удалось! Категории не найдены!");
 
-        // Убрать скидку у вариантов по списку их id, которые данную скидку используют
-        discountsRepository.removeDiscountFromPvByIdsList(discount.getId(), pvIdList);
-
-        Services.ordersService.recountSumsForVariants(null, pvIdList);
-        Services.basketsService.recountSumsForVariants(null, pvIdList);
+        return Services.discountJobsService.submit(discount.getId(), DiscountJobOperationEnum.REMOVE_FROM_CATEGORIES, childCategoriesList);
     }
 
 
@@ -480,4 +451,11 @@ public class DiscountsServiceImpl implements DiscountsService {
 
         return null;
     }
+
+    @Override
+    public long getPricingVersion() {
+        Long version = discountsRepository.getPricingVersion();
+
+        return version != null ? version : 0;
+    }
 }
@@ -0,0 +1,247 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+import gp.wagner.backend.domain.entities.notifications.EmailOutboxMessage;
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.infrastructure.enums.EmailOutboxStateEnum;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.EmailOutboxRepository;
+import gp.wagner.backend.services.interfaces.EmailOutboxService;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Сервис очереди исходящих писем
+@Service
+public class EmailOutboxServiceImpl implements EmailOutboxService {
+
+    //region Репозитории
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    public void setOutboxRepository(EmailOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
+    }
+    //endregion
+
+    private JavaMailSender mailSender;
+
+    @Autowired
+    public void setMailSender(JavaMailSender mailSender) {
+        this.mailSender = mailSender;
+    }
+
+    @Value("${spring.mail.mail_from}")
+    private String mailFrom;
+
+    // Кол-во писем, отправляемых через одно соединение
+    private static final int BATCH_SIZE = 50;
+
+    // Кол-во попыток отправки письма
+    static final int MAX_ATTEMPTS = 8;
+
+    // Задержка перед первой повторной попыткой. Каждая следующая задержка вдвое больше, но не больше часа
+    static final long BASE_RETRY_MILLIS = 30_000;
+    private static final long MAX_RETRY_MILLIS = Duration.ofHours(1).toMillis();
+
+    // Срок аренды пакета на время отправки. Если экземпляр приложения не сохранил результат за это время,
+    // письма пакета снова становятся доступны для отправки
+    private static final long LEASE_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    // Срок хранения отправленных писем
+    private static final long SENT_RETENTION_MILLIS = Duration.ofDays(7).toMillis();
+
+    //region Метрики
+    private final AtomicLong acceptedAmount = new AtomicLong();
+    private final AtomicLong dispatchesAmount = new AtomicLong();
+    private final AtomicLong failedDispatchesAmount = new AtomicLong();
+    private final AtomicLong sentAmount = new AtomicLong();
+    private volatile long lastDispatchMillis;
+    private volatile long maxDispatchMillis;
+    //endregion
+
+    @Override
+    public void enqueue(String recipient, String subject, String body, boolean isHtml) {
+        if (recipient == null || recipient.isBlank())
+            throw new ApiException("Не удалось отправить письмо. Адрес получателя не задан!");
+
+        outboxRepository.save(new EmailOutboxMessage(recipient, subject, body, isHtml, EmailOutboxStateEnum.PENDING.getState()));
+        acceptedAmount.incrementAndGet();
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 2_000)
+    public void dispatch() {
+
+        long start = System.nanoTime();
+
+        try {
+            while (dispatchBatch() == BATCH_SIZE);
+
+            dispatchesAmount.incrementAndGet();
+        } catch (Exception e) {
+            failedDispatchesAmount.incrementAndGet();
+            System.out.println("\n\tНе удалось обработать очередь исходящих писем: " + e.getMessage() + "\n");
+        } finally {
+            lastDispatchMillis = (System.nanoTime() - start) / 1_000_000;
+            maxDispatchMillis = Math.max(maxDispatchMillis, lastDispatchMillis);
+        }
+    }
+
+    @Override
+    public int dispatchBatch() {
+
+        // Аренда и сохранение результатов выполняются через прокси сервиса - каждое в своей транзакции,
+        // а отправка - вне транзакции, чтобы не удерживать блокировки строк на время обмена с SMTP сервером
+        List<EmailOutboxMessage> messages = Services.emailOutboxService.claimBatch();
+
+        if (messages.isEmpty())
+            return 0;
+
+        Map<MimeMessage, EmailOutboxMessage> mimeMessages = new LinkedHashMap<>();
+        Map<EmailOutboxMessage, Exception> failed = new HashMap<>();
+
+        for (EmailOutboxMessage message : messages) {
+            try {
+                mimeMessages.put(createMimeMessage(message), message);
+            } catch (MessagingException e) {
+                failed.put(message, e);
+            }
+        }
+
+        if (!mimeMessages.isEmpty()) {
+            try {
+                // Весь пакет отправляется через одно соединение с SMTP сервером
+                mailSender.send(mimeMessages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+
+                // Письма, которых нет среди неотправленных, были отправлены
+                if (e.getFailedMessages().isEmpty())
+                    mimeMessages.values().forEach(message -> failed.put(message, e));
+                else
+                    e.getFailedMessages().forEach((mimeMessage, exception) -> {
+                        EmailOutboxMessage message = mimeMessages.get(mimeMessage);
+
+                        if (message != null)
+                            failed.put(message, exception);
+                    });
+            } catch (MailException e) {
+                mimeMessages.values().forEach(message -> failed.put(message, e));
+            }
+        }
+
+        Date now = new Date();
+
+        for (EmailOutboxMessage message : messages) {
+            Exception exception = failed.get(message);
+
+            if (exception == null) {
+                message.setState(EmailOutboxStateEnum.SENT.getState());
+                message.setSentAt(now);
+            }
+            else
+                registerFailure(message, exception, now);
+        }
+
+        Services.emailOutboxService.completeBatch(messages);
+
+        return messages.size();
+    }
+
+    @Override
+    @Transactional
+    public List<EmailOutboxMessage> claimBatch() {
+
+        List<EmailOutboxMessage> messages = outboxRepository.lockDueMessages(BATCH_SIZE);
+
+        if (messages.isEmpty())
+            return messages;
+
+        String leaseToken = UUID.randomUUID().toString();
+        Date leaseUntil = new Date(System.currentTimeMillis() + LEASE_MILLIS);
+
+        for (EmailOutboxMessage message : messages) {
+            message.setState(EmailOutboxStateEnum.SENDING.getState());
+            message.setLeaseToken(leaseToken);
+            message.setNextAttemptAt(leaseUntil);
+        }
+
+        outboxRepository.saveAll(messages);
+
+        return messages;
+    }
+
+    @Override
+    @Transactional
+    public void completeBatch(List<EmailOutboxMessage> messages) {
+
+        for (EmailOutboxMessage message : messages) {
+            int updated = outboxRepository.completeMessage(message.getId(), message.getLeaseToken(), message.getState(),
+                    message.getAttempts(), message.getNextAttemptAt(), message.getLastError(), message.getSentAt());
+
+            if (updated == 0)
+                System.out.println("\n\tАренда письма " + message.getId() + " истекла до сохранения результата отправки\n");
+            else if (EmailOutboxStateEnum.SENT.getState().equals(message.getState()))
+                sentAmount.incrementAndGet();
+        }
+    }
+
+    private MimeMessage createMimeMessage(EmailOutboxMessage message) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, "UTF-8");
+        helper.setFrom(mailFrom);
+        helper.setTo(message.getRecipient());
+        helper.setSubject(message.getSubject());
+        helper.setText(message.getBody(), message.isHtml());
+
+        return mimeMessage;
+    }
+
+    // Отложить письмо до следующей попытки либо пометить как dead, если попытки исчерпаны
+    private static void registerFailure(EmailOutboxMessage message, Exception exception, Date now){
+        message.setAttempts(message.getAttempts() + 1);
+
+        String error = exception.getMessage() != null ? exception.getMessage() : exception.getClass().getSimpleName();
+        message.setLastError(error.length() > 512 ? error.substring(0, 512) : error);
+
+        if (message.getAttempts() >= MAX_ATTEMPTS) {
+            message.setState(EmailOutboxStateEnum.DEAD.getState());
+            message.setNextAttemptAt(now);
+
+            System.out.println("\n\tПисьмо " + message.getId() + " для " + message.getRecipient() +
+                    " не отправлено после " + MAX_ATTEMPTS + " попыток: " + error + "\n");
+            return;
+        }
+
+        long delay = Math.min(BASE_RETRY_MILLIS << (message.getAttempts() - 1), MAX_RETRY_MILLIS);
+        message.setState(EmailOutboxStateEnum.PENDING.getState());
+        message.setNextAttemptAt(new Date(now.getTime() + delay));
+    }
+
+    @Override
+    @Scheduled(cron = "0 30 3 * * *")
+    public void removeSent() {
+        outboxRepository.deleteSentBefore(new Date(System.currentTimeMillis() - SENT_RETENTION_MILLIS));
+    }
+
+    // Кол-во отброшенных - письма, попытки отправки которых исчерпаны
+    @Override
+    public WriteBufferStatisticsRespDto getStatistics() {
+        return new WriteBufferStatisticsRespDto("email_outbox", outboxRepository.countByState(EmailOutboxStateEnum.PENDING.getState()),
+                acceptedAmount.get(), outboxRepository.countByState(EmailOutboxStateEnum.DEAD.getState()), 0,
+                dispatchesAmount.get(), failedDispatchesAmount.get(), sentAmount.get(), lastDispatchMillis, maxDispatchMillis);
+    }
+}
@@ -2,129 +2,116 @@ package gp.wagner.backend.services.implementations;
 
 import gp.wagner.backend.domain.entities.orders.Order;
 import gp.wagner.backend.infrastructure.Utils;
+import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.services.interfaces.EmailService;
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
+
+// Формирование писем. Письма не отправляются сразу, а добавляются в очередь исходящих писем
 @Service
 public class EmailServiceImpl implements EmailService {
 
-    // Использование переменных окружения
-    @Autowired
-    private Environment env;
+    //region Шаблоны писем
+    private static final String PASSWORD_RESET_SUBJECT = "Сброс пароля для пользователя %s";
 
-    private JavaMailSender mailSender;
-
-    @Autowired
-    public void setMailSender(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
-    }
-
-    @Override
-    public void sendPasswordResetTokenSimple(String email, String token, String userLogin) {
-
-        SimpleMailMessage passwordResetMail = new SimpleMailMessage();
-
-        passwordResetMail.setFrom(env.getProperty("spring.mail.mail_from"));
-        passwordResetMail.setTo(email);
-        passwordResetMail.setSubject(String.format("Сброс пароля для пользователя %s", userLogin));
-        passwordResetMail.setText(String.format("""
+    private static final String PASSWORD_RESET_TEXT = """
                 \n Для обновления пароля скопируйте или кликните по ссылке (кнопке) ниже:
                 \n\t http://localhost:8080/reset?token=%1$s.
                 \n\t Токен: %1$s
                 \n Данная ссылка действительна только 24ч с момента отправки!
-                """, token));
-
-        mailSender.send(passwordResetMail);
-    }
+                """;
 
-    @Override
-    public void sendPasswordResetTokenMime(String email, String token, String userLogin) throws MessagingException {
-        MimeMessage passwordResetMail = mailSender.createMimeMessage();
-
-        MimeMessageHelper helper = new MimeMessageHelper(passwordResetMail);
-        helper.setFrom(env.getProperty("spring.mail.mail_from"));
-        helper.setTo(email);
-        helper.setSubject(String.format("Сброс пароля для пользователя %s", userLogin));
-        String content = String.format("""
+    private static final String PASSWORD_RESET_HTML = """
                 <p>Для сброса пароля нажмите на ссылку ниже:</p>
                 <a href='http://localhost:8080/reset?token=%1$s'>Сбросить пароль</a>
                 <p>Токен: <b>%1$s</b></p>
-                """, token);
-        helper.setText(content, true);
+                """;
 
-        mailSender.send(passwordResetMail);
-    }
+    private static final String CONFIRMATION_SUBJECT = "Подтверждение почты для пользователя %s";
 
-    @Override
-    public void sendConfirmationTokenMime(String email, String token, String userLogin) throws MessagingException {
-
-        MimeMessage passwordResetMail = mailSender.createMimeMessage();
-
-        MimeMessageHelper helper = new MimeMessageHelper(passwordResetMail);
-        helper.setFrom(env.getProperty("spring.mail.mail_from"));
-        helper.setTo(email);
-        helper.setSubject(String.format("Подтверждение почты для пользователя %s", userLogin));
-        String content = String.format("""
+    // Адрес frontend подставляется вместо %2$s при первом использовании
+    private static final String CONFIRMATION_HTML = """
                 <p>Для подтверждение перейдите по ссылке ниже ↓:</p>
                 <a href='%2$s/confirm?token=%1$s'>Подтвердить аккаунт</a>
                 <p>Токен: <b>%1$s</b></p>
-                """, token, env.getProperty("spring.frontend-domain"));
-        helper.setText(content, true);
+                """;
 
-        mailSender.send(passwordResetMail);
-    }
+    private static final String ORDER_DETAILS_SUBJECT = "Заказ #%d был размещён успешно!";
 
-    @Override
-    public void sendOrderDetailsMime(Order createdOrder) throws MessagingException {
-        MimeMessage passwordResetMail = mailSender.createMimeMessage();
-
-        MimeMessageHelper helper = new MimeMessageHelper(passwordResetMail);
-        helper.setFrom(env.getProperty("spring.mail.mail_from"));
-        helper.setTo(createdOrder.getCustomer().getEmail());
-        helper.setSubject(String.format("Заказ #%d был размещён успешно!", createdOrder.getCode()));
-        String content = String.format("""
+    private static final String ORDER_DETAILS_HTML = """
                 <p>Здравствуйте %s, вы сформировали заказ в нашем магазине!</p>
                 <p>Количество заказанных товаров: <b>%d</b></p>
                 <p>Дата заказа: <b>%s</b></p>
                 <p>Статус заказа: <b>%s</b></p>
                 %s
-                """, createdOrder.getCustomer().getName(),
+                """;
+
+    private static final String ORDER_CANCEL_SUBJECT = "Отмена заказа #%d";
+
+    private static final String ORDER_CANCEL_HTML = """
+                <p>Здравствуйте %s!</p>
+                <p>Заказ №%d от %5$s был отменён.</p>
+                <p>Количество заказанных товаров: <b>%d</b></p>
+                <p>Сумма заказа: <b>%s</b></p>
+                """;
+    //endregion
+
+    // Использование переменных окружения
+    @Autowired
+    private Environment env;
+
+    // Шаблон письма подтверждения с подставленным адресом frontend. Формируется один раз при первом использовании
+    private volatile String confirmationHtml;
+
+    private String getConfirmationHtml(){
+        if (confirmationHtml == null)
+            confirmationHtml = CONFIRMATION_HTML.replace("%2$s", Objects.requireNonNull(env.getProperty("spring.frontend-domain")));
+
+        return confirmationHtml;
+    }
+
+    @Override
+    public void sendPasswordResetTokenSimple(String email, String token, String userLogin) {
+        Services.emailOutboxService.enqueue(email, String.format(PASSWORD_RESET_SUBJECT, userLogin),
+                String.format(PASSWORD_RESET_TEXT, token), false);
+    }
+
+    @Override
+    public void sendPasswordResetTokenMime(String email, String token, String userLogin) {
+        Services.emailOutboxService.enqueue(email, String.format(PASSWORD_RESET_SUBJECT, userLogin),
+                String.format(PASSWORD_RESET_HTML, token), true);
+    }
+
+    @Override
+    public void sendConfirmationTokenMime(String email, String token, String userLogin) {
+        Services.emailOutboxService.enqueue(email, String.format(CONFIRMATION_SUBJECT, userLogin),
+                String.format(getConfirmationHtml(), token), true);
+    }
+
+    @Override
+    public void sendOrderDetailsMime(Order createdOrder) {
+        String content = String.format(ORDER_DETAILS_HTML, createdOrder.getCustomer().getName(),
                 createdOrder.getGeneralProductsAmount(),
                 Utils.sdf.format(createdOrder.getOrderDate()),
                 createdOrder.getOrderState().getState(),
                 Utils.opvTableView(createdOrder));
-        helper.setText(content, true);
 
-        mailSender.send(passwordResetMail);
+        Services.emailOutboxService.enqueue(createdOrder.getCustomer().getEmail(),
+                String.format(ORDER_DETAILS_SUBJECT, createdOrder.getCode()), content, true);
     }
 
     @Override
-    public void sendOrderCancelNotification(Order order) throws MessagingException {
-        MimeMessage orderCancelMail = mailSender.createMimeMessage();
-
-        MimeMessageHelper helper = new MimeMessageHelper(orderCancelMail);
-        helper.setFrom(env.getProperty("spring.mail.mail_from"));
-        helper.setTo(order.getCustomer().getEmail());
-        helper.setSubject(String.format("Отмена заказа #%d", order.getCode()));
-        String content = String.format("""
-                <p>Здравствуйте %s!</p>
-                <p>Заказ №%d от %5$s был отменён.</p>
-                <p>Количество заказанных товаров: <b>%d</b></p>
-                <p>Сумма заказа: <b>%s</b></p>
-                """, order.getCustomer().getName(),
+    public void sendOrderCancelNotification(Order order) {
+        String content = String.format(ORDER_CANCEL_HTML, order.getCustomer().getName(),
                 order.getCode(),
                 order.getGeneralProductsAmount(),
                 Utils.intFormatter.format(order.getSum()),
                 Utils.sdf.format(order.getOrderDate()));
-        helper.setText(content, true);
 
-        mailSender.send(orderCancelMail);
+        Services.emailOutboxService.enqueue(order.getCustomer().getEmail(), String.format(ORDER_CANCEL_SUBJECT, order.getCode()),
+                content, true);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.repositories.orders.OrdersRepository;
+import gp.wagner.backend.services.interfaces.OrderCodesService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Генератор кодов заказов: время + номер экземпляра + порядковый номер
+@Service
+public class OrderCodesServiceImpl implements OrderCodesService {
+
+    // Начало отсчёта времени в коде - 01.01.2024
+    private static final long EPOCH_SECONDS = Instant.parse("2024-01-01T00:00:00Z").getEpochSecond();
+
+    // Кол-во номеров экземпляров и кодов одного экземпляра в секунду
+    private static final int NODES = 100;
+    private static final int SEQUENCE_SIZE = 10_000;
+
+    private final int nodeId;
+
+    // Последний выданный код
+    private final AtomicLong lastCode;
+
+    private OrdersRepository ordersRepository;
+
+    @Autowired
+    public void setOrdersRepository(OrdersRepository ordersRepository) {
+        this.ordersRepository = ordersRepository;
+    }
+
+    public OrderCodesServiceImpl(@Value("${spring.orders.node-id:0}") int nodeId) {
+        if (nodeId < 0 || nodeId >= NODES)
+            throw new IllegalArgumentException(String.format("Номер экземпляра для кодов заказов должен быть от 0 до %d. Задан: %d",
+                    NODES - 1, nodeId));
+
+        this.nodeId = nodeId;
+
+        // Отсчёт начинается со следующей секунды, чтобы не повторить коды, выданные до перезапуска в текущую секунду
+        this.lastCode = new AtomicLong(compose(currentSeconds() + 1, 0));
+    }
+
+    /**
+     * Продолжить последовательность с наибольшего кода этого экземпляра в БД. Если часы были переведены назад
+     * или до перезапуска коды занимали следующие секунды, отсчёт от текущего времени повторил бы уже выданные коды
+     * */
+    @PostConstruct
+    public void seedFromDatabase() {
+        if (ordersRepository == null)
+            return;
+
+        ordersRepository.getMaxCodeByNode(nodeId, NODES, SEQUENCE_SIZE)
+                .ifPresent(maxCode -> lastCode.accumulateAndGet(maxCode, Math::max));
+    }
+
+    @Override
+    public long nextCode() {
+        long seconds = currentSeconds();
+
+        return lastCode.updateAndGet(last -> {
+            long lastSeconds = last / ((long) NODES * SEQUENCE_SIZE);
+
+            if (seconds > lastSeconds)
+                return compose(seconds, 0);
+
+            // Часы не изменились или переведены назад - продолжить последовательность последней секунды
+            if (last % SEQUENCE_SIZE < SEQUENCE_SIZE - 1)
+                return last + 1;
+
+            // Коды секунды исчерпаны - занять следующую секунду, не дожидаясь её наступления
+            return compose(lastSeconds + 1, 0);
+        });
+    }
+
+    private long compose(long seconds, long sequence){
+        return (seconds * NODES + nodeId) * SEQUENCE_SIZE + sequence;
+    }
+
+    private static long currentSeconds(){
+        return System.currentTimeMillis() / 1000 - EPOCH_SECONDS;
+    }
+}
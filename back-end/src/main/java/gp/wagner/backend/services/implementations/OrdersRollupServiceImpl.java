@@ -0,0 +1,210 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.admin_panel.AdminPanelStatisticsRepository;
+import gp.wagner.backend.services.interfaces.OrdersRollupService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+// Сервис сводки заказов по дням
+@Service
+public class OrdersRollupServiceImpl implements OrdersRollupService {
+
+    private AdminPanelStatisticsRepository repository;
+
+    @Autowired
+    public void setRepository(AdminPanelStatisticsRepository repository) {
+        this.repository = repository;
+    }
+
+    @Value("${spring.statistics.rollup-backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    // Кол-во дней, пересчитываемых в одной транзакции при полном пересчёте
+    private static final int BACKFILL_DAYS_CHUNK = 31;
+
+    // Кол-во заказов в одном запросе изменения сводки и строк в одном запросе добавления
+    private static final int ORDERS_CHUNK = 1_000;
+    private static final int ROWS_CHUNK = 1_000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Выполняющийся полный пересчёт
+    private CompletableFuture<Void> backfilling;
+
+    // Заполнить сводку при первом запуске, если она пуста
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (backfillOnStartup && repository.countRollupRows() == 0)
+            startBackfill();
+    }
+
+    //region Изменение сводки
+    @Override
+    @Transactional
+    public void addOrder(long orderId, Date orderDate) {
+        addOrders(List.of(orderId), orderDate != null ? List.of(orderDate) : null);
+    }
+
+    @Override
+    @Transactional
+    public void subtractOrder(long orderId, Date orderDate) {
+        subtractOrders(List.of(orderId), orderDate != null ? List.of(orderDate) : null);
+    }
+
+    @Override
+    @Transactional
+    public void addOrders(List<Long> ordersIds, Collection<Date> ordersDates) {
+        if (ordersIds == null || ordersIds.isEmpty())
+            return;
+
+        applyOrders(ordersIds, 1);
+        invalidateStatisticsAfterCommit(toLocalDates(ordersDates));
+    }
+
+    /**
+     * Вычитается состояние заказов, сохранённое в БД. Несохранённые изменения сессии перед запросом не сбрасываются,
+     * поэтому заказ можно вычесть и после изменения сущности - до её сохранения
+     * */
+    @Override
+    @Transactional
+    public void subtractOrders(List<Long> ordersIds, Collection<Date> ordersDates) {
+        if (ordersIds == null || ordersIds.isEmpty())
+            return;
+
+        FlushModeType flushMode = entityManager.getFlushMode();
+        entityManager.setFlushMode(FlushModeType.COMMIT);
+
+        try {
+            applyOrders(ordersIds, -1);
+        } finally {
+            entityManager.setFlushMode(flushMode);
+        }
+
+        invalidateStatisticsAfterCommit(toLocalDates(ordersDates));
+    }
+
+    private void applyOrders(List<Long> ordersIds, int sign){
+        for (int i = 0; i < ordersIds.size(); i += ORDERS_CHUNK)
+            repository.addOrdersToRollup(ordersIds.subList(i, Math.min(i + ORDERS_CHUNK, ordersIds.size())), sign);
+    }
+
+    /**
+     * Пересчёт выполняется в отдельной транзакции: удаление сводки за дни блокирует её строки, поэтому изменения сводки
+     * заказами за эти дни ожидают завершения пересчёта. Заказы читаются уже после удаления неблокирующим чтением:
+     * заказы, зафиксированные до него, учитываются, а оформляемые параллельно - прибавятся к сводке после пересчёта
+     * */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void refreshDays(Date dateLo, Date dateHi) {
+        repository.deleteRollupBetweenDates(dateLo, dateHi);
+
+        List<Object[]> rows = repository.getRollupRowsBetweenDates(dateLo, dateHi);
+
+        for (int i = 0; i < rows.size(); i += ROWS_CHUNK)
+            repository.insertRollupRows(toJson(rows.subList(i, Math.min(i + ROWS_CHUNK, rows.size()))));
+
+        invalidateStatisticsAfterCommit(toLocalDate(dateLo).datesUntil(toLocalDate(dateHi).plusDays(1)).toList());
+    }
+
+    @Override
+    public void backfill() {
+        Object[] borders = repository.getOrdersDatesBorders().get(0);
+
+        if (borders[0] == null)
+            return;
+
+        LocalDate lastDay = toLocalDate(borders[1]);
+
+        // Пересчёт через прокси сервиса, чтобы каждая часть выполнялась в своей транзакции
+        for (LocalDate day = toLocalDate(borders[0]); !day.isAfter(lastDay); day = day.plusDays(BACKFILL_DAYS_CHUNK)) {
+            LocalDate chunkEnd = day.plusDays(BACKFILL_DAYS_CHUNK - 1);
+
+            Services.ordersRollupService.refreshDays(toDate(day), toDate(chunkEnd.isAfter(lastDay) ? lastDay : chunkEnd));
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> startBackfill() {
+
+        if (backfilling != null && !backfilling.isDone())
+            return backfilling;
+
+        backfilling = CompletableFuture.runAsync(this::backfill)
+                .whenComplete((result, exception) -> {
+                    if (exception != null)
+                        System.out.println("\n\tПересчёт сводки заказов завершился с ошибкой: " + exception.getMessage() + "\n");
+                });
+
+        return backfilling;
+    }
+    //endregion
+
+    /**
+     * Сбросить кэш статистики по дням. Кэш сбрасывается после фиксации транзакции
+     * @param days изменённые дни. null - сбросить весь кэш
+     * */
+    private static void invalidateStatisticsAfterCommit(Collection<LocalDate> days){
+        if (days == null)
+            Services.statisticsDaysCacheService.invalidateAll();
+        else
+            days.forEach(Services.statisticsDaysCacheService::invalidate);
+    }
+
+    private static Collection<LocalDate> toLocalDates(Collection<Date> dates){
+        if (dates == null)
+            return null;
+
+        Set<LocalDate> days = new TreeSet<>();
+
+        for (Date date : dates)
+            if (date != null)
+                days.add(toLocalDate(date));
+
+        return days;
+    }
+
+    // JSON массив строк сводки для запроса insertRollupRows
+    private static String toJson(List<Object[]> rows){
+        return rows.stream()
+                .map(row -> String.format(Locale.ROOT,
+                        "{\"date\":\"%s\",\"categoryId\":%d,\"stateId\":%d,\"ordersCount\":%d,\"ordersSum\":%d,\"unitsCount\":%d}",
+                        toLocalDate(row[0]), ((Number) row[1]).longValue(), ((Number) row[2]).intValue(),
+                        ((Number) row[3]).longValue(), ((Number) row[4]).longValue(), ((Number) row[5]).longValue()))
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    // Дата из сущности или из результата native запроса
+    private static LocalDate toLocalDate(Object date){
+        if (date instanceof LocalDateTime dateTime)
+            return dateTime.toLocalDate();
+
+        if (date instanceof LocalDate localDate)
+            return localDate;
+
+        if (date instanceof java.sql.Date sqlDate)
+            return sqlDate.toLocalDate();
+
+        return ((Date) date).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static Date toDate(LocalDate day){
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
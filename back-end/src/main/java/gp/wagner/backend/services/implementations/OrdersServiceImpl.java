@@ -31,8 +31,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class OrdersServiceImpl implements OrdersService {
@@ -75,25 +77,32 @@ public class OrdersServiceImpl implements OrdersService {
     //endregion
 
     @Override
+    @Transactional
     public SimpleTuple<Long, Long> create(Order order) {
 
         if (order == null)
             return new SimpleTuple<>(-1L, -1L);
 
 
-        order.setCode(Utils.generateOrderCode(order.getCustomer().getId()));
+        order.setCode(Services.orderCodesService.nextCode());
         long createdOrderId = ordersRepository.saveAndFlush(order).getId();
 
+        // Заказ может быть добавлен задним числом
+        Services.ordersRollupService.addOrder(createdOrderId, order.getOrderDate());
+
         return new SimpleTuple<>(createdOrderId, order.getCode());
     }
 
     @Override
     public SimpleTuple<Long, Long> create(int orderStateId, int customerId) {
 
-        long orderCode = Utils.generateOrderCode(customerId);
+        long orderCode = Services.orderCodesService.nextCode();
         ordersRepository.insertOrder(orderStateId, customerId, orderCode);
 
-        return new SimpleTuple<>(ordersRepository.getMaxId(), orderCode);
+        long createdOrderId = ordersRepository.getMaxId();
+        Services.ordersRollupService.addOrder(createdOrderId, new Date());
+
+        return new SimpleTuple<>(createdOrderId, orderCode);
     }
 
     // Добавление заказа
@@ -139,7 +148,7 @@ public class OrdersServiceImpl implements OrdersService {
 
         }
 
-        long orderCode = Utils.generateOrderCode(existingCustomer.getId());
+        long orderCode = Services.orderCodesService.nextCode();
 
         PaymentMethod paymentMethod = ordersRepository.getPaymentMethodById(dto.getPaymentMethodId())
                 .orElseThrow(() -> new ApiException(String.format("Способ оплаты с id: %d не найден!", dto.getPaymentMethodId())));
@@ -193,53 +202,59 @@ public class OrdersServiceImpl implements OrdersService {
         return new SimpleTuple<>(createdOrder.getId(), createdOrder.getCode()) ;
     }*/
 
-    // Добавление заказа
+    // Добавление заказа. Покупатель, заказ и все его позиции сохраняются в одной транзакции
     @Override
-    public SimpleTuple<Long, Long> create(OrderRequestDto dto, String fingerprint, String ip) throws MessagingException {
+    @Transactional
+    public SimpleTuple<Long, Long> create(OrderRequestDto dto, String fingerprint, String ip) {
 
         if (dto == null || dto.getCustomer() == null)
             return null;
 
         // Добавить покупателя, если он не задан
-        //Long customer = dto.getCustomer().getId();
         Customer existingCustomer = Services.customersService.create(dto.getCustomer(), fingerprint, ip);
 
-        long orderCode = Utils.generateOrderCode(existingCustomer.getId());
-
         PaymentMethod paymentMethod = ordersRepository.getPaymentMethodById(dto.getPaymentMethodId())
                 .orElseThrow(() -> new ApiException(String.format("Способ оплаты с id: %d не найден!", dto.getPaymentMethodId())));
 
-        // Добавить информацию о самом заказе
-        ordersRepository.insertOrder(dto.getStateId(), existingCustomer.getId().intValue(), orderCode);
+        OrderState orderState = ordersRepository.getOrderStateById(dto.getStateId())
+                .orElseThrow(() -> new ApiException(String.format("Статус заказа с id: %d не найден!", dto.getStateId())));
 
-        Order createdOrder = ordersRepository.findOrderByCode(orderCode).orElse(null);
+        // Версия цен запоминается до расчёта суммы, чтобы изменение скидок во время оформления пометило заказ устаревшим
+        long pricingVersion = Services.discountsService.getPricingVersion();
 
-        // Если созданный заказ найти не удалось
-        if (createdOrder == null)
-            return new SimpleTuple<>(-1L, -1L);
+        // Все варианты заказа одним запросом
+        Map<Long, ProductVariant> variantsMap = new HashMap<>();
 
-        // Добавить способ оплат
-        createdOrder.setPaymentMethod(paymentMethod);
+        for (ProductVariant pv : productVariantsRepository.findProductVariantsWithProductsByIdList(
+                dto.getProductVariantIdAndCount().keySet().stream().map(Integer::longValue).toList()))
+            variantsMap.put(pv.getId(), pv);
+
+        Order createdOrder = new Order();
+        createdOrder.setOrderDate(new Date());
+        createdOrder.setCode(Services.orderCodesService.nextCode());
         createdOrder.setDescription(dto.getDescription());
+        createdOrder.setOrderState(orderState);
+        createdOrder.setPaymentMethod(paymentMethod);
+        createdOrder.setCustomer(existingCustomer);
+        createdOrder.setPricingVersion(pricingVersion);
 
         // Добавить список товаров
-        List<OrderAndProductVariant> opvList = new LinkedList<>();
-
-        ProductVariant productVariant;
+        List<OrderAndProductVariant> opvList = new ArrayList<>();
 
         int orderSum = 0;
         int productsAmount = 0;
 
         for (Map.Entry<Integer,Integer> entry : dto.getProductVariantIdAndCount().entrySet()) {
 
-            productVariant = productVariantsRepository.findById(entry.getKey().longValue()).orElse(null);
+            ProductVariant productVariant = variantsMap.get(entry.getKey().longValue());
 
             if (productVariant == null)
                 continue;
 
-            opvList.add(new OrderAndProductVariant(null, entry.getValue(), productVariant, createdOrder));
+            OrderAndProductVariant opv = new OrderAndProductVariant(null, entry.getValue(), productVariant, createdOrder);
+            opvList.add(opv);
 
-            orderSum += productVariant.getPriceWithDiscount()*entry.getValue();
+            orderSum += opv.getUnitPrice()*entry.getValue();
             productsAmount += entry.getValue();
 
         }
@@ -247,17 +262,31 @@ public class OrdersServiceImpl implements OrdersService {
         // Установить сумму заказа и общее кол-во единиц вариантов товара
         createdOrder.setSum(orderSum);
         createdOrder.setGeneralProductsAmount(productsAmount);
+        createdOrder.setOrderAndPVList(opvList);
 
-        update(createdOrder);
+        createdOrder = ordersRepository.save(createdOrder);
 
-        opvRepository.saveAll(opvList);
+        // Позиции добавляются одним запросом вместо вставки каждой позиции отдельно
+        if (!opvList.isEmpty())
+            opvRepository.insertOrderLines(createdOrder.getId(), toOrderLinesJson(opvList));
+
+        // Добавить заказ в сводку вместе с товарами
+        Services.ordersRollupService.addOrder(createdOrder.getId(), createdOrder.getOrderDate());
 
-        //TODO: реализовать асинхронную отправку уведомления || синхронное добавление в таблицу уведомлений для админов и модераторов
+        // Письмо добавляется в очередь исходящих в той же транзакции и уходит только после её фиксации
         Services.emailService.sendOrderDetailsMime(createdOrder);
 
         return new SimpleTuple<>(createdOrder.getId(), createdOrder.getCode()) ;
     }
 
+    // JSON массив позиций заказа для запроса insertOrderLines
+    private static String toOrderLinesJson(List<OrderAndProductVariant> opvList){
+        return opvList.stream()
+                .map(opv -> String.format(Locale.ROOT, "{\"productVariantId\":%d,\"count\":%d,\"unitPrice\":%d}",
+                        opv.getProductVariant().getId(), opv.getProductsAmount(), opv.getUnitPrice()))
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
     @Override
     public PaymentMethod createPaymentMethod(String methodName) {
 
@@ -365,112 +394,61 @@ public class OrdersServiceImpl implements OrdersService {
     }
 
     @Override
+    @Transactional
     public void update(Order order) {
-        ordersRepository.saveAndFlush(order);
+
+        // Вычитается сохранённое состояние заказа: дата, состав и сумма могли измениться
+        if (order.getId() != null)
+            Services.ordersRollupService.subtractOrder(order.getId(), null);
+
+        long orderId = ordersRepository.saveAndFlush(order).getId();
+
+        Services.ordersRollupService.addOrder(orderId, order.getOrderDate());
     }
 
     @Override
+    @Transactional
     public void update(long id, int orderStateId, int customerId, Long orderCode, int sum) {
 
         if (id <= 0 || orderStateId <= 0 || customerId <= 0 || orderCode <= 0 || sum <= 0)
             throw new ApiException("Incorrect arguments in order.update");
 
+        Services.ordersRollupService.subtractOrder(id, null);
+
         ordersRepository.updateOrder(id, orderStateId, customerId, orderCode, sum);
 
+        Services.ordersRollupService.addOrder(id, null);
     }
 
     @Override
+    @Transactional
     public void updateOrdersOnPvPriceChanged(ProductVariant changedPv) {
 
-        // Найти заказы с заданным вариантом товара
-        List<Order> ordersToChange = findOrdersByPvIdAndStateId(changedPv.getId(), null, Constants.MutableOrderStateId);
-
-        if (ordersToChange.isEmpty())
-            return;
-
-        // Найти все записи в таблице многие ко многим
-        List<OrderAndProductVariant> opvAll = opvRepository.findOrdersAndPvByIdListOrCodesList(ordersToChange.stream().map(Order::getId).toList());
-
-        // Пересчитать сумму для каждого заказа с учётом изменённого варианта товара
-
-        ServicesUtils.countSumInOrders(ordersToChange, opvAll);
-
-        // Сохранить заказы
-        ordersRepository.saveAll(ordersToChange);
-
+        // Пересчитать суммы заказов с изменённым вариантом товара
+        recountMutableOrders(List.of(changedPv.getId()), false, false);
     }
 
     // Скрытие варианта товара - пересчёт суммы в корзине
     @Override
+    @Transactional
     public void updateOrdersOnPvHidden(ProductVariant pv, List<ProductVariant> changedPvList) {
 
         if (pv == null && changedPvList == null)
             return;
 
-        List<Long> changedPvIdsList = changedPvList != null ? changedPvList.stream().map(ProductVariant::getId).toList() : null;
-        Long singlePvId = pv != null ? pv.getId() : null;
-
-        // Найти заказы с заданным вариантом/вариантами товара
-        List<Order> ordersToChange = findOrdersByPvIdAndStateId(singlePvId, changedPvIdsList, Constants.MutableOrderStateId);
-
-        if (ordersToChange.isEmpty())
-            return;
-
-        // Найти все записи в таблице многие ко многим
-        List<OrderAndProductVariant> opvAll = opvRepository.findOrdersAndPvByIdListOrCodesList(ordersToChange.stream().map(Order::getId).toList());
-
-        // Для расчёта оставить только записи, где варианты не скрыты и не удалены
-        opvAll = opvAll.stream()
-                .filter(e -> e.getProductVariant().getShowVariant() &&
-                        (e.getProductVariant().getIsDeleted() == null || !e.getProductVariant().getIsDeleted())
-                ).toList();
-
-        // Задаём список
-        ServicesUtils.countSumInOrders(ordersToChange, opvAll);
-
-        ordersRepository.saveAll(ordersToChange);
-
+        // Для расчёта учитываются только записи, где варианты не скрыты и не удалены
+        recountMutableOrders(toPvIds(pv, changedPvList), true, false);
     }
 
     @Override
+    @Transactional
     public void updateOrdersOnPvDelete(ProductVariant pv, List<ProductVariant> deletedPvList) {
 
         if (pv == null && deletedPvList == null)
             return;
 
-        List<Long> changedPvIdsList = deletedPvList != null ? deletedPvList.stream().map(ProductVariant::getId).toList() : null;
-        Long singlePvId = pv != null ? pv.getId() : null;
-
-        // Найти заказы с заданным удаляемыми вариантом/вариантами товара
-        List<Order> ordersToChange = findOrdersByPvIdAndStateId(singlePvId, changedPvIdsList, Constants.MutableOrderStateId);
-
-        if (ordersToChange.isEmpty())
-            return;
-
-        List<OrderAndProductVariant> opvAll = opvRepository.findOrdersAndPvByIdListOrCodesList(ordersToChange.stream().map(Order::getId).toList());
-
-        // Получить элементы, которые нужно удалить в наихудшем случае сложность скорее всего может быть O(n^2).
-        // Возможно стоит сделать changedPvIdsList в виде Map<Long, Integer> и сохранять переданный id + флаг
-        List<OrderAndProductVariant> opvToDelete = opvAll.stream()
-                .filter(e -> singlePvId != null ? e.getProductVariant().getId().equals(singlePvId) :
-                        changedPvIdsList.stream().anyMatch(pvId -> pvId.equals(e.getProductVariant().getId()))
-                )
-                .toList();
-
-        // Для расчёта оставить только записи, где варианты не удалены и не скрыты
-        opvAll = opvAll.stream()
-                .filter(e -> e.getProductVariant().getShowVariant() &&
-                        (e.getProductVariant().getIsDeleted() == null || !e.getProductVariant().getIsDeleted())
-                ).toList();
-
-        ServicesUtils.countSumInOrders(ordersToChange, opvAll);
-
-        // Изменить заказы
-        ordersRepository.saveAll(ordersToChange);
-
-        // Удалить необходимые OrderAndProductVariants
-        opvRepository.deleteAll(opvToDelete);
-
+        // Пересчитать суммы без удалённых и скрытых вариантов, затем удалить записи удалённых вариантов из заказов
+        recountMutableOrders(toPvIds(pv, deletedPvList), true, true);
     }
 
     // Изменение заказов при восстановлении товаров из скрытия
@@ -483,17 +461,26 @@ public class OrdersServiceImpl implements OrdersService {
 
     // Изменить статус заказа
     @Override
+    @Transactional
     public void updateStatus(long orderCode, int orderStateId) {
-        if(getByOrderCode(orderCode) == null)
+        Order order = getByOrderCode(orderCode);
+
+        if(order == null)
             throw new ApiException(String.format("Заказ с кодом %d не существует!", orderCode));
 
         OrderState state = ordersRepository.getOrderStateById(orderStateId).orElseThrow(() ->
                 new ApiException(String.format("Не найден статус заказа с id: %d", orderStateId)));
 
+        // Перенести заказ в сводке на новый статус
+        Services.ordersRollupService.subtractOrder(order.getId(), order.getOrderDate());
+
         ordersRepository.updateOrderState(null, orderCode, state.getId());
+
+        Services.ordersRollupService.addOrder(order.getId(), order.getOrderDate());
     }
 
     @Override
+    @Transactional
     public void cancelOrder(Long orderCode) throws MessagingException {
 
         if (orderCode == null)
@@ -507,25 +494,39 @@ public class OrdersServiceImpl implements OrdersService {
         OrderState orderState = ordersRepository.getOrderStateByName("отменён")
                 .orElseThrow(() -> new ApiException(String.format("Не найден статус для отмены заказа %d", orderToCancel.getCode())));
 
+        Services.ordersRollupService.subtractOrder(orderToCancel.getId(), orderToCancel.getOrderDate());
+
         orderToCancel.setOrderState(orderState);
 
         ordersRepository.saveAndFlush(orderToCancel);
+        Services.ordersRollupService.addOrder(orderToCancel.getId(), orderToCancel.getOrderDate());
 
-        // Асинхронно отправить сообщение об отмене заказа
+        // Добавить сообщение об отмене заказа в очередь исходящих писем
         Services.emailService.sendOrderCancelNotification(orderToCancel);
     }
 
     // Деактивировать заказы, которые были созданы >= 2 дней назад и при этом их статус так и оста
 
     @Override
+    @Transactional
     public Page<Order> getAll(int pageNum, int dataOnPage, OrdersSortEnum sortEnum, GeneralSortEnum sortType) {
 
-        return ordersRepository.findAll(PageRequest.of(pageNum-1, dataOnPage, SortingUtils.createSortForOrders(sortEnum, sortType)));
+        Page<Order> ordersPage = ordersRepository.findAll(PageRequest.of(pageNum-1, dataOnPage, SortingUtils.createSortForOrders(sortEnum, sortType)));
+
+        refreshStaleSums(ordersPage.getContent());
+
+        return ordersPage;
     }
 
     @Override
+    @Transactional
     public Order getById(Long id) {
-        return ordersRepository.findById(id).orElse(null);
+        Order order = ordersRepository.findById(id).orElse(null);
+
+        if (order != null)
+            refreshStaleSums(List.of(order));
+
+        return order;
     }
 
     // Дневная статистика по товарам
@@ -544,18 +545,29 @@ public class OrdersServiceImpl implements OrdersService {
     }
 
     @Override
+    @Transactional
     public Order getByOrderCode(long code) {
 
-        return ordersRepository.findOrderByCode(code)
+        Order order = ordersRepository.findOrderByCode(code)
                 .orElseThrow(() -> new ApiException(String.format("Товар с кодом %d не найден!", code)));
+
+        refreshStaleSums(List.of(order));
+
+        return order;
     }
 
     @Override
+    @Transactional
     public List<Order> getByOrdersByCodes(List<Long> ordersCodes) {
-        return ordersRepository.getOrdersByCodes(ordersCodes);
+        List<Order> orders = ordersRepository.getOrdersByCodes(ordersCodes);
+
+        refreshStaleSums(orders);
+
+        return orders;
     }
 
     @Override
+    @Transactional
     public Page<Order> getOrdersByCustomerEmail(String email, Long id, int pageNum, int dataOnPage, OrdersSortEnum sortEnum, GeneralSortEnum sortType) {
 
         if ((email == null || email.isBlank()) && id == null)
@@ -599,12 +611,15 @@ public class OrdersServiceImpl implements OrdersService {
 
         List<Order> orders = typedQuery.getResultList();
 
+        refreshStaleSums(orders);
+
         long elementsCount = PaginationUtils.countOrdersByCustomerEmail(entityManager, email, id);
 
         return new PageImpl<>(orders, PageRequest.of(pageNum, dataOnPage), elementsCount);
     }
 
     @Override
+    @Transactional
     public Page<Order> getOrdersByUser(Long userId, int pageNum, int dataOnPage, OrdersSortEnum sortEnum, GeneralSortEnum sortType) {
 
         if (userId == null)
@@ -630,6 +645,12 @@ public class OrdersServiceImpl implements OrdersService {
 
     // Получение всех заказов для определённого товара
     @Override
+    public List<Long> getOrdersIdsByProductId(long productId) {
+        return ordersRepository.getOrdersIdsByProductId(productId);
+    }
+
+    @Override
+    @Transactional
     public Page<Order> getOrdersByProductId(long productId, int pageNum, int dataOnPage, OrdersSortEnum sortEnum, GeneralSortEnum sortType) {
 
         if (pageNum > 0)
@@ -660,6 +681,8 @@ public class OrdersServiceImpl implements OrdersService {
 
         List<Order> opvList = typedQuery.getResultList();
 
+        refreshStaleSums(opvList);
+
         long elementsCount =  PaginationUtils.countProductsOrVariantsOrders(entityManager, productId, Product.class);
 
         return new PageImpl<>(opvList, PageRequest.of(pageNum, dataOnPage), elementsCount);
@@ -676,6 +699,7 @@ public class OrdersServiceImpl implements OrdersService {
     }
 
     @Override
+    @Transactional
     public long deleteOrder(Long id, Long code) {
 
         //Order deletingOrder = ordersRepository.findOrderByIdOrCode(id, code);
@@ -683,6 +707,9 @@ public class OrdersServiceImpl implements OrdersService {
 
         if (deletingOrder != null){
 
+            // Убрать заказ из сводки, пока его товары ещё есть
+            Services.ordersRollupService.subtractOrder(deletingOrder.getId(), deletingOrder.getOrderDate());
+
             // Удалить записи из таблицы М к М
             opvRepository.deleteAll(deletingOrder.getOrderAndPVList());
 
@@ -695,6 +722,7 @@ public class OrdersServiceImpl implements OrdersService {
     }
 
     @Override
+    @Transactional
     public boolean deletePVFromOrder(long code, long productVariantId) {
 
         // Удалять можно только из необработанного заказа - всё остальное для ретроспективы
@@ -833,72 +861,91 @@ public class OrdersServiceImpl implements OrdersService {
     }
 
     @Override
+    @Transactional
     public void recountSumsForVariants(Long pvId, List<Long> pvIdList) {
         if (pvId == null && pvIdList == null)
             throw new ApiException("Не удалось пересчитать суммы заказов. Заданы некорректные параметры!");
 
-        // Найти заказы с заданным вариантом товара
-        List<Order> ordersToChange = findOrdersByPvIdAndStateId(pvId, pvIdList, Constants.MutableOrderStateId);
+        recountMutableOrders(pvId != null ? List.of(pvId) : pvIdList, false, false);
+    }
+
+    /**
+     * Пересчитать суммы необработанных заказов, содержащих заданные варианты товаров. Заказы пересчитываются
+     * набором запросов на стороне БД, без загрузки заказов и их записей
+     * @param onlyVisible учитывать только не скрытые и не удалённые варианты
+     * @param deleteVariants удалить записи заданных вариантов из заказов после пересчёта
+     * */
+    private void recountMutableOrders(List<Long> pvIds, boolean onlyVisible, boolean deleteVariants){
 
-        if (ordersToChange.isEmpty())
+        if (pvIds == null || pvIds.isEmpty())
             return;
 
-        // Найти все записи в таблице многие ко многим
-        List<OrderAndProductVariant> opvAll = opvRepository.findOrdersAndPvByIdListOrCodesList(ordersToChange.stream().map(Order::getId).toList());
+        // Заказы нужно получить до удаления записей - после него заказ может больше не содержать заданных вариантов
+        List<Long> ordersIds = ordersRepository.getOrdersIdsByPvIds(pvIds, Constants.MutableOrderStateId);
 
-        // Пересчитать сумму для каждого заказа с учётом изменённого варианта товара
+        if (ordersIds.isEmpty())
+            return;
 
-        ServicesUtils.countSumInOrders(ordersToChange, opvAll);
+        List<Date> ordersDates = ordersRepository.getOrdersDatesByPvIds(pvIds, Constants.MutableOrderStateId);
 
-        // Сохранить заказы
-        ordersRepository.saveAll(ordersToChange);
-    }
+        // Заказы вычитаются из сводки до пересчёта и прибавляются после него в той же транзакции
+        Services.ordersRollupService.subtractOrders(ordersIds, ordersDates);
 
-    // Выборка товаров и определённым вариантом товара и статусом
-    private List<Order> findOrdersByPvIdAndStateId(Long pvId, List<Long> pvIdList, long statusId){
+        opvRepository.updateUnitPricesByPvIds(pvIds, Constants.MutableOrderStateId, onlyVisible);
+        ordersRepository.recountSumsByPvIds(pvIds, Constants.MutableOrderStateId, onlyVisible);
 
-        if (pvId == null && pvIdList == null)
-            return null;
+        if (deleteVariants)
+            opvRepository.deleteByPvIdsAndState(pvIds, Constants.MutableOrderStateId);
 
-        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        Services.ordersRollupService.addOrders(ordersIds, ordersDates);
+    }
 
-        // Для формирования запросов
-        CriteriaQuery<Order> query = cb.createQuery(Order.class);
+    /**
+     * Пересчитать суммы необработанных заказов, рассчитанные до изменения цен их вариантов.
+     * Стоимость за единицу товара фиксируется заново так же, как при пересчёте по вариантам товаров.
+     * Заказы блокируются и пересчитываются условными запросами - заказ, уже пересчитанный параллельным запросом,
+     * не изменяется. Вызывается в транзакции
+     * */
+    private void refreshStaleSums(List<Order> orders){
 
-        // Таблица с заказываемыми товарами
-        Root<Order> root = query.from(Order.class);
+        if (orders == null || orders.isEmpty())
+            return;
 
-        // Присоединение сущности productVariant
-        Join<Order, OrderAndProductVariant> opvJoin = root.join("orderAndPVList");
+        // Версии цен вариантов загружены вместе с записями заказов
+        List<Order> staleOrders = orders.stream()
+                .filter(order -> order.getOrderState() != null && order.getOrderState().getId() == Constants.MutableOrderStateId &&
+                        order.getOrderAndPVList() != null && order.getOrderAndPVList().stream()
+                        .anyMatch(opv -> opv.getProductVariant().getPricingVersion() > order.getPricingVersion()))
+                .toList();
 
-        // Таблица вариантов товаров
-        Path<ProductVariant> productVariantPath = opvJoin.get("productVariant");
+        if (staleOrders.isEmpty())
+            return;
 
-        // Присоединить таблицу состояний заказов
-        Path<OrderState> orderStatePath = root.get("orderState");
+        // Блокировка до вычитания из сводки: параллельный пересчёт тех же заказов дождётся фиксации этой транзакции
+        List<Long> ordersIds = ordersRepository.lockOrdersByIds(staleOrders.stream().map(Order::getId).toList(),
+                Constants.MutableOrderStateId);
 
-        // Предикат выборки только по id или по списку значений
-        Predicate predicate = pvId != null ? cb.and(
-                cb.equal(productVariantPath.get("id"), pvId),
-                cb.equal(orderStatePath.get("id"), statusId)
-        ) : cb.equal(orderStatePath.get("id"), statusId);
+        if (ordersIds.isEmpty())
+            return;
 
-        // Поиск по списку id
-        if (pvIdList != null && pvId == null){
-            CriteriaBuilder.In<Long> cbIn = cb.in(productVariantPath.get("id"));
+        List<Date> ordersDates = staleOrders.stream().map(Order::getOrderDate).toList();
 
-            pvIdList.forEach(cbIn::value);
+        Services.ordersRollupService.subtractOrders(ordersIds, ordersDates);
 
-            predicate = cb.and(
-                    predicate,
-                    cbIn
-            );
+        opvRepository.refreshStaleUnitPrices(ordersIds, Constants.MutableOrderStateId);
+        ordersRepository.refreshStaleSums(ordersIds, Constants.MutableOrderStateId);
 
-        }
+        Services.ordersRollupService.addOrders(ordersIds, ordersDates);
 
-        query.where(predicate);
+        // Перечитать пересчитанные заказы и их записи
+        for (Order order : staleOrders) {
+            entityManager.refresh(order);
+            order.getOrderAndPVList().forEach(entityManager::refresh);
+        }
+    }
 
-        return entityManager.createQuery(query).getResultList();
+    private static List<Long> toPvIds(ProductVariant pv, List<ProductVariant> pvList){
+        return pv != null ? List.of(pv.getId()) : pvList.stream().map(ProductVariant::getId).toList();
     }
 
     public List<Order> findOrdersByPvIdAndStateIdIsNot(List<Long> pvIdList, long statusId) {
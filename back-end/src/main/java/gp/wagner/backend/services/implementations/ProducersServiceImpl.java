@@ -16,6 +16,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -76,6 +77,8 @@ public class ProducersServiceImpl implements ProducersService {
         if(oldDeletedAtValue == null && producer.getDeletedAt() != null)
             Services.productsService.deleteByProducerId(oldProducer);
 
+        // Название производителя выводится в карточках товаров
+        Services.productCardsService.refreshByProducer(producer.getId());
     }
 
     @Override
@@ -108,6 +111,7 @@ public class ProducersServiceImpl implements ProducersService {
         if(oldDeletedAtValue == null && foundProducer.getDeletedAt() != null)
             Services.productsService.deleteByProducerId(foundProducer);
 
+        Services.productCardsService.refreshByProducer(foundProducer.getId());
     }
 
     @Override
@@ -214,9 +218,12 @@ public class ProducersServiceImpl implements ProducersService {
     }
 
     @Override
-    public List<Producer> getProducersByProductKeyword(String keyword) {
+    public List<Producer> getProducersOfProducts(List<Long> productsIds) {
 
-        return producersRepository.getProducersByProductKeyword(keyword);
+        if (productsIds == null || productsIds.isEmpty())
+            return new ArrayList<>();
+
+        return producersRepository.getProducersOfProducts(productsIds);
     }
 
     @Override
@@ -2,21 +2,26 @@ package gp.wagner.backend.services.implementations;
 
 import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
 import gp.wagner.backend.domain.entities.products.Product;
-import gp.wagner.backend.domain.entities.products.ProductVariant;
 import gp.wagner.backend.domain.specifications.ProductSpecifications;
+import gp.wagner.backend.infrastructure.CursorPage;
 import gp.wagner.backend.infrastructure.PaginationUtils;
 import gp.wagner.backend.infrastructure.ServicesUtils;
 import gp.wagner.backend.infrastructure.SortingUtils;
 import gp.wagner.backend.infrastructure.enums.ProductsOrVariantsEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.ProductsSortEnum;
-import gp.wagner.backend.repositories.products.ProductsRepository;
+import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.services.interfaces.SearchService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.hibernate.search.engine.search.common.BooleanOperator;
+import org.hibernate.search.engine.search.predicate.dsl.BooleanPredicateClausesStep;
+import org.hibernate.search.engine.search.query.SearchQuery;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -24,7 +29,9 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class SearchServiceImpl implements SearchService {
@@ -32,45 +39,38 @@ public class SearchServiceImpl implements SearchService {
     @PersistenceContext
     private EntityManager entityManager;
 
-    // Репозиторий
-    private ProductsRepository productsRepository;
+    // Поля индекса товаров, по которым выполняется поиск
+    private static final String[] SEARCH_FIELDS = {"name", "description", "productVariants.title", "producer.producerName"};
 
-    @Autowired
-    public void setProductsRepository(ProductsRepository prodRepo) {
-        this.productsRepository = prodRepo;
-    }
+    // Максимальное кол-во наиболее релевантных совпадений, по которым выполняется выборка из БД.
+    // Менее релевантные совпадения не выводятся - иначе весь результат поиска уходил бы в запрос списком id
+    private static final int MAX_KEYWORD_HITS = 1000;
+
+    // Кол-во товаров для предосмотра при вводе ключевого слова
+    private static final int PREVIEW_HITS = 6;
 
     // Поиск по ключевому слову вместе с фильтрацией результатов
     @Override
-    public Page<Product> getProductsByKeyword(String key, ProductFilterDtoContainer filterContainer,
+    public Page<Long> getProductsByKeyword(String key, ProductFilterDtoContainer filterContainer,
                                               String priceRange, int page, int limit,
                                               ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
 
         if (page > 0)
             page -= 1;
 
-        // Если фильтр будет не задан, тогда просто выборка по ключевому слову
-        /*if (filterContainer == null){
-            Page<Product> products = productsRepository.findProductsByKeyword(key, PageRequest.of(page, limit));
-            return products;
-        }*/
+        List<Long> foundIds = findProductsIdsByKeyword(key);
+
+        if (foundIds.isEmpty())
+            return new PageImpl<>(new ArrayList<>(), PageRequest.of(page, limit), 0);
 
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
-        CriteriaQuery<Product> query = cb.createQuery(Product.class).distinct(true);
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
 
         Root<Product> root = query.from(Product.class);
 
-        Join<Product, ProductVariant> productVariantJoin = root.join("productVariants");
-
-        //Список предикатов для поиска
-        List<Predicate> searchPredicates = new ArrayList<>();
-
-        String preparedKey = "%" + key + "%";
-        searchPredicates.add(cb.like(root.get("name"), preparedKey));
-        searchPredicates.add(cb.like(root.get("description"), preparedKey));
-        searchPredicates.add(cb.like(productVariantJoin.get("title"), preparedKey));
-        searchPredicates.add(cb.like(root.get("producer").get("producerName"),  preparedKey));
+        // Товары, найденные по ключевому слову в поисковом индексе
+        Predicate searchPredicate = root.get("id").in(foundIds);
 
         // Сформировать предикаты фильтрации по цене и производителям
         List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, filterContainer, null, priceRange,
@@ -84,36 +84,130 @@ public class SearchServiceImpl implements SearchService {
         if (predicates != null && !predicates.isEmpty())
             //Доп.фильтра по категории и ценам + фильтра по характеристикам
             query.where(cb.and(
-                           cb.and(cb.or(searchPredicates.toArray(new Predicate[0]))
-                                   ,featuresPredicate)),
+                           cb.and(searchPredicate, featuresPredicate)),
                            cb.and(predicates.toArray(new Predicate[0]))
                     );
         else
-            query.where(cb.and( cb.or(searchPredicates.toArray(new Predicate[0])), featuresPredicate));
+            query.where(cb.and(searchPredicate, featuresPredicate));
 
         // Задать сортировку
-        SortingUtils.createSortQueryForProducts(cb, query, root, sortEnum, sortType);
+        SortingUtils.createSortedIdsSelectionForProducts(cb, query, root, sortEnum, sortType);
 
-        TypedQuery<Product> typedQuery = entityManager.createQuery(query);
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
 
         typedQuery.setMaxResults(limit);
         typedQuery.setFirstResult(page*limit);
 
-        List<Product> products = typedQuery.getResultList();
+        List<Long> productsIds = typedQuery.getResultList().stream().map(row -> row.get(0, Long.class)).toList();
 
         // Подсчёт общего кол-ва элементов без пагинации
-        long elementsCount = PaginationUtils.countProductsByKeyword(preparedKey, entityManager, specifications, filterContainer, priceRange);
+        long elementsCount = PaginationUtils.countProductsByKeyword(foundIds, entityManager, specifications, filterContainer, priceRange);
+
+        return new PageImpl<>(productsIds, PageRequest.of(page, limit), elementsCount);
+    }
+
+    // Поиск по ключевому слову с выборкой страниц по курсору
+    @Override
+    public CursorPage<Long> getProductsByKeywordByCursor(String key, ProductFilterDtoContainer filterContainer,
+                                                            String priceRange, String cursor, int limit,
+                                                            ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
+
+        List<Long> foundIds = findProductsIdsByKeyword(key);
+
+        if (foundIds.isEmpty())
+            return new CursorPage<>(new ArrayList<>(), null, cursor == null || cursor.isBlank() ? 0L : null);
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
+
+        Root<Product> root = query.from(Product.class);
+
+        // Товары, найденные по ключевому слову в поисковом индексе
+        Predicate searchPredicate = root.get("id").in(foundIds);
+
+        // Сформировать предикаты фильтрации по цене и производителям
+        List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, filterContainer, null, priceRange,
+                ProductsOrVariantsEnum.VARIANTS);
+
+        // Спецификации для фильтрации по характеристикам
+        List<Specification<Product>> specifications = ProductSpecifications.createSubQueriesProductSpecifications(filterContainer);
+        Predicate featuresPredicate = Specification.allOf(specifications).toPredicate(root, query, cb);
+
+        Predicate predicate = cb.and(searchPredicate, featuresPredicate);
 
-        return new PageImpl<>(products, PageRequest.of(page, limit), elementsCount);
+        if (predicates != null && !predicates.isEmpty())
+            predicate = cb.and(predicate, cb.and(predicates.toArray(new Predicate[0])));
+
+        return PaginationUtils.findProductsIdsByCursor(entityManager, query, root, predicate, cursor, limit, sortEnum, sortType,
+                () -> PaginationUtils.countProductsByKeyword(foundIds, entityManager, specifications, filterContainer, priceRange));
     }
 
     //Предварительный поиск только при вводе ключевого слова
     @Override
-    public List<Product> getProductsPreviewByKeyword(String key) {
+    public List<Long> getProductsPreviewByKeyword(String key) {
+
+        // Товары по началу наименования из словаря подсказок в памяти
+        List<Long> productsIds = Services.searchSuggestionsService.getProductsIds(key, PREVIEW_HITS);
+
+        // Если по наименованиям ничего не нашлось - по индексу (описание, производитель, словоформы)
+        return !productsIds.isEmpty() ? productsIds : searchProductsIds(key, PREVIEW_HITS);
+    }
+
+    // Полнотекстовый поиск через hibernate search - со словоформами и поиском по началу вводимых слов
+    @Override
+    public List<Long> findProductsIdsByKeyword(String key) {
+
+        if (key == null || key.isBlank())
+            return new ArrayList<>();
 
-        return productsRepository.findProductsByKeyword(key.toLowerCase(), PageRequest.of(0,6)).getContent();
+        // Общее кол-во и страницы считаются в пределах первых MAX_KEYWORD_HITS совпадений
+        return searchProductsIds(key, MAX_KEYWORD_HITS);
     }
 
-    // Полноценный полнотекстовый поиск с блэкджеком и .... (словоформами, транслитерацией) через hibernate search
+    private List<Long> searchProductsIds(String key, int limit){
+
+        if (key == null || key.isBlank())
+            return new ArrayList<>();
+
+        return createIdsSearchQuery(key).fetchHits(limit);
+    }
+
+    // Запрос id товаров по ключевому слову в поисковом индексе
+    private SearchQuery<Long> createIdsSearchQuery(String key){
+
+        String prefixQuery = createPrefixQuery(key);
+
+        SearchSession searchSession = Search.session(entityManager);
+
+        return searchSession.search(Product.class)
+                .select(f -> f.id(Long.class))
+                .where(f -> {
+                    // Совпадение по словоформам либо по началу слов (для незаконченного ввода)
+                    BooleanPredicateClausesStep<?> matchPredicate = f.bool()
+                            .should(f.match().fields(SEARCH_FIELDS).matching(key));
+
+                    if (!prefixQuery.isEmpty())
+                        matchPredicate.should(f.simpleQueryString().fields(SEARCH_FIELDS)
+                                .matching(prefixQuery)
+                                .defaultOperator(BooleanOperator.AND));
+
+                    // Удалённые и скрытые товары не выводятся
+                    return f.bool()
+                            .must(matchPredicate)
+                            .mustNot(f.match().field("isDeleted").matching(true))
+                            .mustNot(f.match().field("showProduct").matching(false));
+                })
+                .toQuery();
+    }
+
+    // Запрос поиска по началу каждого слова: "дива крас" -> "дива* крас*". Служебные символы синтаксиса удаляются
+    private static String createPrefixQuery(String key){
+        return Arrays.stream(key.trim().split("\\s+"))
+                .map(word -> word.replaceAll("[+|\\-\"*()~\\\\]", ""))
+                .filter(word -> !word.isEmpty())
+                .map(word -> word + "*")
+                .collect(Collectors.joining(" "));
+    }
 
 }
@@ -0,0 +1,275 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.domain.dto.response.search.SearchSuggestionRespDto;
+import gp.wagner.backend.infrastructure.enums.SuggestionTypeEnum;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.products.ProductVariantsRepository;
+import gp.wagner.backend.repositories.products.ProductsRepository;
+import gp.wagner.backend.services.interfaces.SearchSuggestionsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+// Сервис подсказок поиска - словарь слов в памяти с выборкой по префиксу
+@Service
+public class SearchSuggestionsServiceImpl implements SearchSuggestionsService {
+
+    //region Репозитории
+    private ProductsRepository productsRepository;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    private ProductVariantsRepository productVariantsRepository;
+
+    @Autowired
+    public void setProductVariantsRepository(ProductVariantsRepository productVariantsRepository) {
+        this.productVariantsRepository = productVariantsRepository;
+    }
+    //endregion
+
+    // Разделитель слов - всё, кроме букв и цифр
+    private static final Pattern WORDS_SPLITTER = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Максимальное кол-во подходящих подсказок, среди которых выбираются лучшие. Ограничивает время ответа на короткие префиксы
+    private static final int MAX_CANDIDATES = 500;
+
+    // Подсказка: для товаров id - это id товара, для производителей и категорий - их id
+    private record Suggestion(String text, SuggestionTypeEnum type, long id) {}
+
+    // Отсортированный словарь: слово -> подсказки, в тексте которых оно встречается
+    private volatile ConcurrentSkipListMap<String, Set<Suggestion>> dictionary = new ConcurrentSkipListMap<>();
+
+    // Кол-во товаров, добавивших подсказку - производители и категории общие для многих товаров
+    private Map<Suggestion, Integer> references = new HashMap<>();
+
+    // Подсказки, добавленные каждым товаром
+    private Map<Long, List<Suggestion>> suggestionsByProduct = new HashMap<>();
+
+    // Версия дерева категорий, по которой были взяты названия категорий
+    private long categoriesTreeVersion;
+
+    //region Построение и изменение словаря
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+
+        // Названия категорий берутся из дерева категорий в памяти
+        if (Services.categoriesTreeService.getVersion() == 0)
+            Services.categoriesTreeService.rebuild();
+
+        ConcurrentSkipListMap<String, Set<Suggestion>> newDictionary = new ConcurrentSkipListMap<>();
+        Map<Suggestion, Integer> newReferences = new HashMap<>();
+        Map<Long, List<Suggestion>> newSuggestionsByProduct = new HashMap<>();
+
+        categoriesTreeVersion = Services.categoriesTreeService.getVersion();
+
+        Map<Long, List<Suggestion>> collected = collectSuggestions(productsRepository.getProductsForSuggestions(),
+                productVariantsRepository.getVariantsTitlesForSuggestions());
+
+        collected.forEach((productId, suggestions) -> {
+            suggestions.forEach(suggestion -> addSuggestion(newDictionary, newReferences, suggestion));
+            newSuggestionsByProduct.put(productId, suggestions);
+        });
+
+        // Словарь строится в стороне и подменяется целиком
+        references = newReferences;
+        suggestionsByProduct = newSuggestionsByProduct;
+        dictionary = newDictionary;
+    }
+
+    @Override
+    public synchronized void refreshProducts(List<Long> productsIds) {
+        if (productsIds == null || productsIds.isEmpty())
+            return;
+
+        // Категории изменились (в т.ч. повторяющиеся) - названия могли поменяться у товаров, которые не перечитываются
+        if (categoriesTreeVersion != Services.categoriesTreeService.getVersion()) {
+            rebuild();
+            return;
+        }
+
+        Map<Long, List<Suggestion>> collected = collectSuggestions(productsRepository.getProductsForSuggestionsByIds(productsIds),
+                productVariantsRepository.getVariantsTitlesForSuggestionsByProductsIds(productsIds));
+
+        for (Long productId : productsIds) {
+
+            // Сначала добавить новые подсказки, чтобы общие подсказки не удалялись из словаря и не добавлялись заново
+            List<Suggestion> newSuggestions = collected.getOrDefault(productId, List.of());
+            newSuggestions.forEach(suggestion -> addSuggestion(dictionary, references, suggestion));
+
+            // Удалённые и скрытые товары просто убираются из словаря
+            List<Suggestion> oldSuggestions = newSuggestions.isEmpty() ? suggestionsByProduct.remove(productId) :
+                    suggestionsByProduct.put(productId, newSuggestions);
+
+            if (oldSuggestions != null)
+                oldSuggestions.forEach(suggestion -> removeSuggestion(dictionary, references, suggestion));
+        }
+    }
+
+    // Сформировать подсказки товаров: наименование, наименования вариантов, производитель, категория
+    private static Map<Long, List<Suggestion>> collectSuggestions(List<Object[]> productsRows, List<Object[]> titlesRows){
+
+        Map<Long, List<String>> titlesByProduct = new HashMap<>();
+
+        for (Object[] row : titlesRows)
+            if (row[1] != null && !((String) row[1]).isBlank())
+                titlesByProduct.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>()).add((String) row[1]);
+
+        Map<Long, List<Suggestion>> result = new HashMap<>();
+
+        for (Object[] row : productsRows) {
+            long productId = ((Number) row[0]).longValue();
+
+            Set<Suggestion> suggestions = new LinkedHashSet<>();
+
+            if (row[1] != null && !((String) row[1]).isBlank())
+                suggestions.add(new Suggestion(((String) row[1]).trim(), SuggestionTypeEnum.PRODUCT, productId));
+
+            for (String title : titlesByProduct.getOrDefault(productId, List.of()))
+                suggestions.add(new Suggestion(title.trim(), SuggestionTypeEnum.PRODUCT, productId));
+
+            if (row[3] != null && !((String) row[3]).isBlank())
+                suggestions.add(new Suggestion(((String) row[3]).trim(), SuggestionTypeEnum.PRODUCER, ((Number) row[2]).longValue()));
+
+            String categoryName = row[4] != null ? Services.categoriesTreeService.getName(((Number) row[4]).longValue()) : null;
+
+            if (categoryName != null && !categoryName.isBlank())
+                suggestions.add(new Suggestion(categoryName.trim(), SuggestionTypeEnum.CATEGORY, ((Number) row[4]).longValue()));
+
+            result.put(productId, List.copyOf(suggestions));
+        }
+
+        return result;
+    }
+
+    // Добавить подсказку в словарь по каждому её слову, либо только увеличить счётчик ссылок, если она уже есть
+    private static void addSuggestion(ConcurrentSkipListMap<String, Set<Suggestion>> dictionary, Map<Suggestion, Integer> references,
+                                      Suggestion suggestion){
+        if (references.merge(suggestion, 1, Integer::sum) > 1)
+            return;
+
+        for (String word : splitWords(suggestion.text()))
+            dictionary.computeIfAbsent(word, w -> ConcurrentHashMap.newKeySet()).add(suggestion);
+    }
+
+    // Уменьшить счётчик ссылок подсказки и удалить её из словаря, если она больше не используется
+    private static void removeSuggestion(ConcurrentSkipListMap<String, Set<Suggestion>> dictionary, Map<Suggestion, Integer> references,
+                                         Suggestion suggestion){
+        Integer count = references.computeIfPresent(suggestion, (s, value) -> value > 1 ? value - 1 : null);
+
+        if (count != null)
+            return;
+
+        for (String word : splitWords(suggestion.text())) {
+            Set<Suggestion> suggestions = dictionary.get(word);
+
+            if (suggestions == null)
+                continue;
+
+            suggestions.remove(suggestion);
+
+            if (suggestions.isEmpty())
+                dictionary.remove(word, suggestions);
+        }
+    }
+    //endregion
+
+    //region Выборка подсказок
+    @Override
+    public List<SearchSuggestionRespDto> getSuggestions(String key, int limit) {
+
+        // Одинаковый текст может быть у вариантов разных товаров - выводится одна подсказка
+        Set<String> addedTexts = new HashSet<>();
+        List<SearchSuggestionRespDto> result = new ArrayList<>();
+
+        for (Suggestion suggestion : findSuggestions(key, s -> true)) {
+            if (result.size() >= limit)
+                break;
+
+            if (addedTexts.add(suggestion.type().name() + normalize(suggestion.text())))
+                result.add(new SearchSuggestionRespDto(suggestion.text(), suggestion.type().getSuggestionType(), suggestion.id()));
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Long> getProductsIds(String key, int limit) {
+        return findSuggestions(key, s -> s.type() == SuggestionTypeEnum.PRODUCT)
+                .stream()
+                .map(Suggestion::id)
+                .distinct()
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Подсказки, в тексте которых каждое слово ключа является началом одного из слов.
+     * Словарь просматривается по самому длинному слову ключа, остальные слова проверяются у найденных подсказок
+     * @return подсказки по убыванию соответствия: сначала те, текст которых начинается с ключа, затем по типу и длине текста
+     * */
+    private List<Suggestion> findSuggestions(String key, Predicate<Suggestion> filter){
+
+        if (key == null || key.isBlank())
+            return new ArrayList<>();
+
+        List<String> keyWords = splitWords(key);
+
+        if (keyWords.isEmpty())
+            return new ArrayList<>();
+
+        String scanWord = keyWords.stream().max(Comparator.comparingInt(String::length)).get();
+
+        Set<Suggestion> candidates = new LinkedHashSet<>();
+
+        search:
+        for (Set<Suggestion> suggestions : dictionary.subMap(scanWord, true, scanWord + Character.MAX_VALUE, true).values())
+            for (Suggestion suggestion : suggestions) {
+                if (!filter.test(suggestion) || candidates.contains(suggestion) ||
+                        (keyWords.size() > 1 && !containsAllPrefixes(splitWords(suggestion.text()), keyWords)))
+                    continue;
+
+                candidates.add(suggestion);
+
+                if (candidates.size() >= MAX_CANDIDATES)
+                    break search;
+            }
+
+        String normalizedKey = normalize(key.trim());
+
+        return candidates.stream()
+                .sorted(Comparator.<Suggestion, Boolean>comparing(s -> !normalize(s.text()).startsWith(normalizedKey))
+                        .thenComparing(Suggestion::type)
+                        .thenComparingInt(s -> s.text().length())
+                        .thenComparing(Suggestion::text))
+                .toList();
+    }
+
+    // Каждое слово ключа - начало хотя бы одного из слов подсказки
+    private static boolean containsAllPrefixes(List<String> words, List<String> prefixes){
+        return prefixes.stream().allMatch(prefix -> words.stream().anyMatch(word -> word.startsWith(prefix)));
+    }
+    //endregion
+
+    // Привести текст к виду слов словаря: нижний регистр, "ё" заменяется на "е"
+    private static String normalize(String text){
+        return text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private static List<String> splitWords(String text){
+        return Arrays.stream(WORDS_SPLITTER.split(normalize(text)))
+                .filter(word -> !word.isEmpty())
+                .distinct()
+                .toList();
+    }
+}
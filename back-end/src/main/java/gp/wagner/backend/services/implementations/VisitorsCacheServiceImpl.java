@@ -0,0 +1,258 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+import gp.wagner.backend.repositories.VisitorsRepository;
+import gp.wagner.backend.services.interfaces.VisitorsCacheService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Кэш id посетителей и буфер дат последнего посещения
+@Service
+public class VisitorsCacheServiceImpl implements VisitorsCacheService {
+
+    private VisitorsRepository repository;
+
+    @Autowired
+    public void setRepository(VisitorsRepository repository) {
+        this.repository = repository;
+    }
+
+    // Максимальное кол-во посетителей в кэше. При превышении удаляется часть записей
+    private static final int CAPACITY = 100_000;
+
+    // Доля записей, удаляемых при переполнении кэша
+    private static final int EVICTION_PERCENT = 10;
+
+    // Кол-во посетителей в одном запросе изменения даты
+    private static final int BATCH_SIZE = 1_000;
+
+    // Максимальное время ожидания посетителя, создаваемого параллельным запросом. После него посетитель ищется в БД напрямую
+    private static final long WAIT_MILLIS = 5_000;
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private record VisitorKey(String fingerPrint, String ip) {}
+
+    // Запись кэша. Future завершается id посетителя, когда запись посетителя зафиксирована в БД
+    private static final class VisitorEntry {
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        // Поток транзакции, создавшей посетителя, и id до её завершения - повторные запросы этой транзакции не ждут сами себя
+        private volatile Thread creator;
+        private volatile long createdId;
+    }
+
+    /**
+     * Id посетителей. Значение - future, чтобы параллельные запросы одного посетителя
+     * ожидали уже начатый поиск/создание записи, а не выполняли его повторно
+     * */
+    private final ConcurrentHashMap<VisitorKey, VisitorEntry> visitorsIds = new ConcurrentHashMap<>();
+
+    // Время последнего посещения каждого посетителя, ожидающее сохранения
+    private final ConcurrentHashMap<Long, Long> lastVisits = new ConcurrentHashMap<>();
+
+    //region Метрики
+    private final AtomicLong acceptedAmount = new AtomicLong();
+    private final AtomicLong coalescedAmount = new AtomicLong();
+    private final AtomicLong flushesAmount = new AtomicLong();
+    private final AtomicLong failedFlushesAmount = new AtomicLong();
+    private final AtomicLong flushedRowsAmount = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    //endregion
+
+    //region Кэш посетителей
+    @Override
+    public long resolveVisitorId(String fingerPrint, String ip) {
+
+        VisitorKey key = new VisitorKey(fingerPrint, ip);
+
+        while (true) {
+            VisitorEntry entry = visitorsIds.get(key);
+
+            if (entry == null) {
+                VisitorEntry created = new VisitorEntry();
+                entry = visitorsIds.putIfAbsent(key, created);
+
+                // Поиск/создание выполняет только запрос, добавивший запись в кэш
+                if (entry == null)
+                    return findOrCreate(key, created);
+            }
+
+            // Повторный запрос внутри транзакции, создавшей посетителя
+            if (entry.creator == Thread.currentThread())
+                return entry.createdId;
+
+            try {
+                Long visitorId = entry.future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+                // null - транзакция, создавшая посетителя, откачена, поиск повторяется
+                if (visitorId != null)
+                    return visitorId;
+            } catch (TimeoutException e) {
+                // Транзакция, создавшая посетителя, долго не завершается - от дубликата защищает уникальный индекс
+                return upsertVisitor(key);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause)
+                    throw cause;
+
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+    }
+
+    private long findOrCreate(VisitorKey key, VisitorEntry created){
+        try {
+            long visitorId = upsertVisitor(key);
+
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                created.future.complete(visitorId);
+                evictIfNeeded();
+
+                return visitorId;
+            }
+
+            created.createdId = visitorId;
+            created.creator = Thread.currentThread();
+
+            // Остальные запросы получат id только после фиксации транзакции. При откате записи может не быть - поиск повторится
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    created.creator = null;
+
+                    if (status == STATUS_COMMITTED) {
+                        created.future.complete(visitorId);
+                        evictIfNeeded();
+                        return;
+                    }
+
+                    visitorsIds.remove(key, created);
+                    created.future.complete(null);
+                }
+            });
+
+            return visitorId;
+        } catch (RuntimeException e) {
+            // Ошибка не кэшируется - следующий запрос повторит попытку
+            visitorsIds.remove(key, created);
+            created.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Найти или добавить посетителя. Уникальный индекс (fingerprint, ip_address) не даёт параллельным запросам создать дубликат
+    private long upsertVisitor(VisitorKey key){
+        repository.upsertVisitor(key.fingerPrint(), key.ip(), new Date());
+
+        return repository.getVisitorIdForShare(key.fingerPrint(), key.ip())
+                .orElseThrow(() -> new IllegalStateException("Visitor was not found after insert"));
+    }
+
+    // Удалить часть записей при переполнении. Удалённые посетители будут найдены в БД при следующем запросе
+    private void evictIfNeeded(){
+        if (visitorsIds.size() <= CAPACITY)
+            return;
+
+        int toRemove = visitorsIds.size() - CAPACITY + CAPACITY * EVICTION_PERCENT / 100;
+        Iterator<VisitorKey> iterator = visitorsIds.keySet().iterator();
+
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+    //endregion
+
+    //region Даты последнего посещения
+    @Override
+    public void touch(long visitorId) {
+        if (visitorId <= 0)
+            return;
+
+        acceptedAmount.incrementAndGet();
+
+        // Посещение уже ожидающего сохранения посетителя только сдвигает время
+        if (lastVisits.put(visitorId, System.currentTimeMillis()) != null)
+            coalescedAmount.incrementAndGet();
+    }
+
+    // Сохраняется и при остановке приложения
+    @Override
+    @Scheduled(fixedDelay = 10_000)
+    @PreDestroy
+    public synchronized void flush() {
+
+        if (lastVisits.isEmpty())
+            return;
+
+        // Забрать накопленные посещения. Посещения, отмеченные во время сохранения, попадут в следующее
+        Map<Long, Long> drained = new HashMap<>();
+
+        for (Long visitorId : lastVisits.keySet()) {
+            Long visitedAt = lastVisits.remove(visitorId);
+
+            if (visitedAt != null)
+                drained.put(visitorId, visitedAt);
+        }
+
+        List<Long> visitorsIds = new ArrayList<>(drained.keySet());
+
+        long start = System.nanoTime();
+        int saved = 0;
+
+        try {
+            // У каждого посетителя сохраняется его собственное время последнего посещения
+            for (; saved < visitorsIds.size(); saved += BATCH_SIZE)
+                repository.updateLastVisitDates(toJson(visitorsIds.subList(saved, Math.min(saved + BATCH_SIZE, visitorsIds.size())), drained));
+
+            flushesAmount.incrementAndGet();
+        } catch (Exception e) {
+            failedFlushesAmount.incrementAndGet();
+
+            // Несохранённые посещения возвращаются в буфер для повторной попытки
+            for (Long visitorId : visitorsIds.subList(Math.min(saved, visitorsIds.size()), visitorsIds.size()))
+                lastVisits.merge(visitorId, drained.get(visitorId), Math::max);
+
+            System.out.println("\n\tНе удалось сохранить даты посещений: " + e.getMessage() + "\n");
+        } finally {
+            flushedRowsAmount.addAndGet(Math.min(saved, visitorsIds.size()));
+
+            lastFlushMillis = (System.nanoTime() - start) / 1_000_000;
+            maxFlushMillis = Math.max(maxFlushMillis, lastFlushMillis);
+        }
+    }
+    //endregion
+
+    // JSON массив посещений для запроса updateLastVisitDates
+    private static String toJson(List<Long> visitorsIds, Map<Long, Long> visits){
+        return visitorsIds.stream()
+                .map(visitorId -> String.format(Locale.ROOT, "{\"visitorId\":%d,\"visitedAt\":\"%s\"}", visitorId,
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(visits.get(visitorId)), ZoneId.systemDefault())
+                                .format(DATE_TIME_FORMATTER)))
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    @Override
+    public WriteBufferStatisticsRespDto getStatistics() {
+        return new WriteBufferStatisticsRespDto("visitors_last_visits", lastVisits.size(), acceptedAmount.get(), 0,
+                coalescedAmount.get(), flushesAmount.get(), failedFlushesAmount.get(), flushedRowsAmount.get(),
+                lastFlushMillis, maxFlushMillis);
+    }
+}
@@ -2,6 +2,7 @@ package gp.wagner.backend.services.implementations;
 
 import gp.wagner.backend.domain.entities.visits.Visitor;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.repositories.VisitorsRepository;
 import gp.wagner.backend.services.interfaces.VisitorsService;
 import jakarta.annotation.Nullable;
@@ -68,12 +69,8 @@ public class VisitorsServiceImpl implements VisitorsService {
     @Override
     public Visitor saveIfNotExists(String fingerPrint, String ip) {
 
-        Visitor visitor = getByFingerPrintAndIp(fingerPrint, ip);
-
-        if (visitor == null)
-            visitor = repository.saveAndFlush(new Visitor(null, new Date(), ip,  fingerPrint));
-
-        return visitor;
+        // Id посетителя берётся из кэша, запись загружается только при обращении к её полям
+        return repository.getReferenceById(Services.visitorsCacheService.resolveVisitorId(fingerPrint, ip));
     }
     //endregion
 
@@ -25,6 +25,7 @@ import gp.wagner.backend.infrastructure.enums.sorting.orders.OrdersStatisticsSor
 import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.repositories.admin_panel.AdminPanelStatisticsRepository;
 import gp.wagner.backend.services.interfaces.admin_panels.AdminPanelStatisticsService;
+import gp.wagner.backend.services.interfaces.admin_panels.AggregatePagesService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Tuple;
@@ -35,11 +36,16 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.sql.Timestamp;
+import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsService {
@@ -47,6 +53,9 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
     //Репозиторий
     private AdminPanelStatisticsRepository adminPanelRepository;
 
+    // Integer.MIN_VALUE - построчная передача результата драйвером MySQL Connector/J без загрузки выборки целиком
+    private static final int STREAM_FETCH_SIZE = Integer.MIN_VALUE;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -68,14 +77,33 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
 
         Pageable pageable =  PageRequest.of(pageNum, dataOnPage, SortingUtils.createSortForDailyVisits(sortEnum, sortType));
 
-        Page<Object[]> rawPage = adminPanelRepository.getDailyVisitsBetweenDates(datesDto.getMin(), datesDto.getMax(), pageable);
+        LocalDate dateLo = new java.sql.Date(datesDto.getMin().getTime()).toLocalDate();
+        LocalDate dateHi = new java.sql.Date(datesDto.getMax().getTime()).toLocalDate();
+
+        // Вместе с ещё не сохранёнными посещениями из счётчика
+        List<Object[]> rows = Services.dailyVisitsCounterService.readWithPendingVisits(() -> {
+            Map<LocalDate, Long> pendingVisits = new HashMap<>(Services.dailyVisitsCounterService.getPendingVisits());
+
+            List<Object[]> visitsRows = new ArrayList<>();
+
+            for (Object[] row : getDailyVisitsRows(datesDto)) {
+                LocalDate date = new java.sql.Date(((Date) row[0]).getTime()).toLocalDate();
+                visitsRows.add(new Object[]{row[0], ((BigDecimal) row[1]).longValue() + Objects.requireNonNullElse(pendingVisits.remove(date), 0L)});
+            }
 
-        List<SimpleTuple<Date, Long>> resultList = new ArrayList<>();
+            // Дни, записи которых ещё не созданы первым сохранением счётчика
+            pendingVisits.forEach((date, pending) -> {
+                if (!date.isBefore(dateLo) && !date.isAfter(dateHi))
+                    visitsRows.add(new Object[]{java.sql.Date.valueOf(date), pending});
+            });
 
-        for (Object[] rawResult: rawPage.getContent())
-            resultList.add(new SimpleTuple<>((Date) rawResult[0], ((BigDecimal) rawResult[1]).longValue()));
+            return visitsRows;
+        });
 
-        return new PageImpl<>(resultList, pageable, rawPage.getTotalElements());
+        Page<Object[]> rowsPage = toPage(rows, sortEnum == DailyVisitsSortEnum.DATE ? 0 : 1, sortType, pageable);
+
+        return new PageImpl<>(rowsPage.getContent().stream().map(row -> new SimpleTuple<>((Date) row[0], (Long) row[1])).toList(),
+                pageable, rowsPage.getTotalElements());
     }
 
     @Override
@@ -84,7 +112,28 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         if(datesDto == null || !datesDto.isCorrect())
             throw new ApiException("Переданный DTO с диапазоном дат некорректен или дата min > max!");
 
-        return adminPanelRepository.getSumDailyVisitsBetweenDates(datesDto.getMin(), datesDto.getMax());
+        LocalDate dateLo = new java.sql.Date(datesDto.getMin().getTime()).toLocalDate();
+        LocalDate dateHi = new java.sql.Date(datesDto.getMax().getTime()).toLocalDate();
+
+        return Services.dailyVisitsCounterService.readWithPendingVisits(() -> {
+            // Ещё не сохранённые посещения за дни периода
+            long pendingVisits = Services.dailyVisitsCounterService.getPendingVisits()
+                    .entrySet()
+                    .stream()
+                    .filter(entry -> !entry.getKey().isBefore(dateLo) && !entry.getKey().isAfter(dateHi))
+                    .mapToLong(Map.Entry::getValue)
+                    .sum();
+
+            long savedVisits = getDailyVisitsRows(datesDto).stream().mapToLong(row -> ((BigDecimal) row[1]).longValue()).sum();
+
+            return savedVisits + pendingVisits;
+        });
+    }
+
+    // Сохранённые посещения по дням: закрытые дни из кэша статистики
+    private List<Object[]> getDailyVisitsRows(DatesRangeRequestDto datesDto){
+        return Services.statisticsDaysCacheService.getDailyRows("daily_visits", datesDto.getMin(), datesDto.getMax(),
+                (dateLo, dateHi) -> adminPanelRepository.getDailyVisitsBetweenDates(dateLo, dateHi, Pageable.unpaged()).getContent());
     }
 
     @Override
@@ -102,7 +151,16 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         // Получить статус заказа
         int orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : 0;
 
-        return adminPanelRepository.getOrdersByDaysBetweenDates(datesDto.getMin(), datesDto.getMax(), orderStateId, pageable);
+        List<Object[]> rows = Services.statisticsDaysCacheService.getDailyRows("orders:" + orderStateId, datesDto.getMin(), datesDto.getMax(),
+                (dateLo, dateHi) -> adminPanelRepository.getOrdersByDaysBetweenDates(dateLo, dateHi, orderStateId, Pageable.unpaged()).getContent());
+
+        int sortColumn = switch (sortEnum) {
+            case SUM -> 2;
+            case AMOUNT -> 1;
+            default -> 0;
+        };
+
+        return toPage(rows, sortColumn, sortType, pageable);
 
     }
 
@@ -121,14 +179,30 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         // Получить статус заказа
         int orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : 0;
 
-        // Если категория не задана, тогда будут выбраны все записи
-        if (datesDto.getLongValue() == 0)
-            return adminPanelRepository.getCvrToOrdersBetweenDatesInCategory(datesDto.getMin(), datesDto.getMax(), datesDto.getLongValue(),
-                    orderStateId, pageable);
+        return toPage(getOrdersCvrRowsInCategory(datesDto, orderStateId), getCvrSortColumn(sortEnum), sortType, pageable);
+    }
+
+    // Конверсии по дням в категории вместе с дочерними: закрытые дни из кэша статистики
+    private List<Object[]> getOrdersCvrRowsInCategory(DatesRangeAndValRequestDto datesDto, int orderStateId){
+
+        long categoryId = datesDto.getLongValue();
+
+        // Строки сводки категорий построены по дереву категорий - сводка пересчитывается при его изменении
+        String metric = String.format("cvr_category:%d:%d:%d", categoryId, orderStateId,
+                Services.categoriesTreeService.getVersion());
 
-        List<Long> categoriesIds = ServicesUtils.getChildCategoriesList(datesDto.getLongValue());
+        // Все заказы (категория не задана) и заказы поддерева категории - из сводки заказов по дням
+        if (categoryId >= 0)
+            return Services.statisticsDaysCacheService.getDailyRows(metric, datesDto.getMin(), datesDto.getMax(),
+                    (dateLo, dateHi) -> adminPanelRepository.getCvrToOrdersBetweenDatesInCategory(dateLo, dateHi, categoryId,
+                            orderStateId, Pageable.unpaged()).getContent());
 
-        return adminPanelRepository.getCvrToOrdersBetweenDatesInCategoriesIds(datesDto.getMin(), datesDto.getMax(), categoriesIds, orderStateId, pageable);
+        // Повторяющаяся категория объединяет несколько поддеревьев, заказ может попасть в несколько из них
+        List<Long> categoriesIds = ServicesUtils.getChildCategoriesList(categoryId);
+
+        return Services.statisticsDaysCacheService.getDailyRows(metric, datesDto.getMin(), datesDto.getMax(),
+                (dateLo, dateHi) -> adminPanelRepository.getCvrToOrdersBetweenDatesInCategoriesIds(dateLo, dateHi, categoriesIds,
+                        orderStateId, Pageable.unpaged()).getContent());
     }
 
     @Override
@@ -141,6 +215,19 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         if (pageNum > 0)
             pageNum -= 1;
 
+        // Получить статус заказа
+        Integer orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : null;
+
+        String countCacheKey = String.format("cvr_to_orders_in_category:%d:%d:%s:%s", datesDto.getMin().getTime(),
+                datesDto.getMax().getTime(), datesDto.getLongValue(), orderStateId);
+
+        return Services.aggregatePagesService.getPage(countCacheKey, pageNum, dataOnPage,
+                () -> createQueryForCvrToOrdersInCategory(datesDto, orderStateId));
+    }
+
+    // Создать criteria query для выборки конверсии из просмотра в заказ по дням в категории
+    private AggregatePagesService.GroupedQuery createQueryForCvrToOrdersInCategory(DatesRangeAndValRequestDto datesDto, Integer orderStateId){
+
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         CriteriaQuery<Tuple> query = cb.createQuery(Tuple.class);
@@ -149,60 +236,20 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         Join<Order, OrderAndProductVariant> opvJoin = mainQueryRoot.join("orderAndPVList");
         Join<OrderAndProductVariant, ProductVariant> pvJoin = opvJoin.join("productVariant");
 
-        // Подзапрос для выборки кол-ва посещений за день
-        Subquery<Long> dailyVisitsSubquery = query.subquery(Long.class);
-        Root<DailyVisits> dvRoot = dailyVisitsSubquery.from(DailyVisits.class);
-
-        // Создать из date посещения диапазон datetime
-        Expression<Timestamp> minDatetime = cb.function(
-                "timestamp", Timestamp.class,
-                cb.concat(dvRoot.get("date"), cb.literal(" 00:00:00")));
-
-        Expression<Timestamp> maxDatetime = cb.function(
-                "timestamp", Timestamp.class,
-                cb.concat(dvRoot.get("date"), cb.literal(" 23:59:59")));
-
         Expression<Date> orderDateExpression = cb.function(
                 "DATE", Date.class, mainQueryRoot.get("orderDate"));
         orderDateExpression.alias("order_date_alias");
 
-        dailyVisitsSubquery.where(cb.equal(dvRoot.get("date"), orderDateExpression));
-        //dailyVisitsSubquery.where(cb.equal(dvRoot.get("date"), mainQueryRoot.get("orderDate")));
-        //dailyVisitsSubquery.where(cb.between(mainQueryRoot.get("orderDate"), minDatetime, maxDatetime));
-        dailyVisitsSubquery.select(cb.sum(dvRoot.get("countVisits"))).groupBy(dvRoot.get("date"));
+        // Подзапрос для выборки кол-ва посещений за день
+        Subquery<Long> dailyVisitsSubquery = createDailyVisitsSubquery(cb, query, orderDateExpression);
 
+        List<Long> childCategoriesIds = datesDto.getLongValue() != null && datesDto.getLongValue() != 0 ?
+                Services.categoriesService.getChildCategoriesIds(datesDto.getLongValue()) : null;
 
         // Основной запрос
-        //Predicate predicate = cb.between(mainQueryRoot.get("orderDate"), datesDto.getMin(), datesDto.getMax());
-        Predicate predicate = cb.between(orderDateExpression, datesDto.getMin(), datesDto.getMax());
-
-        if (datesDto.getLongValue() != null && datesDto.getLongValue() != 0) {
-
-            List<Long> childCategoriesIds = Services.categoriesService.getChildCategoriesIds(datesDto.getLongValue());
-
-            predicate = childCategoriesIds != null ? cb.and(
-                    predicate,
-                    pvJoin.get("product").get("category").get("id").in(childCategoriesIds)
-            ) : cb.ge(mainQueryRoot.get("id"), 0);
-        }
-
-        // Получить статус заказа
-        Integer orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : null;
-
-        if (orderStateId != null && orderStateId > 0)
-            predicate = cb.and(
-                    predicate,
-                   cb.equal(mainQueryRoot.get("orderState").get("id"), orderStateId)
-            );
-
-        // Отдельно определить выражения выборки для сортировки
-        Expression<Number> visitsCountExpression = cb.coalesce(dailyVisitsSubquery.getSelection(), 0);
-        Expression<?> cvrCountExpression = cb.quot(cb.toFloat(cb.countDistinct(mainQueryRoot.get("id"))), cb.toFloat(visitsCountExpression/*cb.coalesce(dailyVisitsSubquery.getSelection(), 0)*/));
-
-        query.where(predicate);
+        query.where(createCvrOrdersPredicate(cb, mainQueryRoot, pvJoin, orderDateExpression, datesDto, childCategoriesIds, orderStateId));
         query.multiselect(
                 orderDateExpression,
-                //mainQueryRoot.get("orderDate"),
                 cb.countDistinct(mainQueryRoot.get("id")),
                 cb.coalesce(dailyVisitsSubquery.getSelection(), 0),
                 cb.quot(cb.toFloat(cb.countDistinct(mainQueryRoot.get("id"))), cb.toFloat(cb.coalesce(dailyVisitsSubquery.getSelection(), 1))),
@@ -214,15 +261,63 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
                            cb.countDistinct(mainQueryRoot.get("id"))
                    ));
 
-        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        // Подсчёт групп: условие having вынесено в подзапрос ключей групп, чтобы не выбирать все ключи
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<Order> countQueryRoot = countQuery.from(Order.class);
 
-        typedQuery.setFirstResult(pageNum*dataOnPage);
-        typedQuery.setMaxResults(dataOnPage);
+        Subquery<Date> groupsSubquery = countQuery.subquery(Date.class);
+        Root<Order> groupsRoot = groupsSubquery.from(Order.class);
+        Join<OrderAndProductVariant, ProductVariant> groupsPvJoin = groupsRoot.join("orderAndPVList").join("productVariant");
+
+        Expression<Date> groupsOrderDateExpression = cb.function(
+                "DATE", Date.class, groupsRoot.get("orderDate"));
 
-        List<Tuple> rawResult = typedQuery.getResultList();
-        int elementsCount = typedQuery.getResultList().size();
+        Subquery<Long> groupsVisitsSubquery = createDailyVisitsSubquery(cb, groupsSubquery, groupsOrderDateExpression);
 
-        return new PageImpl<>(rawResult, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        groupsSubquery.select(groupsRoot.get("orderDate"))
+                .where(createCvrOrdersPredicate(cb, groupsRoot, groupsPvJoin, groupsOrderDateExpression, datesDto, childCategoriesIds, orderStateId))
+                .groupBy(groupsRoot.get("orderDate"))
+                .having(cb.greaterThanOrEqualTo(groupsVisitsSubquery.getSelection(), cb.countDistinct(groupsRoot.get("id"))));
+
+        countQuery.select(cb.countDistinct(countQueryRoot.get("orderDate")))
+                .where(countQueryRoot.get("orderDate").in(groupsSubquery));
+
+        return new AggregatePagesService.GroupedQuery(query, mainQueryRoot.get("orderDate"), countQuery);
+    }
+
+    // Подзапрос суммы посещений за день заказа
+    private static Subquery<Long> createDailyVisitsSubquery(CriteriaBuilder cb, CommonAbstractCriteria query, Expression<Date> orderDateExpression){
+
+        Subquery<Long> dailyVisitsSubquery = query.subquery(Long.class);
+        Root<DailyVisits> dvRoot = dailyVisitsSubquery.from(DailyVisits.class);
+
+        dailyVisitsSubquery.where(cb.equal(dvRoot.get("date"), orderDateExpression));
+        dailyVisitsSubquery.select(cb.sum(dvRoot.get("countVisits"))).groupBy(dvRoot.get("date"));
+
+        return dailyVisitsSubquery;
+    }
+
+    // Условие выборки заказов для конверсии в категории: диапазон дат, категория с дочерними и статус заказа
+    private static Predicate createCvrOrdersPredicate(CriteriaBuilder cb, Root<Order> orderRoot, Join<OrderAndProductVariant, ProductVariant> pvJoin,
+                                                      Expression<Date> orderDateExpression, DatesRangeAndValRequestDto datesDto,
+                                                      List<Long> childCategoriesIds, Integer orderStateId){
+
+        Predicate predicate = cb.between(orderDateExpression, datesDto.getMin(), datesDto.getMax());
+
+        if (datesDto.getLongValue() != null && datesDto.getLongValue() != 0) {
+            predicate = childCategoriesIds != null ? cb.and(
+                    predicate,
+                    pvJoin.get("product").get("category").get("id").in(childCategoriesIds)
+            ) : cb.ge(orderRoot.get("id"), 0);
+        }
+
+        if (orderStateId != null && orderStateId > 0)
+            predicate = cb.and(
+                    predicate,
+                   cb.equal(orderRoot.get("orderState").get("id"), orderStateId)
+            );
+
+        return predicate;
     }
 
     @Override
@@ -240,7 +335,15 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         // Получить статус заказа
         int orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : 0;
 
-        return adminPanelRepository.getCvrToOrdersBetweenDatesForProduct(datesDto.getMin(), datesDto.getMax(), datesDto.getLongValue(), orderStateId, pageable);
+        return toPage(getOrdersCvrRowsForProduct(datesDto, orderStateId), getCvrSortColumn(sortEnum), sortType, pageable);
+    }
+
+    // Конверсии по дням для товара: закрытые дни из кэша статистики
+    private List<Object[]> getOrdersCvrRowsForProduct(DatesRangeAndValRequestDto datesDto, int orderStateId){
+        return Services.statisticsDaysCacheService.getDailyRows(String.format("cvr_product:%s:%d", datesDto.getLongValue(), orderStateId),
+                datesDto.getMin(), datesDto.getMax(),
+                (dateLo, dateHi) -> adminPanelRepository.getCvrToOrdersBetweenDatesForProduct(dateLo, dateHi, datesDto.getLongValue(),
+                        orderStateId, Pageable.unpaged()).getContent());
     }
 
     @Override
@@ -266,14 +369,8 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         // Получить статус заказа
         int orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : 0;
 
-        // Если категория не задана, тогда будут выбраны все записи
-        if (datesDto.getLongValue() == 0)
-            return adminPanelRepository.getQuantityValuesForOrdersBetweenDatesInCategory(datesDto.getMin(), datesDto.getMax(),
-                    datesDto.getLongValue(), orderStateId)[0];
-
-        List<Long> categoriesIds = ServicesUtils.getChildCategoriesList(datesDto.getLongValue());
-
-        return adminPanelRepository.getQuantityValuesForOrdersBetweenDatesInCategories(datesDto.getMin(), datesDto.getMax(), categoriesIds, orderStateId)[0];
+        // Вычисляется по конверсиям за каждый день
+        return countCvrValues(getOrdersCvrRowsInCategory(datesDto, orderStateId));
     }
 
     @Override
@@ -285,8 +382,67 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         // Получить статус заказа
         int orderStateId = datesDto.getAdditionalValues() != null ? (int) datesDto.getAdditionalValues().get("state_id") : 0;
 
-        return adminPanelRepository.getQuantityValuesForOrdersBetweenDatesForProduct(datesDto.getMin(), datesDto.getMax(), datesDto.getLongValue(), orderStateId)[0];
+        // Вычисляется по конверсиям за каждый день
+        return countCvrValues(getOrdersCvrRowsForProduct(datesDto, orderStateId));
+    }
+
+    //region Статистика по дням в памяти
+    // Столбец строки конверсий по дням для сортировки: дата, кол-во заказов, посещения, конверсия, сумма
+    private static int getCvrSortColumn(OrdersStatisticsSortEnum sortEnum){
+        return switch (sortEnum) {
+            case AMOUNT -> 1;
+            case VISITS -> 2;
+            case CVR -> 3;
+            case SUM -> 4;
+            default -> 0;
+        };
+    }
+
+    // Минимальная, средняя и максимальная конверсия за дни - как в getQuantityValuesForOrdersBetweenDates...
+    private static Object[] countCvrValues(List<Object[]> cvrRows){
+
+        if (cvrRows.isEmpty())
+            return new Object[]{BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+
+        List<BigDecimal> cvrList = cvrRows.stream().map(row -> new BigDecimal(row[3].toString())).toList();
+
+        BigDecimal avg = cvrList.stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add)
+                .divide(BigDecimal.valueOf(cvrList.size()), 8, RoundingMode.HALF_UP);
+
+        return new Object[]{Collections.min(cvrList), avg, Collections.max(cvrList)};
+    }
+
+    // Отсортировать строки по заданному столбцу (при равенстве - по дате) и выбрать страницу
+    private static Page<Object[]> toPage(List<Object[]> rows, int sortColumn, GeneralSortEnum sortType, Pageable pageable){
+
+        Comparator<Object[]> comparator = (row1, row2) -> compareValues(row1[sortColumn], row2[sortColumn]);
+
+        if (sortType != GeneralSortEnum.ASC)
+            comparator = comparator.reversed();
+
+        List<Object[]> sorted = rows.stream()
+                .sorted(comparator.thenComparing((row1, row2) -> compareValues(row1[0], row2[0])))
+                .toList();
+
+        int from = (int) Math.min(pageable.getOffset(), sorted.size());
+        int to = Math.min(from + pageable.getPageSize(), sorted.size());
+
+        return new PageImpl<>(sorted.subList(from, to), pageable, sorted.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object value1, Object value2){
+        if (value1 == null || value2 == null)
+            return value1 == null ? (value2 == null ? 0 : -1) : 1;
+
+        // Числа из разных запросов могут быть разных типов
+        if (value1 instanceof Number number1 && value2 instanceof Number number2)
+            return new BigDecimal(number1.toString()).compareTo(new BigDecimal(number2.toString()));
+
+        return ((Comparable<Object>) value1).compareTo(value2);
     }
+    //endregion
 
     @Override
     public Page<Object[]> getProductsViewsFrequency(int pageNum, int dataOnPage,
@@ -314,8 +470,9 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
     }
 
     // Создать criteria query для постраничной выборки заказов
-    private CriteriaQuery<Tuple> createQueryForProductsOrPvOrders(OrdersAndBasketsCountFiltersRequestDto filtersDto, ProductsOrVariantsEnum operationsEnum,
-                                                                  ProductsOrVariantsCountSortEnum sortEnum, GeneralSortEnum sortType){
+    private AggregatePagesService.GroupedQuery createQueryForProductsOrPvOrders(OrdersAndBasketsCountFiltersRequestDto filtersDto,
+                                                                                ProductsOrVariantsEnum operationsEnum,
+                                                                                ProductsOrVariantsCountSortEnum sortEnum, GeneralSortEnum sortType){
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         CriteriaQuery<Tuple> query = cb.createQuery(Tuple.class);
@@ -360,7 +517,7 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
 
         }
 
-        return query;
+        return new AggregatePagesService.GroupedQuery(query, isProductsSelection ? productJoin.get("id") : pvJoin.get("id"));
     }
 
     // Количество заказов каждого товара в категории + фильтр
@@ -372,36 +529,34 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
             pageNum -= 1;
 
         // Сформировать запрос либо для выборки статистики по товарам, либо по вариантам
-        CriteriaQuery<Tuple> query = createQueryForProductsOrPvOrders(filtersDto, statisticsEnum, sortEnum, sortType);
-
-        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
-
-        // Предварительный запрос для подсчёта общего кол-ва элементов
-        int elementsCount = typedQuery.getResultList().size();
-
-        typedQuery.setFirstResult(pageNum*dataOnPage);
-        typedQuery.setMaxResults(dataOnPage);
-
-        List<Tuple> rawResult = typedQuery.getResultList();
-
-        return new PageImpl<>(rawResult, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return Services.aggregatePagesService.getPage("orders_count:" + statisticsEnum + ":" + filtersDto, pageNum, dataOnPage,
+                () -> createQueryForProductsOrPvOrders(filtersDto, statisticsEnum, sortEnum, sortType));
     }
 
     @Override
-    public List<Tuple> getOrdersCountForEachProduct(OrdersAndBasketsCountFiltersRequestDto filtersDto, ProductsOrVariantsEnum statisticsEnum) {
+    @Transactional(readOnly = true)
+    public void streamOrdersCountForEachProduct(OrdersAndBasketsCountFiltersRequestDto filtersDto, ProductsOrVariantsEnum statisticsEnum,
+                                                Consumer<Stream<Tuple>> consumer) {
         // Сформировать запрос либо для выборки статистики по товарам, либо по вариантам
-        CriteriaQuery<Tuple> query = createQueryForProductsOrPvOrders(filtersDto, statisticsEnum, null, null);
+        streamQuery(createQueryForProductsOrPvOrders(filtersDto, statisticsEnum, null, null).query(), consumer);
+    }
 
-        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+    // Передать результат запроса потоком строк от драйвера БД, не загружая его целиком. До закрытия потока соединение занято выборкой
+    private void streamQuery(CriteriaQuery<Tuple> query, Consumer<Stream<Tuple>> consumer){
 
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query)
+                .setHint(AvailableHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(AvailableHints.HINT_READ_ONLY, true);
 
-        return typedQuery.getResultList();
+        try (Stream<Tuple> stream = typedQuery.getResultStream()) {
+            consumer.accept(stream);
+        }
     }
 
 
     // Создать criteria query для выборки вариантов товаров с кол-вом добавлений в корзину близким к максимальному
-    private CriteriaQuery<Tuple> createQueryForTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, Float percentage,
-                                                                   ProductsOrVariantsCountSortEnum sortEnum, GeneralSortEnum sortType){
+    private AggregatePagesService.GroupedQuery createQueryForTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, Float percentage,
+                                                                                 ProductsOrVariantsCountSortEnum sortEnum, GeneralSortEnum sortType){
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         // Основной запрос
@@ -463,7 +618,28 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
             SortingUtils.createSortQueryForVariantsOrdersCount(cb, query, from, countExpression, sortEnum, sortType);
         }
 
-        return query;
+        // Подсчёт групп: условие having вынесено в подзапрос id вариантов, чтобы не выбирать все ключи
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<ProductVariant> countQueryRoot = countQuery.from(ProductVariant.class);
+
+        Subquery<Long> groupsSubquery = countQuery.subquery(Long.class);
+        Root<BasketAndProductVariant> groupsRoot = groupsSubquery.from(BasketAndProductVariant.class);
+        Join<BasketAndProductVariant, ProductVariant> groupsPvJoin = groupsRoot.join("productVariant");
+
+        List<Predicate> predicatesGroupsQuery = ServicesUtils.collectBasketsPredicates(cb, filtersDto, groupsPvJoin.get("product"),
+                groupsRoot.get("basket"), groupsPvJoin);
+
+        if (!predicatesGroupsQuery.isEmpty())
+            groupsSubquery.where(predicatesGroupsQuery.toArray(new Predicate[0]));
+
+        groupsSubquery.select(groupsPvJoin.get("id"))
+                .groupBy(groupsPvJoin.get("id"))
+                .having(cb.ge(cb.count(groupsPvJoin.get("id")), maxCount));
+
+        countQuery.select(cb.count(countQueryRoot))
+                .where(countQueryRoot.get("id").in(groupsSubquery));
+
+        return new AggregatePagesService.GroupedQuery(query, pvJoin.get("id"), countQuery);
     }
 
     @Override
@@ -472,25 +648,14 @@ public class AdminPanelStatisticsServiceImpl implements AdminPanelStatisticsServ
         if (pageNum > 0)
             pageNum -= 1;
 
-        TypedQuery<Tuple> typedQuery = entityManager.createQuery(createQueryForTopProductsInBasket(filtersDto, percentage, sortEnum, sortType));
-
-        // Предварительный запрос для подсчёта общего кол-ва элементов
-        // TODO: переделать на нормальный подсчёт отдельным запросом
-        int elementsCount = typedQuery.getResultList().size();
-
-        typedQuery.setFirstResult(pageNum*dataOnPage);
-        typedQuery.setMaxResults(dataOnPage);
-
-        List<Tuple> rawResult = typedQuery.getResultList();
-
-        return new PageImpl<>(rawResult, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return Services.aggregatePagesService.getPage("top_products_in_basket:" + percentage + ":" + filtersDto, pageNum, dataOnPage,
+                () -> createQueryForTopProductsInBasket(filtersDto, percentage, sortEnum, sortType));
     }
 
     @Override
-    public List<Tuple> getTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, float percentage) {
-        TypedQuery<Tuple> typedQuery = entityManager.createQuery(createQueryForTopProductsInBasket(filtersDto, percentage, null, null));
-
-        return typedQuery.getResultList();
+    @Transactional(readOnly = true)
+    public void streamTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, float percentage, Consumer<Stream<Tuple>> consumer) {
+        streamQuery(createQueryForTopProductsInBasket(filtersDto, percentage, null, null).query(), consumer);
     }
 
     // Выборка товаров просмотренных определённым покупателем
@@ -0,0 +1,152 @@
+package gp.wagner.backend.services.implementations.admin_panel;
+
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.services.interfaces.admin_panels.AggregatePagesService;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Сервис постраничной выборки группирующих запросов статистики
+@Service
+public class AggregatePagesServiceImpl implements AggregatePagesService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Время жизни закэшированного общего кол-ва
+    private static final long COUNT_TTL_MILLIS = Duration.ofSeconds(30).toMillis();
+
+    // Максимальное кол-во закэшированных значений. При превышении удаляются устаревшие, а если их нет - все
+    private static final int COUNTS_CAPACITY = 10_000;
+
+    // Ограничение времени ожидания подсчёта
+    private static final long COUNT_TIMEOUT_SECONDS = 60;
+
+    private record CachedCount(long count, long expiresAt) {}
+
+    private final ConcurrentHashMap<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+    // Потоки для запросов подсчёта. Запрос страницы выполняется в вызывающем потоке
+    private final ExecutorService countExecutor = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "aggregate-count-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        countExecutor.shutdownNow();
+    }
+
+    @Override
+    public Page<Tuple> getPage(String countCacheKey, int pageNum, int dataOnPage, Supplier<GroupedQuery> queryFactory) {
+
+        if (pageNum < 0 || dataOnPage <= 0)
+            throw new ApiException(String.format("Некорректные параметры страницы: номер %d, размер %d", pageNum, dataOnPage));
+
+        CachedCount cached = countCacheKey != null ? counts.get(countCacheKey) : null;
+        boolean isCountCached = cached != null && cached.expiresAt() > System.currentTimeMillis();
+
+        // Подсчёт запускается до выборки страницы, чтобы оба запроса выполнялись одновременно
+        CompletableFuture<Long> countFuture = isCountCached ? CompletableFuture.completedFuture(cached.count()) :
+                CompletableFuture.supplyAsync(() -> count(queryFactory.get()), countExecutor);
+
+        List<Tuple> rawResult;
+
+        try {
+            TypedQuery<Tuple> typedQuery = entityManager.createQuery(queryFactory.get().query());
+
+            typedQuery.setFirstResult(pageNum * dataOnPage);
+            typedQuery.setMaxResults(dataOnPage);
+
+            rawResult = typedQuery.getResultList();
+        } catch (RuntimeException e) {
+            countFuture.cancel(true);
+            throw e;
+        }
+
+        long elementsCount = awaitCount(countFuture);
+
+        // Первая неполная страница уже содержит все группы
+        if (pageNum == 0 && rawResult.size() < dataOnPage)
+            elementsCount = rawResult.size();
+
+        // Время жизни не продлевается при чтении из кэша
+        if (countCacheKey != null && !isCountCached)
+            cacheCount(countCacheKey, elementsCount);
+
+        return new PageImpl<>(rawResult, PageRequest.of(pageNum, dataOnPage), elementsCount);
+    }
+
+    /**
+     * Подсчёт групп. Без having запрос страницы переделывается в выборку count(distinct ключ) без группировки.
+     * Запрос с having подсчитывается заданным запросом подсчёта
+     * */
+    private long count(GroupedQuery groupedQuery){
+
+        if (groupedQuery.countQuery() != null)
+            return entityManager.createQuery(groupedQuery.countQuery()).getSingleResult();
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = groupedQuery.query();
+
+        if (query.getGroupRestriction() != null)
+            throw new ApiException("Для группирующего запроса с условием having не задан запрос подсчёта!");
+
+        query.orderBy(List.of());
+        query.multiselect(cb.countDistinct(groupedQuery.groupKey()));
+        query.groupBy(List.of());
+
+        return entityManager.createQuery(query).getSingleResult().get(0, Long.class);
+    }
+
+    private static long awaitCount(CompletableFuture<Long> countFuture){
+        try {
+            return countFuture.get(COUNT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Подсчёт кол-ва элементов статистики был прерван!");
+        } catch (ExecutionException | TimeoutException e) {
+            countFuture.cancel(true);
+            throw new ApiException("Не удалось подсчитать кол-во элементов статистики: " +
+                    (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+        }
+    }
+
+    private void cacheCount(String countCacheKey, long count){
+        long now = System.currentTimeMillis();
+
+        if (counts.size() >= COUNTS_CAPACITY) {
+            counts.values().removeIf(cachedCount -> cachedCount.expiresAt() <= now);
+
+            if (counts.size() >= COUNTS_CAPACITY)
+                counts.clear();
+        }
+
+        counts.put(countCacheKey, new CachedCount(count, now + COUNT_TTL_MILLIS));
+    }
+
+    @Override
+    public void invalidateCounts() {
+        counts.clear();
+    }
+}
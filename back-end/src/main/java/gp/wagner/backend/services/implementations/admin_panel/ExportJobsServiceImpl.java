@@ -0,0 +1,231 @@
+package gp.wagner.backend.services.implementations.admin_panel;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.ExportJobRespDto;
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.infrastructure.enums.ExportJobStateEnum;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.services.interfaces.admin_panels.ExportJobsService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+// Сервис фоновых выгрузок отчётов
+@Service
+public class ExportJobsServiceImpl implements ExportJobsService {
+
+    // Кол-во одновременно формируемых выгрузок
+    private static final int WORKERS = 2;
+
+    // Максимальное кол-во выгрузок, ожидающих в очереди
+    private static final int QUEUE_CAPACITY = 20;
+
+    // Срок хранения готового файла и информации о задаче
+    private static final long RETENTION_MILLIS = Duration.ofHours(24).toMillis();
+
+    // Задача выгрузки. Ход выполнения изменяется потоком выгрузки и читается потоками запросов
+    private static final class ExportJob {
+        final String id;
+        final String fileName;
+        final Path filePath;
+        final long createdAt = System.currentTimeMillis();
+
+        final AtomicLong rowsWritten = new AtomicLong();
+        volatile Long rowsTotal;
+        volatile ExportJobStateEnum state = ExportJobStateEnum.QUEUED;
+        volatile long startedAt;
+        volatile long finishedAt;
+        volatile String error;
+
+        ExportJob(String id, String fileName, Path filePath) {
+            this.id = id;
+            this.fileName = fileName;
+            this.filePath = filePath;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "export-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ExportJobRespDto submit(String fileName, LongSupplier totalRowsCounter, ExportTask task) {
+
+        String jobId = UUID.randomUUID().toString();
+        ExportJob job = new ExportJob(jobId, fileName, exportsDirectory().resolve(jobId));
+
+        jobs.put(jobId, job);
+
+        try {
+            executor.execute(() -> run(job, totalRowsCounter, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            throw new ApiException("Слишком много выгрузок в очереди, повторите запрос позже!");
+        }
+
+        return toDto(job);
+    }
+
+    private void run(ExportJob job, LongSupplier totalRowsCounter, ExportTask task){
+
+        job.startedAt = System.currentTimeMillis();
+        job.state = ExportJobStateEnum.RUNNING;
+
+        // Файл пишется под временным именем и переименовывается после завершения
+        Path partPath = job.filePath.resolveSibling(job.id + ".part");
+
+        try {
+            if (totalRowsCounter != null)
+                job.rowsTotal = totalRowsCounter.getAsLong();
+
+            Files.createDirectories(partPath.getParent());
+
+            RowsCounter rowsCounter = new RowsCounter() {
+                @Override
+                public <T> Stream<T> count(Stream<T> rows) {
+                    return rows.peek(row -> job.rowsWritten.incrementAndGet());
+                }
+            };
+
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(partPath))) {
+                task.write(outputStream, rowsCounter);
+            }
+
+            Files.move(partPath, job.filePath, StandardCopyOption.ATOMIC_MOVE);
+
+            // Время завершения задаётся до состояния, чтобы завершённая задача всегда читалась с ним
+            job.finishedAt = System.currentTimeMillis();
+            job.state = ExportJobStateEnum.DONE;
+        } catch (Exception e) {
+            deleteFile(partPath);
+
+            job.error = e.getMessage();
+            job.finishedAt = System.currentTimeMillis();
+            job.state = ExportJobStateEnum.FAILED;
+
+            System.out.println("\n\tВыгрузка " + job.fileName + " завершилась с ошибкой: " + e.getMessage() + "\n");
+        }
+    }
+
+    @Override
+    public ExportJobRespDto getJob(String jobId) {
+        return toDto(findJob(jobId));
+    }
+
+    @Override
+    public Resource getFile(String jobId) {
+        ExportJob job = findJob(jobId);
+
+        if (job.state != ExportJobStateEnum.DONE)
+            throw new ApiException(String.format("Выгрузка %s ещё не готова! Состояние: %s", jobId, job.state.getState()));
+
+        if (!Files.exists(job.filePath))
+            throw new ApiException(String.format("Файл выгрузки %s не найден!", jobId));
+
+        return new FileSystemResource(job.filePath);
+    }
+
+    private ExportJob findJob(String jobId){
+        ExportJob job = jobId != null ? jobs.get(jobId) : null;
+
+        if (job == null)
+            throw new ApiException(String.format("Выгрузка %s не найдена или срок её хранения истёк!", jobId));
+
+        return job;
+    }
+
+    // Удаляются и файлы, оставшиеся от задач до перезапуска приложения
+    @Override
+    @Scheduled(fixedDelay = 10 * 60_000, initialDelay = 60_000)
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+
+        jobs.values().removeIf(job -> {
+            boolean isExpired = job.finishedAt > 0 && now - job.finishedAt >= RETENTION_MILLIS;
+
+            if (isExpired)
+                deleteFile(job.filePath);
+
+            return isExpired;
+        });
+
+        Path directory = exportsDirectory();
+
+        if (!Files.isDirectory(directory))
+            return;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String jobId = file.getFileName().toString().replace(".part", "");
+
+                if (!jobs.containsKey(jobId) && now - Files.getLastModifiedTime(file).toMillis() >= RETENTION_MILLIS)
+                    deleteFile(file);
+            }
+        } catch (IOException e) {
+            System.out.println("\n\tНе удалось очистить каталог выгрузок: " + e.getMessage() + "\n");
+        }
+    }
+
+    private static void deleteFile(Path path){
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("\n\tНе удалось удалить файл выгрузки " + path + ": " + e.getMessage() + "\n");
+        }
+    }
+
+    private static Path exportsDirectory(){
+        return Services.fileManageService.getFilesPaths().exportsPath();
+    }
+
+    private static ExportJobRespDto toDto(ExportJob job){
+
+        long rowsWritten = job.rowsWritten.get();
+        Long rowsTotal = job.rowsTotal;
+
+        // Оценка по средней скорости записи строк
+        Long etaSeconds = null;
+
+        if (job.state == ExportJobStateEnum.DONE)
+            etaSeconds = 0L;
+        else if (job.state == ExportJobStateEnum.RUNNING && rowsTotal != null && rowsWritten > 0) {
+            long elapsedMillis = System.currentTimeMillis() - job.startedAt;
+            etaSeconds = Math.max(rowsTotal - rowsWritten, 0) * elapsedMillis / rowsWritten / 1000;
+        }
+
+        return new ExportJobRespDto(job.id, job.fileName, job.state.getState(), rowsWritten, rowsTotal, etaSeconds,
+                new Date(job.createdAt),
+                job.finishedAt > 0 ? new Date(job.finishedAt) : null,
+                job.finishedAt > 0 && job.state == ExportJobStateEnum.DONE ? new Date(job.finishedAt + RETENTION_MILLIS) : null,
+                job.error);
+    }
+}
@@ -0,0 +1,178 @@
+package gp.wagner.backend.services.implementations.admin_panel;
+
+import gp.wagner.backend.infrastructure.ServicesUtils;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.services.interfaces.admin_panels.StatisticsDaysCacheService;
+import org.springframework.stereotype.Service;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+// Кэш статистики по закрытым дням. Кэш хранится в памяти экземпляра приложения и сбрасывается изменениями этого экземпляра,
+// изменения других экземпляров учитываются только по истечении срока хранения дня
+@Service
+public class StatisticsDaysCacheServiceImpl implements StatisticsDaysCacheService {
+
+    // Максимальное кол-во метрик (с учётом фильтров) в кэше. Давно не запрашиваемые метрики удаляются
+    private static final int MAX_METRICS = 1_000;
+
+    // Срок хранения дня метрики - ограничивает устаревание, если данные изменены другим экземпляром приложения
+    private static final long DAY_TTL_MILLIS = Duration.ofMinutes(10).toMillis();
+
+    // Конец дня без долей секунды - столбцы даты и времени в БД хранятся с точностью до секунды
+    private static final LocalTime END_OF_DAY = LocalTime.of(23, 59, 59);
+
+    // Строки дня метрики и время их выборки
+    private record CachedDay(List<Object[]> rows, long loadedAt) {}
+
+    // Строки каждого дня метрики. Наличие дня без строк тоже запоминается
+    private final Map<String, ConcurrentHashMap<LocalDate, CachedDay>> metrics = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ConcurrentHashMap<LocalDate, CachedDay>> eldest) {
+                    return size() > MAX_METRICS;
+                }
+            });
+
+    // Счётчик сбросов. Результат запроса, во время которого был сброс, не кэшируется
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Override
+    public List<Object[]> getDailyRows(String metric, Date min, Date max, BiFunction<Date, Date, List<Object[]>> loader) {
+
+        LocalDateTime from = toLocalDateTime(min);
+        LocalDateTime to = toLocalDateTime(max);
+
+        // Полностью входящие в период дни
+        LocalDate firstFullDay = from.toLocalTime().equals(LocalTime.MIDNIGHT) ? from.toLocalDate() : from.toLocalDate().plusDays(1);
+        LocalDate lastFullDay = to.toLocalTime().isBefore(END_OF_DAY) ? to.toLocalDate().minusDays(1) : to.toLocalDate();
+
+        // Кэшируются только закрытые дни
+        LocalDate lastCachedDay = lastFullDay.isBefore(LocalDate.now()) ? lastFullDay : LocalDate.now().minusDays(1);
+
+        while (!lastCachedDay.isBefore(firstFullDay) && Services.dailyVisitsCounterService.getPendingVisits(lastCachedDay) > 0)
+            lastCachedDay = lastCachedDay.minusDays(1);
+
+        if (lastCachedDay.isBefore(firstFullDay))
+            return loader.apply(min, max);
+
+        List<Object[]> result = new ArrayList<>();
+
+        // Неполный первый день
+        if (from.toLocalDate().isBefore(firstFullDay))
+            result.addAll(loader.apply(min, toDate(firstFullDay.minusDays(1).atTime(END_OF_DAY))));
+
+        result.addAll(getCachedDays(metric, firstFullDay, lastCachedDay, loader));
+
+        // Текущий день, незакрытые и неполные дни в конце периода
+        if (to.isAfter(lastCachedDay.atTime(END_OF_DAY)))
+            result.addAll(loader.apply(toDate(lastCachedDay.plusDays(1).atStartOfDay()), max));
+
+        return result;
+    }
+
+    private List<Object[]> getCachedDays(String metric, LocalDate firstDay, LocalDate lastDay,
+                                         BiFunction<Date, Date, List<Object[]>> loader){
+
+        ConcurrentHashMap<LocalDate, CachedDay> days = metrics.computeIfAbsent(metric, key -> new ConcurrentHashMap<>());
+
+        long now = System.currentTimeMillis();
+
+        // Дни с истёкшим сроком хранения вычисляются заново
+        days.values().removeIf(cachedDay -> now - cachedDay.loadedAt() >= DAY_TTL_MILLIS);
+
+        // Недостающие дни вычисляются одним запросом - от первого до последнего из них
+        LocalDate missingFrom = null;
+        LocalDate missingTo = null;
+
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1))
+            if (!days.containsKey(day)) {
+                if (missingFrom == null)
+                    missingFrom = day;
+
+                missingTo = day;
+            }
+
+        Map<LocalDate, List<Object[]>> loaded = new HashMap<>();
+
+        if (missingFrom != null) {
+            long generation = invalidations.get();
+
+            for (Object[] row : loader.apply(toDate(missingFrom.atStartOfDay()), toDate(missingTo.atTime(END_OF_DAY))))
+                loaded.computeIfAbsent(toLocalDate(row[0]), day -> new ArrayList<>()).add(row);
+
+            for (LocalDate day = missingFrom; !day.isAfter(missingTo); day = day.plusDays(1))
+                loaded.putIfAbsent(day, List.of());
+
+            if (generation == invalidations.get())
+                loaded.forEach((day, rows) -> days.putIfAbsent(day, new CachedDay(rows, now)));
+        }
+
+        List<Object[]> result = new ArrayList<>();
+
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            CachedDay cachedDay = days.get(day);
+            List<Object[]> rows = loaded.containsKey(day) ? loaded.get(day) : cachedDay != null ? cachedDay.rows() : null;
+
+            // День сброшен во время выборки - вычисляется отдельно
+            if (rows == null)
+                rows = loader.apply(toDate(day.atStartOfDay()), toDate(day.atTime(END_OF_DAY)));
+
+            result.addAll(rows);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void invalidate(Date day) {
+        if (day != null)
+            invalidate(toLocalDate(day));
+    }
+
+    // Сброс выполняется после фиксации транзакции изменения: до неё параллельный запрос статистики
+    // прочитал бы прежние данные и снова закэшировал их
+    @Override
+    public void invalidate(LocalDate day) {
+        if (day == null)
+            return;
+
+        ServicesUtils.runAfterCommit(() -> {
+            invalidations.incrementAndGet();
+
+            synchronized (metrics) {
+                metrics.values().forEach(days -> days.remove(day));
+            }
+        });
+    }
+
+    @Override
+    public void invalidateAll() {
+        ServicesUtils.runAfterCommit(() -> {
+            invalidations.incrementAndGet();
+            metrics.clear();
+        });
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date){
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(date.getTime()), ZoneId.systemDefault());
+    }
+
+    private static Date toDate(LocalDateTime dateTime){
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    // День строки - java.sql.Date из БД, либо дата со временем
+    private static LocalDate toLocalDate(Object value){
+        if (value instanceof java.sql.Date sqlDate)
+            return sqlDate.toLocalDate();
+
+        if (value instanceof LocalDate localDate)
+            return localDate;
+
+        return toLocalDateTime((Date) value).toLocalDate();
+    }
+}
@@ -6,6 +6,7 @@ import gp.wagner.backend.domain.entities.categories.RepeatingCategory;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.domain.exceptions.suppliers.ParentlessCategoryAlreadyExists;
 import gp.wagner.backend.infrastructure.Utils;
+import gp.wagner.backend.infrastructure.ServicesUtils;
 import gp.wagner.backend.middleware.Services;
 import gp.wagner.backend.repositories.categories.CategoriesRepository;
 import gp.wagner.backend.repositories.categories.SubCategoriesRepository;
@@ -53,8 +54,11 @@ public class CategoriesServiceImpl implements CategoriesService {
     @Override
     //Добавление записи
     public void create(Category category) {
-        if (category != null)
-            categoriesRepository.saveAndFlush(category);
+        if (category == null)
+            return;
+
+        categoriesRepository.saveAndFlush(category);
+        Services.categoriesTreeService.rebuild();
     }
 
 
@@ -68,11 +72,15 @@ public class CategoriesServiceImpl implements CategoriesService {
         Category parentCategory = parentCategoryId != null ? categoriesRepository.findById(parentCategoryId).orElse(null) : null;
 
         // Имеется ли заданная родительская категория в БД, если нет, то заданная категория будет родительской
-        if (parentCategory == null)
-           return handleParentlessCategory(categoryName, repeatingCategory, file).getId();
+        long createdId = parentCategory == null ?
+                handleParentlessCategory(categoryName, repeatingCategory, file).getId() :
+                // Обработка создаваемой категории с заданным родителем
+                handleCategoryWithParent(categoryName, parentCategory, repeatingCategory, file).getId();
+
+        // Подменить снимок дерева категорий
+        Services.categoriesTreeService.rebuild();
 
-        // Обработка создаваемой категории с заданным родителем
-        return handleCategoryWithParent(categoryName, parentCategory, repeatingCategory, file).getId();
+        return createdId;
 
     }
 
@@ -107,6 +115,13 @@ public class CategoriesServiceImpl implements CategoriesService {
 
         categoriesRepository.saveAndFlush(oldCategory);
 
+        // Имя, родитель или повторяющаяся категория могли измениться
+        Services.categoriesTreeService.rebuild();
+
+        // Поддеревья категорий изменились - строки категорий в сводке заказов пересчитываются
+        if (parentChanged)
+            ServicesUtils.runAfterCommit(Services.ordersRollupService::startBackfill);
+
         // Если категория была скрыта
         if (!oldCategory.getIsShown() && oldShowValue)
             Services.productsService.hideByCategory(oldCategory);
@@ -114,6 +129,9 @@ public class CategoriesServiceImpl implements CategoriesService {
         else if (dto.getIsDisclosed() && dto.getDiscloseHeirs())
             Services.productsService.recoverHiddenByCategory(oldCategory);
 
+        // Название категории выводится в карточках товаров
+        Services.productCardsService.refreshByCategory(oldCategory.getId());
+
         return oldCategory;
 
     }
@@ -524,18 +542,28 @@ public class CategoriesServiceImpl implements CategoriesService {
     @Override
     //Изменение записи
     public void update(Category category) {
-        if (category != null)
-            categoriesRepository.saveAndFlush(category);
+        if (category == null)
+            return;
+
+        categoriesRepository.saveAndFlush(category);
+        Services.categoriesTreeService.rebuild();
+        Services.productCardsService.refreshByCategory(category.getId());
     }
 
     public void delete(Category category) {
-        if (category != null)
-            categoriesRepository.delete(category);
+        if (category == null)
+            return;
+
+        categoriesRepository.delete(category);
+        Services.categoriesTreeService.rebuild();
     }
 
     public void deleteById(Long id) {
-        if (id != null)
-            categoriesRepository.deleteById(id);
+        if (id == null)
+            return;
+
+        categoriesRepository.deleteById(id);
+        Services.categoriesTreeService.rebuild();
     }
 
     @Override
@@ -599,7 +627,7 @@ public class CategoriesServiceImpl implements CategoriesService {
         if (id <= 0)
             throw new ApiException(String.format("Id %d is incorrect!", id));
 
-        return categoriesRepository.getAllChildCategoriesIds(id);
+        return Services.categoriesTreeService.getDescendantsIds(id);
     }
 
     @Override
@@ -608,7 +636,7 @@ public class CategoriesServiceImpl implements CategoriesService {
         if (idsList == null || idsList.isEmpty())
             throw new ApiException("Список id категорий задан неверно!");
 
-        return categoriesRepository.getAllChildCategoriesIdsByIdsList(idsList);
+        return Services.categoriesTreeService.getDescendantsIds(idsList);
     }
 
     // Получить дочерние категории на одном уровне дерева
@@ -618,7 +646,7 @@ public class CategoriesServiceImpl implements CategoriesService {
         if (id <= 0)
             throw new ApiException(String.format("Id %d is incorrect!", id));
 
-        return categoriesRepository.getChildCategoriesIds(id).orElse(new ArrayList<>());
+        return Services.categoriesTreeService.getChildrenIds(id);
     }
 
     @Override
@@ -644,6 +672,7 @@ public class CategoriesServiceImpl implements CategoriesService {
         Services.productsService.hideByCategory(category);
 
         categoriesRepository.saveAndFlush(category);
+        Services.categoriesTreeService.rebuild();
     }
 
     @Override
@@ -659,6 +688,7 @@ public class CategoriesServiceImpl implements CategoriesService {
         Services.productsService.recoverHiddenByCategory(category);
 
         categoriesRepository.saveAndFlush(category);
+        Services.categoriesTreeService.rebuild();
     }
 
     @Override
@@ -683,33 +713,29 @@ public class CategoriesServiceImpl implements CategoriesService {
     @Override
     public List<Long> getRepeatingCategoryChildren(Long repeatingCategoryId) {
 
-        return categoriesRepository.getCategoriesIdsByRepeatingCategory(repeatingCategoryId)
-                .orElseThrow(
-                        () -> new ApiException(String.format("Для повторяющейся категории с id: %d не удалось найти использующие её основные категории!",
-                                repeatingCategoryId))
-                );
+        List<Long> categoriesIds = Services.categoriesTreeService.getCategoriesIdsByRepeating(List.of(repeatingCategoryId));
+
+        if (categoriesIds.isEmpty())
+            throw new ApiException(String.format("Для повторяющейся категории с id: %d не удалось найти использующие её основные категории!",
+                    repeatingCategoryId));
+
+        return categoriesIds;
     }
 
     @Override
     public List<Long> getRepeatingCategoryChildrenWithHeirs(Long repeatingCategoryId) {
 
-        List<Long> categoriesIds = categoriesRepository.getCategoriesIdsByRepeatingCategory(repeatingCategoryId)
-                .orElseThrow(
-                        () -> new ApiException(String.format("Для повторяющейся категории с id: %d не удалось найти использующие её основные категории!",
-                                repeatingCategoryId))
-                );
-
-        return getAllChildCategories(categoriesIds);
+        return getAllChildCategories(getRepeatingCategoryChildren(repeatingCategoryId));
     }
 
     // Найти категории использующие повторяющееся категории по списку id. Так же происходит поиск дочерних категорий у найденных категорий
     @Override
     public List<Long> getRepeatingCategoriesChildrenWithHeirs(List<Long> repeatingCategoryIdsList) {
 
-        List<Long> foundCategoriesIds = categoriesRepository.getCategoriesIdsByRepeatingCategoriesIds(repeatingCategoryIdsList)
-                .orElseThrow(
-                        () -> new ApiException("Для повторяющейся категории с заданным списком не удалось найти использующие их основные категории!")
-                );
+        List<Long> foundCategoriesIds = Services.categoriesTreeService.getCategoriesIdsByRepeating(repeatingCategoryIdsList);
+
+        if (foundCategoriesIds.isEmpty())
+            throw new ApiException("Для повторяющейся категории с заданным списком не удалось найти использующие их основные категории!");
 
         return getAllChildCategories(foundCategoriesIds);
     }
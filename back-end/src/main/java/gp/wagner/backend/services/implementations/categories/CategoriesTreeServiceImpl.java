@@ -0,0 +1,274 @@
+package gp.wagner.backend.services.implementations.categories;
+
+import gp.wagner.backend.domain.dto.response.categories.CategoryBreadcrumbsDto;
+import gp.wagner.backend.domain.dto.response.categories.CategoryDtoWithChildren;
+import gp.wagner.backend.repositories.categories.CategoriesRepository;
+import gp.wagner.backend.repositories.products.ProductsRepository;
+import gp.wagner.backend.services.interfaces.categories.CategoriesTreeService;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Сервис дерева категорий в памяти
+@Service
+public class CategoriesTreeServiceImpl implements CategoriesTreeService {
+
+    //region Репозитории
+    private CategoriesRepository categoriesRepository;
+
+    @Autowired
+    public void setCategoriesRepository(CategoriesRepository categoriesRepository) {
+        this.categoriesRepository = categoriesRepository;
+    }
+
+    private ProductsRepository productsRepository;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+    //endregion
+
+    // Узел дерева
+    private record CategoryNode(long id, Long parentId, String name, Long repeatingCategoryId) {}
+
+    // Неизменяемый снимок дерева категорий
+    private static final class TreeSnapshot {
+
+        final long version;
+
+        // Узлы по id категории
+        final Map<Long, CategoryNode> nodes;
+
+        // Id дочерних категорий на одном уровне для каждой категории (по возрастанию id)
+        final Map<Long, List<Long>> children;
+
+        // Корневые категории
+        final List<Long> roots;
+
+        // Id категорий, использующих повторяющуюся категорию
+        final Map<Long, List<Long>> categoriesByRepeating;
+
+        TreeSnapshot(long version, List<CategoryNode> nodesList) {
+            this.version = version;
+
+            Map<Long, CategoryNode> nodesMap = new HashMap<>();
+            Map<Long, List<Long>> childrenMap = new HashMap<>();
+            Map<Long, List<Long>> repeatingMap = new HashMap<>();
+            List<Long> rootsList = new ArrayList<>();
+
+            nodesList.sort(Comparator.comparingLong(CategoryNode::id));
+
+            for (CategoryNode node : nodesList) {
+                nodesMap.put(node.id(), node);
+
+                if (node.parentId() == null)
+                    rootsList.add(node.id());
+                else
+                    childrenMap.computeIfAbsent(node.parentId(), id -> new ArrayList<>()).add(node.id());
+
+                if (node.repeatingCategoryId() != null)
+                    repeatingMap.computeIfAbsent(node.repeatingCategoryId(), id -> new ArrayList<>()).add(node.id());
+            }
+
+            childrenMap.replaceAll((id, list) -> List.copyOf(list));
+            repeatingMap.replaceAll((id, list) -> List.copyOf(list));
+
+            this.nodes = Collections.unmodifiableMap(nodesMap);
+            this.children = Collections.unmodifiableMap(childrenMap);
+            this.categoriesByRepeating = Collections.unmodifiableMap(repeatingMap);
+            this.roots = List.copyOf(rootsList);
+        }
+    }
+
+    private volatile TreeSnapshot snapshot = new TreeSnapshot(0, new ArrayList<>());
+
+    //region Построение дерева
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+
+        List<CategoryNode> nodesList = new ArrayList<>();
+
+        for (Object[] row : categoriesRepository.getCategoriesForTree())
+            nodesList.add(new CategoryNode(
+                    ((Number) row[0]).longValue(),
+                    row[1] == null ? null : ((Number) row[1]).longValue(),
+                    (String) row[2],
+                    row[3] == null ? null : ((Number) row[3]).longValue()
+            ));
+
+        // Новый снимок полностью строится до подмены - читатели видят либо старое, либо новое дерево целиком
+        snapshot = new TreeSnapshot(snapshot.version + 1, nodesList);
+    }
+
+    @Override
+    public long getVersion() {
+        return snapshot.version;
+    }
+    //endregion
+
+    //region Выборка id категорий
+    @Override
+    public List<Long> getDescendantsIds(long categoryId) {
+
+        TreeSnapshot tree = snapshot;
+
+        // Повторяющаяся категория - выбрать использующие её категории вместе с их дочерними
+        if (categoryId < 0)
+            return collectDescendants(tree, tree.categoriesByRepeating.getOrDefault(Math.abs(categoryId), List.of()));
+
+        return collectDescendants(tree, List.of(categoryId));
+    }
+
+    @Override
+    public List<Long> getDescendantsIds(List<Long> categoriesIds) {
+
+        if (categoriesIds == null || categoriesIds.isEmpty())
+            return new ArrayList<>();
+
+        TreeSnapshot tree = snapshot;
+
+        List<Long> startIds = new ArrayList<>();
+
+        for (Long id : categoriesIds) {
+            if (id > 0)
+                startIds.add(id);
+            else
+                startIds.addAll(tree.categoriesByRepeating.getOrDefault(Math.abs(id), List.of()));
+        }
+
+        return collectDescendants(tree, startIds);
+    }
+
+    @Override
+    public List<Long> getChildrenIds(long categoryId) {
+        return new ArrayList<>(snapshot.children.getOrDefault(categoryId, List.of()));
+    }
+
+    @Override
+    public List<Long> getCategoriesIdsByRepeating(List<Long> repeatingCategoriesIds) {
+
+        if (repeatingCategoriesIds == null)
+            return new ArrayList<>();
+
+        TreeSnapshot tree = snapshot;
+
+        return repeatingCategoriesIds.stream()
+                .flatMap(id -> tree.categoriesByRepeating.getOrDefault(Math.abs(id), List.of()).stream())
+                .distinct()
+                .toList();
+    }
+
+    @Override
+    public String getName(long categoryId) {
+        CategoryNode node = snapshot.nodes.get(categoryId);
+
+        return node != null ? node.name() : null;
+    }
+
+    // Обход поддеревьев в ширину. Существующие категории попадают в результат один раз
+    private static List<Long> collectDescendants(TreeSnapshot tree, Collection<Long> startIds){
+
+        Set<Long> result = new LinkedHashSet<>();
+        Deque<Long> queue = new ArrayDeque<>();
+
+        for (Long id : startIds)
+            if (tree.nodes.containsKey(id) && result.add(id))
+                queue.add(id);
+
+        while (!queue.isEmpty())
+            for (Long childId : tree.children.getOrDefault(queue.poll(), List.of()))
+                if (result.add(childId))
+                    queue.add(childId);
+
+        return new ArrayList<>(result);
+    }
+    //endregion
+
+    //region Формирование DTO
+    @Override
+    public CategoryBreadcrumbsDto getBreadcrumbs(long categoryId) {
+
+        TreeSnapshot tree = snapshot;
+
+        CategoryNode node = tree.nodes.get(categoryId);
+
+        if (node == null)
+            return null;
+
+        // Подниматься к корневой категории, формируя цепочку в обратном порядке
+        CategoryBreadcrumbsDto breadcrumbs = new CategoryBreadcrumbsDto(node.id(), node.name(), null);
+
+        while (node.parentId() != null && tree.nodes.containsKey(node.parentId())) {
+            node = tree.nodes.get(node.parentId());
+            breadcrumbs = new CategoryBreadcrumbsDto(node.id(), node.name(), breadcrumbs);
+        }
+
+        return breadcrumbs;
+    }
+
+    @Override
+    public List<CategoryDtoWithChildren> getTree(boolean withProductsAmount) {
+
+        TreeSnapshot tree = snapshot;
+        Map<Long, Integer> amounts = withProductsAmount ? countProductsAmounts() : null;
+
+        return tree.roots.stream()
+                .map(id -> createNodeDto(tree, tree.nodes.get(id), amounts, null))
+                .toList();
+    }
+
+    @Override
+    public List<CategoryDtoWithChildren> getSubtree(long parentId, boolean withProductsAmount) {
+        return createChildrenDtos(snapshot, parentId, withProductsAmount ? countProductsAmounts() : null, null);
+    }
+
+    @Override
+    public List<CategoryDtoWithChildren> getSubtree(long parentId, Set<Long> allowedIds) {
+        return createChildrenDtos(snapshot, parentId, null, allowedIds == null ? Set.of() : allowedIds);
+    }
+
+    private static List<CategoryDtoWithChildren> createChildrenDtos(TreeSnapshot tree, long parentId,
+                                                                    @Nullable Map<Long, Integer> amounts, @Nullable Set<Long> allowedIds){
+        List<CategoryDtoWithChildren> childrenDtos = tree.children.getOrDefault(parentId, List.of())
+                .stream()
+                .filter(id -> allowedIds == null || allowedIds.contains(id))
+                .map(id -> createNodeDto(tree, tree.nodes.get(id), amounts, allowedIds))
+                .toList();
+
+        return childrenDtos.isEmpty() ? null : childrenDtos;
+    }
+
+    private static CategoryDtoWithChildren createNodeDto(TreeSnapshot tree, CategoryNode node,
+                                                         @Nullable Map<Long, Integer> amounts, @Nullable Set<Long> allowedIds){
+
+        List<CategoryDtoWithChildren> childrenDtos = createChildrenDtos(tree, node.id(), amounts, allowedIds);
+
+        // Кол-во товаров категории вместе со всеми дочерними - так же, как в ProductsService.countByCategory
+        Integer productsAmount = null;
+
+        if (amounts != null)
+            productsAmount = amounts.getOrDefault(node.id(), 0) +
+                    (childrenDtos == null ? 0 : childrenDtos.stream().mapToInt(CategoryDtoWithChildren::getProductsAmount).sum());
+
+        return new CategoryDtoWithChildren(node.id(), node.name(), node.parentId() != null ? node.parentId() : 0L,
+                childrenDtos, productsAmount);
+    }
+
+    // Кол-во товаров непосредственно в каждой категории - одним запросом для всего дерева
+    private Map<Long, Integer> countProductsAmounts(){
+
+        Map<Long, Integer> amounts = new HashMap<>();
+
+        for (Object[] row : productsRepository.countProductsGroupedByCategories())
+            amounts.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+
+        return amounts;
+    }
+    //endregion
+}
@@ -0,0 +1,68 @@
+package gp.wagner.backend.services.implementations.categories;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+import gp.wagner.backend.infrastructure.ViewsWriteBuffer;
+import gp.wagner.backend.repositories.categories.CategoryViewsRepository;
+import gp.wagner.backend.services.interfaces.categories.CategoryViewsBufferService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Locale;
+
+// Буфер отложенной записи просмотров категорий
+@Service
+public class CategoryViewsBufferServiceImpl implements CategoryViewsBufferService {
+
+    private CategoryViewsRepository repository;
+
+    @Autowired
+    public void setRepository(CategoryViewsRepository repository) {
+        this.repository = repository;
+    }
+
+    private record ViewKey(long visitorId, long categoryId) {}
+
+    // Порог сохранения и размер пакета совпадают - обычно весь буфер сохраняется одним запросом
+    private final ViewsWriteBuffer<ViewKey> buffer = new ViewsWriteBuffer<>("category_views", 2_000, 2_000,
+            key -> String.format(Locale.ROOT, "\"visitorId\":%d,\"categoryId\":%d", key.visitorId(), key.categoryId()),
+            json -> repository.upsertCategoryViews(json));
+
+    @Override
+    public int enqueue(long visitorId, Collection<Long> categoriesIds) {
+        if (visitorId <= 0 || categoriesIds == null)
+            return 0;
+
+        long now = System.currentTimeMillis();
+        int accepted = 0;
+
+        for (Long categoryId : categoriesIds) {
+            if (categoryId == null || categoryId <= 0)
+                continue;
+
+            if (buffer.enqueue(new ViewKey(visitorId, categoryId), now))
+                accepted++;
+        }
+
+        return accepted;
+    }
+
+    @Scheduled(fixedDelay = 1_000)
+    public void flushIfNeeded() {
+        buffer.flushIfNeeded();
+    }
+
+    // Сохраняется и при остановке приложения, чтобы не потерять накопленные просмотры
+    @Override
+    @PreDestroy
+    public void flush() {
+        buffer.flush();
+    }
+
+    @Override
+    public WriteBufferStatisticsRespDto getStatistics() {
+        return buffer.getStatistics();
+    }
+}
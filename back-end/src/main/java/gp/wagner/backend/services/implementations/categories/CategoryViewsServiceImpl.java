@@ -24,7 +24,6 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class CategoryViewsServiceImpl implements CategoryViewsService {
@@ -63,37 +62,12 @@ public class CategoryViewsServiceImpl implements CategoryViewsService {
         if (categoryId <= 0 || fingerPrint.isBlank())
             return;
 
-        //Найти с заданным отпечатком браузера
-        Visitor visitor = Services.visitorsService.saveIfNotExists(fingerPrint, ip);
-        visitor.setLastVisit(new Date());
-        Services.visitorsService.update(visitor);
-
-        //Найти категорию по заданному id
-        Category category = Services.categoriesService.getById(categoryId);
-
         //Если такой категории не существует, тогда
-        if (category == null)
+        if (Services.categoriesTreeService.getName(categoryId) == null)
             throw new ApiException(String.format("Category with id: %d doesn't exist!", categoryId));
 
-        CategoryViews categoryViews = getByVisitorAndCategoryId(visitor.getId(), categoryId);
-
-        //Если запись не существует, тогда создаём, если запись имеется, тогда увеличить счетчик
-        if (categoryViews == null)
-            repository.insertCategoryView(visitor.getId(), categoryId, 1);
-        else{
-
-            // Если за эти сутки уже был просмотр - не учитываем его
-            if (!categoryViews.goneMoreThan(24))
-                return;
-
-            categoryViews.setCount(categoryViews.getCount()+1);
-            update(categoryViews);
-
-        }
-
-        /*if (category.getParentCategory() != null)
-            //Рекурсивный вызов для увеличения просмотров родительских категорий
-            createOrUpdate(fingerPrint, category.getParentCategory().getId());*/
+        // Просмотр накапливается в буфере и сохраняется пакетно. Повторный просмотр в течение 24ч буфер не учитывает
+        Services.categoryViewsBufferService.enqueue(resolveVisitorId(fingerPrint, ip), List.of(categoryId));
     }
 
     @Override
@@ -101,56 +75,22 @@ public class CategoryViewsServiceImpl implements CategoryViewsService {
         if (categoryId >= 0 || fingerPrint.isBlank())
             return;
 
-        categoryId = Math.abs(categoryId);
-
-        Services.categoriesService.getRepeatingCategoryById(categoryId);
+        // Категории, использующие повторяющуюся категорию, берутся из дерева категорий в памяти
+        List<Long> categoriesIds = Services.categoriesTreeService.getCategoriesIdsByRepeating(List.of(categoryId));
 
-        //Найти с заданным отпечатком браузера
-        Visitor visitor = Services.visitorsService.saveIfNotExists(fingerPrint, ip);
-        visitor.setLastVisit(new Date());
-        Services.visitorsService.update(visitor);
-
-        //Найти категорию по заданному id
-        List<Long> categoriesIdsList = Services.categoriesService.getRepeatingCategoryChildren(categoryId);
-        List<Category> categories = Services.categoriesService.getByIdList(categoriesIdsList);
-
-
-        // Найти существующие записи о просмотрах категорий по списку категорий + посетителю
-        Map<Long,CategoryViews> categoryViewsMap = repository.findCategoryViewsByCategoryIds(categoriesIdsList)
-                .stream()
-                .collect(Collectors.toMap(
-                        (cv) -> cv.getCategory().getId(),
-                        (cv) -> cv,
-                        (oldVal, newVal) -> oldVal,
-                        HashMap::new
-                ));
-
-        // Пройти по всем найденным категориям и создать/изменить записи об их просмотрах
-        for (Category category : categories) {
-
-            long existingCategoryId = category.getId();
-            CategoryViews cv;
-
-            // Запись в таблице существует
-            if (categoryViewsMap.containsKey(existingCategoryId)){
-                cv = categoryViewsMap.get(existingCategoryId);
-
-                // Если заданная категория была просмотрена <= суток назад
-                if (!cv.goneMoreThan(24))
-                    continue;
-
-                cv.setCount(cv.getCount()+1);
-                categoryViewsMap.replace(existingCategoryId, cv);
-                continue;
-            }
+        if (categoriesIds.isEmpty())
+            return;
 
-            cv = new CategoryViews(null, visitor, category, 1);
-            categoryViewsMap.put(existingCategoryId, cv);
-        }
+        // Просмотры всех найденных категорий сохраняются вместе с остальными просмотрами одним запросом
+        Services.categoryViewsBufferService.enqueue(resolveVisitorId(fingerPrint, ip), categoriesIds);
+    }
 
-        // Сохранить список изменённых/созданных записей
-        repository.saveAllAndFlush(categoryViewsMap.values());
+    //Найти или создать посетителя с заданным отпечатком браузера и отметить его посещение
+    private static long resolveVisitorId(String fingerPrint, String ip){
+        long visitorId = Services.visitorsCacheService.resolveVisitorId(fingerPrint, ip);
+        Services.visitorsCacheService.touch(visitorId);
 
+        return visitorId;
     }
     //endregion
 
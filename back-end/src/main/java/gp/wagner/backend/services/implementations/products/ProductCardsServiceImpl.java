@@ -0,0 +1,328 @@
+package gp.wagner.backend.services.implementations.products;
+
+import gp.wagner.backend.domain.dto.response.products.ProductPreviewRespDto;
+import gp.wagner.backend.domain.dto.response.ratings.RatingStatisticsRespDto;
+import gp.wagner.backend.infrastructure.ServicesUtils;
+import gp.wagner.backend.infrastructure.SimpleTuple;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.AttributeValuesRepository;
+import gp.wagner.backend.repositories.products.ProductVariantsRepository;
+import gp.wagner.backend.repositories.products.ProductsRepository;
+import gp.wagner.backend.services.interfaces.products.ProductCardsService;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Сервис хранилища карточек товаров - вывод списков товаров без загрузки сущностей товаров, вариантов, скидок и характеристик
+@Service
+public class ProductCardsServiceImpl implements ProductCardsService {
+
+    //region Репозитории
+    private ProductsRepository productsRepository;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    private ProductVariantsRepository productVariantsRepository;
+
+    @Autowired
+    public void setProductVariantsRepository(ProductVariantsRepository productVariantsRepository) {
+        this.productVariantsRepository = productVariantsRepository;
+    }
+
+    private AttributeValuesRepository attributeValuesRepository;
+
+    @Autowired
+    public void setAttributeValuesRepository(AttributeValuesRepository attributeValuesRepository) {
+        this.attributeValuesRepository = attributeValuesRepository;
+    }
+    //endregion
+
+    // Скидка варианта. Срок действия проверяется при формировании карточки, поэтому хранятся даты начала и окончания
+    private record DiscountCard(Float percentage, boolean isActive, boolean isInfinite, Date startsAt, Date endsAt) {
+
+        // Так же, как в Discount.isStarted
+        boolean isStarted(){
+            return isInfinite || startsAt == null || startsAt.getTime() <= System.currentTimeMillis();
+        }
+
+        // Так же, как в Discount.isExpired
+        boolean isExpired(){
+            if (isInfinite || !isActive)
+                return false;
+
+            return endsAt == null || endsAt.getTime() <= System.currentTimeMillis();
+        }
+    }
+
+    // Вариант товара в карточке
+    private record VariantCard(long id, int price, String previewImg, DiscountCard discount) {
+
+        // Так же, как в ProductVariant.getPriceWithDiscount
+        int priceWithDiscount(){
+            if (discount == null || discount.percentage() == null || !discount.isActive() || !discount.isStarted() ||
+                    discount.isExpired() || discount.percentage() > 0.999)
+                return price;
+
+            return price - Math.round(price * discount.percentage());
+        }
+    }
+
+    // Карточка товара. Варианты упорядочены по id - первый вариант является базовым
+    private record ProductCard(long id, String name, long categoryId, String categoryName, long producerId, String producerName,
+                               boolean isAvailable, boolean showProduct, String sizes, List<VariantCard> variants,
+                               Long ratingStatisticsId, Float avgRating, Integer ratingsAmount) {}
+
+    // Целиком заменяемое при перестроении хранилище карточек
+    private volatile Map<Long, ProductCard> cards = new ConcurrentHashMap<>();
+
+    //region Построение и изменение хранилища
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+
+        // Новое хранилище строится в стороне, выборки продолжают работать с прежним
+        Map<Long, ProductCard> newCards = new ConcurrentHashMap<>();
+
+        collectCards(productsRepository.getProductsForCards(), productVariantsRepository.getVariantsForCards(),
+                attributeValuesRepository.getValuesForCards(), newCards);
+
+        cards = newCards;
+    }
+
+    @Override
+    public void refreshProducts(List<Long> productsIds) {
+        if (productsIds == null || productsIds.isEmpty())
+            return;
+
+        List<Long> ids = List.copyOf(productsIds);
+
+        // Данные товаров изменились - обновить и документы полнотекстового поиска, и подсказки.
+        // Всё перечитывается после фиксации транзакции, иначе в хранилище попали бы незафиксированные либо прежние данные
+        Services.indexer.reindexProductsAfterCommit(ids);
+
+        ServicesUtils.runAfterCommit(() -> {
+            loadCards(ids);
+            Services.searchSuggestionsService.refreshProducts(ids);
+        });
+    }
+
+    // Перечитать карточки заданных товаров из БД
+    private synchronized void loadCards(List<Long> productsIds){
+
+        Map<Long, ProductCard> refreshedCards = new HashMap<>();
+
+        collectCards(productsRepository.getProductsForCardsByIds(productsIds),
+                productVariantsRepository.getVariantsForCardsByProductsIds(productsIds),
+                attributeValuesRepository.getValuesForCardsByProductsIds(productsIds), refreshedCards);
+
+        // Товары, которых больше нет в БД, удаляются из хранилища
+        for (Long productId : productsIds)
+            if (!refreshedCards.containsKey(productId))
+                cards.remove(productId);
+
+        cards.putAll(refreshedCards);
+    }
+
+    @Override
+    public void refreshProduct(long productId) {
+        refreshProducts(List.of(productId));
+    }
+
+    @Override
+    public void refreshByVariants(List<Long> pvIds) {
+        if (pvIds == null || pvIds.isEmpty())
+            return;
+
+        List<Long> productsIds = productVariantsRepository.getProductsIdsByVariantsIds(pvIds);
+
+        if (productsIds.isEmpty())
+            return;
+
+        // Цены и скидки вариантов есть только в карточках - поисковый индекс и подсказки не перестраиваются
+        ServicesUtils.runAfterCommit(() -> loadCards(productsIds));
+    }
+
+    @Override
+    public void refreshByCategory(long categoryId) {
+        refreshProducts(cards.values().stream()
+                .filter(card -> card.categoryId() == categoryId)
+                .map(ProductCard::id)
+                .toList());
+    }
+
+    @Override
+    public void refreshByProducer(long producerId) {
+        refreshProducts(cards.values().stream()
+                .filter(card -> card.producerId() == producerId)
+                .map(ProductCard::id)
+                .toList());
+    }
+    //endregion
+
+    //region Выборка карточек
+    @Override
+    public List<ProductPreviewRespDto> getPreviews(List<Long> productsIds, @Nullable SimpleTuple<Integer, Integer> pricesRange) {
+
+        if (productsIds == null || productsIds.isEmpty())
+            return new ArrayList<>();
+
+        // Товары, добавленные в обход сервисов, дочитываются в хранилище при первом обращении
+        List<Long> missingIds = productsIds.stream().filter(id -> !cards.containsKey(id)).toList();
+
+        if (!missingIds.isEmpty())
+            loadCards(missingIds);
+
+        Map<Long, ProductCard> currentCards = cards;
+
+        return productsIds.stream()
+                .map(currentCards::get)
+                .filter(Objects::nonNull)
+                .map(card -> toPreviewDto(card, pricesRange))
+                .toList();
+    }
+
+    @Override
+    public List<ProductPreviewRespDto> getAllPreviews() {
+        return cards.values().stream()
+                .sorted(Comparator.comparingLong(ProductCard::id))
+                .map(card -> toPreviewDto(card, null))
+                .toList();
+    }
+    //endregion
+
+    // Сформировать DTO по карточке - так же, как в конструкторах ProductPreviewRespDto
+    private ProductPreviewRespDto toPreviewDto(ProductCard card, @Nullable SimpleTuple<Integer, Integer> pricesRange){
+
+        ProductPreviewRespDto dto = new ProductPreviewRespDto();
+
+        dto.setId(card.id());
+        dto.setName(card.name());
+        dto.setCategoryId(card.categoryId());
+        dto.setCategoryName(card.categoryName());
+        dto.setProducerId(card.producerId());
+        dto.setProducerName(card.producerName());
+        dto.setAvailable(card.isAvailable());
+        dto.setShowProduct(card.showProduct());
+        dto.setSizes(card.sizes());
+
+        if (card.ratingStatisticsId() != null)
+            dto.setRatingStatisticsDto(new RatingStatisticsRespDto(card.ratingStatisticsId(), card.id(),
+                    card.avgRating() != null && card.avgRating() > 0 ? card.avgRating() : 0f,
+                    card.ratingsAmount() != null && card.ratingsAmount() > 0 ? card.ratingsAmount() : 0));
+
+        if (card.variants().isEmpty())
+            return dto;
+
+        VariantCard basicVariant = card.variants().get(0);
+
+        dto.setPrice(basicVariant.price());
+        dto.setPreviewImgLink(basicVariant.previewImg());
+
+        // Если скидка задана хоть в одном из вариантов
+        if (basicVariant.discount() == null){
+            VariantCard variantWithDiscount = card.variants()
+                    .stream()
+                    .filter(pv -> pv.discount() != null).findFirst().orElse(null);
+
+            // Цену оставим null, чтобы на фронте было понятно, что скидка задана не для базового варианта
+            dto.setDiscountPercent(variantWithDiscount != null && variantWithDiscount.discount().isStarted() &&
+                    !variantWithDiscount.discount().isExpired() ?
+                    variantWithDiscount.discount().percentage() : null);
+
+        } else if (basicVariant.discount().isStarted() && !basicVariant.discount().isExpired()) {
+            dto.setDiscountPercent(basicVariant.discount().percentage());
+            dto.setDiscountPrice(basicVariant.priceWithDiscount());
+        }
+
+        if (pricesRange == null)
+            return dto;
+
+        // Найти цену варианта в диапазоне, если цена базового варианта или его цена со скидкой не входит в искомый диапазон
+        Integer discountPrice = dto.getDiscountPrice();
+        boolean discountPriceNotInRange = discountPrice == null || (discountPrice <= pricesRange.getValue1() || discountPrice >= pricesRange.getValue2());
+
+        if ((dto.getPrice() <= pricesRange.getValue1() || dto.getPrice() >= pricesRange.getValue2()) && discountPriceNotInRange)
+            dto.setVariantPrice(card.variants()
+                    .stream()
+                    .filter(pv -> pv.priceWithDiscount() >= pricesRange.getValue1() && pv.price() <= pricesRange.getValue2())
+                    .findFirst()
+                    .map(VariantCard::priceWithDiscount)
+                    .orElse(0));
+
+        return dto;
+    }
+
+    // Собрать карточки товаров из строк выборок товаров, их вариантов и значений характеристик
+    private static void collectCards(List<Object[]> productsRows, List<Object[]> variantsRows, List<Object[]> valuesRows,
+                                     Map<Long, ProductCard> target){
+
+        // Варианты каждого товара в порядке id
+        Map<Long, List<VariantCard>> variantsByProduct = new HashMap<>();
+
+        for (Object[] row : variantsRows) {
+            DiscountCard discount = row[4] == null ? null : new DiscountCard(
+                    ((Number) row[4]).floatValue(),
+                    Boolean.TRUE.equals(row[5]),
+                    Boolean.TRUE.equals(row[6]),
+                    toDate(row[7]),
+                    toDate(row[8]));
+
+            variantsByProduct.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>())
+                    .add(new VariantCard(((Number) row[1]).longValue(), ((Number) row[2]).intValue(), (String) row[3], discount));
+        }
+
+        // Целочисленные значения характеристик каждого товара в порядке id
+        Map<Long, List<Integer>> valuesByProduct = new HashMap<>();
+
+        for (Object[] row : valuesRows)
+            valuesByProduct.computeIfAbsent(((Number) row[0]).longValue(), id -> new ArrayList<>())
+                    .add(row[1] == null ? null : ((Number) row[1]).intValue());
+
+        for (Object[] row : productsRows) {
+            long productId = ((Number) row[0]).longValue();
+
+            target.put(productId, new ProductCard(
+                    productId,
+                    (String) row[1],
+                    ((Number) row[2]).longValue(),
+                    (String) row[3],
+                    ((Number) row[4]).longValue(),
+                    (String) row[5],
+                    Boolean.TRUE.equals(row[6]),
+                    Boolean.TRUE.equals(row[7]),
+                    createSizes(valuesByProduct.getOrDefault(productId, List.of())),
+                    variantsByProduct.getOrDefault(productId, List.of()),
+                    row[8] == null ? null : ((Number) row[8]).longValue(),
+                    row[9] == null ? null : ((Number) row[9]).floatValue(),
+                    row[10] == null ? null : ((Number) row[10]).intValue()
+            ));
+        }
+    }
+
+    // Строка габаритов - первые три характеристики товара (ширина, высота, глубина), как и в ProductPreviewRespDto
+    private static String createSizes(List<Integer> values){
+        return values.size() >= 3 ? String.format("Размер см: Ш %d x В %d x Г %d", values.get(0), values.get(1), values.get(2)) :
+                "Размер неизвестен";
+    }
+
+    // Дата окончания скидки может быть получена как Date, так и LocalDateTime - в зависимости от маппинга столбца
+    private static Date toDate(Object value){
+        if (value instanceof Date date)
+            return date;
+
+        if (value instanceof LocalDateTime dateTime)
+            return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+
+        return null;
+    }
+}
@@ -6,7 +6,9 @@ import gp.wagner.backend.domain.entities.products.ProductVariant;
 import gp.wagner.backend.domain.exceptions.classes.ApiException;
 import gp.wagner.backend.infrastructure.Constants;
 import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.products.DiscountsRepository;
 import gp.wagner.backend.repositories.products.ProductVariantsRepository;
+import gp.wagner.backend.repositories.products.ProductsRepository;
 import gp.wagner.backend.services.interfaces.products.ProductVariantsService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -33,13 +35,34 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
     }
 
 
+    // Репозиторий товаров - для пересчёта цен товара после изменения цен вариантов
+    private ProductsRepository productsRepository;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    // Репозиторий скидок - для увеличения версии цен
+    private DiscountsRepository discountsRepository;
+
+    @Autowired
+    public void setDiscountsRepository(DiscountsRepository discountsRepository) {
+        this.discountsRepository = discountsRepository;
+    }
+
+
     //region Добавление
     @Override
     public long save(ProductVariant productVariant) {
         if (productVariant == null)
             return -1;
 
-        return productVariantsRepository.saveAndFlush(productVariant).getId();
+        long pvId = productVariantsRepository.saveAndFlush(productVariant).getId();
+
+        recountEffectivePrices(List.of(pvId));
+
+        return pvId;
     }
 
     @Override
@@ -49,7 +72,14 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
 
         productVariantsRepository.insertProductVariant(productId,previewImg, title, price);
 
-        return productVariantsRepository.getMaxId();
+        long pvId = productVariantsRepository.getMaxId();
+
+        // Цена варианта уже задана при добавлении, пересчитать нужно только цены товара
+        productsRepository.recountPricesByVariantsIds(List.of(pvId));
+
+        Services.productCardsService.refreshProduct(productId);
+
+        return pvId;
 
     }
 
@@ -65,7 +95,11 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
                 previewImg.isEmpty() ? /*Constants.EMPTY_IMAGE.toString()*/ Services.fileManageService.getFilesPaths().emptyImagePath().toString() : previewImg,
                 dto.getShowPv() != null ? dto.getShowPv() : true, null);
 
-        return productVariantsRepository.saveAndFlush(pv).getId();
+        long pvId = productVariantsRepository.saveAndFlush(pv).getId();
+
+        recountEffectivePrices(List.of(pvId));
+
+        return pvId;
     }
     //endregion
 
@@ -77,6 +111,7 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
             return;
         productVariantsRepository.saveAndFlush(productVariant);
 
+        recountEffectivePrices(List.of(productVariant.getId()));
     }
 
     @Override
@@ -102,6 +137,10 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
         boolean oldShowState = oldProductVariant.getShowVariant();
         pv = productVariantsRepository.saveAndFlush(pv);
 
+        // Пересчитать цену со скидкой и цены товара
+        if (pv.getPrice() != oldPrice)
+            recountEffectivePrices(List.of(pv.getId()));
+
         // После обновления цены варианта, обновить все корзины и необработанные заказы
         if (pv.getPrice() != oldPrice && pv.getShowVariant()) {
             Services.basketsService.updateBasketsOnPvPriceChanged(pv);
@@ -126,6 +165,28 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
     @Override
     public void update(long productVariantId, long productId, String previewImg, String title, int price) {
         productVariantsRepository.updateProductVariant(productVariantId, productId, previewImg, title, price);
+
+        recountEffectivePrices(List.of(productVariantId));
+
+        // Наименование варианта изменено нативным запросом - обновить поисковый индекс и подсказки товара
+        Services.productCardsService.refreshProduct(productId);
+    }
+
+    @Override
+    @Transactional
+    public void recountEffectivePrices(List<Long> pvIdList) {
+        if (pvIdList == null || pvIdList.isEmpty())
+            return;
+
+        // Варианты с изменившейся ценой помечаются новой версией цен - суммы корзин и заказов с ними устаревают
+        discountsRepository.incrementPricingVersion();
+
+        // Сначала цены самих вариантов, затем цены товаров вычисляются уже по ним
+        productVariantsRepository.recountEffectivePrices(pvIdList);
+        productsRepository.recountPricesByVariantsIds(pvIdList);
+
+        // Цены и скидки вариантов выводятся в карточках товаров
+        Services.productCardsService.refreshByVariants(pvIdList);
     }
 
     @Override
@@ -186,6 +247,8 @@ public class ProductVariantsServiceImpl implements ProductVariantsService {
         // Очистить кэш. Иначе в моменте запись может не изменится, что повлияет на замену или удалиение
         entityManager.flush();
         entityManager.clear();
+
+        Services.productCardsService.refreshByVariants(List.of(productVariantId));
     }
 
     @Override
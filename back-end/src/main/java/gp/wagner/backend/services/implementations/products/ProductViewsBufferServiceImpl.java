@@ -0,0 +1,58 @@
+package gp.wagner.backend.services.implementations.products;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+import gp.wagner.backend.infrastructure.ViewsWriteBuffer;
+import gp.wagner.backend.repositories.products.ProductViewsRepository;
+import gp.wagner.backend.services.interfaces.products.ProductViewsBufferService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+
+// Буфер отложенной записи просмотров товаров
+@Service
+public class ProductViewsBufferServiceImpl implements ProductViewsBufferService {
+
+    //region Репозитории
+    private ProductViewsRepository productViewsRepository;
+
+    @Autowired
+    public void setProductViewsRepository(ProductViewsRepository productViewsRepository) {
+        this.productViewsRepository = productViewsRepository;
+    }
+    //endregion
+
+    private record ViewKey(long visitorId, long productId) {}
+
+    // Порог сохранения - 1000 пар (посетитель, товар), в одном запросе до 500 записей
+    private final ViewsWriteBuffer<ViewKey> buffer = new ViewsWriteBuffer<>("product_views", 1_000, 500,
+            key -> String.format(Locale.ROOT, "\"visitorId\":%d,\"productId\":%d", key.visitorId(), key.productId()),
+            json -> productViewsRepository.upsertProductViews(json));
+
+    @Override
+    public boolean enqueue(long visitorId, long productId) {
+        if (visitorId <= 0 || productId <= 0)
+            return false;
+
+        return buffer.enqueue(new ViewKey(visitorId, productId), System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelay = 1_000)
+    public void flushIfNeeded() {
+        buffer.flushIfNeeded();
+    }
+
+    // Сохраняется и при остановке приложения, чтобы не потерять накопленные просмотры
+    @Override
+    @PreDestroy
+    public void flush() {
+        buffer.flush();
+    }
+
+    @Override
+    public WriteBufferStatisticsRespDto getStatistics() {
+        return buffer.getStatistics();
+    }
+}
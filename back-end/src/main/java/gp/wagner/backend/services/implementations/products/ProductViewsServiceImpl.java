@@ -68,25 +68,11 @@ public class ProductViewsServiceImpl implements ProductViewsService {
             return;
 
         //Найти или создать посетителя с заданным отпечатком браузера
-        Visitor visitor = Services.visitorsService.saveIfNotExists(fingerPrint, ip);
-        visitor.setLastVisit(new Date());
-        Services.visitorsService.update(visitor);
+        long visitorId = Services.visitorsCacheService.resolveVisitorId(fingerPrint, ip);
+        Services.visitorsCacheService.touch(visitorId);
 
-        //Проверить наличие записи просмотра товара для конкретного посетителя по конкретному товару
-        ProductViews productView = getByVisitorAndProductId(visitor.getId(), productId);
-
-        //Если запись не существует, тогда создаём, если запись имеется, тогда увеличить счетчик
-        if (productView == null)
-            repository.insertProductView(visitor.getId(), productId, 1);
-        else{
-
-            // Если прошло < 24ч, тогда просмотр не учитывать
-            if (!productView.goneMoreThan(24))
-                return;
-
-            productView.setCount(productView.getCount()+1);
-            update(productView);
-        }
+        // Просмотр накапливается в буфере и сохраняется пакетно. Повторный просмотр в течение 24ч буфер не учитывает
+        Services.productViewsBufferService.enqueue(visitorId, productId);
 
     }
     //endregion
@@ -0,0 +1,489 @@
+package gp.wagner.backend.services.implementations.products;
+
+import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterBlock;
+import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDto;
+import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
+import gp.wagner.backend.domain.entities.eav.AttributeValue;
+import gp.wagner.backend.infrastructure.SimpleTuple;
+import gp.wagner.backend.infrastructure.Utils;
+import gp.wagner.backend.infrastructure.enums.FilterOperationsEnum;
+import gp.wagner.backend.repositories.AttributeValuesRepository;
+import gp.wagner.backend.services.interfaces.products.ProductsFilterIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Сервис индекса значений характеристик для быстрой фильтрации товаров без подзапросов к attributes_values.
+// Множества товаров хранятся в java.util.BitSet по id товара, а не в сжатых битовых картах (RoaringBitmap):
+// id товаров - автоинкремент без больших разрывов, поэтому битовые карты плотные и сторонняя зависимость не нужна
+@Service
+public class ProductsFilterIndexServiceImpl implements ProductsFilterIndexService {
+
+    // Репозиторий значений характеристик
+    private AttributeValuesRepository attributeValuesRepository;
+
+    @Autowired
+    public void setAttributeValuesRepository(AttributeValuesRepository attributeValuesRepository) {
+        this.attributeValuesRepository = attributeValuesRepository;
+    }
+
+    // Проиндексированная запись значения характеристики
+    private record IndexedValue(long productId, long attributeId, Integer intValue, String strValue) {}
+
+    // Целиком заменяемое состояние индекса
+    private static class IndexState {
+
+        // Записи по id значения характеристики - нужны для изменения и удаления
+        final Map<Long, IndexedValue> valuesById = new HashMap<>();
+
+        // Id значений характеристик каждого товара
+        final Map<Long, Set<Long>> valuesIdsByProduct = new HashMap<>();
+
+        // Целочисленные значения: id атрибута -> отсортированные значения -> битовая карта товаров.
+        // Отсортированность позволяет выбирать диапазоны для операций >=, <= и ~
+        final Map<Long, NavigableMap<Integer, BitSet>> intValues = new HashMap<>();
+
+        // Строковые значения: id атрибута -> нормализованное значение -> битовая карта товаров
+        final Map<Long, Map<String, BitSet>> strValues = new HashMap<>();
+    }
+
+    private volatile IndexState state = new IndexState();
+
+    // Чтения выполняются параллельно, изменения индекса - монопольно
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Изменения, применённые во время перестроения индекса. Повторяются на новом индексе перед его подстановкой,
+    // иначе изменения, не попавшие в прочитанные строки, были бы потеряны. null - перестроение не выполняется
+    private List<Consumer<IndexState>> rebuildDeltas;
+
+    //region Построение и изменение индекса
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+
+        // Запоминать изменения с начала чтения таблицы
+        lock.writeLock().lock();
+        try {
+            rebuildDeltas = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Новый индекс строится в стороне, чтобы не блокировать выборки на время чтения всей таблицы
+        IndexState newState = new IndexState();
+
+        try {
+            for (Object[] row : attributeValuesRepository.getValuesForFilterIndex())
+                addToState(newState, toIndexedValueEntry(row));
+
+            lock.writeLock().lock();
+            try {
+                // Изменения идемпотентны, поэтому повтор уже учтённых в прочитанных строках ничего не портит
+                rebuildDeltas.forEach(delta -> delta.accept(newState));
+                state = newState;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                rebuildDeltas = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Применить изменение к текущему индексу и запомнить его для повтора, если выполняется перестроение
+    private void applyDelta(Consumer<IndexState> delta){
+        lock.writeLock().lock();
+        try {
+            delta.accept(state);
+
+            if (rebuildDeltas != null)
+                rebuildDeltas.add(delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void indexValue(AttributeValue attributeValue) {
+        if (attributeValue == null || attributeValue.getId() == null ||
+                attributeValue.getProduct() == null || attributeValue.getAttribute() == null)
+            return;
+
+        indexValue(attributeValue.getId(), attributeValue.getProduct().getId(), attributeValue.getAttribute().getId(),
+                attributeValue.getIntValue(), attributeValue.getStrValue());
+    }
+
+    @Override
+    public void indexValue(long valueId, long productId, long attributeId, Integer intValue, String strValue) {
+        applyDelta(indexState -> {
+            removeFromState(indexState, valueId);
+            addToState(indexState, new AbstractMap.SimpleEntry<>(valueId, new IndexedValue(productId, attributeId, intValue, strValue)));
+        });
+    }
+
+    @Override
+    public void updateValue(long valueId, Integer intValue, String strValue) {
+        applyDelta(indexState -> {
+            IndexedValue oldValue = removeFromState(indexState, valueId);
+
+            // Если запись ещё не была проиндексирована, то товар и атрибут неизвестны - перечитать запись полностью
+            if (oldValue == null) {
+                attributeValuesRepository.findById(valueId)
+                        .ifPresent(av -> addToState(indexState, new AbstractMap.SimpleEntry<>(valueId,
+                                new IndexedValue(av.getProduct().getId(), av.getAttribute().getId(), intValue, strValue))));
+                return;
+            }
+
+            addToState(indexState, new AbstractMap.SimpleEntry<>(valueId,
+                    new IndexedValue(oldValue.productId(), oldValue.attributeId(), intValue, strValue)));
+        });
+    }
+
+    @Override
+    public void reindexProduct(long productId) {
+
+        List<Object[]> rows = attributeValuesRepository.getValuesForFilterIndexByProductId(productId);
+
+        applyDelta(indexState -> {
+            // Удалить все прежние значения товара
+            Set<Long> oldValuesIds = indexState.valuesIdsByProduct.get(productId);
+
+            if (oldValuesIds != null)
+                new ArrayList<>(oldValuesIds).forEach(id -> removeFromState(indexState, id));
+
+            for (Object[] row : rows)
+                addToState(indexState, toIndexedValueEntry(row));
+        });
+    }
+
+    @Override
+    public void removeValues(List<Long> valuesIds) {
+        if (valuesIds == null || valuesIds.isEmpty())
+            return;
+
+        List<Long> ids = List.copyOf(valuesIds);
+
+        applyDelta(indexState -> ids.forEach(id -> removeFromState(indexState, id)));
+    }
+
+    // Преобразовать строку выборки [id, product_id, attribute_id, int_value, txt_values] в запись индекса
+    private static Map.Entry<Long, IndexedValue> toIndexedValueEntry(Object[] row){
+        return new AbstractMap.SimpleEntry<>(
+                ((Number) row[0]).longValue(),
+                new IndexedValue(
+                        ((Number) row[1]).longValue(),
+                        ((Number) row[2]).longValue(),
+                        row[3] != null ? ((Number) row[3]).intValue() : null,
+                        (String) row[4])
+        );
+    }
+
+    private static void addToState(IndexState indexState, Map.Entry<Long, IndexedValue> entry){
+
+        IndexedValue value = entry.getValue();
+        int productBit = Math.toIntExact(value.productId());
+
+        indexState.valuesById.put(entry.getKey(), value);
+        indexState.valuesIdsByProduct.computeIfAbsent(value.productId(), k -> new HashSet<>()).add(entry.getKey());
+
+        if (value.intValue() != null)
+            indexState.intValues.computeIfAbsent(value.attributeId(), k -> new TreeMap<>())
+                    .computeIfAbsent(value.intValue(), k -> new BitSet())
+                    .set(productBit);
+
+        String strKey = normalizeStrValue(value.strValue());
+
+        if (strKey != null)
+            indexState.strValues.computeIfAbsent(value.attributeId(), k -> new HashMap<>())
+                    .computeIfAbsent(strKey, k -> new BitSet())
+                    .set(productBit);
+    }
+
+    // Удалить запись из индекса. Бит товара снимается только если у товара не осталось такого же значения в другой записи
+    private static IndexedValue removeFromState(IndexState indexState, long valueId){
+
+        IndexedValue value = indexState.valuesById.remove(valueId);
+
+        if (value == null)
+            return null;
+
+        Set<Long> productValuesIds = indexState.valuesIdsByProduct.get(value.productId());
+
+        if (productValuesIds != null) {
+            productValuesIds.remove(valueId);
+
+            if (productValuesIds.isEmpty())
+                indexState.valuesIdsByProduct.remove(value.productId());
+        }
+
+        // Оставшиеся значения того же атрибута у данного товара
+        List<IndexedValue> sameAttributeValues = productValuesIds == null ? List.of() : productValuesIds.stream()
+                .map(indexState.valuesById::get)
+                .filter(v -> v != null && v.attributeId() == value.attributeId())
+                .toList();
+
+        int productBit = Math.toIntExact(value.productId());
+
+        if (value.intValue() != null && sameAttributeValues.stream().noneMatch(v -> value.intValue().equals(v.intValue()))) {
+            NavigableMap<Integer, BitSet> attrValues = indexState.intValues.get(value.attributeId());
+            BitSet bits = attrValues != null ? attrValues.get(value.intValue()) : null;
+
+            if (bits != null) {
+                bits.clear(productBit);
+
+                if (bits.isEmpty())
+                    attrValues.remove(value.intValue());
+            }
+        }
+
+        String strKey = normalizeStrValue(value.strValue());
+
+        if (strKey != null && sameAttributeValues.stream().noneMatch(v -> strKey.equals(normalizeStrValue(v.strValue())))) {
+            Map<String, BitSet> attrValues = indexState.strValues.get(value.attributeId());
+            BitSet bits = attrValues != null ? attrValues.get(strKey) : null;
+
+            if (bits != null) {
+                bits.clear(productBit);
+
+                if (bits.isEmpty())
+                    attrValues.remove(strKey);
+            }
+        }
+
+        return value;
+    }
+
+    // Строки в БД сравниваются без учёта регистра, поэтому и в индексе значения приводятся к нижнему регистру
+    private static String normalizeStrValue(String value){
+        if (value == null || value.isBlank())
+            return null;
+
+        return value.trim().toLowerCase();
+    }
+    //endregion
+
+    //region Вычисление фильтров
+    @Override
+    public BitSet findProductsBitmap(ProductFilterDtoContainer container) {
+        return findProductsBitmap(container, null);
+    }
+
+    @Override
+    public BitSet findProductsBitmap(ProductFilterDtoContainer container, Long excludedAttributeId) {
+
+        if (container == null || container.getProductFilterBlockList() == null)
+            return null;
+
+        lock.readLock().lock();
+        try {
+            BitSet result = null;
+
+            // Блоки фильтров объединяются между собой через "и"
+            for (ProductFilterBlock filterBlock : container.getProductFilterBlockList()) {
+
+                if (filterBlock.getProductFilters() == null || filterBlock.getProductFilters().isEmpty())
+                    continue;
+
+                BitSet blockBits = evaluateBlock(filterBlock, excludedAttributeId);
+
+                if (blockBits == null)
+                    continue;
+
+                if (result == null)
+                    result = blockBits;
+                else
+                    result.and(blockBits);
+            }
+
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SimpleTuple<Long, Long>> findProductsIdsRanges(ProductFilterDtoContainer container) {
+
+        BitSet bits = findProductsBitmap(container);
+
+        if (bits == null)
+            return null;
+
+        List<SimpleTuple<Long, Long>> ranges = new ArrayList<>();
+
+        // Каждая последовательность установленных битов - диапазон подряд идущих id
+        for (int lo = bits.nextSetBit(0); lo >= 0; ) {
+            int hi = bits.nextClearBit(lo) - 1;
+
+            ranges.add(new SimpleTuple<>((long) lo, (long) hi));
+
+            lo = bits.nextSetBit(hi + 1);
+        }
+
+        return ranges;
+    }
+
+    // Вычислить блок фильтров по внутреннему правилу блока (И/ИЛИ). null - блок не накладывает ограничений
+    private BitSet evaluateBlock(ProductFilterBlock filterBlock, Long excludedAttributeId){
+
+        boolean isOrRule = filterBlock.getInnerRule() != null &&
+                filterBlock.getInnerRule().equalsIgnoreCase(FilterOperationsEnum.OR.getValue());
+
+        BitSet result = null;
+        boolean hasFilters = false;
+
+        for (ProductFilterDto dto : filterBlock.getProductFilters()) {
+
+            // Исключается только фильтр по исключённому атрибуту, остальные фильтры блока продолжают ограничивать выборку
+            if (excludedAttributeId != null && excludedAttributeId.equals(dto.getAttributeId()))
+                continue;
+
+            hasFilters = true;
+
+            BitSet filterBits = evaluateFilter(dto);
+
+            // Фильтр с некорректными значениями игнорируется
+            if (filterBits == null)
+                continue;
+
+            if (result == null)
+                result = filterBits;
+            else if (isOrRule)
+                result.or(filterBits);
+            else
+                result.and(filterBits);
+        }
+
+        // Блок только из фильтров по исключённому атрибуту не накладывает ограничений
+        if (!hasFilters)
+            return null;
+
+        // Пустое "или" не выбирает ничего, пустое "и" ничего не ограничивает
+        if (result == null && isOrRule)
+            return new BitSet();
+
+        return result;
+    }
+
+    // Вычислить один фильтр - всегда возвращается новая битовая карта, которую можно изменять. null - фильтр игнорируется
+    private BitSet evaluateFilter(ProductFilterDto dto){
+
+        if (dto == null || dto.getAttributeId() == null || dto.getOperation() == null)
+            return null;
+
+        long attributeId = dto.getAttributeId();
+        IndexState indexState = state;
+
+        NavigableMap<Integer, BitSet> intValues = indexState.intValues.getOrDefault(attributeId, Collections.emptyNavigableMap());
+        String operation = dto.getOperation();
+
+        if (operation.equals(FilterOperationsEnum.EQUALS.getValue())) {
+
+            Integer intValue = Utils.TryParseInt(dto.getValue());
+
+            BitSet bits = intValue != null ?
+                    intValues.get(intValue) :
+                    indexState.strValues.getOrDefault(attributeId, Collections.emptyMap()).get(normalizeStrValue(dto.getValue()));
+
+            return bits != null ? (BitSet) bits.clone() : new BitSet();
+        }
+
+        // Если значение должно быть >= заданного
+        if (operation.equals(FilterOperationsEnum.GREATER_THAN_EQUAL.getValue())) {
+            Integer intValue = Utils.TryParseInt(dto.getValue());
+
+            return intValue != null ? union(intValues.tailMap(intValue, true).values()) : new BitSet();
+        }
+
+        // Если значение должно быть <= заданного
+        if (operation.equals(FilterOperationsEnum.LESS_THAN_EQUAL.getValue())) {
+            Integer intValue = Utils.TryParseInt(dto.getValue());
+
+            return intValue != null ? union(intValues.headMap(intValue, true).values()) : new BitSet();
+        }
+
+        // Если значение должно быть между заданными
+        if (operation.equals(FilterOperationsEnum.BETWEEN.getValue())) {
+
+            SimpleRange range = parseRange(dto.getValue());
+
+            if (range == null)
+                return null;
+
+            if (range.lo() > range.hi())
+                return new BitSet();
+
+            return union(intValues.subMap(range.lo(), true, range.hi(), true).values());
+        }
+
+        return null;
+    }
+
+    @Override
+    public BitSet getAttributeValueBitmap(long attributeId, String strValue) {
+        lock.readLock().lock();
+        try {
+            BitSet bits = state.strValues.getOrDefault(attributeId, Collections.emptyMap()).get(normalizeStrValue(strValue));
+
+            return bits != null ? (BitSet) bits.clone() : new BitSet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public BitSet getAttributeRangeBitmap(long attributeId, int min, int max) {
+        if (min > max)
+            return new BitSet();
+
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, BitSet> intValues = state.intValues.getOrDefault(attributeId, Collections.emptyNavigableMap());
+
+            return union(intValues.subMap(min, true, max, true).values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private record SimpleRange(int lo, int hi) {}
+
+    // Значения диапазона задаются так же, как и в ProductSpecifications
+    private static SimpleRange parseRange(String value){
+        if (value == null)
+            return null;
+
+        String[] values = value.split("[-_–—|]");
+
+        if (values.length < 2)
+            return null;
+
+        Integer val1 = Utils.TryParseInt(values[0]);
+        Integer val2 = Utils.TryParseInt(values[1]);
+
+        if (val1 == null || val2 == null)
+            return null;
+
+        return new SimpleRange(val1, val2);
+    }
+
+    private static BitSet union(Collection<BitSet> bitSets){
+        BitSet result = new BitSet();
+
+        for (BitSet bits : bitSets)
+            result.or(bits);
+
+        return result;
+    }
+    //endregion
+}
@@ -17,12 +17,14 @@ import gp.wagner.backend.repositories.products.ProductsRepository;
 import gp.wagner.backend.services.interfaces.products.ProductsService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
 
@@ -49,6 +51,8 @@ public class ProductsServiceImpl implements ProductsService {
             return;
 
         productsRepository.saveAndFlush(product);
+
+        Services.productCardsService.refreshProduct(product.getId());
     }
 
     // Добавление товара из DTO
@@ -61,7 +65,12 @@ public class ProductsServiceImpl implements ProductsService {
                 dto.getProducerId().intValue(),
                 dto.getIsAvailable() ? 1 : 0, dto.getShowProduct() ? 1 : 0);
 
-        return productsRepository.getMaxId();
+        long createdId = productsRepository.getMaxId();
+
+        // Карточка без вариантов - будет дополнена при добавлении вариантов товара
+        Services.productCardsService.refreshProduct(createdId);
+
+        return createdId;
     }
     //endregion
 
@@ -73,17 +82,31 @@ public class ProductsServiceImpl implements ProductsService {
 
         productsRepository.saveAndFlush(item);
 
+        Services.productCardsService.refreshProduct(item.getId());
     }
 
     // Из DTO
     @Override
+    @Transactional
     public void update(ProductDto dto) {
         if (dto == null)
             return;
 
+        // При переносе товара в другую категорию его заказы переходят в строки сводки другого поддерева категорий
+        Long oldCategoryId = productsRepository.getCategoryIdById(dto.getId()).orElse(null);
+
+        List<Long> ordersIds = oldCategoryId != null && !oldCategoryId.equals(dto.getCategoryId()) ?
+                Services.ordersService.getOrdersIdsByProductId(dto.getId()) : List.of();
+
+        Services.ordersRollupService.subtractOrders(ordersIds, null);
+
         productsRepository.updateProduct(dto.getId(), dto.getName(), dto.getDescription(),
                 dto.getCategoryId(), dto.getProducerId(),
                 dto.getIsAvailable() ? 1 : 0, dto.getShowProduct() ? 1 : 0);
+
+        Services.ordersRollupService.addOrders(ordersIds, null);
+
+        Services.productCardsService.refreshProduct(dto.getId());
     }
 
     //endregion
@@ -99,28 +122,32 @@ public class ProductsServiceImpl implements ProductsService {
 
     // Выборка с пагинацией
     @Override
-    public Page<Product> getAll(int pageNum, int dataOnPage) {
+    public Page<Long> getAll(int pageNum, int dataOnPage) {
 
-        return productsRepository.findAllNotDeleted(PageRequest.of(pageNum, dataOnPage));
+        return productsRepository.findAllNotDeletedIds(PageRequest.of(pageNum, dataOnPage));
     }
 
     // Фильтрация и пагинация
     @Override
-    public Page<Product> getAll(ProductFilterDtoContainer container, Long categoryId, String priceRange,
+    public Page<Long> getAll(ProductFilterDtoContainer container, Long categoryId, String priceRange,
                                                       int pageNum, int dataOnPage) {
 
-        // Сформировать набор спецификаций для выборки из набора фильтров (фильтр = атрибут (характеристика) + операция)
-        List<Specification<Product>> specifications = ProductSpecifications.createSubQueriesProductSpecifications(container);
+        // Сформировать набор спецификаций для выборки из набора фильтров (фильтр = атрибут (характеристика) + операция).
+        // Фильтры по характеристикам вычисляются по индексу в памяти, а не подзапросами к attributes_values
+        List<Specification<Product>> specifications = ProductSpecifications.createIndexedProductSpecifications(container);
 
         // Объект для формирования запросов - построитель запроса
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         // Рассчитать общее кол-во данных с такими фильтрами
-        CriteriaQuery<Product> query = cb.createQuery(Product.class);
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
 
         // Получить таблицу товаров для запросов
         Root<Product> root = query.from(Product.class);
 
+        // Выбираются только id - карточки товаров берутся из хранилища карточек
+        query.select(root.get("id"));
+
         List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, container, categoryId, priceRange, ProductsOrVariantsEnum.PRODUCTS);
 
         // Получить предикат для выборки по заданным фильтрам (контейнер фильтров, который был передан из контроллера)
@@ -141,7 +168,7 @@ public class ProductsServiceImpl implements ProductsService {
             pageNum -= 1;
 
         //Данный объект нужен для пагинации полученных после выборки результатов
-        TypedQuery<Product> typedQuery = entityManager.createQuery(query);
+        TypedQuery<Long> typedQuery = entityManager.createQuery(query);
 
         //region Пагинация через TypedQuery
         // Задать кол-во результатов на странице
@@ -151,25 +178,25 @@ public class ProductsServiceImpl implements ProductsService {
         typedQuery.setFirstResult(pageNum*dataOnPage);
         //endregion
 
-        List<Product> products = typedQuery.getResultList();
+        List<Long> productsIds = typedQuery.getResultList();
 
         // Пагинация готовой коллекции
         long elementsCount = PaginationUtils.countProductsByFilter(entityManager, specifications, container, categoryId, priceRange);
 
-        return new PageImpl<>(products, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return new PageImpl<>(productsIds, PageRequest.of(pageNum, dataOnPage), elementsCount);
     }
 
     @Override
-    public Page<Product> getAllWithCorrectPrices(ProductFilterDtoContainer filtersContainer, Long categoryId, String priceRange,
+    public Page<Long> getAllWithCorrectPrices(ProductFilterDtoContainer filtersContainer, Long categoryId, String priceRange,
                                                  int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
 
-        List<Specification<Product>> specifications = ProductSpecifications.createSubQueriesProductSpecifications(filtersContainer);
+        List<Specification<Product>> specifications = ProductSpecifications.createIndexedProductSpecifications(filtersContainer);
 
         // Объект для формирования запросов - построитель запроса
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         // Используется установка флага distinct для корректной пагинации, иначе выбирается несоответствующее реальности количество записей
-        CriteriaQuery<Product> query = cb.createQuery(Product.class).distinct(true);
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
         Root<Product> root = query.from(Product.class);
 
         List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, filtersContainer, categoryId, priceRange,
@@ -187,21 +214,44 @@ public class ProductsServiceImpl implements ProductsService {
             query.where(filterPredicate);
 
         // Задать сортировку
-        SortingUtils.createSortQueryForProducts(cb, query, root, sortEnum, sortType);
+        SortingUtils.createSortedIdsSelectionForProducts(cb, query, root, sortEnum, sortType);
 
         if (pageNum > 0)
             pageNum -= 1;
 
-        TypedQuery<Product> typedQuery = entityManager.createQuery(query);
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
         typedQuery.setMaxResults(dataOnPage);
         typedQuery.setFirstResult(pageNum*dataOnPage);
 
-        List<Product> products = typedQuery.getResultList();
+        List<Long> productsIds = typedQuery.getResultList().stream().map(row -> row.get(0, Long.class)).toList();
 
         // Пагинация готовой коллекции
         long elementsCount = PaginationUtils.countProductsByFilterPv(entityManager, specifications, filtersContainer, categoryId, priceRange);
 
-        return new PageImpl<>(products, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return new PageImpl<>(productsIds, PageRequest.of(pageNum, dataOnPage), elementsCount);
+    }
+
+    @Override
+    public CursorPage<Long> getAllWithCorrectPricesByCursor(ProductFilterDtoContainer filtersContainer, Long categoryId, String priceRange,
+                                                               String cursor, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
+
+        List<Specification<Product>> specifications = ProductSpecifications.createIndexedProductSpecifications(filtersContainer);
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
+        Root<Product> root = query.from(Product.class);
+
+        List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, filtersContainer, categoryId, priceRange,
+                ProductsOrVariantsEnum.VARIANTS);
+
+        Predicate predicate = Specification.allOf(specifications).toPredicate(root, query, cb);
+
+        if (predicates != null && !predicates.isEmpty())
+            predicate = cb.and(cb.and(predicates.toArray(new Predicate[0])), predicate);
+
+        return PaginationUtils.findProductsIdsByCursor(entityManager, query, root, predicate, cursor, dataOnPage, sortEnum, sortType,
+                () -> PaginationUtils.countProductsByFilterPv(entityManager, specifications, filtersContainer, categoryId, priceRange));
     }
 
     @Override
@@ -216,7 +266,7 @@ public class ProductsServiceImpl implements ProductsService {
         //Получить таблицу для запросов
         Root<Product> root = query.from(Product.class);
 
-        List<Specification<Product>> specifications = ProductSpecifications.createSubQueriesProductSpecifications(filtersContainer);
+        List<Specification<Product>> specifications = ProductSpecifications.createIndexedProductSpecifications(filtersContainer);
 
         // Собираем предикаты по диапазону цен (варианты товара) и категории
         List<Predicate> predicates = ServicesUtils.collectProductsPredicates(cb, root, query, filtersContainer, categoryId, priceRange,countProductsOrVariants);
@@ -261,7 +311,7 @@ public class ProductsServiceImpl implements ProductsService {
     }
 
     @Override
-    public Page<Product> getByCategory(long categoryId, int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
+    public Page<Long> getByCategory(long categoryId, int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
 
         List<Long> childCategoriesIds = ServicesUtils.getChildCategoriesList(categoryId);
 
@@ -270,34 +320,34 @@ public class ProductsServiceImpl implements ProductsService {
 
         // Если простые поля - тогда запрос сортировкой через репозиторий
         if (sortEnum != ProductsSortEnum.PRICE)
-            return productsRepository.findProductsByCategoryId(childCategoriesIds, PageRequest.of(pageNum, dataOnPage,
+            return productsRepository.findProductsIdsByCategoryId(childCategoriesIds, PageRequest.of(pageNum, dataOnPage,
                     SortingUtils.createSortForProducts(sortEnum, sortType)));
 
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         // Используется установка флага distinct для корректной пагинации, иначе выбирается несоответствующее реальности количество записей
-        CriteriaQuery<Product> query = cb.createQuery(Product.class).distinct(true);
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
         Root<Product> root = query.from(Product.class);
 
         query.where(root.get("category").get("id").in(childCategoriesIds));
 
         // Задать сортировку
-        SortingUtils.createSortQueryForProducts(cb, query, root, sortEnum, sortType);
+        SortingUtils.createSortedIdsSelectionForProducts(cb, query, root, sortEnum, sortType);
 
-        TypedQuery<Product> typedQuery = entityManager.createQuery(query);
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
         typedQuery.setMaxResults(dataOnPage);
         typedQuery.setFirstResult(pageNum*dataOnPage);
 
-        List<Product> products = typedQuery.getResultList();
+        List<Long> productsIds = typedQuery.getResultList().stream().map(row -> row.get(0, Long.class)).toList();
 
         // Пагинация готовой коллекции
         long elementsCount = PaginationUtils.countProductsByProducersOrCategories(entityManager, childCategoriesIds, Category.class);
 
-        return new PageImpl<>(products, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return new PageImpl<>(productsIds, PageRequest.of(pageNum, dataOnPage), elementsCount);
     }
 
     @Override
-    public Page<Product> getByCategoryAndPrice(long categoryId, String priceRange, int pageNum, int dataOnPage,
+    public Page<Long> getByCategoryAndPrice(long categoryId, String priceRange, int pageNum, int dataOnPage,
                                                ProductsSortEnum sortEnum, GeneralSortEnum sortType, ProductsOrVariantsEnum povEnum) {
 
         if (priceRange == null || priceRange.isBlank())
@@ -311,7 +361,7 @@ public class ProductsServiceImpl implements ProductsService {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         // Используется установка флага distinct для корректной пагинации, иначе выбирается несоответствующее реальности количество записей
-        CriteriaQuery<Product> query = cb.createQuery(Product.class).distinct(true);
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
         Root<Product> root = query.from(Product.class);
 
         // Id категории находится в заданном списке и при этом не удалён (но может быть скрыт)
@@ -334,51 +384,81 @@ public class ProductsServiceImpl implements ProductsService {
         query.where(predicate);
 
         // Задать сортировку
-        SortingUtils.createSortQueryForProducts(cb, query, root, sortEnum, sortType);
+        SortingUtils.createSortedIdsSelectionForProducts(cb, query, root, sortEnum, sortType);
 
-        TypedQuery<Product> typedQuery = entityManager.createQuery(query);
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
         typedQuery.setMaxResults(dataOnPage);
         typedQuery.setFirstResult(pageNum*dataOnPage);
 
-        List<Product> products = typedQuery.getResultList();
+        List<Long> productsIds = typedQuery.getResultList().stream().map(row -> row.get(0, Long.class)).toList();
 
         // Пагинация готовой коллекции
         long elementsCount = PaginationUtils.countProductsByProducersOrCategoriesWithPrice(entityManager, childCategoriesIds, Category.class, rangeTuple, povEnum);
 
-        return new PageImpl<>(products, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return new PageImpl<>(productsIds, PageRequest.of(pageNum, dataOnPage), elementsCount);
+    }
+
+    @Override
+    public CursorPage<Long> getByCategoryAndPriceByCursor(long categoryId, String priceRange, String cursor, int dataOnPage,
+                                                             ProductsSortEnum sortEnum, GeneralSortEnum sortType, ProductsOrVariantsEnum povEnum) {
+
+        List<Long> childCategoriesIds = ServicesUtils.getChildCategoriesList(categoryId);
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
+        Root<Product> root = query.from(Product.class);
+
+        // Id категории находится в заданном списке и при этом не удалён (но может быть скрыт)
+        Predicate predicate = cb.and(
+                root.get("category").get("id").in(childCategoriesIds),
+                cb.equal(root.get("isDeleted"), false)
+        );
+
+        SimpleTuple<Integer, Integer> rangeTuple = Utils.parseTwoNumericValues(priceRange);
+        if (rangeTuple != null && povEnum != null) {
+            Predicate pricePredicate = povEnum == ProductsOrVariantsEnum.PRODUCTS ?
+                    ServicesUtils.getProductPricePredicate(rangeTuple, root, query, cb) :
+                    ServicesUtils.getProductVariantPricePredicate(rangeTuple, root, query, cb);
+
+            predicate = cb.and(predicate, pricePredicate);
+        }
+
+        return PaginationUtils.findProductsIdsByCursor(entityManager, query, root, predicate, cursor, dataOnPage, sortEnum, sortType,
+                () -> PaginationUtils.countProductsByProducersOrCategoriesWithPrice(entityManager, childCategoriesIds, Category.class, rangeTuple, povEnum));
     }
 
     @Override
-    public Page<Product> getByProducerPaged(long producerId, int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
+    public Page<Long> getByProducerPaged(long producerId, int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType) {
 
         if (pageNum > 0)
             pageNum -= 1;
 
         // Если простые поля - тогда запрос через репозиторий
         if (sortEnum != ProductsSortEnum.PRICE)
-            return productsRepository.findProductsByProducerId(producerId, PageRequest.of(pageNum, dataOnPage,
+            return productsRepository.findProductsIdsByProducerId(producerId, PageRequest.of(pageNum, dataOnPage,
                     SortingUtils.createSortForProducts(sortEnum, sortType)));
 
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 
         // Используется установка флага distinct для корректной пагинации, иначе выбирается несоответствующее реальности количество записей
-        CriteriaQuery<Product> query = cb.createQuery(Product.class).distinct(true);
+        CriteriaQuery<Tuple> query = cb.createTupleQuery().distinct(true);
         Root<Product> root = query.from(Product.class);
         query.where(cb.equal(root.get("producer").get("id"), producerId));
 
         // Задать сортировку
-        SortingUtils.createSortQueryForProducts(cb, query, root, sortEnum, sortType);
+        SortingUtils.createSortedIdsSelectionForProducts(cb, query, root, sortEnum, sortType);
 
-        TypedQuery<Product> typedQuery = entityManager.createQuery(query);
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
         typedQuery.setMaxResults(dataOnPage);
         typedQuery.setFirstResult(pageNum*dataOnPage);
 
-        List<Product> products = typedQuery.getResultList();
+        List<Long> productsIds = typedQuery.getResultList().stream().map(row -> row.get(0, Long.class)).toList();
 
         // Пагинация готовой коллекции
         long elementsCount = PaginationUtils.countProductsByProducerOrCategory(entityManager, producerId,Producer.class);
 
-        return new PageImpl<>(products, PageRequest.of(pageNum, dataOnPage), elementsCount);
+        return new PageImpl<>(productsIds, PageRequest.of(pageNum, dataOnPage), elementsCount);
     }
 
     // Посчитать, сколько записей в каждой категории
@@ -432,8 +512,31 @@ public class ProductsServiceImpl implements ProductsService {
 
     // Получить диапазон цен по ключевому слову (при поиске)
     @Override
-    public FilterValuesDto<Integer> getPricesRangeByKeyword(String keyword) {
-        return getFilterValueDto(productsRepository.getMinMaxPriceByKeyword(keyword));
+    public FilterValuesDto<Integer> getPricesRangeInProducts(List<Long> productsIds) {
+
+        if (productsIds == null || productsIds.isEmpty())
+            return null;
+
+        return getFilterValueDto(productsRepository.getMinMaxPriceInProducts(productsIds));
+    }
+
+    @Override
+    public Map<Long, SimpleTuple<String, List<Integer>>> getProducersAndVariantsPricesInCategories(List<Long> categoriesIds) {
+
+        Map<Long, SimpleTuple<String, List<Integer>>> result = new HashMap<>();
+
+        if (categoriesIds == null || categoriesIds.isEmpty())
+            return result;
+
+        for (Object[] row : productsRepository.getProducersAndVariantsPricesInCategories(categoriesIds)) {
+            List<Integer> prices = result.computeIfAbsent(((Number) row[0]).longValue(),
+                    id -> new SimpleTuple<>((String) row[1], new ArrayList<>())).getValue2();
+
+            if (row[2] != null)
+                prices.add((int) Math.round(((Number) row[2]).doubleValue()));
+        }
+
+        return result;
     }
 
     @Override
@@ -525,6 +628,8 @@ public class ProductsServiceImpl implements ProductsService {
         Services.productVariantsService.hideByProductsList(products);
 
         productsRepository.saveAllAndFlush(products);
+
+        Services.productCardsService.refreshProducts(products.stream().map(Product::getId).toList());
     }
 
     @Override
@@ -540,6 +645,7 @@ public class ProductsServiceImpl implements ProductsService {
 
         Services.productVariantsService.recoverHiddenByProductsList(products);
 
+        Services.productCardsService.refreshProducts(products.stream().map(Product::getId).toList());
     }
 
     @Override
@@ -557,6 +663,7 @@ public class ProductsServiceImpl implements ProductsService {
 
         productsRepository.saveAllAndFlush(products);
 
+        Services.productCardsService.refreshProducts(products.stream().map(Product::getId).toList());
     }
 
     @Override
@@ -575,6 +682,8 @@ public class ProductsServiceImpl implements ProductsService {
         Services.productVariantsService.recoverHiddenByProductsList(products);
 
         productsRepository.saveAllAndFlush(products);
+
+        Services.productCardsService.refreshProducts(products.stream().map(Product::getId).toList());
     }
 
     @Override
@@ -590,6 +699,7 @@ public class ProductsServiceImpl implements ProductsService {
 
         productsRepository.saveAndFlush(product);
 
+        Services.productCardsService.refreshProduct(product.getId());
     }
 
     @Override
@@ -605,6 +715,8 @@ public class ProductsServiceImpl implements ProductsService {
             Services.productVariantsService.recoverHiddenByProductId(product);
 
         productsRepository.saveAndFlush(product);
+
+        Services.productCardsService.refreshProduct(product.getId());
     }
 
     // Найти товары по производителю и флагу удаления
@@ -128,6 +128,9 @@ public class RatingsServiceImpl implements RatingsService {
 
         ratingsStatRepository.saveAndFlush(statistics);
 
+        // Статистика оценок выводится в карточке товара
+        Services.productCardsService.refreshProduct(product.getId());
+
         return rating;
     }
 
@@ -159,6 +162,8 @@ public class RatingsServiceImpl implements RatingsService {
         ratingsRepository.delete(rating);
         ratingsStatRepository.saveAndFlush(statistics);
 
+        Services.productCardsService.refreshProduct(product.getId());
+
     }
 
     @Override
@@ -1,6 +1,8 @@
 package gp.wagner.backend.services.interfaces;
 
 import gp.wagner.backend.domain.dto.request.crud.AttributeValueDto;
+import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
+import gp.wagner.backend.domain.dto.response.filters.FilterFacetsRespDto;
 import gp.wagner.backend.domain.dto.response.filters.FilterValuesDto;
 import gp.wagner.backend.domain.entities.eav.AttributeValue;
 
@@ -37,6 +39,9 @@ public interface AttributeValuesService {
     // Получить значений атрибутов по массиву категорий
     Map<String, List<FilterValuesDto<Integer>>> getFiltersValuesByCategories(List<Long> categoriesIds);
 
+    // Подсчитать общее кол-во товаров по фильтру и кол-во товаров для каждого значения характеристик, производителей и диапазонов цен
+    FilterFacetsRespDto getFacetsByFilter(ProductFilterDtoContainer container, long categoryId, String priceRange, int priceBucketsCount);
+
     //Можно так же ещё сделать выборку значений фильтраци по ключевому слову.
     // То есть искать во всех репозитория так же и по ключевому слову в товаре
     Map<String, List<FilterValuesDto<Integer>>> getFiltersValuesByKeyword(String keyword);
@@ -0,0 +1,34 @@
+package gp.wagner.backend.services.interfaces;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Счётчик посещений магазина по дням. Посещения накапливаются в памяти в LongAdder (распределённые по ячейкам счётчики без
+ * общей блокировки) и периодически прибавляются к записи дня атомарным запросом count = count + ?
+ * */
+public interface DailyVisitsCounterService {
+
+    // Учесть посещение за текущий день
+    void increment();
+
+    // Сохранить накопленные посещения
+    void flush();
+
+    // Ещё не сохранённые посещения по дням
+    Map<LocalDate, Long> getPendingVisits();
+    long getPendingVisits(LocalDate date);
+
+    /**
+     * Выполнить чтение записей дней из БД вместе с несохранёнными посещениями так, чтобы сохранение счётчика не попало между ними:
+     * иначе посещения учитываются дважды (уже в БД и ещё в счётчике) либо не учитываются вовсе.
+     * Чтение из БД должно выполняться в reader без внешней транзакции, которая уже видит более ранний снимок
+     * */
+    <T> T readWithPendingVisits(Supplier<T> reader);
+
+    // Метрики счётчика
+    WriteBufferStatisticsRespDto getStatistics();
+}
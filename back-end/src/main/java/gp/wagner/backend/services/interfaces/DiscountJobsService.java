@@ -0,0 +1,38 @@
+package gp.wagner.backend.services.interfaces;
+
+import gp.wagner.backend.domain.dto.response.discounts.DiscountJobRespDto;
+import gp.wagner.backend.infrastructure.enums.DiscountJobOperationEnum;
+
+import java.util.List;
+
+/**
+ * Фоновые задачи массового добавления/удаления скидки для категорий и списков товаров.
+ * Задача хранится в таблице discount_jobs и выполняется частями фиксированного размера, каждая часть - в отдельной транзакции.
+ * После каждой части сохраняются ход выполнения и id последнего обработанного варианта,
+ * поэтому прерванная задача продолжается с места остановки после перезапуска приложения
+ * */
+public interface DiscountJobsService {
+
+    /**
+     * Создать задачу и поставить её в очередь
+     * @param scopeIds id категорий (вместе с дочерними) либо id товаров - в зависимости от операции
+     * @return состояние созданной задачи
+     * */
+    DiscountJobRespDto submit(long discountId, DiscountJobOperationEnum operation, List<Long> scopeIds);
+
+    // Состояние задачи
+    DiscountJobRespDto getJob(long jobId);
+
+    // Задачи скидки, начиная с последней
+    List<DiscountJobRespDto> getJobsByDiscount(long discountId);
+
+    // Поставить в очередь незавершённые задачи
+    void resumeUnfinished();
+
+    /**
+     * Обработать очередную часть вариантов задачи в отдельной транзакции
+     * @param leaseToken маркер, с которым задача была захвачена. Часть обрабатывается, только если маркер не изменился
+     * @return true - остались необработанные варианты
+     * */
+    boolean processChunk(long jobId, String leaseToken);
+}
@@ -0,0 +1,17 @@
+package gp.wagner.backend.services.interfaces;
+
+import gp.wagner.backend.domain.entities.products.Discount;
+
+/**
+ * Планировщик сроков действия скидок. Ближайшие начала и окончания сроков активных скидок хранятся в очереди с приоритетом,
+ * каждая граница применяется в момент её наступления и затрагивает только свою скидку.
+ * Границы, пропущенные пока приложение было остановлено, применяются при запуске
+ * */
+public interface DiscountsSchedulerService {
+
+    // Загрузить сроки действия активных скидок и применить пропущенные границы
+    void reload();
+
+    // Запланировать границы срока действия скидки заново после её изменения. Границы неактивных и бессрочных скидок удаляются
+    void schedule(Discount discount);
+}
@@ -1,6 +1,7 @@
 package gp.wagner.backend.services.interfaces;
 
 import gp.wagner.backend.domain.dto.request.crud.DiscountRequestDto;
+import gp.wagner.backend.domain.dto.response.discounts.DiscountJobRespDto;
 import gp.wagner.backend.domain.entities.categories.Category;
 import gp.wagner.backend.domain.entities.products.Discount;
 import gp.wagner.backend.domain.entities.products.Product;
@@ -8,7 +9,6 @@ import gp.wagner.backend.domain.entities.products.ProductVariant;
 import gp.wagner.backend.infrastructure.enums.sorting.DiscountsSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
 import org.springframework.data.domain.Page;
-import org.springframework.scheduling.annotation.Async;
 
 import java.util.List;
 
@@ -29,9 +29,11 @@ public interface DiscountsService {
     // Деактивировать скидку
     void deactivateById(Long id, Discount discount);
 
-    // Проверять наличие скидок (раз в n-мин) с истёкшим сроком действия и деактивировать из
-    @Async
-    void deactivateExpiredScheduled();
+    /**
+     * Применить наступившую границу срока действия скидки: деактивировать скидку с истёкшим сроком,
+     * либо пересчитать цены вариантов, если срок действия начался. Вызывается планировщиком скидок
+     * */
+    void applyDiscountTerm(long discountId);
 
     // Активировать скидку
     void activateById(long discountId);
@@ -45,11 +47,11 @@ public interface DiscountsService {
     // Добавить скидку на товар
     Product addDiscountToProduct(long discountId, long productId);
 
-    // Добавить скидку в список товаров
-    void addDiscountToProductsList(long discountId, List<Long> pvIdList);
+    // Добавить скидку в список товаров. Варианты изменяются фоновой задачей, возвращается её состояние
+    DiscountJobRespDto addDiscountToProductsList(long discountId, List<Long> pvIdList);
 
-    // Добавить скидку на категорию
-    void addDiscountToCategory(long discountId, long categoryId);
+    // Добавить скидку на категорию. Варианты изменяются фоновой задачей, возвращается её состояние
+    DiscountJobRespDto addDiscountToCategory(long discountId, long categoryId);
 
 
     // Убрать скидку у вариантов товаров заданного списка
@@ -58,8 +60,8 @@ public interface DiscountsService {
     // Убрать скидку у товаров из заданного списка
     void removeDiscountFromProductsList(long discountId, List<Long> pvIdList);
 
-    // Добавить скидку у категорий из заданного списка
-    void removeDiscountFromCategories(long discountId, List<Long> categoriesIds);
+    // Убрать скидку у категорий из заданного списка. Варианты изменяются фоновой задачей, возвращается её состояние
+    DiscountJobRespDto removeDiscountFromCategories(long discountId, List<Long> categoriesIds);
 
     // Выборка всех записей
     Page<Discount> getAll(int pageNum, int limit,
@@ -70,4 +72,10 @@ public interface DiscountsService {
 
     // Выборка категорий для товаров которых задана скидка
     List<Category> getCategoriesWithDiscount(long discountId);
+
+    /**
+     * Текущая версия цен. Увеличивается при каждом пересчёте цен вариантов, варианты с изменившейся ценой помечаются ею.
+     * Суммы корзин и необработанных заказов, рассчитанные до изменения цены одного из их вариантов, пересчитываются при чтении
+     * */
+    long getPricingVersion();
 }
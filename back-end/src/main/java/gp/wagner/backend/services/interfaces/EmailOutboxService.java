@@ -0,0 +1,38 @@
+package gp.wagner.backend.services.interfaces;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+import gp.wagner.backend.domain.entities.notifications.EmailOutboxMessage;
+
+import java.util.List;
+
+/**
+ * Очередь исходящих писем в таблице email_outbox. Письмо сохраняется в текущей транзакции и уходит только после её фиксации.
+ * Фоновый обработчик отправляет письма пакетами через одно соединение с SMTP сервером,
+ * неотправленные письма повторяются с увеличивающейся задержкой, после исчерпания попыток помечаются как dead
+ * */
+public interface EmailOutboxService {
+
+    // Добавить письмо в очередь
+    void enqueue(String recipient, String subject, String body, boolean isHtml);
+
+    // Отправить все письма, время отправки которых наступило
+    void dispatch();
+
+    /**
+     * Отправить очередной пакет писем: пакет арендуется в одной транзакции, отправляется вне транзакции,
+     * а результат отправки сохраняется во второй транзакции
+     * @return кол-во обработанных писем
+     * */
+    int dispatchBatch();
+
+    // Взять в отправку пакет писем - пометить состоянием sending с общим маркером аренды
+    List<EmailOutboxMessage> claimBatch();
+
+    // Сохранить результаты отправки арендованных писем. Письма, аренда которых истекла, не изменяются
+    void completeBatch(List<EmailOutboxMessage> messages);
+
+    // Удалить отправленные письма с истёкшим сроком хранения
+    void removeSent();
+
+    WriteBufferStatisticsRespDto getStatistics();
+}
@@ -2,18 +2,19 @@ package gp.wagner.backend.services.interfaces;
 
 
 import gp.wagner.backend.domain.entities.orders.Order;
-import jakarta.mail.MessagingException;
-import org.springframework.scheduling.annotation.Async;
 
+/**
+ * Формирование писем пользователям и покупателям. Сформированное письмо добавляется в очередь исходящих писем
+ * (EmailOutboxService) в текущей транзакции и отправляется фоновым обработчиком после её фиксации
+ * */
 public interface EmailService {
 
     void sendPasswordResetTokenSimple(String email, String token, String userLogin);
-    void sendPasswordResetTokenMime(String email, String token, String userLogin) throws MessagingException;
+    void sendPasswordResetTokenMime(String email, String token, String userLogin);
 
-    void sendConfirmationTokenMime(String email, String token, String userLogin) throws MessagingException;
+    void sendConfirmationTokenMime(String email, String token, String userLogin);
 
-    void sendOrderDetailsMime(Order createdOrder) throws MessagingException;
+    void sendOrderDetailsMime(Order createdOrder);
 
-    @Async
-    void sendOrderCancelNotification(Order orderToCancel) throws MessagingException;
+    void sendOrderCancelNotification(Order orderToCancel);
 }
@@ -0,0 +1,12 @@
+package gp.wagner.backend.services.interfaces;
+
+/**
+ * Генератор кодов заказов без обращений к БД. Код в десятичной записи: секунды от 01.01.2024, номер экземпляра (2 цифры)
+ * и порядковый номер в пределах секунды (4 цифры), например 89123456 07 0001 -> 89123456070001.
+ * Коды одного экземпляра строго возрастают, коды разных экземпляров различаются номером экземпляра
+ * */
+public interface OrderCodesService {
+
+    // Следующий код заказа
+    long nextCode();
+}
@@ -0,0 +1,42 @@
+package gp.wagner.backend.services.interfaces;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Сводка заказов по дням, категориям и статусам (таблица daily_orders_rollup) - кол-во заказов, сумма и кол-во единиц.
+ * Строка категории содержит заказы с товарами из её поддерева, каждый заказ - один раз.
+ * Статистика заказов и конверсий в админ-панели читается только из неё. Изменения заказов применяются к сводке
+ * разницей в той же транзакции, полный пересчёт выполняется по дням в отдельных транзакциях
+ * */
+public interface OrdersRollupService {
+
+    /**
+     * Прибавить заказ к сводке (после добавления или изменения)
+     * @param orderDate дата заказа для сброса кэша статистики. null - дата неизвестна, сбрасывается весь кэш
+     * */
+    void addOrder(long orderId, Date orderDate);
+
+    // Вычесть заказ из сводки (перед изменением или удалением)
+    void subtractOrder(long orderId, Date orderDate);
+
+    // Прибавить несколько заказов к сводке. ordersDates - даты для сброса кэша статистики, null - сбрасывается весь кэш
+    void addOrders(List<Long> ordersIds, Collection<Date> ordersDates);
+
+    // Вычесть несколько заказов из сводки в состоянии, сохранённом в БД
+    void subtractOrders(List<Long> ordersIds, Collection<Date> ordersDates);
+
+    // Пересчитать сводку за период (целые дни, границы включительно)
+    void refreshDays(Date dateLo, Date dateHi);
+
+    // Пересчитать сводку за все дни с заказами. Выполняется по частям, каждая часть в своей транзакции
+    void backfill();
+
+    /**
+     * Полный пересчёт сводки в фоне
+     * @return завершение пересчёта. Если пересчёт уже выполняется, то повторно он не запускается
+     * */
+    CompletableFuture<Void> startBackfill();
+}
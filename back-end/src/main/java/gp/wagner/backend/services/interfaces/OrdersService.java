@@ -82,6 +82,9 @@ public interface OrdersService {
     //Получить заказы для определённого ТОВАРА по его id
     Page<Order> getOrdersByProductId(long productId, int pageNum, int dataOnPage, OrdersSortEnum sortEnum, GeneralSortEnum sortType);
 
+    //Получить id всех заказов определённого товара
+    List<Long> getOrdersIdsByProductId(long productId);
+
     //Получение максимального id - последнее добавленное значение
     long getMaxId();
 
@@ -44,7 +44,8 @@ public interface ProducersService {
     //Выборка производителей в нескольких категориях
     List<Producer> getProducersInCategories(List<Long> categoriesIds);
 
-    List<Producer> getProducersByProductKeyword(String keyword);
+    // Производители заданных товаров
+    List<Producer> getProducersOfProducts(List<Long> productsIds);
 
     Page<Producer> getAllDeleted(int pageNum, int limit, ProducersSortEnum sortEnum, GeneralSortEnum sortType);
 }
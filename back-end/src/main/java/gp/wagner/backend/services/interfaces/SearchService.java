@@ -1,7 +1,7 @@
 package gp.wagner.backend.services.interfaces;
 
 import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
-import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.infrastructure.CursorPage;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.ProductsSortEnum;
 import org.springframework.data.domain.Page;
@@ -12,12 +12,23 @@ import java.util.List;
 public interface SearchService {
 
     // Выборка товаров по ключевому слову
-    Page<Product> getProductsByKeyword(String key, ProductFilterDtoContainer container,
+    Page<Long> getProductsByKeyword(String key, ProductFilterDtoContainer container,
                                        String priceRange, int page, int limit,
                                        ProductsSortEnum sortEnum, GeneralSortEnum sortType);
 
+    // Выборка товаров по ключевому слову постранично по курсору
+    CursorPage<Long> getProductsByKeywordByCursor(String key, ProductFilterDtoContainer container,
+                                                     String priceRange, String cursor, int limit,
+                                                     ProductsSortEnum sortEnum, GeneralSortEnum sortType);
+
     // Выборка небольшого кол-ва товаров по вводимому ключевому слову для предосмотра
-    List<Product> getProductsPreviewByKeyword(String key);
+    List<Long> getProductsPreviewByKeyword(String key);
+
+    /**
+     * Полнотекстовый поиск по индексу товаров (наименование, описание, наименования вариантов, производитель)
+     * @return id выводимых товаров в порядке релевантности, не более заданного в реализации кол-ва наиболее релевантных
+     * */
+    List<Long> findProductsIdsByKeyword(String key);
 
 
 }
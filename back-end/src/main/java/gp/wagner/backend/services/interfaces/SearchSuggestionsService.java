@@ -0,0 +1,24 @@
+package gp.wagner.backend.services.interfaces;
+
+import gp.wagner.backend.domain.dto.response.search.SearchSuggestionRespDto;
+
+import java.util.List;
+
+/**
+ * Подсказки поиска по началу вводимых слов: наименования выводимых товаров и их вариантов, производители и категории этих товаров.
+ * Словарь слов хранится в памяти отсортированным, поэтому подсказки формируются без запросов к БД
+ * */
+public interface SearchSuggestionsService {
+
+    // Полностью перестроить словарь подсказок
+    void rebuild();
+
+    // Перечитать из БД подсказки заданных товаров
+    void refreshProducts(List<Long> productsIds);
+
+    // Подсказки по вводимому ключевому слову
+    List<SearchSuggestionRespDto> getSuggestions(String key, int limit);
+
+    // Id товаров, наименование которых или наименование одного из вариантов подходит под вводимое ключевое слово
+    List<Long> getProductsIds(String key, int limit);
+}
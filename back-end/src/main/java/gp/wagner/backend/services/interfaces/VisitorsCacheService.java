@@ -0,0 +1,24 @@
+package gp.wagner.backend.services.interfaces;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+
+/**
+ * Кэш соответствия (отпечаток браузера, ip) -> id посетителя и буфер отложенной записи даты последнего посещения.
+ * Параллельные запросы нового посетителя ожидают одно и то же создание записи, а от дубликатов между экземплярами
+ * приложения защищает уникальный индекс (fingerprint, ip_address).
+ * Даты последнего посещения накапливаются в памяти и сохраняются одним запросом по таймеру и при остановке приложения
+ * */
+public interface VisitorsCacheService {
+
+    // Id посетителя с заданным отпечатком и ip. Если посетителя нет, то он создаётся
+    long resolveVisitorId(String fingerPrint, String ip);
+
+    // Отметить посещение - дата последнего посещения будет сохранена при следующей записи буфера
+    void touch(long visitorId);
+
+    // Сохранить накопленные даты посещений
+    void flush();
+
+    // Метрики буфера
+    WriteBufferStatisticsRespDto getStatistics();
+}
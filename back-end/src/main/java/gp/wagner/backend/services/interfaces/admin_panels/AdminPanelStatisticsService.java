@@ -15,6 +15,8 @@ import org.springframework.data.domain.Page;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
 public interface AdminPanelStatisticsService {
@@ -62,8 +64,13 @@ public interface AdminPanelStatisticsService {
     Page<Tuple> getOrdersCountForEachProduct(OrdersAndBasketsCountFiltersRequestDto filtersDto, int pageNum, int dataOnPage, ProductsOrVariantsEnum statisticsEnum,
                                              ProductsOrVariantsCountSortEnum sortEnum, GeneralSortEnum sortType);
 
-    // Количество заказов каждого товара/варианта без пагинации - для формирования CSV/XLS
-    List<Tuple> getOrdersCountForEachProduct(OrdersAndBasketsCountFiltersRequestDto filtersDto, ProductsOrVariantsEnum statisticsEnum);
+    /**
+     * Количество заказов каждого товара/варианта без пагинации - для формирования CSV/XLS.
+     * Строки читаются из курсора БД по мере обработки потока
+     * @param consumer обработка потока строк. Поток доступен только внутри вызова
+     * */
+    void streamOrdersCountForEachProduct(OrdersAndBasketsCountFiltersRequestDto filtersDto, ProductsOrVariantsEnum statisticsEnum,
+                                         Consumer<Stream<Tuple>> consumer);
 
 
     // Топ товаров по добавлениям в корзины
@@ -73,7 +80,7 @@ public interface AdminPanelStatisticsService {
      */
     Page<Tuple> getTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, int pageNum, int dataOnPage, float percentage,
                                        ProductsOrVariantsCountSortEnum sortEnum, GeneralSortEnum sortType);
-    List<Tuple> getTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, float percentage);
+    void streamTopProductsInBasket(OrdersAndBasketsCountFiltersRequestDto filtersDto, float percentage, Consumer<Stream<Tuple>> consumer);
 
     // Товары, просмотренные покупателем
     Page<ProductViews> getProductsViewsForCustomer(CustomerStatRequestDto customerDto, int pageNum, int dataOnPage);
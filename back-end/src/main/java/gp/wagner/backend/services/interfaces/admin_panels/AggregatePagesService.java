@@ -0,0 +1,43 @@
+package gp.wagner.backend.services.interfaces.admin_panels;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import org.springframework.data.domain.Page;
+
+import java.util.function.Supplier;
+
+/**
+ * Постраничная выборка группирующих criteria запросов статистики. Общее кол-во групп считается отдельным запросом
+ * count(distinct ключ группировки), который выводится из запроса страницы, выполняется параллельно с ним
+ * и кэшируется на короткое время для одинаковых фильтров
+ * */
+public interface AggregatePagesService {
+
+    /**
+     * Группирующий запрос
+     * @param query запрос с выборкой, группировкой, условием having и сортировкой
+     * @param groupKey выражение, однозначно определяющее группу (например, id товара при группировке по id и названию)
+     * @param countQuery запрос подсчёта групп. Обязателен для запросов с having - условие having переносится
+     *                   в подзапрос ключей групп, а не проверяется выборкой всех ключей
+     * */
+    record GroupedQuery(CriteriaQuery<Tuple> query, Expression<?> groupKey, CriteriaQuery<Long> countQuery) {
+
+        public GroupedQuery(CriteriaQuery<Tuple> query, Expression<?> groupKey) {
+            this(query, groupKey, null);
+        }
+    }
+
+    /**
+     * Страница группирующего запроса
+     * @param countCacheKey ключ кэша общего кол-ва - название статистики вместе со значениями фильтров (без сортировки).
+     *                      null - не кэшировать
+     * @param pageNum номер страницы, начиная с 0
+     * @param queryFactory формирование запроса. Вызывается отдельно для страницы и для подсчёта, потому что criteria запрос
+     *                     изменяется при выводе запроса подсчёта и не может использоваться в нескольких потоках
+     * */
+    Page<Tuple> getPage(String countCacheKey, int pageNum, int dataOnPage, Supplier<GroupedQuery> queryFactory);
+
+    // Сбросить кэш общего кол-ва
+    void invalidateCounts();
+}
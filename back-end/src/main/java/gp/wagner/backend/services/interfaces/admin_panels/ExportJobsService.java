@@ -0,0 +1,44 @@
+package gp.wagner.backend.services.interfaces.admin_panels;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.ExportJobRespDto;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Фоновые задачи выгрузки отчётов. Файл формируется ограниченным пулом потоков в каталоге выгрузок,
+ * клиент получает id задачи, опрашивает ход выполнения и скачивает готовый файл. Файлы удаляются по истечении срока хранения
+ * */
+public interface ExportJobsService {
+
+    // Запись выгрузки в файл. Поток строк перед передачей в экспортёр оборачивается в rowsCounter для учёта хода выполнения
+    @FunctionalInterface
+    interface ExportTask {
+        void write(OutputStream outputStream, RowsCounter rowsCounter) throws IOException;
+    }
+
+    // Учёт записанных строк
+    interface RowsCounter {
+        <T> Stream<T> count(Stream<T> rows);
+    }
+
+    /**
+     * Поставить выгрузку в очередь
+     * @param fileName имя файла для скачивания
+     * @param totalRowsCounter подсчёт общего кол-ва строк для оценки оставшегося времени. null - не оценивать
+     * @return состояние созданной задачи
+     * */
+    ExportJobRespDto submit(String fileName, LongSupplier totalRowsCounter, ExportTask task);
+
+    // Состояние задачи
+    ExportJobRespDto getJob(String jobId);
+
+    // Файл завершённой задачи
+    Resource getFile(String jobId);
+
+    // Удалить файлы задач с истёкшим сроком хранения
+    void removeExpired();
+}
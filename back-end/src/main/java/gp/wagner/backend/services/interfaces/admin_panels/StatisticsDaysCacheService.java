@@ -0,0 +1,31 @@
+package gp.wagner.backend.services.interfaces.admin_panels;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Кэш дневной статистики админ-панели. Результаты за закрытые дни (до текущего, без несохранённых посещений) не меняются,
+ * поэтому хранятся в памяти по ключу (метрика с фильтром, день). Запрос за период вычисляет только недостающие дни,
+ * текущий день и неполные дни на границах периода. При изменении заказов и посещений задним числом дни сбрасываются явно
+ * после фиксации транзакции. Кэш рассчитан на один экземпляр приложения: изменения других экземпляров его не сбрасывают
+ * и учитываются по истечении срока хранения дня
+ * */
+public interface StatisticsDaysCacheService {
+
+    /**
+     * Строки статистики по дням за период
+     * @param metric название метрики вместе со значениями фильтров
+     * @param loader запрос строк за период (обе границы включительно). Первый столбец строки - день
+     * @return строки по возрастанию дней
+     * */
+    List<Object[]> getDailyRows(String metric, Date min, Date max, BiFunction<Date, Date, List<Object[]>> loader);
+
+    // Сбросить все метрики за день
+    void invalidate(Date day);
+    void invalidate(LocalDate day);
+
+    // Сбросить весь кэш
+    void invalidateAll();
+}
@@ -0,0 +1,53 @@
+package gp.wagner.backend.services.interfaces.categories;
+
+import gp.wagner.backend.domain.dto.response.categories.CategoryBreadcrumbsDto;
+import gp.wagner.backend.domain.dto.response.categories.CategoryDtoWithChildren;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Неизменяемый снимок дерева категорий в памяти (вместе со связями повторяющихся категорий).
+ * Заменяет рекурсивные запросы и обход дерева с запросом на каждый узел. При изменении категорий снимок перестраивается целиком
+ * и атомарно подменяется, номер версии при этом увеличивается
+ * */
+public interface CategoriesTreeService {
+
+    // Перестроить снимок дерева по таблице категорий
+    void rebuild();
+
+    // Версия текущего снимка дерева
+    long getVersion();
+
+    /**
+     * Id категории и всех её дочерних категорий на всю глубину дерева
+     * @param categoryId id категории. Отрицательное значение - id повторяющейся категории, тогда выбираются категории,
+     *                   которые её используют, вместе с их дочерними категориями
+     * */
+    List<Long> getDescendantsIds(long categoryId);
+    List<Long> getDescendantsIds(List<Long> categoriesIds);
+
+    // Id дочерних категорий на одном уровне дерева
+    List<Long> getChildrenIds(long categoryId);
+
+    // Id категорий, использующих заданные повторяющиеся категории
+    List<Long> getCategoriesIdsByRepeating(List<Long> repeatingCategoriesIds);
+
+    // Название категории (с учётом повторяющейся категории). null - категории нет в дереве
+    String getName(long categoryId);
+
+    // Breadcrumbs от корневой категории до заданной
+    CategoryBreadcrumbsDto getBreadcrumbs(long categoryId);
+
+    // Дерево категорий начиная с корневых
+    List<CategoryDtoWithChildren> getTree(boolean withProductsAmount);
+
+    /**
+     * Дочерние категории в виде дерева
+     * @return список дочерних категорий, либо null, если их нет
+     * */
+    List<CategoryDtoWithChildren> getSubtree(long parentId, boolean withProductsAmount);
+
+    // Дочерние категории в виде дерева, но только из заданного множества категорий. null - если ни одна категория не подошла
+    List<CategoryDtoWithChildren> getSubtree(long parentId, Set<Long> allowedIds);
+}
@@ -0,0 +1,25 @@
+package gp.wagner.backend.services.interfaces.categories;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+
+import java.util.Collection;
+
+/**
+ * Буфер отложенной записи просмотров категорий. Просмотры агрегируются в памяти по паре (посетитель, категория),
+ * повторные просмотры в течение 24ч отбрасываются сразу, а накопленные записи всех категорий сохраняются
+ * одним запросом insert ... on duplicate key update по таймеру, при достижении порога размера и при остановке приложения
+ * */
+public interface CategoryViewsBufferService {
+
+    /**
+     * Добавить просмотры категорий одним посетителем
+     * @return кол-во принятых просмотров (без повторов в течение 24ч и сверх ёмкости буфера)
+     * */
+    int enqueue(long visitorId, Collection<Long> categoriesIds);
+
+    // Сохранить все накопленные просмотры
+    void flush();
+
+    // Метрики буфера
+    WriteBufferStatisticsRespDto getStatistics();
+}
@@ -0,0 +1,38 @@
+package gp.wagner.backend.services.interfaces.products;
+
+import gp.wagner.backend.domain.dto.response.products.ProductPreviewRespDto;
+import gp.wagner.backend.infrastructure.SimpleTuple;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Хранилище карточек товаров в памяти: для каждого товара хранятся уже собранные данные ProductPreviewRespDto
+ * (категория, производитель, варианты со скидками, габариты, статистика оценок).
+ * Выборки списков товаров возвращают только id, а карточки формируются без загрузки сущностей и их связей
+ * */
+public interface ProductCardsService {
+
+    // Полностью перестроить хранилище карточек
+    void rebuild();
+
+    // Перечитать из БД карточки заданных товаров, обновить их документы в поисковом индексе и подсказки поиска после фиксации транзакции
+    void refreshProducts(List<Long> productsIds);
+    void refreshProduct(long productId);
+
+    // Перечитать после фиксации транзакции только карточки товаров, которым принадлежат заданные варианты (изменение цен и скидок)
+    void refreshByVariants(List<Long> pvIds);
+
+    // Перечитать карточки товаров определённой категории или производителя (например при изменении названия)
+    void refreshByCategory(long categoryId);
+    void refreshByProducer(long producerId);
+
+    /**
+     * Сформировать карточки товаров в порядке заданного списка id
+     * @param pricesRange диапазон цен, по которому выбирались товары - для вывода цены подходящего варианта. null - диапазон не задан
+     * */
+    List<ProductPreviewRespDto> getPreviews(List<Long> productsIds, @Nullable SimpleTuple<Integer, Integer> pricesRange);
+
+    // Карточки всех товаров
+    List<ProductPreviewRespDto> getAllPreviews();
+}
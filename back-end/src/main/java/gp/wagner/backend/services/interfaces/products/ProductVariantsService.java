@@ -21,6 +21,9 @@ public interface ProductVariantsService {
     ProductVariant update(ProductVariantDto productVariantDto, String previewImg);
     void update(long productVariantId, long productId, String previewImg,String title, int price );
 
+    // Пересчитать цены вариантов с учётом скидки и цены их товаров (базовый вариант, мин. и макс. цена)
+    void recountEffectivePrices(List<Long> pvIdList);
+
     // Изменить показ варианта товара
     void updatePvDisplay(long productVariantId);
 
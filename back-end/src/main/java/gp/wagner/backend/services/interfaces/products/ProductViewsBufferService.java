@@ -0,0 +1,23 @@
+package gp.wagner.backend.services.interfaces.products;
+
+import gp.wagner.backend.domain.dto.response.admin_panel.WriteBufferStatisticsRespDto;
+
+/**
+ * Буфер отложенной записи просмотров товаров. Просмотры агрегируются в памяти по паре (посетитель, товар),
+ * повторные просмотры в течение 24ч отбрасываются сразу, а накопленные записи сохраняются пакетно -
+ * по таймеру или при достижении порога размера, а также при остановке приложения
+ * */
+public interface ProductViewsBufferService {
+
+    /**
+     * Добавить просмотр в буфер
+     * @return false - если просмотр не принят (повтор в течение 24ч или буфер переполнен)
+     * */
+    boolean enqueue(long visitorId, long productId);
+
+    // Сохранить все накопленные просмотры
+    void flush();
+
+    // Метрики буфера
+    WriteBufferStatisticsRespDto getStatistics();
+}
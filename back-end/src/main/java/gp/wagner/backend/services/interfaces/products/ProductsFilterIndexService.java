@@ -0,0 +1,56 @@
+package gp.wagner.backend.services.interfaces.products;
+
+import gp.wagner.backend.domain.dto.request.filters.products.ProductFilterDtoContainer;
+import gp.wagner.backend.domain.entities.eav.AttributeValue;
+import gp.wagner.backend.infrastructure.SimpleTuple;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Индекс значений характеристик в памяти: для каждой пары (id атрибута, значение) хранится битовая карта id товаров.
+ * Используется вместо подзапросов к attributes_values при фильтрации товаров
+ * */
+public interface ProductsFilterIndexService {
+
+    // Полностью перестроить индекс по таблице значений характеристик
+    void rebuild();
+
+    // Добавить или заменить значение характеристики в индексе
+    void indexValue(AttributeValue attributeValue);
+    void indexValue(long valueId, long productId, long attributeId, Integer intValue, String strValue);
+
+    // Изменить значения уже проиндексированной записи (товар и атрибут остаются прежними)
+    void updateValue(long valueId, Integer intValue, String strValue);
+
+    // Перечитать из БД все значения характеристик определённого товара
+    void reindexProduct(long productId);
+
+    // Удалить значения характеристик из индекса по списку id записей
+    void removeValues(List<Long> valuesIds);
+
+    /**
+     * Вычислить множество товаров, подходящих под блоки фильтров характеристик.
+     * @return битовая карта id товаров, либо null, если фильтры по характеристикам не заданы и ограничения нет
+     * */
+    BitSet findProductsBitmap(ProductFilterDtoContainer container);
+
+    /**
+     * Вычислить блоки фильтров, не учитывая фильтры по заданному атрибуту - нужно для подсчёта кол-ва товаров по значениям фильтра
+     * @param excludedAttributeId id атрибута, фильтры по которому игнорируются. null - учитываются все фильтры
+     * */
+    BitSet findProductsBitmap(ProductFilterDtoContainer container, Long excludedAttributeId);
+
+    // Битовая карта товаров с заданным строковым значением характеристики
+    BitSet getAttributeValueBitmap(long attributeId, String strValue);
+
+    // Битовая карта товаров с целочисленным значением характеристики в диапазоне [min; max]
+    BitSet getAttributeRangeBitmap(long attributeId, int min, int max);
+
+    /**
+     * То же, что и findProductsBitmap, но в виде диапазонов подряд идущих id для подстановки в запросы.
+     * Совпадающих товаров может быть много, а диапазонов - гораздо меньше, чем отдельных id
+     * @return список диапазонов [первый id; последний id] по возрастанию, либо null, если фильтры по характеристикам не заданы
+     * */
+    List<SimpleTuple<Long, Long>> findProductsIdsRanges(ProductFilterDtoContainer container);
+}
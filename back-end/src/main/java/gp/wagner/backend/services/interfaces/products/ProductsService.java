@@ -7,12 +7,15 @@ import gp.wagner.backend.domain.dto.response.filters.FilterValuesDto;
 import gp.wagner.backend.domain.entities.categories.Category;
 import gp.wagner.backend.domain.entities.products.Producer;
 import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.infrastructure.CursorPage;
+import gp.wagner.backend.infrastructure.SimpleTuple;
 import gp.wagner.backend.infrastructure.enums.ProductsOrVariantsEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.GeneralSortEnum;
 import gp.wagner.backend.infrastructure.enums.sorting.ProductsSortEnum;
 import org.springframework.data.domain.Page;
 
 import java.util.List;
+import java.util.Map;
 
 
 public interface ProductsService {
@@ -38,17 +41,24 @@ public interface ProductsService {
 
     //Выборка всех записей с пагинацией
 
-    Page<Product> getAll(int pageNum, int dataOnPage);
+    Page<Long> getAll(int pageNum, int dataOnPage);
 
     //Выборка всех записей с фильтрацией
-    Page<Product> getAll(ProductFilterDtoContainer container, Long categoryId, String priceRange, int pageNum, int dataOnPage);
+    Page<Long> getAll(ProductFilterDtoContainer container, Long categoryId, String priceRange, int pageNum, int dataOnPage);
 
     /**
      * Выборка товаров с фильтрацией и изменённой выборкой по цене. Теперь, если у товара есть вариант с ценой в диапазоне - данный товар будет выбран
      * */
-    Page<Product> getAllWithCorrectPrices(ProductFilterDtoContainer container, Long categoryId, String priceRange,
+    Page<Long> getAllWithCorrectPrices(ProductFilterDtoContainer container, Long categoryId, String priceRange,
                                           int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType);
 
+    /**
+     * То же, что и getAllWithCorrectPrices, но страницы выбираются по курсору вместо смещения
+     * @param cursor курсор, полученный с предыдущей страницей. null или пустая строка - выборка первой страницы
+     * */
+    CursorPage<Long> getAllWithCorrectPricesByCursor(ProductFilterDtoContainer container, Long categoryId, String priceRange,
+                                                        String cursor, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType);
+
     // Метод для подсчёта кол-ва данных по определённому фильтру - для фронта
     long countData(ProductFilterDtoContainer container, Long categoryId, String priceRange, ProductsOrVariantsEnum countProductsOrVariants);
 
@@ -57,14 +67,18 @@ public interface ProductsService {
     List<Product> getByIdList(List<Long> id);
 
     //Выборка по категории
-    Page<Product> getByCategory(long categoryId,int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType);
+    Page<Long> getByCategory(long categoryId,int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType);
 
     //Выборка по категории с фильтрацией по цене
-    Page<Product> getByCategoryAndPrice(long categoryId, String priceRange,int pageNum, int dataOnPage,
+    Page<Long> getByCategoryAndPrice(long categoryId, String priceRange,int pageNum, int dataOnPage,
                                         ProductsSortEnum sortEnum, GeneralSortEnum sortType, ProductsOrVariantsEnum povEnum);
 
+    //Выборка по категории с фильтрацией по цене - постранично по курсору вместо смещения
+    CursorPage<Long> getByCategoryAndPriceByCursor(long categoryId, String priceRange, String cursor, int dataOnPage,
+                                                      ProductsSortEnum sortEnum, GeneralSortEnum sortType, ProductsOrVariantsEnum povEnum);
+
     //Выборка по производителю
-    Page<Product> getByProducerPaged(long producerId, int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType);
+    Page<Long> getByProducerPaged(long producerId, int pageNum, int dataOnPage, ProductsSortEnum sortEnum, GeneralSortEnum sortType);
 
     //Подсчет количества товаров по категории
     int countByCategory(long categoryId);
@@ -75,8 +89,11 @@ public interface ProductsService {
     //Получить диапазон цен у товаров в нескольких категориях
     FilterValuesDto<Integer> getPricesRangeInCategories(List<Long> categoriesIds);
 
-    // Получить диапазон цен по ключевому слову (при поиске)
-    FilterValuesDto<Integer> getPricesRangeByKeyword(String keyword);
+    // Получить диапазон цен у заданных товаров (найденных по ключевому слову при поиске)
+    FilterValuesDto<Integer> getPricesRangeInProducts(List<Long> productsIds);
+
+    // Получить производителя и цены выводимых вариантов для каждого выводимого товара в категориях: id товара -> (производитель, цены)
+    Map<Long, SimpleTuple<String, List<Integer>>> getProducersAndVariantsPricesInCategories(List<Long> categoriesIds);
 
     // Удалить по id товара
     boolean deleteById(long id);
@@ -0,0 +1,18 @@
+/*Одна запись просмотров на пару (посетитель, категория) - нужна для пакетной записи просмотров через insert ... on duplicate key update.
+  Перед созданием индекса дублирующиеся записи объединяются в запись с минимальным id*/
+update categories_views cv
+    join (select visitor_id, category_id, min(id) as keep_id, sum(count) as total, max(updated_at) as last_update
+          from categories_views
+          group by visitor_id, category_id
+          having count(*) > 1) duplicates on cv.id = duplicates.keep_id
+set cv.count = duplicates.total,
+    cv.updated_at = duplicates.last_update;
+
+delete cv from categories_views cv
+    join (select visitor_id, category_id, min(id) as keep_id
+          from categories_views
+          group by visitor_id, category_id
+          having count(*) > 1) duplicates
+        on cv.visitor_id = duplicates.visitor_id and cv.category_id = duplicates.category_id and cv.id <> duplicates.keep_id;
+
+CREATE UNIQUE INDEX visitor_category_unique ON categories_views (visitor_id, category_id);
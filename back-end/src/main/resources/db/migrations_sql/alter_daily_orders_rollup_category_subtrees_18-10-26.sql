@@ -0,0 +1,4 @@
+/*Строка категории в сводке заказов теперь содержит заказы с товарами из всего поддерева категории, каждый заказ - один раз
+  с полной суммой (кол-во единиц - по товарам поддерева). Статистика конверсии в категории читается из этих строк.
+  Прежние строки считались по одной категории - сводка очищается и заполняется заново при запуске приложения*/
+truncate table daily_orders_rollup;
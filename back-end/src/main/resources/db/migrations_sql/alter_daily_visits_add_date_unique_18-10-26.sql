@@ -0,0 +1,17 @@
+/*Одна запись посещений за день - счётчик увеличивается запросами insert ... on duplicate key update count = count + ?,
+  поэтому несколько экземпляров приложения могут сохранять посещения одновременно без потерь.
+  Перед созданием индекса дублирующиеся записи за один день объединяются в запись с минимальным id*/
+update daily_visits dv
+    join (select date, min(id) as keep_id, sum(count) as total
+          from daily_visits
+          group by date
+          having count(*) > 1) duplicates on dv.id = duplicates.keep_id
+set dv.count = duplicates.total;
+
+delete dv from daily_visits dv
+    join (select date, min(id) as keep_id
+          from daily_visits
+          group by date
+          having count(*) > 1) duplicates on dv.date = duplicates.date and dv.id <> duplicates.keep_id;
+
+CREATE UNIQUE INDEX date_unique ON daily_visits (date);
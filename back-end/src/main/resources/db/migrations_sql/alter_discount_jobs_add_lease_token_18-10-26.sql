@@ -0,0 +1,4 @@
+/*Маркер аренды задачи. Задаётся при каждом захвате задачи, и каждая часть сохраняется только при совпадении маркера:
+  экземпляр, аренда которого истекла и задача которого была захвачена заново, больше не изменяет её ход выполнения*/
+alter table discount_jobs
+    add column lease_token varchar(36) null;
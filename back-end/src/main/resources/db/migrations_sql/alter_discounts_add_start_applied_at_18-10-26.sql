@@ -0,0 +1,5 @@
+/*Время применения начала срока действия скидки к ценам вариантов. Начало считается применённым, только если отметка
+  не раньше starts_at - после переноса начала срока скидка применяется заново. Окончание срока отмечается деактивацией скидки.
+  У существующих скидок отметки нет: при первом запуске цены вариантов действующих скидок пересчитываются один раз*/
+alter table discounts
+    add column start_applied_at datetime null;
@@ -0,0 +1,2 @@
+/*Индекс для загрузки сроков действия активных скидок в планировщик скидок при запуске*/
+CREATE INDEX active_terms_index ON discounts (is_active, is_infinite, ends_at);
@@ -0,0 +1,5 @@
+/*Аренда писем на время отправки. Пакет писем помечается состоянием sending с маркером аренды и временем её окончания
+  в next_attempt_at, после чего блокировки строк снимаются и письма отправляются вне транзакции.
+  Результат отправки сохраняется только при совпадении маркера - письма с истёкшей арендой могли быть взяты повторно*/
+alter table email_outbox
+    add column lease_token varchar(36) null;
@@ -0,0 +1,30 @@
+/*Цена варианта с учётом скидки, а также цена базового варианта и диапазон цен вариантов в самом товаре.
+  Поля поддерживаются сервисами вариантов и скидок, чтобы сортировка и фильтрация по цене выполнялись по индексам*/
+ALTER TABLE `furniture_shop`.`variants_product`
+    ADD COLUMN `effective_price` INT NULL DEFAULT NULL AFTER `price`;
+
+ALTER TABLE `furniture_shop`.`products`
+    ADD COLUMN `base_price` INT NULL DEFAULT NULL AFTER `mark`,
+ADD COLUMN `min_price` INT NULL DEFAULT NULL AFTER `base_price`,
+ADD COLUMN `max_price` INT NULL DEFAULT NULL AFTER `min_price`;
+
+-- Заполнить цены вариантов со скидкой (так же, как в ProductVariant.getPriceWithDiscount)
+update variants_product vp left join discounts d on vp.discount_id = d.id
+set vp.effective_price = case
+        when d.id is not null and d.is_active = true and d.percentage <= 0.999 and
+             (d.is_infinite = true or d.ends_at > now())
+            then vp.price - floor(vp.price * d.percentage + 0.5)
+        else vp.price
+    end;
+
+-- Заполнить цену базового варианта и диапазон цен вариантов товаров
+update products p set
+    p.base_price = (select vp.effective_price from variants_product vp
+                    where vp.id = (select min(vp_min.id) from variants_product vp_min where vp_min.product_id = p.id)),
+    p.min_price = (select min(vp.effective_price) from variants_product vp where vp.product_id = p.id),
+    p.max_price = (select max(vp.effective_price) from variants_product vp where vp.product_id = p.id);
+
+-- B-tree индексы для сортировки и выборки по диапазону цен
+CREATE INDEX effective_price_index ON variants_product (effective_price);
+CREATE INDEX base_price_index ON products (base_price);
+CREATE INDEX min_max_price_index ON products (min_price, max_price);
@@ -0,0 +1,6 @@
+/*Цена базового варианта не может быть пустой: сортировка и выборка страниц через курсор идут по самому столбцу,
+  без coalesce, иначе индекс base_price_index не используется. Товары без вариантов получают цену 0*/
+update products set base_price = 0 where base_price is null;
+
+ALTER TABLE `furniture_shop`.`products`
+    MODIFY COLUMN `base_price` INT NOT NULL DEFAULT 0;
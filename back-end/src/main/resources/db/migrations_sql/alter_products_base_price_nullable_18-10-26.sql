@@ -0,0 +1,7 @@
+/*Цена базового варианта снова может быть пустой: у товаров без вариантов цены нет, и нулевая цена выводила их первыми
+  при сортировке по возрастанию цены. Такие товары выводятся в конце сортировки по цене в любом направлении*/
+ALTER TABLE `furniture_shop`.`products`
+    MODIFY COLUMN `base_price` INT NULL DEFAULT NULL;
+
+update products p set p.base_price = null
+where not exists (select 1 from variants_product vp where vp.product_id = p.id);
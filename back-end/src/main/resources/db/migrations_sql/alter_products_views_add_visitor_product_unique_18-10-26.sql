@@ -0,0 +1,18 @@
+/*Одна запись просмотров на пару (посетитель, товар) - нужна для пакетной записи просмотров через insert ... on duplicate key update.
+  Перед созданием индекса дублирующиеся записи объединяются в запись с минимальным id*/
+update products_views pv
+    join (select visitor_id, product_id, min(id) as keep_id, sum(count) as total, max(updated_at) as last_update
+          from products_views
+          group by visitor_id, product_id
+          having count(*) > 1) duplicates on pv.id = duplicates.keep_id
+set pv.count = duplicates.total,
+    pv.updated_at = duplicates.last_update;
+
+delete pv from products_views pv
+    join (select visitor_id, product_id, min(id) as keep_id
+          from products_views
+          group by visitor_id, product_id
+          having count(*) > 1) duplicates
+        on pv.visitor_id = duplicates.visitor_id and pv.product_id = duplicates.product_id and pv.id <> duplicates.keep_id;
+
+CREATE UNIQUE INDEX visitor_product_unique ON products_views (visitor_id, product_id);
@@ -0,0 +1,5 @@
+/*Версия цен каждого варианта товара - значение общего счётчика pricing_version на момент последнего изменения
+  его цены со скидкой. Сумма корзины или заказа устарела, только если версия одного из их вариантов больше версии суммы,
+  поэтому изменение скидки не помечает устаревшими корзины и заказы без затронутых вариантов*/
+alter table variants_product
+    add column pricing_version bigint not null default 0;
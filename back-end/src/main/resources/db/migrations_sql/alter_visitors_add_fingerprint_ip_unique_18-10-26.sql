@@ -0,0 +1,53 @@
+/*Один посетитель на пару (отпечаток, ip) - посетитель добавляется через insert ... on duplicate key update,
+  поэтому параллельные запросы одного посетителя не создают дубликатов.
+  Перед созданием индекса дублирующиеся посетители объединяются в запись с минимальным id:
+  покупатели и просмотры переносятся на неё, кол-ва просмотров одного товара/категории суммируются*/
+create temporary table visitors_duplicates
+select v.id as duplicate_id, duplicates.keep_id
+from visitors v
+    join (select fingerprint, ip_address, min(id) as keep_id
+          from visitors
+          group by fingerprint, ip_address
+          having count(*) > 1) duplicates
+        on v.fingerprint = duplicates.fingerprint and v.ip_address = duplicates.ip_address and v.id <> duplicates.keep_id;
+
+update customers c
+    join visitors_duplicates vd on c.visitor_id = vd.duplicate_id
+set c.visitor_id = vd.keep_id;
+
+insert into products_views
+(visitor_id, product_id, count, updated_at)
+select vd.keep_id, pv.product_id, sum(pv.count), max(pv.updated_at)
+from products_views pv join visitors_duplicates vd on pv.visitor_id = vd.duplicate_id
+group by vd.keep_id, pv.product_id
+on duplicate key update
+    count = products_views.count + values(count),
+    updated_at = greatest(coalesce(products_views.updated_at, values(updated_at)), values(updated_at));
+
+delete pv from products_views pv
+    join visitors_duplicates vd on pv.visitor_id = vd.duplicate_id;
+
+insert into categories_views
+(visitor_id, category_id, count, updated_at)
+select vd.keep_id, cv.category_id, sum(cv.count), max(cv.updated_at)
+from categories_views cv join visitors_duplicates vd on cv.visitor_id = vd.duplicate_id
+group by vd.keep_id, cv.category_id
+on duplicate key update
+    count = categories_views.count + values(count),
+    updated_at = greatest(coalesce(categories_views.updated_at, values(updated_at)), values(updated_at));
+
+delete cv from categories_views cv
+    join visitors_duplicates vd on cv.visitor_id = vd.duplicate_id;
+
+update visitors v
+    join (select vd.keep_id, max(duplicate.last_visit_at) as last_visit
+          from visitors_duplicates vd join visitors duplicate on duplicate.id = vd.duplicate_id
+          group by vd.keep_id) merged on v.id = merged.keep_id
+set v.last_visit_at = greatest(coalesce(v.last_visit_at, merged.last_visit), merged.last_visit);
+
+delete v from visitors v
+    join visitors_duplicates vd on v.id = vd.duplicate_id;
+
+drop temporary table visitors_duplicates;
+
+CREATE UNIQUE INDEX fingerprint_ip_unique ON visitors (fingerprint, ip_address);
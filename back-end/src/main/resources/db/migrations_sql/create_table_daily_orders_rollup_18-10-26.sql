@@ -0,0 +1,13 @@
+/*Сводка заказов по дням, категориям и статусам для статистики админ-панели.
+  category_id = 0 - все заказы дня, иначе - заказы, в которых есть товары категории (сумма и кол-во единиц только по этим товарам).
+  Обновляется вместе с заказами, заполняется/пересчитывается через /api/admin_panel/backfill_orders_rollup*/
+create table if not exists daily_orders_rollup
+(
+    date           date   not null,
+    category_id    bigint not null,
+    order_state_id int    not null,
+    orders_count   int    not null default 0,
+    orders_sum     bigint not null default 0,
+    units_count    int    not null default 0,
+    primary key (date, category_id, order_state_id)
+);
@@ -0,0 +1,20 @@
+/*Фоновые задачи массового добавления/удаления скидок. Варианты обрабатываются частями по возрастанию id,
+  после каждой части сохраняется id последнего обработанного варианта - задача продолжается с него после перезапуска.
+  heartbeat_at обновляется каждой частью: выполняемая задача, которая давно не обновлялась, считается прерванной*/
+create table if not exists discount_jobs
+(
+    id               bigint       not null auto_increment primary key,
+    discount_id      bigint       not null,
+    operation        varchar(32)  not null,
+    scope_ids        text         not null,
+    state            varchar(16)  not null,
+    total_amount     int          not null default 0,
+    processed_amount int          not null default 0,
+    last_variant_id  bigint       not null default 0,
+    error            varchar(512) null,
+    created_at       datetime     not null default current_timestamp,
+    heartbeat_at     datetime     null,
+    finished_at      datetime     null,
+    index state_index (state),
+    index discount_index (discount_id)
+);
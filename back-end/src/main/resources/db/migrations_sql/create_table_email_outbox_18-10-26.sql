@@ -0,0 +1,18 @@
+/*Исходящие письма. Письмо записывается в той же транзакции, что и изменение, о котором оно сообщает,
+  и отправляется фоновым обработчиком пакетами. Неотправленные письма повторяются с увеличивающейся задержкой,
+  после исчерпания попыток получают состояние dead и остаются в таблице для разбора*/
+create table if not exists email_outbox
+(
+    id              bigint       not null auto_increment primary key,
+    recipient       varchar(255) not null,
+    subject         varchar(255) not null,
+    body            mediumtext   not null,
+    is_html         bit          not null default 1,
+    state           varchar(16)  not null default 'pending',
+    attempts        int          not null default 0,
+    next_attempt_at datetime     not null default current_timestamp,
+    last_error      varchar(512) null,
+    created_at      datetime     not null default current_timestamp,
+    sent_at         datetime     null,
+    index state_next_attempt_index (state, next_attempt_at)
+);
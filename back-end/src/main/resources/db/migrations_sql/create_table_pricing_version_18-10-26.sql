@@ -0,0 +1,15 @@
+/*Версия цен вариантов товаров. Увеличивается при изменениях скидок.
+  Корзины и заказы хранят версию, по которой рассчитана их сумма, и пересчитываются при чтении, если она устарела*/
+create table if not exists pricing_version
+(
+    id      int    not null primary key,
+    version bigint not null default 0
+);
+
+insert ignore into pricing_version (id, version) values (1, 0);
+
+alter table baskets
+    add column pricing_version bigint not null default 0;
+
+alter table orders
+    add column pricing_version bigint not null default 0;
@@ -0,0 +1,89 @@
+package gp.wagner.backend;
+
+import gp.wagner.backend.domain.entities.categories.Category;
+import gp.wagner.backend.domain.entities.orders.OrderState;
+import gp.wagner.backend.domain.entities.orders.PaymentMethod;
+import gp.wagner.backend.domain.entities.products.Producer;
+import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.domain.entities.products.ProductVariant;
+import jakarta.persistence.EntityManager;
+
+import java.util.UUID;
+
+/**
+ * Тестовые записи для интеграционных тестов - тесты не зависят от содержимого БД.
+ * Записи создаются в транзакции вызывающего кода: откатываемой в тесте либо фиксируемой с удалением после теста
+ * */
+public final class TestFixtures {
+
+	private TestFixtures() {}
+
+	// Уникальное наименование, чтобы записи тестов не пересекались с существующими
+	public static String uniqueName(String prefix){
+		return prefix + " " + UUID.randomUUID();
+	}
+
+	// Товар вместе с категорией и производителем
+	public static Product createProduct(EntityManager entityManager){
+		Category category = new Category(null, uniqueName("Тестовая категория"), null, null);
+		entityManager.persist(category);
+
+		Producer producer = new Producer();
+		producer.setProducerName(uniqueName("Тестовый производитель"));
+		producer.setIsShown(true);
+		entityManager.persist(producer);
+
+		Product product = new Product();
+		product.setName(uniqueName("Тестовый товар"));
+		product.setDescription("Тестовый товар");
+		product.setCategory(category);
+		product.setProducer(producer);
+		product.setIsAvailable(true);
+		product.setIsDeleted(false);
+		product.setShowProduct(true);
+		entityManager.persist(product);
+
+		return product;
+	}
+
+	public static ProductVariant createVariant(EntityManager entityManager, Product product, int price, boolean showVariant, boolean isDeleted){
+		ProductVariant variant = new ProductVariant(null, uniqueName("Тестовый вариант"), product, price, null, showVariant, null);
+		variant.setIsDeleted(isDeleted);
+		entityManager.persist(variant);
+
+		return variant;
+	}
+
+	public static PaymentMethod createPaymentMethod(EntityManager entityManager){
+		PaymentMethod paymentMethod = new PaymentMethod(uniqueName("Тестовый способ оплаты"));
+		entityManager.persist(paymentMethod);
+
+		return paymentMethod;
+	}
+
+	public static OrderState createOrderState(EntityManager entityManager){
+		OrderState orderState = new OrderState(null, uniqueName("Тестовый статус"));
+		entityManager.persist(orderState);
+
+		return orderState;
+	}
+
+	// Удалить товар с вариантами, категорией и производителем, созданные createProduct/createVariant в зафиксированной транзакции
+	public static void removeProduct(EntityManager entityManager, long productId){
+		Product product = entityManager.find(Product.class, productId);
+
+		if (product == null)
+			return;
+
+		entityManager.createQuery("delete from ProductVariant pv where pv.product.id = :id")
+				.setParameter("id", productId)
+				.executeUpdate();
+
+		Category category = product.getCategory();
+		Producer producer = product.getProducer();
+
+		entityManager.remove(product);
+		entityManager.remove(category);
+		entityManager.remove(producer);
+	}
+}
@@ -0,0 +1,399 @@
+package gp.wagner.backend.repositories;
+
+import gp.wagner.backend.TestFixtures;
+import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.infrastructure.Constants;
+import gp.wagner.backend.repositories.baskets.BasketsRepository;
+import gp.wagner.backend.repositories.orders.OrdersAndProductVariantsRepository;
+import gp.wagner.backend.repositories.orders.OrdersRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пересчёт сумм корзин и заказов одним запросом после изменения вариантов товаров.
+ * Результаты сравниваются с прежним пересчётом в коде (ServicesUtils.countSumInBaskets/countSumInOrders):
+ * учитываются только видимые и не удалённые варианты (для заказов - если задано), а корзина или заказ
+ * без учитываемых позиций сохраняет прежнюю сумму.
+ * Все тестовые записи (товар, варианты, пользователь, покупатель, корзины и заказы) создаются в транзакции теста
+ * и откатываются после него - тесты не зависят от содержимого БД
+ * */
+@SpringBootTest
+@Transactional
+class RecountSumsByPvIdsTests {
+
+	// Цены тестовых вариантов: видимый со скидкой, скрытый и удалённый без скидки
+	private static final int VISIBLE_EFFECTIVE_PRICE = 900;
+	private static final int HIDDEN_PRICE = 2_000;
+	private static final int DELETED_PRICE = 3_000;
+
+	// Прежние суммы и цена за единицу до пересчёта
+	private static final int PREVIOUS_SUM = 12_345;
+	private static final int PREVIOUS_HIDDEN_ONLY_SUM = 777;
+	private static final int PREVIOUS_UNIT_PRICE = 1;
+
+	// Кол-во корзин для замера пересчёта и бюджет по умолчанию
+	private static final int BENCHMARK_BASKETS = 100_000;
+	private static final long DEFAULT_BENCHMARK_BUDGET_MILLIS = 10_000;
+
+	@Autowired
+	private BasketsRepository basketsRepository;
+
+	@Autowired
+	private OrdersRepository ordersRepository;
+
+	@Autowired
+	private OrdersAndProductVariantsRepository opvRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private long visiblePvId;
+	private long hiddenPvId;
+	private long deletedPvId;
+
+	private long userId;
+	private long customerId;
+	private long paymentMethodId;
+	private int otherOrderStateId;
+
+	@BeforeEach
+	void setUp() {
+		Product product = TestFixtures.createProduct(entityManager);
+
+		visiblePvId = TestFixtures.createVariant(entityManager, product, 1_000, true, false).getId();
+		hiddenPvId = TestFixtures.createVariant(entityManager, product, HIDDEN_PRICE, false, false).getId();
+		deletedPvId = TestFixtures.createVariant(entityManager, product, DELETED_PRICE, true, true).getId();
+
+		paymentMethodId = TestFixtures.createPaymentMethod(entityManager).getId();
+		otherOrderStateId = TestFixtures.createOrderState(entityManager).getId();
+
+		// Записи JPA нужны в БД до запросов через jdbcTemplate в той же транзакции
+		entityManager.flush();
+
+		// Цена со скидкой задаётся только запросом - в сущности она не изменяется
+		updateVariant(visiblePvId, 1_000, VISIBLE_EFFECTIVE_PRICE, true, false);
+		updateVariant(hiddenPvId, HIDDEN_PRICE, null, false, false);
+		updateVariant(deletedPvId, DELETED_PRICE, null, true, true);
+
+		// Статус изменяемых заказов, по которому выполняется пересчёт
+		jdbcTemplate.update("insert ignore into order_states (id, order_state) values (?, ?)",
+				Constants.MutableOrderStateId, TestFixtures.uniqueName("Тестовый статус"));
+
+		userId = createUser();
+		customerId = createCustomer();
+	}
+
+	// В сумму корзины входят только видимые и не удалённые варианты
+	@Test
+	void basketSumCountsOnlyVisibleVariants() {
+		long basketId = createBasket(PREVIOUS_SUM);
+		addBasketLine(basketId, visiblePvId, 2);
+		addBasketLine(basketId, hiddenPvId, 1);
+		addBasketLine(basketId, deletedPvId, 1);
+
+		basketsRepository.recountSumsByPvIds(List.of(visiblePvId));
+
+		assertEquals(VISIBLE_EFFECTIVE_PRICE * 2, basketSum(basketId));
+	}
+
+	// Корзина только со скрытыми и удалёнными вариантами сохраняет прежнюю сумму
+	@Test
+	void basketWithoutCountableLinesKeepsSum() {
+		long basketId = createBasket(PREVIOUS_HIDDEN_ONLY_SUM);
+		addBasketLine(basketId, hiddenPvId, 1);
+		addBasketLine(basketId, deletedPvId, 3);
+
+		basketsRepository.recountSumsByPvIds(List.of(hiddenPvId, deletedPvId));
+
+		assertEquals(PREVIOUS_HIDDEN_ONLY_SUM, basketSum(basketId));
+	}
+
+	// Пересчитанная корзина помечается наибольшей версией цен своих вариантов, в том числе скрытых
+	@Test
+	void basketRecountStampsPricingVersion() {
+		setPricingVersion(visiblePvId, 5);
+		setPricingVersion(hiddenPvId, 7);
+
+		long basketId = createBasket(PREVIOUS_SUM);
+		addBasketLine(basketId, visiblePvId, 2);
+		addBasketLine(basketId, hiddenPvId, 1);
+
+		basketsRepository.recountSumsByPvIds(List.of(visiblePvId));
+
+		assertEquals(7, pricingVersion("baskets", basketId));
+	}
+
+	// Устаревшая корзина пересчитывается условным запросом один раз, актуальная - не изменяется
+	@Test
+	void staleBasketRefreshedOnce() {
+		setPricingVersion(visiblePvId, 3);
+
+		long basketId = createBasket(PREVIOUS_SUM);
+		addBasketLine(basketId, visiblePvId, 2);
+
+		assertEquals(1, basketsRepository.refreshStaleSum(basketId));
+		assertEquals(VISIBLE_EFFECTIVE_PRICE * 2, basketSum(basketId));
+		assertEquals(3, pricingVersion("baskets", basketId));
+
+		assertEquals(0, basketsRepository.refreshStaleSum(basketId));
+	}
+
+	// Устаревший заказ пересчитывается по всем вариантам, заказ в другом статусе не изменяется
+	@Test
+	void staleOrderRefreshed() {
+		setPricingVersion(hiddenPvId, 4);
+
+		long orderId = createOrder(Constants.MutableOrderStateId, PREVIOUS_SUM);
+		addOrderLine(orderId, visiblePvId, 2);
+		addOrderLine(orderId, hiddenPvId, 1);
+
+		long otherOrderId = createOrder(otherOrderStateId, PREVIOUS_SUM);
+		addOrderLine(otherOrderId, hiddenPvId, 1);
+
+		List<Long> ordersIds = List.of(orderId, otherOrderId);
+
+		opvRepository.refreshStaleUnitPrices(ordersIds, Constants.MutableOrderStateId);
+		ordersRepository.refreshStaleSums(ordersIds, Constants.MutableOrderStateId);
+
+		assertEquals(VISIBLE_EFFECTIVE_PRICE * 2 + HIDDEN_PRICE, orderSum(orderId));
+		assertEquals(HIDDEN_PRICE, unitPrice(orderId, hiddenPvId));
+		assertEquals(4, pricingVersion("orders", orderId));
+
+		assertEquals(PREVIOUS_SUM, orderSum(otherOrderId));
+		assertEquals(PREVIOUS_UNIT_PRICE, unitPrice(otherOrderId, hiddenPvId));
+	}
+
+	// Скрытие/удаление: сумма, кол-во единиц и цена за единицу пересчитываются только по видимым вариантам
+	@Test
+	void orderRecountOnlyVisible() {
+		long orderId = createOrder(Constants.MutableOrderStateId, PREVIOUS_SUM);
+		addOrderLine(orderId, visiblePvId, 2);
+		addOrderLine(orderId, hiddenPvId, 1);
+		addOrderLine(orderId, deletedPvId, 1);
+
+		recountOrders(List.of(hiddenPvId), true);
+
+		assertEquals(VISIBLE_EFFECTIVE_PRICE * 2, orderSum(orderId));
+		assertEquals(2, orderProductsAmount(orderId));
+
+		assertEquals(VISIBLE_EFFECTIVE_PRICE, unitPrice(orderId, visiblePvId));
+		assertEquals(PREVIOUS_UNIT_PRICE, unitPrice(orderId, hiddenPvId));
+		assertEquals(PREVIOUS_UNIT_PRICE, unitPrice(orderId, deletedPvId));
+	}
+
+	// Заказ без видимых вариантов сохраняет прежние сумму, кол-во единиц и цены за единицу
+	@Test
+	void orderWithoutCountableLinesKeepsSum() {
+		long orderId = createOrder(Constants.MutableOrderStateId, PREVIOUS_HIDDEN_ONLY_SUM);
+		addOrderLine(orderId, hiddenPvId, 1);
+		addOrderLine(orderId, deletedPvId, 2);
+
+		recountOrders(List.of(hiddenPvId, deletedPvId), true);
+
+		assertEquals(PREVIOUS_HIDDEN_ONLY_SUM, orderSum(orderId));
+		assertEquals(3, orderProductsAmount(orderId));
+		assertEquals(PREVIOUS_UNIT_PRICE, unitPrice(orderId, hiddenPvId));
+	}
+
+	// Изменение цены: учитываются все позиции заказа, как в прежнем пересчёте без фильтрации
+	@Test
+	void orderRecountAllLines() {
+		long orderId = createOrder(Constants.MutableOrderStateId, PREVIOUS_SUM);
+		addOrderLine(orderId, visiblePvId, 2);
+		addOrderLine(orderId, hiddenPvId, 1);
+		addOrderLine(orderId, deletedPvId, 1);
+
+		recountOrders(List.of(visiblePvId), false);
+
+		assertEquals(VISIBLE_EFFECTIVE_PRICE * 2 + HIDDEN_PRICE + DELETED_PRICE, orderSum(orderId));
+		assertEquals(4, orderProductsAmount(orderId));
+
+		assertEquals(VISIBLE_EFFECTIVE_PRICE, unitPrice(orderId, visiblePvId));
+		assertEquals(HIDDEN_PRICE, unitPrice(orderId, hiddenPvId));
+		assertEquals(DELETED_PRICE, unitPrice(orderId, deletedPvId));
+	}
+
+	// Заказы в других статусах не пересчитываются
+	@Test
+	void orderInOtherStateIsNotChanged() {
+		long orderId = createOrder(otherOrderStateId, PREVIOUS_SUM);
+		addOrderLine(orderId, visiblePvId, 2);
+
+		recountOrders(List.of(visiblePvId), false);
+
+		assertEquals(PREVIOUS_SUM, orderSum(orderId));
+		assertEquals(PREVIOUS_UNIT_PRICE, unitPrice(orderId, visiblePvId));
+	}
+
+	/**
+	 * Замер пересчёта 100 тыс. корзин с изменённым вариантом одним запросом. Запускается только явно:
+	 * mvn test -Dtest=RecountSumsByPvIdsTests -Drecount.benchmark=true [-Drecount.benchmark.budget-millis=...]
+	 * */
+	@Test
+	@EnabledIfSystemProperty(named = "recount.benchmark", matches = "true")
+	void recountsHundredThousandBaskets() {
+		long budgetMillis = Long.getLong("recount.benchmark.budget-millis", DEFAULT_BENCHMARK_BUDGET_MILLIS);
+
+		// 100 тыс. корзин одним запросом: произведение пяти наборов цифр 0-9
+		jdbcTemplate.update("""
+				insert into baskets (added_date, user_id, sum)
+				select now(), ?, ?
+				from (select 0 as d union all select 1 union all select 2 union all select 3 union all select 4
+				      union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) d1
+				    cross join (select 0 as d union all select 1 union all select 2 union all select 3 union all select 4
+				      union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) d2
+				    cross join (select 0 as d union all select 1 union all select 2 union all select 3 union all select 4
+				      union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) d3
+				    cross join (select 0 as d union all select 1 union all select 2 union all select 3 union all select 4
+				      union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) d4
+				    cross join (select 0 as d union all select 1 union all select 2 union all select 3 union all select 4
+				      union all select 5 union all select 6 union all select 7 union all select 8 union all select 9) d5
+				""", userId, PREVIOUS_SUM);
+
+		// В каждой корзине изменённый вариант и скрытый, не входящий в сумму
+		jdbcTemplate.update("""
+				insert into baskets_products_variants (basket_id, product_variant_id, products_count)
+				select b.id, ?, 1 + b.id % 3 from baskets b where b.user_id = ?
+				""", visiblePvId, userId);
+
+		jdbcTemplate.update("""
+				insert into baskets_products_variants (basket_id, product_variant_id, products_count)
+				select b.id, ?, 1 from baskets b where b.user_id = ?
+				""", hiddenPvId, userId);
+
+		assertEquals(BENCHMARK_BASKETS, count("select count(*) from baskets b where b.user_id = " + userId));
+
+		long start = System.nanoTime();
+		basketsRepository.recountSumsByPvIds(List.of(visiblePvId));
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		System.out.printf("\n\tПересчёт сумм %d корзин одним запросом: %d мс\n\n", BENCHMARK_BASKETS, elapsedMillis);
+
+		// Сумма каждой корзины - только видимый вариант
+		assertEquals(0, count(String.format("""
+				select count(*) from baskets b join baskets_products_variants bpv on bpv.basket_id = b.id and bpv.product_variant_id = %d
+				where b.user_id = %d and b.sum <> bpv.products_count * %d
+				""", visiblePvId, userId, VISIBLE_EFFECTIVE_PRICE)));
+
+		assertTrue(elapsedMillis <= budgetMillis, String.format("Пересчёт %d мс превышает бюджет %d мс", elapsedMillis, budgetMillis));
+	}
+
+	// Тот же порядок вызовов, что и в OrdersServiceImpl: сначала цены за единицу, затем суммы
+	private void recountOrders(List<Long> pvIds, boolean onlyVisible){
+		opvRepository.updateUnitPricesByPvIds(pvIds, Constants.MutableOrderStateId, onlyVisible);
+		ordersRepository.recountSumsByPvIds(pvIds, Constants.MutableOrderStateId, onlyVisible);
+	}
+
+	//region Тестовые записи
+	private void updateVariant(long pvId, int price, Integer effectivePrice, boolean showVariant, boolean isDeleted){
+		jdbcTemplate.update("update variants_product set price = ?, effective_price = ?, show_variant = ?, is_deleted = ? where id = ?",
+				price, effectivePrice, showVariant, isDeleted, pvId);
+	}
+
+	private void setPricingVersion(long pvId, long version){
+		jdbcTemplate.update("update variants_product set pricing_version = ? where id = ?", version, pvId);
+	}
+
+	// Пользователь с отдельной ролью - владелец тестовых корзин
+	private long createUser(){
+		jdbcTemplate.update("insert into user_roles (role) values (?)", TestFixtures.uniqueName("test"));
+		long roleId = lastInsertId();
+
+		String login = TestFixtures.uniqueName("test").replace(' ', '-');
+
+		jdbcTemplate.update("insert into users (login, name, email, is_confirmed, role_id, created_at, updated_at) values (?, ?, ?, true, ?, now(), now())",
+				login, "Тест", login + "@shop.test", roleId);
+
+		return lastInsertId();
+	}
+
+	// Покупатель с отдельным посетителем - владелец тестовых заказов
+	private long createCustomer(){
+		String fingerprint = TestFixtures.uniqueName("test").replace(' ', '-');
+
+		jdbcTemplate.update("insert into visitors (fingerprint, ip_address, created_at, last_visit_at) values (?, '127.0.0.1', now(), now())",
+				fingerprint);
+		long visitorId = lastInsertId();
+
+		jdbcTemplate.update("""
+				insert into customers (surname, name, email, phone_number, visitor_id, created_at, updated_at)
+				values ('Тестов', 'Тест', ?, 79000000000, ?, now(), now())
+				""", fingerprint + "@shop.test", visitorId);
+
+		return lastInsertId();
+	}
+
+	private long createBasket(int sum){
+		jdbcTemplate.update("insert into baskets (added_date, user_id, sum) values (now(), ?, ?)", userId, sum);
+
+		return lastInsertId();
+	}
+
+	private void addBasketLine(long basketId, long pvId, int count){
+		jdbcTemplate.update("insert into baskets_products_variants (basket_id, product_variant_id, products_count) values (?, ?, ?)",
+				basketId, pvId, count);
+	}
+
+	private long createOrder(int orderStateId, int sum){
+		jdbcTemplate.update("""
+				insert into orders (order_date, code, description, order_state_id, payment_method_id, customer_id, sum, general_products_amount)
+				values (now(), ?, 'Тестовый заказ', ?, ?, ?, ?, 0)
+				""", System.nanoTime(), orderStateId, paymentMethodId, customerId, sum);
+
+		return lastInsertId();
+	}
+
+	private void addOrderLine(long orderId, long pvId, int count){
+		jdbcTemplate.update("""
+				insert into orders_products_variants (order_id, product_variant_id, products_count, unit_price) values (?, ?, ?, ?)
+				""", orderId, pvId, count, PREVIOUS_UNIT_PRICE);
+
+		jdbcTemplate.update("update orders set general_products_amount = general_products_amount + ? where id = ?", count, orderId);
+	}
+	//endregion
+
+	private int basketSum(long basketId){
+		return jdbcTemplate.queryForObject("select b.sum from baskets b where b.id = ?", Integer.class, basketId);
+	}
+
+	private int orderSum(long orderId){
+		return jdbcTemplate.queryForObject("select o.sum from orders o where o.id = ?", Integer.class, orderId);
+	}
+
+	private int orderProductsAmount(long orderId){
+		return jdbcTemplate.queryForObject("select o.general_products_amount from orders o where o.id = ?", Integer.class, orderId);
+	}
+
+	private int unitPrice(long orderId, long pvId){
+		return jdbcTemplate.queryForObject("select opv.unit_price from orders_products_variants opv where opv.order_id = ? and opv.product_variant_id = ?",
+				Integer.class, orderId, pvId);
+	}
+
+	private long pricingVersion(String table, long id){
+		return jdbcTemplate.queryForObject("select t.pricing_version from " + table + " t where t.id = ?", Long.class, id);
+	}
+
+	private long lastInsertId(){
+		return jdbcTemplate.queryForObject("select last_insert_id()", Long.class);
+	}
+
+	private long count(String sql){
+		Long count = jdbcTemplate.queryForObject(sql, Long.class);
+
+		return count != null ? count : 0;
+	}
+}
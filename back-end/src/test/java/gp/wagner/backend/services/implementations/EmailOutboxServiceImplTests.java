@@ -0,0 +1,176 @@
+package gp.wagner.backend.services.implementations;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import gp.wagner.backend.domain.entities.notifications.EmailOutboxMessage;
+import gp.wagner.backend.infrastructure.enums.EmailOutboxStateEnum;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.repositories.EmailOutboxRepository;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Отправка пакета исходящих писем через локальный SMTP сервер GreenMail
+class EmailOutboxServiceImplTests {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	private static final String MAIL_FROM = "shop@shop.test";
+
+	// Письма для этого адреса передаются транспорту без получателей - транспорт отклоняет только их, остальные письма пакета уходят
+	private static final String REJECTED_RECIPIENT = "rejected@shop.test";
+
+	private EmailOutboxRepository outboxRepository;
+	private EmailOutboxServiceImpl service;
+
+	@BeforeEach
+	void setUp() {
+		JavaMailSenderImpl mailSender = new JavaMailSenderImpl() {
+			@Override
+			public MimeMessage createMimeMessage() {
+				return new MimeMessage(getSession()) {
+					@Override
+					public Address[] getAllRecipients() throws MessagingException {
+						Address[] recipients = super.getAllRecipients();
+
+						return recipients != null && Arrays.stream(recipients).anyMatch(address -> address.toString().equals(REJECTED_RECIPIENT)) ?
+								null : recipients;
+					}
+				};
+			}
+		};
+
+		mailSender.setHost(ServerSetupTest.SMTP.getBindAddress());
+		mailSender.setPort(ServerSetupTest.SMTP.getPort());
+
+		outboxRepository = mock(EmailOutboxRepository.class);
+
+		service = new EmailOutboxServiceImpl();
+		service.setOutboxRepository(outboxRepository);
+		service.setMailSender(mailSender);
+		ReflectionTestUtils.setField(service, "mailFrom", MAIL_FROM);
+
+		// Аренда и сохранение результатов вызываются через Services - без прокси и транзакций
+		Services.emailOutboxService = service;
+
+		when(outboxRepository.completeMessage(anyLong(), any(), any(), anyInt(), any(), any(), any())).thenReturn(1);
+	}
+
+	// Все письма пакета отправлены и помечены как sent
+	@Test
+	void sendsWholeBatch() throws Exception {
+		List<EmailOutboxMessage> messages = List.of(
+				createMessage(1, "first@shop.test", "Заказ 1"),
+				createMessage(2, "second@shop.test", "Заказ 2"));
+
+		when(outboxRepository.lockDueMessages(anyInt())).thenReturn(messages);
+
+		assertEquals(2, service.dispatchBatch());
+
+		assertTrue(greenMail.waitForIncomingEmail(5_000, 2));
+
+		MimeMessage[] received = greenMail.getReceivedMessages();
+		assertEquals(2, received.length);
+		assertEquals("Заказ 1", received[0].getSubject());
+		assertEquals(MAIL_FROM, received[0].getFrom()[0].toString());
+
+		// Пакет арендован с общим маркером до отправки, результат сохранён с тем же маркером
+		verify(outboxRepository).saveAll(messages);
+
+		String leaseToken = messages.get(0).getLeaseToken();
+		assertNotNull(leaseToken);
+
+		for (EmailOutboxMessage message : messages) {
+			assertEquals(EmailOutboxStateEnum.SENT.getState(), message.getState());
+			assertNotNull(message.getSentAt());
+			assertEquals(0, message.getAttempts());
+
+			verify(outboxRepository).completeMessage(eq(message.getId()), eq(leaseToken), eq(EmailOutboxStateEnum.SENT.getState()),
+					eq(0), any(), isNull(), eq(message.getSentAt()));
+		}
+	}
+
+	// Неотправленное письмо из MailSendException откладывается с увеличенной задержкой, отправленные помечаются как sent
+	@Test
+	void postponesFailedMessagesOfBatch() throws Exception {
+		EmailOutboxMessage sent = createMessage(1, "first@shop.test", "Заказ 1");
+		EmailOutboxMessage rejected = createMessage(2, REJECTED_RECIPIENT, "Заказ 2");
+
+		// Вторая неудачная попытка - задержка вдвое больше начальной
+		rejected.setAttempts(1);
+
+		when(outboxRepository.lockDueMessages(anyInt())).thenReturn(List.of(sent, rejected));
+
+		long before = System.currentTimeMillis();
+		service.dispatchBatch();
+
+		assertTrue(greenMail.waitForIncomingEmail(5_000, 1));
+		assertEquals(1, greenMail.getReceivedMessages().length);
+
+		assertEquals(EmailOutboxStateEnum.SENT.getState(), sent.getState());
+
+		assertEquals(EmailOutboxStateEnum.PENDING.getState(), rejected.getState());
+		assertEquals(2, rejected.getAttempts());
+		assertNotNull(rejected.getLastError());
+		assertNull(rejected.getSentAt());
+		assertTrue(rejected.getNextAttemptAt().getTime() >= before + 2 * EmailOutboxServiceImpl.BASE_RETRY_MILLIS);
+		assertTrue(rejected.getNextAttemptAt().getTime() <= System.currentTimeMillis() + 2 * EmailOutboxServiceImpl.BASE_RETRY_MILLIS);
+
+		verify(outboxRepository).completeMessage(eq(2L), eq(rejected.getLeaseToken()), eq(EmailOutboxStateEnum.PENDING.getState()),
+				eq(2), eq(rejected.getNextAttemptAt()), eq(rejected.getLastError()), isNull());
+	}
+
+	// Результат отправки письма, аренда которого истекла, не считается отправленным этим экземпляром
+	@Test
+	void skipsMessagesWithExpiredLease() {
+		EmailOutboxMessage message = createMessage(1, "first@shop.test", "Заказ 1");
+
+		when(outboxRepository.lockDueMessages(anyInt())).thenReturn(List.of(message));
+		when(outboxRepository.completeMessage(anyLong(), any(), any(), anyInt(), any(), any(), any())).thenReturn(0);
+
+		assertEquals(1, service.dispatchBatch());
+
+		assertEquals(0, service.getStatistics().getFlushedRowsAmount());
+	}
+
+	// Письмо, исчерпавшее попытки, помечается как dead и больше не откладывается
+	@Test
+	void marksMessageDeadAfterMaxAttempts() {
+		EmailOutboxMessage rejected = createMessage(1, REJECTED_RECIPIENT, "Заказ 1");
+		rejected.setAttempts(EmailOutboxServiceImpl.MAX_ATTEMPTS - 1);
+
+		when(outboxRepository.lockDueMessages(anyInt())).thenReturn(List.of(rejected));
+
+		service.dispatchBatch();
+
+		assertEquals(0, greenMail.getReceivedMessages().length);
+
+		assertEquals(EmailOutboxStateEnum.DEAD.getState(), rejected.getState());
+		assertEquals(EmailOutboxServiceImpl.MAX_ATTEMPTS, rejected.getAttempts());
+		assertNotNull(rejected.getLastError());
+
+		// Аренда снята, повторная попытка не назначается
+		assertTrue(rejected.getNextAttemptAt().getTime() <= System.currentTimeMillis());
+	}
+
+	private static EmailOutboxMessage createMessage(long id, String recipient, String subject){
+		EmailOutboxMessage message = new EmailOutboxMessage(recipient, subject, "<p>" + subject + "</p>", true,
+				EmailOutboxStateEnum.PENDING.getState());
+		message.setId(id);
+
+		return message;
+	}
+}
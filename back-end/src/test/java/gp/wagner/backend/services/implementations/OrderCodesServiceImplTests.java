@@ -0,0 +1,107 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.repositories.orders.OrdersRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OrderCodesServiceImplTests {
+
+	private static final int THREADS = 8;
+	private static final int CODES_PER_THREAD = 250_000;
+
+	// Коды, полученные параллельно из нескольких потоков, не повторяются и возрастают в каждом потоке
+	@Test
+	void concurrentCodesAreUnique() throws Exception {
+		OrderCodesServiceImpl service = new OrderCodesServiceImpl(7);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<long[]>> futures = new ArrayList<>();
+
+		for (int i = 0; i < THREADS; i++)
+			futures.add(executor.submit(() -> {
+				long[] codes = new long[CODES_PER_THREAD];
+
+				for (int j = 0; j < CODES_PER_THREAD; j++)
+					codes[j] = service.nextCode();
+
+				return codes;
+			}));
+
+		long[] allCodes = new long[THREADS * CODES_PER_THREAD];
+		int offset = 0;
+
+		for (Future<long[]> future : futures) {
+			long[] codes = future.get(1, TimeUnit.MINUTES);
+
+			for (int j = 1; j < codes.length; j++)
+				assertTrue(codes[j] > codes[j - 1], "Коды одного потока должны возрастать");
+
+			System.arraycopy(codes, 0, allCodes, offset, codes.length);
+			offset += codes.length;
+		}
+
+		executor.shutdown();
+
+		Arrays.sort(allCodes);
+
+		for (int j = 1; j < allCodes.length; j++)
+			assertNotEquals(allCodes[j - 1], allCodes[j], "Коды не должны повторяться");
+
+		// Номер экземпляра сохраняется в каждом коде
+		assertTrue(Arrays.stream(allCodes).allMatch(code -> code / 10_000 % 100 == 7));
+	}
+
+	// Коды разных экземпляров не пересекаются
+	@Test
+	void nodesDoNotCollide() {
+		OrderCodesServiceImpl first = new OrderCodesServiceImpl(1);
+		OrderCodesServiceImpl second = new OrderCodesServiceImpl(2);
+
+		long[] firstCodes = new long[100_000];
+		long[] secondCodes = new long[100_000];
+
+		for (int i = 0; i < firstCodes.length; i++) {
+			firstCodes[i] = first.nextCode();
+			secondCodes[i] = second.nextCode();
+		}
+
+		Arrays.sort(secondCodes);
+
+		assertTrue(Arrays.stream(firstCodes).noneMatch(code -> Arrays.binarySearch(secondCodes, code) >= 0));
+	}
+
+	// Последовательность продолжается с наибольшего кода экземпляра в БД, если он впереди отсчёта от текущего времени
+	@Test
+	void continuesFromMaxCodeInDatabase() {
+		OrderCodesServiceImpl service = new OrderCodesServiceImpl(3);
+
+		// Код того же экземпляра на час вперёд - например выданный до перевода часов назад
+		long maxCode = service.nextCode() + 3_600L * 100 * 10_000;
+
+		OrdersRepository ordersRepository = mock(OrdersRepository.class);
+		when(ordersRepository.getMaxCodeByNode(3, 100, 10_000)).thenReturn(Optional.of(maxCode));
+
+		OrderCodesServiceImpl restarted = new OrderCodesServiceImpl(3);
+		restarted.setOrdersRepository(ordersRepository);
+		restarted.seedFromDatabase();
+
+		assertEquals(maxCode + 1, restarted.nextCode());
+	}
+
+	@Test
+	void invalidNodeIdIsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new OrderCodesServiceImpl(100));
+		assertThrows(IllegalArgumentException.class, () -> new OrderCodesServiceImpl(-1));
+	}
+}
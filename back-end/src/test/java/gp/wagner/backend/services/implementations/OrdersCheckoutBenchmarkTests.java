@@ -0,0 +1,158 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.TestFixtures;
+import gp.wagner.backend.domain.dto.request.crud.CustomerRequestDto;
+import gp.wagner.backend.domain.dto.request.crud.OrderRequestDto;
+import gp.wagner.backend.domain.entities.orders.OrderState;
+import gp.wagner.backend.domain.entities.orders.PaymentMethod;
+import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.services.interfaces.OrdersService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Задержка оформления заказа при параллельных запросах: 200 заказов оформляются одновременно, p99 сравнивается с бюджетом.
+ * Запускается только явно: mvn test -Dtest=OrdersCheckoutBenchmarkTests -Dcheckout.benchmark=true [-Dcheckout.benchmark.p99-millis=...].
+ * Каждый заказ оформляется в своей транзакции, которая откатывается - заказы не сохраняются
+ * */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "checkout.benchmark", matches = "true")
+class OrdersCheckoutBenchmarkTests {
+
+	private static final String IP = "127.0.0.1";
+
+	// Кол-во одновременно оформляемых заказов
+	private static final int CONCURRENT_ORDERS = 200;
+
+	// Заказы для прогрева перед замером
+	private static final int WARMUP_ORDERS = 20;
+
+	// Бюджет p99 по умолчанию. Включает ожидание соединения из пула - соединений меньше, чем параллельных заказов
+	private static final long DEFAULT_P99_BUDGET_MILLIS = 2_000;
+
+	private static final int[] PRICES = {1_500, 2_700, 9_990, 450, 12_300};
+
+	@Autowired
+	private OrdersService ordersService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private long productId;
+	private List<Long> variantsIds;
+	private long paymentMethodId;
+	private int orderStateId;
+
+	@BeforeEach
+	void setUp() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			Product product = TestFixtures.createProduct(entityManager);
+			productId = product.getId();
+
+			variantsIds = new ArrayList<>();
+
+			for (int price : PRICES)
+				variantsIds.add(TestFixtures.createVariant(entityManager, product, price, true, false).getId());
+
+			paymentMethodId = TestFixtures.createPaymentMethod(entityManager).getId();
+			orderStateId = TestFixtures.createOrderState(entityManager).getId();
+		});
+	}
+
+	@AfterEach
+	void tearDown() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			TestFixtures.removeProduct(entityManager, productId);
+			entityManager.remove(entityManager.find(PaymentMethod.class, paymentMethodId));
+			entityManager.remove(entityManager.find(OrderState.class, orderStateId));
+		});
+	}
+
+	@Test
+	void concurrentCheckoutP99WithinBudget() throws Exception {
+		long budgetMillis = Long.getLong("checkout.benchmark.p99-millis", DEFAULT_P99_BUDGET_MILLIS);
+
+		for (int i = 0; i < WARMUP_ORDERS; i++)
+			checkout();
+
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_ORDERS);
+
+		try {
+			// Все заказы стартуют одновременно
+			CountDownLatch startGate = new CountDownLatch(1);
+			List<Future<Long>> futures = new ArrayList<>();
+
+			for (int i = 0; i < CONCURRENT_ORDERS; i++)
+				futures.add(executor.submit(() -> {
+					startGate.await();
+					return checkout();
+				}));
+
+			startGate.countDown();
+
+			long[] durations = new long[CONCURRENT_ORDERS];
+
+			for (int i = 0; i < CONCURRENT_ORDERS; i++)
+				durations[i] = futures.get(i).get(5, TimeUnit.MINUTES);
+
+			Arrays.sort(durations);
+
+			long p50Millis = durations[CONCURRENT_ORDERS / 2] / 1_000_000;
+			long p99Millis = durations[(int) Math.ceil(CONCURRENT_ORDERS * 0.99) - 1] / 1_000_000;
+
+			System.out.printf("\n\tОформление %d заказов параллельно: p50 %d мс, p99 %d мс, максимум %d мс\n\n", CONCURRENT_ORDERS,
+					p50Millis, p99Millis, durations[CONCURRENT_ORDERS - 1] / 1_000_000);
+
+			assertTrue(p99Millis <= budgetMillis, String.format("p99 %d мс превышает бюджет %d мс", p99Millis, budgetMillis));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// Оформить заказ в откатываемой транзакции. Возвращает длительность оформления в наносекундах
+	private long checkout() {
+		String fingerprint = "benchmark-" + UUID.randomUUID();
+		OrderRequestDto dto = createOrderDto(fingerprint);
+
+		TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+
+		try {
+			long start = System.nanoTime();
+			assertNotNull(ordersService.create(dto, fingerprint, IP));
+
+			return System.nanoTime() - start;
+		} finally {
+			transactionManager.rollback(status);
+		}
+	}
+
+	private OrderRequestDto createOrderDto(String fingerprint){
+		Map<Integer, Integer> variantsAndCounts = new HashMap<>();
+
+		for (int i = 0; i < variantsIds.size(); i++)
+			variantsAndCounts.put(variantsIds.get(i).intValue(), i + 1);
+
+		CustomerRequestDto customer = new CustomerRequestDto(null, "Тест", "Тестов", null,
+				fingerprint + "@shop.test", 79000000000L);
+
+		return new OrderRequestDto(null, variantsAndCounts, customer, null, "Тестовый заказ", orderStateId, paymentMethodId);
+	}
+}
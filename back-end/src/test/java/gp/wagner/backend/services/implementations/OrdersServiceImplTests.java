@@ -0,0 +1,186 @@
+package gp.wagner.backend.services.implementations;
+
+import gp.wagner.backend.TestFixtures;
+import gp.wagner.backend.domain.dto.request.crud.CustomerRequestDto;
+import gp.wagner.backend.domain.dto.request.crud.OrderRequestDto;
+import gp.wagner.backend.domain.entities.orders.OrderState;
+import gp.wagner.backend.domain.entities.orders.PaymentMethod;
+import gp.wagner.backend.domain.entities.products.Product;
+import gp.wagner.backend.domain.exceptions.classes.ApiException;
+import gp.wagner.backend.infrastructure.SimpleTuple;
+import gp.wagner.backend.middleware.Services;
+import gp.wagner.backend.services.interfaces.OrdersService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Оформление заказа одной транзакцией на БД из настроек приложения.
+ * Товары, способ оплаты и статус заказа создаются перед каждым тестом и удаляются после него.
+ * Успешно оформленные заказы создаются в транзакции, которая откатывается в конце теста
+ * */
+@SpringBootTest
+class OrdersServiceImplTests {
+
+	private static final String IP = "127.0.0.1";
+
+	// Цены тестовых вариантов без скидок - цена за единицу в заказе равна цене варианта
+	private static final int[] PRICES = {1_500, 2_700, 9_990};
+
+	@Autowired
+	private OrdersService ordersService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private long productId;
+	private List<Long> variantsIds;
+	private long paymentMethodId;
+	private int orderStateId;
+
+	@BeforeEach
+	void setUp() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			Product product = TestFixtures.createProduct(entityManager);
+			productId = product.getId();
+
+			variantsIds = new ArrayList<>();
+
+			for (int price : PRICES)
+				variantsIds.add(TestFixtures.createVariant(entityManager, product, price, true, false).getId());
+
+			PaymentMethod paymentMethod = TestFixtures.createPaymentMethod(entityManager);
+			paymentMethodId = paymentMethod.getId();
+
+			OrderState orderState = TestFixtures.createOrderState(entityManager);
+			orderStateId = orderState.getId();
+		});
+	}
+
+	@AfterEach
+	void tearDown() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			TestFixtures.removeProduct(entityManager, productId);
+			entityManager.remove(entityManager.find(PaymentMethod.class, paymentMethodId));
+			entityManager.remove(entityManager.find(OrderState.class, orderStateId));
+		});
+	}
+
+	// Все позиции заказа сохранены с ценой за единицу, сумма заказа - сумма позиций
+	@Test
+	void createsOrderWithAllLines() throws Exception {
+		String fingerprint = createFingerprint();
+		OrderRequestDto dto = createOrderDto(fingerprint, paymentMethodId);
+
+		TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+
+		try {
+			SimpleTuple<Long, Long> created = ordersService.create(dto, fingerprint, IP);
+
+			assertNotNull(created);
+			assertNotNull(created.getValue2());
+
+			Map<Long, Integer> expectedPrices = new HashMap<>();
+
+			for (int i = 0; i < variantsIds.size(); i++)
+				expectedPrices.put(variantsIds.get(i), PRICES[i]);
+
+			List<Map<String, Object>> lines = jdbcTemplate.queryForList("""
+					select opv.product_variant_id, opv.products_count, opv.unit_price
+					from orders_products_variants opv
+					where opv.order_id = ?
+					""", created.getValue1());
+
+			assertEquals(variantsIds.size(), lines.size());
+
+			int expectedSum = 0;
+			int expectedAmount = 0;
+
+			for (Map<String, Object> line : lines) {
+				long pvId = ((Number) line.get("product_variant_id")).longValue();
+				int count = ((Number) line.get("products_count")).intValue();
+				int unitPrice = ((Number) line.get("unit_price")).intValue();
+
+				assertEquals(dto.getProductVariantIdAndCount().get((int) pvId).intValue(), count);
+				assertEquals(expectedPrices.get(pvId).intValue(), unitPrice);
+
+				expectedSum += unitPrice * count;
+				expectedAmount += count;
+			}
+
+			Map<String, Object> order = jdbcTemplate.queryForMap("select o.sum, o.general_products_amount from orders o where o.id = ?",
+					created.getValue1());
+
+			assertEquals(expectedSum, ((Number) order.get("sum")).intValue());
+			assertEquals(expectedAmount, ((Number) order.get("general_products_amount")).intValue());
+		} finally {
+			transactionManager.rollback(status);
+		}
+	}
+
+	// Ошибка после добавления покупателя откатывает всё оформление, а id откаченного посетителя не остаётся в кэше
+	@Test
+	void failedCheckoutPersistsNothing() {
+		String fingerprint = createFingerprint();
+		OrderRequestDto dto = createOrderDto(fingerprint, Long.MAX_VALUE);
+
+		long ordersCount = count("select count(*) from orders");
+
+		// Способ оплаты проверяется после добавления покупателя и посетителя
+		assertThrows(ApiException.class, () -> ordersService.create(dto, fingerprint, IP));
+
+		assertEquals(0, count("select count(*) from customers c where c.email = ?", dto.getCustomer().getEmail()));
+		assertEquals(0, count("select count(*) from visitors v where v.fingerprint = ?", fingerprint));
+		assertEquals(ordersCount, count("select count(*) from orders"));
+
+		// Вне транзакции посетитель создаётся заново, а не берётся из кэша
+		long visitorId = Services.visitorsCacheService.resolveVisitorId(fingerprint, IP);
+
+		try {
+			assertEquals(1, count("select count(*) from visitors v where v.id = ?", visitorId));
+		} finally {
+			jdbcTemplate.update("delete from visitors where id = ?", visitorId);
+		}
+	}
+
+	private OrderRequestDto createOrderDto(String fingerprint, long paymentMethodId){
+		Map<Integer, Integer> variantsAndCounts = new HashMap<>();
+
+		for (int i = 0; i < variantsIds.size(); i++)
+			variantsAndCounts.put(variantsIds.get(i).intValue(), i + 1);
+
+		CustomerRequestDto customer = new CustomerRequestDto(null, "Тест", "Тестов", null,
+				fingerprint + "@shop.test", 79000000000L);
+
+		return new OrderRequestDto(null, variantsAndCounts, customer, null, "Тестовый заказ", orderStateId, paymentMethodId);
+	}
+
+	private static String createFingerprint(){
+		return "test-" + UUID.randomUUID();
+	}
+
+	private long count(String sql, Object... args){
+		Long count = jdbcTemplate.queryForObject(sql, Long.class, args);
+
+		return count != null ? count : 0;
+	}
+}